@@ -0,0 +1,103 @@
+package org.develnext.jphp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import php.runtime.Memory;
+import php.runtime.env.TraceInfo;
+import php.runtime.lang.ForeachIterator;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.LongMemory;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrayMemoryBenchmark {
+    @Param({"16", "1024"})
+    public int size;
+
+    protected ArrayMemory list;
+    protected ArrayMemory map;
+    protected String[] keys;
+
+    @Setup
+    public void setup() {
+        list = new ArrayMemory();
+        map = new ArrayMemory();
+        keys = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            keys[i] = "key" + i;
+
+            list.add(i);
+            map.put(keys[i], LongMemory.valueOf(i));
+        }
+    }
+
+    @Benchmark
+    public ArrayMemory putList() {
+        ArrayMemory result = new ArrayMemory();
+
+        for (int i = 0; i < size; i++) {
+            result.add(i);
+        }
+
+        return result;
+    }
+
+    @Benchmark
+    public ArrayMemory putMap() {
+        ArrayMemory result = new ArrayMemory();
+
+        for (int i = 0; i < size; i++) {
+            result.put(keys[i], LongMemory.valueOf(i));
+        }
+
+        return result;
+    }
+
+    @Benchmark
+    public void getList(Blackhole blackhole) {
+        for (int i = 0; i < size; i++) {
+            blackhole.consume(list.valueOfIndex(TraceInfo.UNKNOWN, i));
+        }
+    }
+
+    @Benchmark
+    public void getMap(Blackhole blackhole) {
+        for (int i = 0; i < size; i++) {
+            blackhole.consume(map.valueOfIndex(TraceInfo.UNKNOWN, keys[i]));
+        }
+    }
+
+    @Benchmark
+    public void iterateList(Blackhole blackhole) {
+        ForeachIterator iterator = list.foreachIterator(false, false);
+
+        while (iterator.next()) {
+            blackhole.consume(iterator.getValue());
+        }
+    }
+
+    @Benchmark
+    public void iterateMap(Blackhole blackhole) {
+        ForeachIterator iterator = map.foreachIterator(false, false);
+
+        while (iterator.next()) {
+            blackhole.consume(iterator.getMemoryKey());
+            blackhole.consume(iterator.getValue());
+        }
+    }
+
+    @Benchmark
+    public Memory copyOnWrite() {
+        ArrayMemory copy = (ArrayMemory) list.toImmutable();
+        copy.add(0);
+
+        return copy;
+    }
+}
@@ -0,0 +1,82 @@
+package org.develnext.jphp.bench;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.ext.SPLExtension;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Environment of benchmarks, it has the core and spl extensions and discards the output of scripts.
+ */
+final public class BenchmarkEnvironment {
+    public final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BenchmarkEnvironment() {
+    }
+
+    public static Environment create() {
+        CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new SPLExtension());
+        scope.registerExtension(new CompilerExtension());
+
+        Environment env = new Environment(scope, new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+
+        env.getDefaultBuffer().setImplicitFlush(true);
+        return env;
+    }
+
+    /**
+     * Returns the context of a PHP file with the source, the source starts with the open tag.
+     */
+    public static Context context(String name, String source) {
+        return new Context(new ByteArrayInputStream(source.getBytes(UTF_8)), name + ".php", UTF_8);
+    }
+
+    /**
+     * Compiles and registers the module, functions and classes of it are available after that.
+     */
+    public static ModuleEntity load(Environment env, String name, String source) throws Throwable {
+        return env.importModule(context(name, source));
+    }
+
+    public static String readScript(String name) throws IOException {
+        InputStream input = BenchmarkEnvironment.class.getResourceAsStream("/scripts/" + name + ".php");
+
+        if (input == null) {
+            throw new IOException("Cannot find the " + name + ".php script");
+        }
+
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+
+            return output.toString("UTF-8");
+        } finally {
+            input.close();
+        }
+    }
+}
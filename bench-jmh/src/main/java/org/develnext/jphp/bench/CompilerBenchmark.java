@@ -0,0 +1,60 @@
+package org.develnext.jphp.bench;
+
+import org.develnext.jphp.core.compiler.jvm.JvmCompiler;
+import org.develnext.jphp.core.syntax.SyntaxAnalyzer;
+import org.develnext.jphp.core.tokenizer.Tokenizer;
+import org.develnext.jphp.core.tokenizer.token.Token;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.reflection.ModuleEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the tokenizer, syntax analyzer and compiler on the scripts/ resources.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+    @Param({"methods", "arrays"})
+    public String script;
+
+    protected Environment env;
+    protected String source;
+
+    @Setup
+    public void setup() throws Throwable {
+        env = BenchmarkEnvironment.create();
+        source = BenchmarkEnvironment.readScript(script);
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) throws Throwable {
+        Tokenizer tokenizer = new Tokenizer(BenchmarkEnvironment.context(script, source));
+
+        Token token;
+        while ((token = tokenizer.nextToken()) != null) {
+            blackhole.consume(token);
+        }
+    }
+
+    @Benchmark
+    public Object analyze() throws Throwable {
+        SyntaxAnalyzer analyzer = new SyntaxAnalyzer(env, new Tokenizer(BenchmarkEnvironment.context(script, source)));
+        return analyzer.getTree();
+    }
+
+    @Benchmark
+    public ModuleEntity compile() throws Throwable {
+        Context context = BenchmarkEnvironment.context(script, source);
+        JvmCompiler compiler = new JvmCompiler(env, context, new SyntaxAnalyzer(env, new Tokenizer(context)));
+
+        return compiler.compile(false);
+    }
+}
@@ -0,0 +1,109 @@
+package org.develnext.jphp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.invoke.MethodHandleHelper;
+import php.runtime.invoke.NativeInvoker;
+import php.runtime.invoke.ObjectInvokeHelper;
+import php.runtime.lang.IObject;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.MethodEntity;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls methods and reads properties of a compiled PHP object from Java.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokeBenchmark {
+    protected Environment env;
+    protected ClassEntity classEntity;
+    protected IObject object;
+    protected Memory objectMemory;
+    protected Memory argument;
+
+    protected NativeInvoker nameInvoker;
+    protected MethodHandle nameHandle;
+    protected Method nameMethod;
+
+    @Setup
+    public void setup() throws Throwable {
+        env = BenchmarkEnvironment.create();
+
+        BenchmarkEnvironment.load(env, "InvokeTarget", "<?php class InvokeTarget {\n"
+                + "    public $name = 'target';\n"
+                + "    protected $value = 1;\n"
+                + "    function add($a) { return $this->value + $a; }\n"
+                + "    function __get($name) { return $name; }\n"
+                + "    function getName() { return $this->name; }\n"
+                + "}");
+
+        classEntity = env.fetchClass("InvokeTarget");
+        object = classEntity.newObject(env, TraceInfo.UNKNOWN, true);
+        objectMemory = new ObjectMemory(object);
+        argument = LongMemory.valueOf(10);
+
+        MethodEntity getName = classEntity.findMethod("getname");
+        nameInvoker = getName.getNativeInvoker();
+        nameHandle = MethodHandleHelper.forMethod(getName.getNativeMethod());
+        nameMethod = getName.getNativeMethod();
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        env.doFinal();
+    }
+
+    @Benchmark
+    public Memory invokeMethod() throws Throwable {
+        return ObjectInvokeHelper.invokeMethod(objectMemory, "add", "add", env, TraceInfo.UNKNOWN, new Memory[] { argument });
+    }
+
+    @Benchmark
+    public Memory getProperty() throws Throwable {
+        return classEntity.getProperty(env, TraceInfo.UNKNOWN, object, "name", null, 0);
+    }
+
+    /**
+     * Reads an undefined property through __get().
+     */
+    @Benchmark
+    public Memory getMagicProperty() throws Throwable {
+        return classEntity.getProperty(env, TraceInfo.UNKNOWN, object, "undefined", null, 0);
+    }
+
+    /**
+     * Calls the native method of a compiled method by the generated invoker, as MethodEntity.invokeDynamic() does.
+     */
+    @Benchmark
+    public Memory invokeNativeInvoker() throws Throwable {
+        return nameInvoker.invoke(object, env, new Memory[0]);
+    }
+
+    /**
+     * Calls the same native method by a method handle which is read from a field.
+     */
+    @Benchmark
+    public Memory invokeNativeHandle() throws Throwable {
+        return (Memory) nameHandle.invokeExact((Object) object, env, new Memory[0]);
+    }
+
+    /**
+     * Calls the same native method via reflection, as MethodEntity did before.
+     */
+    @Benchmark
+    public Memory invokeNativeReflection() throws Throwable {
+        return (Memory) nameMethod.invoke(object, env, new Memory[0]);
+    }
+}
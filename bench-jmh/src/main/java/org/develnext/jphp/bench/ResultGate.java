@@ -0,0 +1,110 @@
+package org.develnext.jphp.bench;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares JSON results of JMH with the baseline results.
+ *
+ * Usage: ResultGate baseline.json results.json [threshold percents, 10 by default]. It prints the change of each
+ * benchmark and exits with the code 1 if any benchmark is slower than the baseline by more than the threshold.
+ * Benchmarks which are missing in one of the files are skipped.
+ */
+public class ResultGate {
+    protected static class Result {
+        protected final String mode;
+        protected final double score;
+        protected final String unit;
+
+        protected Result(String mode, double score, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+        }
+
+        /**
+         * Returns the change in percents, a positive value is a regression.
+         */
+        protected double regression(Result baseline) {
+            double change = (score - baseline.score) / baseline.score * 100;
+
+            // throughput is better when it is higher, time is better when it is lower
+            return "thrpt".equals(mode) ? -change : change;
+        }
+    }
+
+    public static Map<String, Result> read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        Map<String, Result> results = new TreeMap<String, Result>();
+
+        try {
+            JsonArray array = new JsonParser().parse(reader).getAsJsonArray();
+
+            for (JsonElement element : array) {
+                JsonObject item = element.getAsJsonObject();
+                StringBuilder name = new StringBuilder(item.get("benchmark").getAsString());
+
+                if (item.has("params")) {
+                    for (Map.Entry<String, JsonElement> param : item.getAsJsonObject("params").entrySet()) {
+                        name.append(':').append(param.getKey()).append('=').append(param.getValue().getAsString());
+                    }
+                }
+
+                JsonObject metric = item.getAsJsonObject("primaryMetric");
+                results.put(name.toString(), new Result(
+                        item.get("mode").getAsString(),
+                        metric.get("score").getAsDouble(),
+                        metric.get("scoreUnit").getAsString()
+                ));
+            }
+        } finally {
+            reader.close();
+        }
+
+        return results;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ResultGate <baseline.json> <results.json> [threshold]");
+            System.exit(2);
+        }
+
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> results = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        int regressions = 0;
+
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            Result after = entry.getValue();
+
+            if (before == null || !before.mode.equals(after.mode) || !before.unit.equals(after.unit)) {
+                continue;
+            }
+
+            double regression = after.regression(before);
+            boolean failed = regression > threshold;
+
+            if (failed) {
+                regressions++;
+            }
+
+            System.out.printf("%s %s: %.3f -> %.3f %s (%+.1f%%)%n",
+                    failed ? "FAIL" : "OK  ", entry.getKey(), before.score, after.score, after.unit, regression
+            );
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + threshold + "%");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.develnext.jphp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.reflection.ModuleEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs compiled PHP scripts from the scripts/ resources, a script defines its functions and classes once
+ * and returns the result of its work from each include.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptBenchmark {
+    @Param({"fibonacci", "loop", "methods", "properties", "arrays", "strings", "closures"})
+    public String script;
+
+    protected Environment env;
+    protected ModuleEntity module;
+
+    @Setup
+    public void setup() throws Throwable {
+        env = BenchmarkEnvironment.create();
+        module = BenchmarkEnvironment.load(env, script, BenchmarkEnvironment.readScript(script));
+    }
+
+    @TearDown
+    public void tearDown() throws Throwable {
+        env.doFinal();
+    }
+
+    @Benchmark
+    public Memory include() throws Throwable {
+        return module.include(env);
+    }
+}
@@ -0,0 +1,60 @@
+package org.develnext.jphp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.output.serialization.Deserializer;
+import php.runtime.memory.output.serialization.Serializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * serialize() and unserialize() of an array of mixed values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+    @Param({"100"})
+    public int size;
+
+    protected Environment env;
+    protected ArrayMemory value;
+    protected String serialized;
+
+    @Setup
+    public void setup() {
+        env = BenchmarkEnvironment.create();
+        value = new ArrayMemory();
+
+        for (int i = 0; i < size; i++) {
+            ArrayMemory item = new ArrayMemory();
+            item.refOfIndex("id").assign(i);
+            item.refOfIndex("name").assign("item " + i);
+            item.refOfIndex("price").assign(i * 1.5);
+            item.refOfIndex("enabled").assign(i % 2 == 0);
+
+            value.add(item);
+        }
+
+        serialized = serialize();
+    }
+
+    @Benchmark
+    public String serialize() {
+        StringBuilder builder = new StringBuilder();
+        new Serializer(env, TraceInfo.UNKNOWN, builder).write(value);
+
+        return builder.toString();
+    }
+
+    @Benchmark
+    public Memory deserialize() {
+        return new Deserializer(env, TraceInfo.UNKNOWN).read(serialized);
+    }
+}
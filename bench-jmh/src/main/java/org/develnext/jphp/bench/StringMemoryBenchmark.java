@@ -0,0 +1,61 @@
+package org.develnext.jphp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import php.runtime.Memory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.ReferenceMemory;
+import php.runtime.memory.StringMemory;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringMemoryBenchmark {
+    @Param({"16", "256"})
+    public int count;
+
+    protected Memory hello;
+    protected Memory world;
+    protected Memory number;
+
+    @Setup
+    public void setup() {
+        hello = new StringMemory("Hello, ");
+        world = new StringMemory("world");
+        number = LongMemory.valueOf(12345);
+    }
+
+    @Benchmark
+    public String concat() {
+        return hello.concat(world);
+    }
+
+    @Benchmark
+    public String concatNumber() {
+        return hello.concat(number);
+    }
+
+    /**
+     * Appends to a variable like $result .= $value in a loop.
+     */
+    @Benchmark
+    public Memory assignConcat() {
+        ReferenceMemory result = new ReferenceMemory(Memory.CONST_EMPTY_STRING);
+
+        for (int i = 0; i < count; i++) {
+            result.assignConcat(world);
+            result.assignConcat(number);
+        }
+
+        return result.toValue();
+    }
+
+    @Benchmark
+    public int compare() {
+        return hello.concat(world).compareTo(world.concat(hello));
+    }
+}
@@ -0,0 +1,16 @@
+<?php
+$list = [];
+$map = [];
+
+for ($i = 0; $i < 1000; $i++) {
+    $list[] = $i;
+    $map['key' . $i] = $i;
+}
+
+$sum = 0;
+
+foreach ($list as $i => $value) {
+    $sum += $value + $map['key' . $i];
+}
+
+return $sum;
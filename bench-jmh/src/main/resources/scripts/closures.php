@@ -0,0 +1,13 @@
+<?php
+$factor = 3;
+$multiply = function ($value) use ($factor) {
+    return $value * $factor;
+};
+
+$sum = 0;
+
+for ($i = 0; $i < 1000; $i++) {
+    $sum += $multiply($i);
+}
+
+return $sum;
@@ -0,0 +1,6 @@
+<?php
+function fibonacci($n) {
+    return $n < 2 ? $n : fibonacci($n - 1) + fibonacci($n - 2);
+}
+
+return fibonacci(20);
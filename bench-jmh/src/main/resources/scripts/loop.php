@@ -0,0 +1,12 @@
+<?php
+$sum = 0;
+
+for ($i = 0; $i < 10000; $i++) {
+    if ($i % 3 == 0) {
+        $sum += $i;
+    } else {
+        $sum -= 1;
+    }
+}
+
+return $sum;
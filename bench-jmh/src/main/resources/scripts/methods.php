@@ -0,0 +1,25 @@
+<?php
+class MethodsCounter {
+    private $count = 0;
+
+    public function inc($value) {
+        $this->count += $value;
+        return $this;
+    }
+
+    public static function create() {
+        return new static();
+    }
+
+    public function getCount() {
+        return $this->count;
+    }
+}
+
+$counter = MethodsCounter::create();
+
+for ($i = 0; $i < 1000; $i++) {
+    $counter->inc($i)->inc(1);
+}
+
+return $counter->getCount();
@@ -0,0 +1,16 @@
+<?php
+class PropertiesPoint {
+    public $x = 0;
+    public $y = 0;
+    public static $created = 0;
+}
+
+$point = new PropertiesPoint();
+
+for ($i = 0; $i < 1000; $i++) {
+    $point->x = $point->x + $i;
+    $point->y = $point->x - $point->y;
+    PropertiesPoint::$created++;
+}
+
+return $point->x + $point->y;
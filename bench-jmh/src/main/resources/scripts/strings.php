@@ -0,0 +1,8 @@
+<?php
+$result = '';
+
+for ($i = 0; $i < 1000; $i++) {
+    $result .= 'item ' . $i . ', ';
+}
+
+return "$result total $i";
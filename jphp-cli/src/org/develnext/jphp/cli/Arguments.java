@@ -48,6 +48,12 @@ final public class Arguments {
     @Parameter(names = "-stat", description = "Show stat about execution")
     public boolean showStat;
 
+    @Parameter(names = "--profile", description = "<file>  Write samples of the profiler to <file>, a flame graph for *.svg")
+    public String profileFile;
+
+    @Parameter(names = "--profile-interval", description = "<ms>  Interval of samples of the profiler")
+    public long profileInterval = 10;
+
 
     @Parameter(names = "--rf", description = "<name>      Show information about function <name>")
     public String showFunction;
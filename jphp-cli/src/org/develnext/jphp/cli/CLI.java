@@ -76,6 +76,12 @@ public class CLI {
         Environment environment = new Environment(launcher.getCompileScope(), output);
         environment.getDefaultBuffer().setImplicitFlush(true);
 
+        if (arguments.profileFile != null) {
+            launcher.startProfiler(new File(arguments.profileFile), arguments.profileInterval);
+        } else {
+            launcher.startProfiler();
+        }
+
         try {
             Context context = new Context(file);
             ModuleEntity module = environment.importModule(context);
@@ -89,6 +95,8 @@ public class CLI {
                 environment.doFinal();
             } catch (Throwable throwable) {
                 throw new RuntimeException(throwable);
+            } finally {
+                launcher.stopProfiler();
             }
         }
     }
@@ -0,0 +1,351 @@
+package org.develnext.jphp.core.compiler.jvm;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AnalyzerAdapter;
+import org.objectweb.asm.tree.*;
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.lang.Generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites the _run method of a compiled generator class into a resumable state machine.
+ *
+ * Each yield call saves locals and the operand stack to the resumeFrame field, stores its number to resumeState
+ * and returns. The next call of _run switches on resumeState, restores the frame and continues after the yield,
+ * so the generator runs on the thread of the caller. A class is returned as is (and is run by a thread) if a yield
+ * is evaluated while an object is not initialized yet or if the frames cannot be computed.
+ */
+public class GeneratorStateMachine implements Opcodes {
+    protected final static String GENERATOR = Type.getInternalName(Generator.class);
+    protected final static String MEMORY = Type.getInternalName(Memory.class);
+
+    protected final static String YIELD_DESC = Type.getMethodDescriptor(
+            Type.getType(Memory.class), Type.getType(Environment.class), Type.getType(TraceInfo.class)
+    );
+    protected final static String YIELD_VALUE_DESC = Type.getMethodDescriptor(
+            Type.getType(Memory.class), Type.getType(Environment.class), Type.getType(TraceInfo.class),
+            Type.getType(Memory.class)
+    );
+
+    protected final static String SUSPEND_DESC = Type.getMethodDescriptor(
+            Type.VOID_TYPE, Type.getType(Environment.class), Type.getType(TraceInfo.class), Type.getType(Memory.class)
+    );
+
+    protected final byte[] data;
+
+    public GeneratorStateMachine(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Returns bytes of the transformed class or the original bytes if it cannot be transformed.
+     */
+    public byte[] transform() {
+        try {
+            ClassNode node = new ClassNode();
+            new ClassReader(data).accept(node, ClassReader.EXPAND_FRAMES);
+
+            for (Object el : node.methods) {
+                MethodNode method = (MethodNode) el;
+
+                if ("_run".equals(method.name)) {
+                    if (!transform(node, method)) {
+                        return data;
+                    }
+
+                    node.methods.add(createResumable());
+
+                    JPHPClassWriter cw = new JPHPClassWriter(false);
+                    node.accept(cw);
+                    return cw.toByteArray();
+                }
+            }
+        } catch (RuntimeException e) {
+            return data;
+        }
+
+        return data;
+    }
+
+    protected static boolean isYield(AbstractInsnNode insn) {
+        if (insn.getOpcode() != INVOKEVIRTUAL) {
+            return false;
+        }
+
+        MethodInsnNode call = (MethodInsnNode) insn;
+        return "yield".equals(call.name) && (YIELD_DESC.equals(call.desc) || YIELD_VALUE_DESC.equals(call.desc));
+    }
+
+    /**
+     * Returns frames of the method before each yield call, the frame is locals and the stack in the format of
+     * AnalyzerAdapter, or null if a yield cannot be suspended.
+     */
+    protected List<Object[]> getFrames(ClassNode node, MethodNode method) {
+        final List<Object[]> result = new ArrayList<Object[]>();
+        final AnalyzerAdapter[] analyzer = new AnalyzerAdapter[1];
+        final boolean[] invalid = new boolean[1];
+
+        analyzer[0] = new AnalyzerAdapter(node.name, method.access, method.name, method.desc, new MethodVisitor(ASM5) {
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                if (opcode == INVOKEVIRTUAL && "yield".equals(name)
+                        && (YIELD_DESC.equals(desc) || YIELD_VALUE_DESC.equals(desc))) {
+                    if (analyzer[0].locals == null) {
+                        invalid[0] = true;
+                        result.add(null);
+                        return;
+                    }
+
+                    Object[] locals = analyzer[0].locals.toArray();
+                    Object[] stack = analyzer[0].stack.toArray();
+
+                    for (Object type : locals) {
+                        if (type instanceof Label || type == UNINITIALIZED_THIS) invalid[0] = true;
+                    }
+
+                    for (Object type : stack) {
+                        if (type instanceof Label || type == UNINITIALIZED_THIS) invalid[0] = true;
+                    }
+
+                    result.add(new Object[]{locals, stack});
+                }
+            }
+        });
+
+        method.accept(analyzer[0]);
+        return invalid[0] ? null : result;
+    }
+
+    protected boolean transform(ClassNode node, MethodNode method) {
+        List<Object[]> frames = getFrames(node, method);
+        if (frames == null) {
+            return false;
+        }
+
+        if (frames.isEmpty()) {
+            return true;
+        }
+
+        InsnList prologue = new InsnList();
+        LabelNode start = new LabelNode();
+        LabelNode[] resumes = new LabelNode[frames.size()];
+
+        int tmpIndex = method.maxLocals;
+        int state = 0;
+
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; ) {
+            AbstractInsnNode next = insn.getNext();
+
+            if (isYield(insn)) {
+                Object[] frame = frames.get(state);
+                Object[] locals = (Object[]) frame[0];
+                Object[] stack = (Object[]) frame[1];
+
+                int argCount = Type.getArgumentTypes(((MethodInsnNode) insn).desc).length + 1;
+                int stackSize = stack.length - argCount;
+
+                LabelNode resume = new LabelNode();
+                state++;
+
+                InsnList suspend = new InsnList();
+
+                // receiver, env, trace and value of the yield call.
+                int[] argIndexes = new int[argCount];
+                for (int i = argCount - 1; i >= 0; i--) {
+                    argIndexes[i] = tmpIndex++;
+                }
+
+                for (int i = argCount - 1; i >= 0; i--) {
+                    suspend.add(new VarInsnNode(ASTORE, argIndexes[i]));
+                }
+
+                int[] stackIndexes = new int[stackSize];
+                for (int i = 0; i < stackSize; i++) {
+                    stackIndexes[i] = tmpIndex;
+                    tmpIndex += isWide(stack[i]) ? 2 : 1;
+                }
+
+                for (int i = stackSize - 1; i >= 0; i--) {
+                    if (stack[i] == TOP) continue;
+                    suspend.add(new VarInsnNode(storeOpcode(stack[i]), stackIndexes[i]));
+                }
+
+                for (int i = 0; i < argCount; i++) {
+                    suspend.add(new VarInsnNode(ALOAD, argIndexes[i]));
+                }
+
+                if (argCount == 3) {
+                    suspend.add(new FieldInsnNode(GETSTATIC, MEMORY, "NULL", "L" + MEMORY + ";"));
+                }
+
+                suspend.add(new MethodInsnNode(INVOKEVIRTUAL, GENERATOR, "_suspend", SUSPEND_DESC, false));
+
+                // the frame: locals except this, then the stack without arguments of the call.
+                List<Object> saved = new ArrayList<Object>();
+                List<Integer> savedIndexes = new ArrayList<Integer>();
+
+                for (int i = 1; i < locals.length; i++) {
+                    if (locals[i] != TOP && locals[i] != NULL) {
+                        saved.add(locals[i]);
+                        savedIndexes.add(i);
+                    }
+                }
+
+                for (int i = 0; i < stackSize; i++) {
+                    if (stack[i] != TOP && stack[i] != NULL) {
+                        saved.add(stack[i]);
+                        savedIndexes.add(stackIndexes[i]);
+                    }
+                }
+
+                suspend.add(new VarInsnNode(ALOAD, 0));
+                suspend.add(pushInt(saved.size()));
+                suspend.add(new TypeInsnNode(ANEWARRAY, "java/lang/Object"));
+
+                for (int i = 0; i < saved.size(); i++) {
+                    suspend.add(new InsnNode(DUP));
+                    suspend.add(pushInt(i));
+                    suspend.add(new VarInsnNode(loadOpcode(saved.get(i)), savedIndexes.get(i)));
+                    box(suspend, saved.get(i));
+                    suspend.add(new InsnNode(AASTORE));
+                }
+
+                suspend.add(new FieldInsnNode(PUTFIELD, node.name, "resumeFrame", "[Ljava/lang/Object;"));
+                suspend.add(new VarInsnNode(ALOAD, 0));
+                suspend.add(pushInt(state));
+                suspend.add(new FieldInsnNode(PUTFIELD, node.name, "resumeState", "I"));
+                suspend.add(new InsnNode(ACONST_NULL));
+                suspend.add(new InsnNode(ARETURN));
+
+                // resume, the value of the yield is returned by _resume inside of the same try blocks.
+                suspend.add(resume);
+                suspend.add(new VarInsnNode(ALOAD, 0));
+                suspend.add(new MethodInsnNode(INVOKEVIRTUAL, GENERATOR, "_resume", "()L" + MEMORY + ";", false));
+
+                method.instructions.insert(insn, suspend);
+                method.instructions.remove(insn);
+
+                // restore of the frame for the switch.
+                LabelNode entry = new LabelNode();
+                prologue.add(entry);
+                resumes[state - 1] = entry;
+
+                int slot = 0;
+                for (int i = 1; i < locals.length; i++) {
+                    if (locals[i] == NULL) {
+                        prologue.add(new InsnNode(ACONST_NULL));
+                        prologue.add(new VarInsnNode(ASTORE, i));
+                    } else if (locals[i] != TOP) {
+                        unbox(prologue, node, slot++, locals[i]);
+                        prologue.add(new VarInsnNode(storeOpcode(locals[i]), i));
+                    }
+                }
+
+                for (int i = 0; i < stackSize; i++) {
+                    if (stack[i] == NULL) {
+                        prologue.add(new InsnNode(ACONST_NULL));
+                    } else if (stack[i] != TOP) {
+                        unbox(prologue, node, slot++, stack[i]);
+                    }
+                }
+
+                prologue.add(new VarInsnNode(ALOAD, 0));
+                prologue.add(new InsnNode(ACONST_NULL));
+                prologue.add(new FieldInsnNode(PUTFIELD, node.name, "resumeFrame", "[Ljava/lang/Object;"));
+                prologue.add(new JumpInsnNode(GOTO, resume));
+            }
+
+            insn = next;
+        }
+
+        InsnList head = new InsnList();
+        head.add(new VarInsnNode(ALOAD, 0));
+        head.add(new FieldInsnNode(GETFIELD, node.name, "resumeState", "I"));
+        head.add(new TableSwitchInsnNode(1, resumes.length, start, resumes));
+        head.add(prologue);
+        head.add(start);
+
+        method.instructions.insert(head);
+        method.maxLocals = tmpIndex;
+
+        return true;
+    }
+
+    protected MethodNode createResumable() {
+        MethodNode method = new MethodNode(ACC_PROTECTED, "_isResumable", "()Z", null, null);
+        method.instructions.add(new InsnNode(ICONST_1));
+        method.instructions.add(new InsnNode(IRETURN));
+        return method;
+    }
+
+    protected static boolean isWide(Object type) {
+        return type == LONG || type == DOUBLE;
+    }
+
+    protected static int loadOpcode(Object type) {
+        if (type == INTEGER) return ILOAD;
+        if (type == LONG) return LLOAD;
+        if (type == FLOAT) return FLOAD;
+        if (type == DOUBLE) return DLOAD;
+        return ALOAD;
+    }
+
+    protected static int storeOpcode(Object type) {
+        if (type == INTEGER) return ISTORE;
+        if (type == LONG) return LSTORE;
+        if (type == FLOAT) return FSTORE;
+        if (type == DOUBLE) return DSTORE;
+        return ASTORE;
+    }
+
+    protected static AbstractInsnNode pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            return new InsnNode(ICONST_0 + value);
+        }
+
+        return value <= Short.MAX_VALUE ? new IntInsnNode(SIPUSH, value) : new LdcInsnNode(value);
+    }
+
+    protected static void box(InsnList list, Object type) {
+        if (type == INTEGER) {
+            list.add(new MethodInsnNode(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false));
+        } else if (type == LONG) {
+            list.add(new MethodInsnNode(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false));
+        } else if (type == FLOAT) {
+            list.add(new MethodInsnNode(INVOKESTATIC, "java/lang/Float", "valueOf", "(F)Ljava/lang/Float;", false));
+        } else if (type == DOUBLE) {
+            list.add(new MethodInsnNode(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", false));
+        }
+    }
+
+    protected static void unbox(InsnList list, ClassNode node, int slot, Object type) {
+        list.add(new VarInsnNode(ALOAD, 0));
+        list.add(new FieldInsnNode(GETFIELD, node.name, "resumeFrame", "[Ljava/lang/Object;"));
+        list.add(pushInt(slot));
+        list.add(new InsnNode(AALOAD));
+
+        if (type == INTEGER) {
+            list.add(new TypeInsnNode(CHECKCAST, "java/lang/Integer"));
+            list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/Integer", "intValue", "()I", false));
+        } else if (type == LONG) {
+            list.add(new TypeInsnNode(CHECKCAST, "java/lang/Long"));
+            list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/Long", "longValue", "()J", false));
+        } else if (type == FLOAT) {
+            list.add(new TypeInsnNode(CHECKCAST, "java/lang/Float"));
+            list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/Float", "floatValue", "()F", false));
+        } else if (type == DOUBLE) {
+            list.add(new TypeInsnNode(CHECKCAST, "java/lang/Double"));
+            list.add(new MethodInsnNode(INVOKEVIRTUAL, "java/lang/Double", "doubleValue", "()D", false));
+        } else if (!"java/lang/Object".equals(type)) {
+            list.add(new TypeInsnNode(CHECKCAST, (String) type));
+        }
+    }
+}
@@ -10,6 +10,8 @@ import php.runtime.common.Messages;
 import php.runtime.common.Modifier;
 import php.runtime.common.AbstractCompiler;
 import org.develnext.jphp.core.compiler.jvm.statement.*;
+import org.develnext.jphp.core.interpreter.InterpretedModuleEntity;
+import org.develnext.jphp.core.interpreter.ModuleInterpreter;
 import php.runtime.exceptions.CompileException;
 import php.runtime.exceptions.support.ErrorType;
 import org.develnext.jphp.core.syntax.SyntaxAnalyzer;
@@ -210,6 +212,21 @@ public class JvmCompiler extends AbstractCompiler {
         this.classes = new ArrayList<>();
         module.setInternalName("$php_module_m" + UUID.randomUUID().toString().replace("-", ""));
 
+        if (isInterpretable() && scope.getInterpreterThreshold() > 0 && !scope.isDebugMode()) {
+            ModuleInterpreter interpreter = ModuleInterpreter.of(this);
+
+            if (interpreter != null) {
+                ModuleEntity interpreted = new InterpretedModuleEntity(interpreter, scope.getInterpreterThreshold());
+                interpreted.setId(module.getId());
+                interpreted.setInternalName(module.getInternalName());
+
+                if (autoRegister)
+                    scope.addUserModule(interpreted);
+
+                return interpreted;
+            }
+        }
+
         List<ExprStmtToken> externalCode = process(tokens, NamespaceStmtToken.getDefault());
 
         NamespaceStmtToken namespace = NamespaceStmtToken.getDefault();
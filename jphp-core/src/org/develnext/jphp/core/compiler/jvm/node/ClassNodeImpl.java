@@ -9,7 +9,7 @@ public class ClassNodeImpl extends ClassNode {
 
     public ClassNodeImpl() {
         super(Opcodes.ASM5);
-        version = Opcodes.V1_6; // todo: available to switch this value
+        version = Opcodes.V1_7; // 1.7+ for invokedynamic, see MethodCallSite
         this.interfaces = new ArrayList();
         this.visibleAnnotations = new ArrayList();
     }
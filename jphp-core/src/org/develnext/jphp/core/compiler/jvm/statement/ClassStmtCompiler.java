@@ -25,14 +25,17 @@ import php.runtime.common.Function;
 import php.runtime.common.Messages;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
+import php.runtime.env.handler.LineProbes;
 import php.runtime.exceptions.CriticalException;
 import php.runtime.exceptions.FatalException;
 import php.runtime.exceptions.support.ErrorType;
+import php.runtime.invoke.cache.ClassCallCache;
 import php.runtime.invoke.cache.ConstantCallCache;
 import php.runtime.invoke.cache.FunctionCallCache;
 import php.runtime.invoke.cache.MethodCallCache;
 import php.runtime.invoke.cache.PropertyCallCache;
 import php.runtime.lang.BaseObject;
+import php.runtime.output.EchoConstant;
 import php.runtime.reflection.*;
 import php.runtime.reflection.helper.GeneratorEntity;
 
@@ -49,6 +52,8 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
     public final List<TraceInfo> traceList = new ArrayList<TraceInfo>();
     public final List<Memory> memoryConstants = new ArrayList<Memory>();
     public final List<Collection<Memory>> memoryArrayConstants = new ArrayList<Collection<Memory>>();
+    public final List<String> echoConstants = new ArrayList<String>();
+    protected final Map<String, Integer> echoConstantIndexes = new HashMap<String, Integer>();
 
     private boolean external = false;
     private boolean isSystem = false;
@@ -60,6 +65,7 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
     private int callMethCount = 0;
     private int callConstCount = 0;
     private int callPropCount = 0;
+    private int callClassCount = 0;
 
     private GeneratorEntity generatorEntity;
 
@@ -89,6 +95,10 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
         return callPropCount++;
     }
 
+    public int getAndIncCallClassCount() {
+        return callClassCount++;
+    }
+
     public boolean isInitDynamicExists() {
         return initDynamicExists;
     }
@@ -161,6 +171,17 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
         return memoryArrayConstants.size() - 1;
     }
 
+    int addEchoConstant(String value) {
+        Integer index = echoConstantIndexes.get(value);
+
+        if (index == null) {
+            echoConstants.add(value);
+            echoConstantIndexes.put(value, index = echoConstants.size() - 1);
+        }
+
+        return index;
+    }
+
     @SuppressWarnings("unchecked")
     protected void writeDestructor() {
         if (entity.methodDestruct != null) {
@@ -461,6 +482,13 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
                 null
         ));
 
+        node.fields.add(new FieldNode(
+                ACC_PUBLIC + ACC_STATIC, "$ECHO",
+                Type.getDescriptor(EchoConstant[].class),
+                null,
+                null
+        ));
+
         node.fields.add(new FieldNode(
                 ACC_PUBLIC + ACC_STATIC, "$CALL_FUNC_CACHE",
                 Type.getDescriptor(FunctionCallCache.class),
@@ -489,6 +517,22 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
                 null
         ));
 
+        node.fields.add(new FieldNode(
+                ACC_PUBLIC + ACC_STATIC, "$CALL_CLASS_CACHE",
+                Type.getDescriptor(ClassCallCache.class),
+                null,
+                null
+        ));
+
+        if (compiler.getScope().isDebugMode()) {
+            node.fields.add(new FieldNode(
+                    ACC_PUBLIC + ACC_STATIC, "$LINE_PROBES",
+                    Type.getDescriptor(LineProbes.class),
+                    null,
+                    null
+            ));
+        }
+
         if (functionName != null) {
             node.fields.add(new FieldNode(
                     ACC_PUBLIC + ACC_FINAL + ACC_STATIC, "$CL",
@@ -679,6 +723,32 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
         }
         expressionCompiler.writePutStatic("$AMEM", Memory[][].class);
 
+        // echo constants
+        expressionCompiler.writePushSmallInt(echoConstants.size());
+        node.instructions.add(new TypeInsnNode(ANEWARRAY, Type.getInternalName(EchoConstant.class)));
+        expressionCompiler.stackPush(Memory.Type.REFERENCE);
+
+        i = 0;
+        for (String value : echoConstants) {
+            expressionCompiler.writePushDup();
+            expressionCompiler.writePushSmallInt(i);
+
+            node.instructions.add(new TypeInsnNode(NEW, Type.getInternalName(EchoConstant.class)));
+            node.instructions.add(new InsnNode(DUP));
+            node.instructions.add(new LdcInsnNode(value));
+            node.instructions.add(new MethodInsnNode(
+                    INVOKESPECIAL, Type.getInternalName(EchoConstant.class), Constants.INIT_METHOD,
+                    Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(String.class)), false
+            ));
+
+            node.instructions.add(new InsnNode(AASTORE));
+            expressionCompiler.stackPop();
+            expressionCompiler.stackPop();
+
+            i++;
+        }
+        expressionCompiler.writePutStatic("$ECHO", EchoConstant[].class);
+
         // cached calls
         expressionCompiler.writePushNewObject(FunctionCallCache.class);
         expressionCompiler.writePutStatic("$CALL_FUNC_CACHE", FunctionCallCache.class);
@@ -692,6 +762,15 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
         expressionCompiler.writePushNewObject(PropertyCallCache.class);
         expressionCompiler.writePutStatic("$CALL_PROP_CACHE", PropertyCallCache.class);
 
+        expressionCompiler.writePushNewObject(ClassCallCache.class);
+        expressionCompiler.writePutStatic("$CALL_CLASS_CACHE", ClassCallCache.class);
+
+        if (compiler.getScope().isDebugMode()) {
+            expressionCompiler.writePushConstString(compiler.getSourceFile() == null ? "" : compiler.getSourceFile());
+            expressionCompiler.writeSysStaticCall(LineProbes.class, "of", LineProbes.class, String.class);
+            expressionCompiler.writePutStatic("$LINE_PROBES", LineProbes.class);
+        }
+
         node.instructions.add(new InsnNode(RETURN));
         methodCompiler.writeFooter();
 
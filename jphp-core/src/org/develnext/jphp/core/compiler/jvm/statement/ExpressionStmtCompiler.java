@@ -20,6 +20,7 @@ import org.develnext.jphp.core.tokenizer.token.expr.operator.*;
 import org.develnext.jphp.core.tokenizer.token.expr.value.*;
 import org.develnext.jphp.core.tokenizer.token.expr.value.macro.*;
 import org.develnext.jphp.core.tokenizer.token.stmt.*;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
@@ -31,6 +32,7 @@ import php.runtime.common.Messages;
 import php.runtime.common.StringUtils;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
+import php.runtime.env.handler.LineProbes;
 import php.runtime.exceptions.CriticalException;
 import php.runtime.ext.support.compile.CompileClass;
 import php.runtime.ext.support.compile.CompileConstant;
@@ -39,15 +41,20 @@ import php.runtime.invoke.InvokeHelper;
 import php.runtime.invoke.ObjectInvokeHelper;
 import php.runtime.invoke.cache.FunctionCallCache;
 import php.runtime.invoke.cache.MethodCallCache;
+import php.runtime.invoke.cache.MethodCallSite;
 import php.runtime.lang.ForeachIterator;
 import php.runtime.lang.IObject;
 import php.runtime.memory.*;
 import php.runtime.memory.helper.UndefinedMemory;
 import php.runtime.memory.support.MemoryUtils;
+import php.runtime.output.EchoConstant;
 import php.runtime.reflection.*;
 import php.runtime.reflection.support.Entity;
 
 import java.io.File;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
@@ -69,6 +76,18 @@ public class ExpressionStmtCompiler extends StmtCompiler {
     private Map<Class<? extends Token>, BaseStatementCompiler> compilers;
     private static final Map<Class<? extends Token>, Class<? extends BaseStatementCompiler>> compilerRules;
 
+    // a string constant of a class takes at most 65535 bytes of modified UTF-8, 3 bytes per char in the worst case
+    private static final int MAX_ECHO_CONSTANT_LENGTH = 16 * 1024;
+
+    private static final Handle METHOD_CALL_SITE_BOOTSTRAP = new Handle(
+            H_INVOKESTATIC, Type.getInternalName(MethodCallSite.class), "bootstrap",
+            Type.getMethodDescriptor(
+                    Type.getType(CallSite.class),
+                    Type.getType(MethodHandles.Lookup.class), Type.getType(String.class),
+                    Type.getType(MethodType.class), Type.getType(String.class)
+            )
+    );
+
     static {
         compilerRules = new HashMap<Class<? extends Token>, Class<? extends BaseStatementCompiler>>();
         compilerRules.put(IfStmtToken.class, IfElseCompiler.class);
@@ -771,7 +790,7 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         CompileFunction.Method method = compileFunction.find(function.getParameters().size());
         if (method == null) {
             if (!writeOpcode)
-                return Memory.NULL;
+                return null;
 
             writeWarning(function, Messages.ERR_EXPECT_LEAST_PARAMS.fetch(
                     compileFunction.name, compileFunction.getMinArgs(), function.getParameters().size()
@@ -782,7 +801,7 @@ public class ExpressionStmtCompiler extends StmtCompiler {
             return null;
         } else if (!method.isVarArg() && method.argsCount < function.getParameters().size()) {
             if (!writeOpcode)
-                return Memory.NULL;
+                return null;
 
             writeWarning(function, Messages.ERR_EXPECT_EXACTLY_PARAMS.fetch(
                     compileFunction.name, method.argsCount, function.getParameters().size()
@@ -870,7 +889,7 @@ public class ExpressionStmtCompiler extends StmtCompiler {
                             writePushDup();
                             writePushSmallInt(t);
                             writeExpression(
-                                    next, true, false, writeOpcode
+                                    isRef ? toArgumentExpression(next) : next, true, false, writeOpcode
                             );
 
                             //if (!isRef)  BUGFIX - array is memory[] and so we need to convert value to memory
@@ -934,7 +953,7 @@ public class ExpressionStmtCompiler extends StmtCompiler {
                         }
 
                         if (isRef)
-                            writeExpression(next, true, false, writeOpcode);
+                            writeExpression(toArgumentExpression(next), true, false, writeOpcode);
                         else {
                             Memory tmp = writeExpression(next, true, true, true);
                             if (tmp != null)
@@ -1017,6 +1036,14 @@ public class ExpressionStmtCompiler extends StmtCompiler {
     }
 
     public void writePushParameters(Collection<ExprStmtToken> parameters, boolean useConstants, Memory... additional) {
+        writePushParameters(parameters, null, useConstants, additional);
+    }
+
+    /**
+     * @param entities parameters of the function which is called or null if they are unknown
+     */
+    public void writePushParameters(Collection<ExprStmtToken> parameters, ParameterEntity[] entities,
+                                    boolean useConstants, Memory... additional) {
         if (parameters.isEmpty()) {
             code.add(new InsnNode(ACONST_NULL));
             stackPush(Memory.Type.REFERENCE);
@@ -1050,7 +1077,7 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         for (ExprStmtToken param : parameters) {
             writePushDup();
             writePushSmallInt(i);
-            writeExpression(param, true, false);
+            writeExpression(isReferenceArgument(entities, i) ? toArgumentExpression(param) : param, true, false);
             writePopBoxing();
 
             code.add(new InsnNode(AASTORE));
@@ -1076,6 +1103,19 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         }
     }
 
+    protected static boolean isReferenceArgument(ParameterEntity[] entities, int index) {
+        if (entities == null) {
+            return true;
+        }
+
+        if (index < entities.length) {
+            return entities[index].isReference();
+        }
+
+        return entities.length > 0 && entities[entities.length - 1].isVariadic()
+                && entities[entities.length - 1].isReference();
+    }
+
     Memory writePushParentDynamicMethod(CallExprToken function, boolean returnValue, boolean writeOpcode,
                                         PushCallStatistic statistic) {
         if (!writeOpcode)
@@ -1130,14 +1170,30 @@ public class ExpressionStmtCompiler extends StmtCompiler {
             unexpectedToken(access);
 
         writeLineNumber(function);
-        writeDynamicAccessPrepare(access, true);
-        writePushParameters(function.getParameters());
 
-        writeSysStaticCall(
-                ObjectInvokeHelper.class, "invokeMethod",
-                Memory.class,
-                Memory.class, String.class, String.class, Environment.class, TraceInfo.class, Memory[].class
-        );
+        if (access.getField() instanceof NameToken) {
+            // constant name -> invokedynamic with an inline cache, see MethodCallSite
+            writePushDynamicAccessObject(access);
+            writePushEnv();
+            writePushTraceInfo(access);
+            writePushParameters(function.getParameters());
+
+            writeSysInvokeDynamic(
+                    "invokeMethod", METHOD_CALL_SITE_BOOTSTRAP, new Object[]{((NameToken) access.getField()).getName()},
+                    Memory.class,
+                    Memory.class, Environment.class, TraceInfo.class, Memory[].class
+            );
+        } else {
+            writeDynamicAccessPrepare(access, true);
+            writePushParameters(function.getParameters());
+
+            writeSysStaticCall(
+                    ObjectInvokeHelper.class, "invokeMethod",
+                    Memory.class,
+                    Memory.class, String.class, String.class, Environment.class, TraceInfo.class, Memory[].class
+            );
+        }
+
         if (!returnValue)
             writePopAll(1);
 
@@ -1333,11 +1389,16 @@ public class ExpressionStmtCompiler extends StmtCompiler {
                 method.entity.setImmutable(false);
                 int index = method.clazz.getAndIncCallFuncCount();
 
+                // parameters are known only for functions of the module, others may differ in other environments
+                FunctionEntity functionEntity = compiler.findFunction(realName);
+
                 writePushEnv();
                 writePushTraceInfo(function);
                 writePushString(realName.toLowerCase());
                 writePushString(realName);
-                writePushParameters(function.getParameters());
+                writePushParameters(
+                        function.getParameters(), functionEntity == null ? null : functionEntity.getParameters(), true
+                );
 
                 writeGetStatic("$CALL_FUNC_CACHE", FunctionCallCache.class);
                 writePushConstInt(index);
@@ -1654,6 +1715,98 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         return index;
     }
 
+    /**
+     * Echoes the string which is known at compile time, bytes of the string are encoded once per charset.
+     */
+    public void writeEchoConstant(String value) {
+        if (value.isEmpty()) {
+            return;
+        }
+
+        method.entity.setImmutable(false);
+
+        int index = method.clazz.addEchoConstant(value);
+
+        writePushEnv();
+        writeGetStatic("$ECHO", EchoConstant[].class);
+        writePushGetFromArray(index, EchoConstant.class);
+        writeSysDynamicCall(Environment.class, "echo", void.class, EchoConstant.class);
+    }
+
+    /**
+     * Writes the pending string of merged echoes and clears it.
+     */
+    public void writeEchoConstant(StringBuilder pending) {
+        writeEchoConstant(pending.toString());
+        pending.setLength(0);
+    }
+
+    /**
+     * Appends the string to the pending echo, the pending echo is written before if the merged string would be
+     * too long for the constant pool of a class.
+     */
+    public void appendEchoConstant(StringBuilder pending, String value) {
+        if (pending.length() > 0 && pending.length() + value.length() > MAX_ECHO_CONSTANT_LENGTH) {
+            writeEchoConstant(pending);
+        }
+
+        pending.append(value);
+    }
+
+    /**
+     * Returns the string which the echo statement outputs if it is known at compile time, otherwise null.
+     */
+    public String getEchoConstant(ExprStmtToken statement) {
+        if (!statement.isStmtList() || !statement.isSingle()) {
+            return null;
+        }
+
+        Token token = statement.getSingle();
+
+        if (token instanceof EchoRawToken) {
+            return token.getMeta().getWord();
+        } else if (token instanceof OpenEchoTagToken) {
+            return getEchoConstantValue(((OpenEchoTagToken) token).getValue());
+        } else if (token instanceof EchoStmtToken) {
+            StringBuilder sb = new StringBuilder();
+
+            for (ExprStmtToken argument : ((EchoStmtToken) token).getArguments()) {
+                String value = getEchoConstantValue(argument);
+
+                if (value == null) {
+                    return null;
+                }
+
+                sb.append(value);
+            }
+
+            return sb.toString();
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the string value of the echo argument if it is a constant string, integer, boolean or null.
+     */
+    public String getEchoConstantValue(ExprStmtToken argument) {
+        Memory value = writeExpression(argument, true, true, false);
+
+        if (value == null || value instanceof BinaryMemory) {
+            return null;
+        }
+
+        switch (value.type) {
+            case NULL:
+            case BOOL:
+            case INT:
+            case STRING:
+                return value.toString();
+            default:
+                return null;
+        }
+    }
+
     int writePushConstantMemoryArray(Collection<Memory> memories) {
         int index = method.clazz.addMemoryArray(memories);
 
@@ -2014,19 +2167,99 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         }
     }
 
+    void writeSysInvokeDynamic(String name, Handle bootstrap, Object[] bootstrapArgs,
+                               Class returnClazz, Class... paramClasses) {
+        Type[] args = new Type[paramClasses.length];
+
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Type.getType(paramClasses[i]);
+            stackPop();
+        }
+
+        code.add(new InvokeDynamicInsnNode(
+                name, Type.getMethodDescriptor(Type.getType(returnClazz), args), bootstrap, bootstrapArgs
+        ));
+
+        if (returnClazz != void.class) {
+            stackPush(null, StackItem.Type.valueOf(returnClazz));
+        }
+    }
+
     public void writeTickTrigger(Token token) {
         writeTickTrigger(token.toTraceInfo(getCompiler().getContext()));
     }
 
     public void writeTickTrigger(TraceInfo trace) {
-        if (compiler.getScope().isDebugMode() && method.getLocalVariable("~local") != null) {
+        LocalVariable probe = method.getLocalVariable("~probe");
+
+        if (compiler.getScope().isDebugMode() && (method.getLocalVariable("~local") != null || probe != null)) {
             int line = trace.getStartLine();
 
             if (method.registerTickTrigger(line)) {
-                writePushEnv();
-                writePushTraceInfo(trace.getStartLine(), trace.getStartPosition());
-                writePushLocal();
-                writeSysDynamicCall(Environment.class, "__tick", void.class, TraceInfo.class, ArrayMemory.class);
+                LabelNode skip = new LabelNode();
+
+                // if (LINE_PROBES.isActive(line)) { env.__tick(trace, locals) }
+                code.add(new FieldInsnNode(
+                        GETSTATIC, method.clazz.node.name, "$LINE_PROBES", Type.getDescriptor(LineProbes.class)
+                ));
+                code.add(new LdcInsnNode(line));
+                code.add(new MethodInsnNode(
+                        INVOKEVIRTUAL, Type.getInternalName(LineProbes.class), "isActive", "(I)Z", false
+                ));
+                code.add(new JumpInsnNode(IFEQ, skip));
+
+                if (probe == null) {
+                    writePushEnv();
+                    writePushTraceInfo(trace.getStartLine(), trace.getStartPosition());
+                    writePushLocal();
+                    writeSysDynamicCall(Environment.class, "__tick", void.class, TraceInfo.class, ArrayMemory.class);
+                } else {
+                    String putLocal = Type.getMethodDescriptor(
+                            Type.VOID_TYPE, Type.getType(ArrayMemory.class), Type.getType(String.class), Type.getType(Memory.class)
+                    );
+                    String getLocal = Type.getMethodDescriptor(
+                            Type.getType(Memory.class), Type.getType(ArrayMemory.class), Type.getType(String.class), Type.getType(Memory.class)
+                    );
+
+                    code.add(new TypeInsnNode(NEW, Type.getInternalName(ArrayMemory.class)));
+                    code.add(new InsnNode(DUP));
+                    code.add(new MethodInsnNode(
+                            INVOKESPECIAL, Type.getInternalName(ArrayMemory.class), Constants.INIT_METHOD, "()V", false
+                    ));
+                    code.add(new VarInsnNode(ASTORE, probe.index));
+
+                    for (LocalVariable variable : method.getProbeVariables()) {
+                        code.add(new VarInsnNode(ALOAD, probe.index));
+                        code.add(new LdcInsnNode(variable.name));
+                        code.add(new VarInsnNode(ALOAD, variable.index));
+                        code.add(new MethodInsnNode(
+                                INVOKESTATIC, Type.getInternalName(LineProbes.class), "putLocal", putLocal, false
+                        ));
+                    }
+
+                    writePushEnv();
+                    writePushTraceInfo(trace.getStartLine(), trace.getStartPosition());
+                    writeVarLoad(probe);
+                    writeSysDynamicCall(Environment.class, "__tick", void.class, TraceInfo.class, ArrayMemory.class);
+
+                    // the debugger may change values of the variables.
+                    for (LocalVariable variable : method.getProbeVariables()) {
+                        code.add(new VarInsnNode(ALOAD, probe.index));
+                        code.add(new LdcInsnNode(variable.name));
+                        code.add(new VarInsnNode(ALOAD, variable.index));
+                        code.add(new MethodInsnNode(
+                                INVOKESTATIC, Type.getInternalName(LineProbes.class), "getLocal", getLocal, false
+                        ));
+                        code.add(new VarInsnNode(ASTORE, variable.index));
+
+                        variable.setValue(null);
+                    }
+
+                    code.add(new InsnNode(ACONST_NULL));
+                    code.add(new VarInsnNode(ASTORE, probe.index));
+                }
+
+                code.add(skip);
             }
         }
     }
@@ -2465,7 +2698,7 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         writePushTraceInfo(dynamic);
     }
 
-    public void writeDynamicAccessPrepare(DynamicAccessExprToken dynamic, boolean addLowerName) {
+    public void writePushDynamicAccessObject(DynamicAccessExprToken dynamic) {
         if (stackEmpty(true))
             unexpectedToken(dynamic);
 
@@ -2475,6 +2708,10 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         if (stackPeek().isConstant())
             unexpectedToken(dynamic);
         writePopBoxing();
+    }
+
+    public void writeDynamicAccessPrepare(DynamicAccessExprToken dynamic, boolean addLowerName) {
+        writePushDynamicAccessObject(dynamic);
 
         if (dynamic instanceof DynamicAccessAssignExprToken) {
             if (((DynamicAccessAssignExprToken) dynamic).getValue() != null) {
@@ -2515,6 +2752,10 @@ public class ExpressionStmtCompiler extends StmtCompiler {
             } else if (operator instanceof ArrayGetEmptyExprToken && i == size - 1) {
                 writePopBoxing();
                 writeSysDynamicCall(Memory.class, "emptyOfIndex", Memory.class, TraceInfo.class, stackPeek().type.toClass());
+            } else if (operator instanceof ArrayGetArgExprToken) {
+                writePopBoxing();
+                writeSysDynamicCall(Memory.class, "valueOfIndexAsArgument", Memory.class, TraceInfo.class, Memory.class);
+                i++;
             } else {
                 // TODO: Remove.
                 // PHP CMP: $hack = &$arr[0];
@@ -3034,6 +3275,12 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         }
 
         List<Token> tokens = expression.getTokens();
+
+        if (writeOpcode && !returnValue && writeArrayPushAssign(tokens)) {
+            exprStackInit.pop();
+            return null;
+        }
+
         int operatorCount = 0;
         for (Token token : tokens) {
             if (token instanceof OperatorExprToken)
@@ -3129,6 +3376,109 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         return result;
     }
 
+    /**
+     * `return $arr[...]` and `yield $arr[...]` of functions returning a reference must get the reference of the element
+     * as foreach by reference does, values of packed arrays have no references.
+     */
+    public ExprStmtToken toReferenceExpression(ExprStmtToken expression) {
+        Token last = expression.getLast();
+
+        if (last instanceof ArrayGetExprToken && !(last instanceof ArrayGetRefExprToken)) {
+            List<Token> tokens = new ArrayList<Token>(expression.getTokens());
+            tokens.set(tokens.size() - 1, new ArrayGetRefExprToken((ArrayGetExprToken) last));
+
+            return new ExprStmtToken(getCompiler().getEnvironment(), getCompiler().getContext(), tokens);
+        }
+
+        return expression;
+    }
+
+    /**
+     * `$arr[...]` arguments of parameters by reference and of calls with unknown parameters must get the reference of
+     * the item as before, reads by index of packed arrays return values.
+     */
+    public ExprStmtToken toArgumentExpression(ExprStmtToken expression) {
+        Token last = expression.getLast();
+
+        if (last != null && last.getClass() == ArrayGetExprToken.class) {
+            List<Token> tokens = new ArrayList<Token>(expression.getTokens());
+            tokens.set(tokens.size() - 1, new ArrayGetArgExprToken((ArrayGetExprToken) last));
+
+            return new ExprStmtToken(getCompiler().getEnvironment(), getCompiler().getContext(), tokens);
+        }
+
+        return expression;
+    }
+
+    /**
+     * Statement `$var[] = expr;` appends the value via Memory.assignOfPush() instead of refOfPush() + assign(),
+     * so packed arrays do not need a reference for the new element.
+     */
+    boolean writeArrayPushAssign(List<Token> tokens) {
+        int size = tokens.size();
+
+        if (size < 4 || !(tokens.get(0) instanceof VariableExprToken) || !(tokens.get(1) instanceof ArrayPushExprToken)) {
+            return false;
+        }
+
+        Token last = tokens.get(size - 1);
+
+        if (last == null || last.getClass() != AssignExprToken.class || ((AssignExprToken) last).isAsReference()) {
+            return false;
+        }
+
+        // the value must be a separate expression, not `$var[][...] = expr`
+        int depth = 0;
+        for (Token token : tokens.subList(2, size - 1)) {
+            if (token instanceof OperatorExprToken) {
+                int count = ((OperatorExprToken) token).isBinary() ? 2 : 1;
+
+                if (depth < count) {
+                    return false;
+                }
+
+                depth -= count - 1;
+            } else if (token instanceof ValueExprToken) {
+                depth++;
+            } else {
+                return false;
+            }
+        }
+
+        if (depth != 1) {
+            return false;
+        }
+
+        VariableExprToken var = (VariableExprToken) tokens.get(0);
+        ArrayPushExprToken push = (ArrayPushExprToken) tokens.get(1);
+
+        LocalVariable variable = method.getLocalVariable(var.getName());
+        if (variable != null) {
+            variable.setValue(null);
+        }
+
+        writeTickTrigger(var);
+        writeLineNumber(push);
+
+        stackPush(var);
+        writePush(stackPop());
+        writePopBoxing();
+        writePushTraceInfo(push);
+
+        ExprStmtToken value = new ExprStmtToken(null, null, new ArrayList<Token>(tokens.subList(2, size - 1)));
+        value.setAsmExpr(value);
+
+        writeExpression(value, true, false);
+        writePopBoxing();
+        writePopImmutable();
+
+        writeSysDynamicCall(Memory.class, "assignOfPush", Memory.class, TraceInfo.class, Memory.class);
+        writePopAll(1);
+
+        method.entity.setImmutable(false);
+        return true;
+    }
+
     void makePop(StackItem.Type type) {
         switch (type.size()) {
             case 2:
@@ -1,5 +1,6 @@
 package org.develnext.jphp.core.compiler.jvm.statement;
 
+import org.develnext.jphp.core.compiler.jvm.GeneratorStateMachine;
 import org.develnext.jphp.core.compiler.jvm.JvmCompiler;
 import org.develnext.jphp.core.tokenizer.token.expr.value.NameToken;
 import org.develnext.jphp.core.tokenizer.token.stmt.*;
@@ -54,7 +55,7 @@ public class GeneratorStmtCompiler extends StmtCompiler<GeneratorEntity> {
         if (clazzEntity.getParent() != null)
             entity.setParent(clazzEntity.getParent());
 
-        entity.setData(clazzEntity.getData());
+        entity.setData(new GeneratorStateMachine(clazzEntity.getData()).transform());
         entity.doneDeclare();
 
         return entity;
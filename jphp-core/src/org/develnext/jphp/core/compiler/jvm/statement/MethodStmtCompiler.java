@@ -61,6 +61,7 @@ public class MethodStmtCompiler extends StmtCompiler<MethodEntity> {
 
     private Map<Class<?>, AtomicInteger> statementIndexes = new HashMap<Class<?>, AtomicInteger>();
     private Set<Integer> lineTickHandled = new HashSet<>();
+    private List<LocalVariable> probeVariables = new ArrayList<>();
 
     private GeneratorEntity generatorEntity;
 
@@ -141,6 +142,13 @@ public class MethodStmtCompiler extends StmtCompiler<MethodEntity> {
         return lineTickHandled.add(line);
     }
 
+    /**
+     * Returns variables which are defined before the body, they can be collected by the tick of any line.
+     */
+    public List<LocalVariable> getProbeVariables() {
+        return probeVariables;
+    }
+
     public int nextStatementIndex(Class<?> clazz){
         AtomicInteger atomic = statementIndexes.get(clazz);
         if (atomic == null)
@@ -269,10 +277,6 @@ public class MethodStmtCompiler extends StmtCompiler<MethodEntity> {
     void writeHeader(){
         int access = 0;
         if (statement != null){
-            if (compiler.getScope().isDebugMode()) {
-                statement.setDynamicLocal(true);
-            }
-
             switch (statement.getModifier()){
                 case PRIVATE: access += Opcodes.ACC_PRIVATE; break;
                 case PROTECTED: access += Opcodes.ACC_PROTECTED; break;
@@ -331,6 +335,11 @@ public class MethodStmtCompiler extends StmtCompiler<MethodEntity> {
                 }
             }
 
+            if (compiler.getScope().isDebugMode() && !statement.isDynamicLocal()) {
+                // locals of a line are collected into this array only when the probe of the line is active.
+                addLocalVariable("~probe", label, ArrayMemory.class);
+            }
+
             if (statement.getUses() != null && !statement.getUses().isEmpty()){
                 int i = 0;
                 expressionCompiler.writeVarLoad("~this");
@@ -585,6 +594,13 @@ public class MethodStmtCompiler extends StmtCompiler<MethodEntity> {
                 entity.setEmpty(true);
                 if (statement != null && statement.getBody() != null) {
                     expr.writeDefineVariables(statement.getLocal());
+
+                    for (LocalVariable variable : localVariables.values()) {
+                        if (!variable.name.startsWith("~") && !variable.name.equals("this") && variable.getClazz() == Memory.class) {
+                            probeVariables.add(variable);
+                        }
+                    }
+
                     expr.write(statement.getBody());
 
                     if (!statement.getBody().getInstructions().isEmpty()) {
@@ -3,9 +3,6 @@ package org.develnext.jphp.core.compiler.jvm.statement.expr;
 import org.develnext.jphp.core.compiler.jvm.statement.ExpressionStmtCompiler;
 import org.develnext.jphp.core.tokenizer.token.stmt.BodyStmtToken;
 import org.develnext.jphp.core.tokenizer.token.stmt.ExprStmtToken;
-import php.runtime.env.Environment;
-import php.runtime.env.TraceInfo;
-import php.runtime.memory.ArrayMemory;
 
 public class BodyCompiler extends BaseStatementCompiler<BodyStmtToken> {
     public BodyCompiler(ExpressionStmtCompiler exprCompiler) {
@@ -15,10 +12,27 @@ public class BodyCompiler extends BaseStatementCompiler<BodyStmtToken> {
     @Override
     public void write(BodyStmtToken token) {
         if (token!= null){
+            // adjacent constant echoes are merged into one, except debug mode which needs the tick of each line
+            boolean merge = !expr.getCompiler().getScope().isDebugMode();
+            StringBuilder constant = new StringBuilder();
+
             for(ExprStmtToken line : token.getInstructions()){
+                if (merge) {
+                    String value = expr.getEchoConstant(line);
+
+                    if (value != null) {
+                        expr.appendEchoConstant(constant, value);
+                        continue;
+                    }
+
+                    expr.writeEchoConstant(constant);
+                }
+
                 expr.writeTickTrigger(line);
                 expr.writeExpression(line, false, false);
             }
+
+            expr.writeEchoConstant(constant);
         }
     }
 }
@@ -13,11 +13,24 @@ public class EchoCompiler extends BaseStatementCompiler<EchoStmtToken> {
 
     @Override
     public void write(EchoStmtToken token) {
+        StringBuilder constant = new StringBuilder();
+
         for(ExprStmtToken argument : token.getArguments()){
+            String value = expr.getEchoConstantValue(argument);
+
+            if (value != null) {
+                expr.appendEchoConstant(constant, value);
+                continue;
+            }
+
+            expr.writeEchoConstant(constant);
+
             expr.writePushEnv();
             expr.writeExpression(argument, true, false);
             expr.writePopBoxing();
             expr.writeSysDynamicCall(Environment.class, "echo", void.class, Memory.class);
         }
+
+        expr.writeEchoConstant(constant);
     }
 }
@@ -12,6 +12,13 @@ public class OpenEchoTagCompiler extends BaseStatementCompiler<OpenEchoTagToken>
 
     @Override
     public void write(OpenEchoTagToken token) {
+        String value = expr.getEchoConstantValue(token.getValue());
+
+        if (value != null) {
+            expr.writeEchoConstant(value);
+            return;
+        }
+
         expr.writePushEnv();
         expr.writeExpression(token.getValue(), true, false);
         expr.writePopBoxing();
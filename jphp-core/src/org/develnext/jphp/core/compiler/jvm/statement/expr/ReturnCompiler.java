@@ -31,8 +31,12 @@ public class ReturnCompiler extends BaseStatementCompiler<ReturnStmtToken> {
 
         Memory result = Memory.NULL;
         boolean isImmutable = method.getEntity().isImmutable();
-        if (token.getValue() != null)
-            result = expr.writeExpression(token.getValue(), true, true);
+        if (token.getValue() != null) {
+            if (method.getEntity().isReturnReference())
+                result = expr.writeExpression(expr.toReferenceExpression(token.getValue()), true, true);
+            else
+                result = expr.writeExpression(token.getValue(), true, true);
+        }
 
         if (result != null) {
             if (isImmutable) {
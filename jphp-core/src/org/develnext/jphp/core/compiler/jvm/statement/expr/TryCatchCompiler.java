@@ -13,6 +13,7 @@ import org.objectweb.asm.tree.LabelNode;
 import org.objectweb.asm.tree.TryCatchBlockNode;
 import php.runtime.Memory;
 import php.runtime.env.Environment;
+import php.runtime.invoke.cache.ClassCallCache;
 import php.runtime.lang.BaseException;
 import php.runtime.lang.exception.BaseBaseException;
 
@@ -86,8 +87,11 @@ public class TryCatchCompiler extends BaseStatementCompiler<TryStmtToken> {
             expr.writeVarLoad(exception);
             expr.writePushConstString(_catch.getException().toName());
             expr.writePushConstString(_catch.getException().toName().toLowerCase());
+            expr.writeGetStatic("$CALL_CLASS_CACHE", ClassCallCache.class);
+            expr.writePushConstInt(method.clazz.getAndIncCallClassCount());
             expr.writeSysDynamicCall(
-                    Environment.class, "__throwCatch", Memory.class, BaseBaseException.class, String.class, String.class
+                    Environment.class, "__throwCatch", Memory.class, BaseBaseException.class, String.class, String.class,
+                    ClassCallCache.class, Integer.TYPE
             );
 
             expr.writeVarAssign(local, _catch.getVariable(), true, false);
@@ -7,6 +7,8 @@ import org.develnext.jphp.core.tokenizer.token.expr.operator.InstanceofExprToken
 import org.develnext.jphp.core.tokenizer.token.expr.value.NameToken;
 import php.runtime.Memory;
 import php.runtime.OperatorUtils;
+import php.runtime.env.Environment;
+import php.runtime.invoke.cache.ClassCallCache;
 
 public class InstanceOfCompiler extends BaseExprCompiler<InstanceofExprToken> {
     public InstanceOfCompiler(ExpressionStmtCompiler exprCompiler) {
@@ -71,8 +73,26 @@ public class InstanceOfCompiler extends BaseExprCompiler<InstanceofExprToken> {
 
             expr.writePopBoxing();
 
-            pushName(R);
-            expr.writeSysDynamicCall(Memory.class, "instanceOf", Boolean.TYPE, String.class, String.class);
+            NameToken name = R.getToken() instanceof NameToken
+                    ? this.compiler.getAnalyzer().getRealName((NameToken) R.getToken())
+                    : null;
+
+            if (name == null) {
+                pushName(R);
+                expr.writeSysDynamicCall(Memory.class, "instanceOf", Boolean.TYPE, String.class, String.class);
+            } else {
+                // the class of a constant name is resolved once and checked by reference.
+                expr.writePushConstString(name.getName());
+                expr.writePushConstString(name.getName().toLowerCase());
+                expr.writePushEnv();
+                expr.writeGetStatic("$CALL_CLASS_CACHE", ClassCallCache.class);
+                expr.writePushConstInt(method.clazz.getAndIncCallClassCount());
+
+                expr.writeSysStaticCall(
+                        OperatorUtils.class, "instanceOf", Boolean.TYPE,
+                        Memory.class, String.class, String.class, Environment.class, ClassCallCache.class, Integer.TYPE
+                );
+            }
         }
 
         if (!returnValue)
@@ -28,10 +28,16 @@ public class YieldValueCompiler extends BaseExprCompiler<YieldExprToken> {
             expr.writeSysDynamicCall(Generator.class, "yield", Memory.class, Environment.class, TraceInfo.class);
         } else {
 
-            expr.writeExpression(token.getValue(), true, false);
+            boolean isReturnReference = expr.getMethod().getGeneratorEntity().isReturnReference();
+
+            if (isReturnReference)
+                expr.writeExpression(expr.toReferenceExpression(token.getValue()), true, false);
+            else
+                expr.writeExpression(token.getValue(), true, false);
+
             expr.writePopBoxing();
 
-            if (expr.getMethod().getGeneratorEntity().isReturnReference()) {
+            if (isReturnReference) {
                 expr.setStackPeekAsImmutable();
 
                     expr.writePushDup();
@@ -13,6 +13,7 @@ import php.runtime.exceptions.ParseException;
 import php.runtime.exceptions.support.ErrorException;
 import php.runtime.exceptions.support.ErrorType;
 import php.runtime.ext.support.compile.FunctionsContainer;
+import php.runtime.loader.EvalModuleCache;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.reflection.ModuleEntity;
 
@@ -32,17 +33,23 @@ public class EvalFunctions extends FunctionsContainer {
 
     public static Memory eval(Environment env, TraceInfo trace, @Runtime.GetLocals ArrayMemory locals, String code)
             throws Throwable {
-        Context context = new Context(code);
+        EvalModuleCache evalModules = env.scope.getClassLoader().getEvalModules();
         try {
-            Tokenizer tokenizer = new Tokenizer(context);
-            SyntaxAnalyzer analyzer = syntaxAnalyzer.get();
-            analyzer.reset(env, tokenizer);
-            AbstractCompiler compiler = new JvmCompiler(env, context, analyzer);
+            ModuleEntity module = evalModules.get(env, code);
 
-            ModuleEntity module = compiler.compile();
-            env.scope.loadModule(module);
-            env.registerModule(module);
+            if (module == null) {
+                Context context = new Context(code);
+                Tokenizer tokenizer = new Tokenizer(context);
+                SyntaxAnalyzer analyzer = syntaxAnalyzer.get();
+                analyzer.reset(env, tokenizer);
+                AbstractCompiler compiler = new JvmCompiler(env, context, analyzer);
+
+                module = compiler.compile(false);
+                env.scope.getClassLoader().loadDisposableModule(module);
+                evalModules.put(env, code, module);
+            }
 
+            env.registerModule(module);
             return module.include(env, locals);
         } catch (ErrorException e){
             if (e.getType() == ErrorType.E_PARSE){
@@ -0,0 +1,116 @@
+package org.develnext.jphp.core.interpreter;
+
+import org.develnext.jphp.core.compiler.jvm.JvmCompiler;
+import php.runtime.Memory;
+import php.runtime.Startup;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Environment;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.reflection.ModuleEntity;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Module which is executed by ModuleInterpreter until it is included the threshold number of times (see
+ * CompileScope.getInterpreterThreshold()), then the module is compiled to bytecode in the background and next includes
+ * execute the compiled module.
+ *
+ * If the compilation fails, the module stays interpreted.
+ */
+public class InterpretedModuleEntity extends ModuleEntity {
+    private final static ExecutorService compileExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "jphp-module-compiler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // environment of the compiler thread, it is reused while modules of the same scope are compiled
+    private static Environment compileEnvironment;
+
+    protected final ModuleInterpreter interpreter;
+    protected final int threshold;
+    protected final AtomicInteger includeCount = new AtomicInteger();
+
+    protected volatile ModuleEntity compiled;
+
+    public InterpretedModuleEntity(ModuleInterpreter interpreter, int threshold) {
+        super(interpreter.getContext());
+        this.interpreter = interpreter;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean isCompiled() {
+        return false;
+    }
+
+    public int getIncludeCount() {
+        return includeCount.get();
+    }
+
+    /**
+     * Returns the module compiled to bytecode or null if it is not compiled yet.
+     */
+    public ModuleEntity getCompiled() {
+        return compiled;
+    }
+
+    @Override
+    public Memory include(Environment env, ArrayMemory locals) throws Throwable {
+        ModuleEntity compiled = this.compiled;
+
+        if (compiled != null) {
+            return compiled.include(env, locals);
+        }
+
+        if (includeCount.incrementAndGet() == threshold) {
+            promote(env.getScope());
+        }
+
+        try {
+            return interpreter.execute(env, locals);
+        } catch (Throwable e) {
+            return env.__rethrowException(e);
+        }
+    }
+
+    @Override
+    public Memory include(Environment env) throws Throwable {
+        return include(env, env.getGlobals());
+    }
+
+    /**
+     * Compiles the module to bytecode in the background.
+     */
+    public Future<ModuleEntity> promote(final CompileScope scope) {
+        return compileExecutor.submit(new Callable<ModuleEntity>() {
+            @Override
+            public ModuleEntity call() throws Exception {
+                if (compiled != null) {
+                    return compiled;
+                }
+
+                try {
+                    if (compileEnvironment == null || compileEnvironment.getScope() != scope) {
+                        compileEnvironment = new Environment(scope);
+                    }
+
+                    JvmCompiler compiler = new JvmCompiler(compileEnvironment, getContext());
+                    compiler.setInterpretable(false);
+
+                    ModuleEntity module = compiler.compile(false);
+                    scope.getClassLoader().loadDisposableModule(module);
+
+                    return compiled = module;
+                } catch (Throwable e) {
+                    Startup.trace("Unable to compile the interpreted module '" + getName() + "', " + e.getMessage());
+                    return null;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,774 @@
+package org.develnext.jphp.core.interpreter;
+
+import org.develnext.jphp.core.compiler.common.util.CompilerUtils;
+import org.develnext.jphp.core.compiler.jvm.JvmCompiler;
+import org.develnext.jphp.core.syntax.SyntaxAnalyzer;
+import org.develnext.jphp.core.tokenizer.token.OpenEchoTagToken;
+import org.develnext.jphp.core.tokenizer.token.Token;
+import org.develnext.jphp.core.tokenizer.token.expr.OperatorExprToken;
+import org.develnext.jphp.core.tokenizer.token.expr.ValueExprToken;
+import org.develnext.jphp.core.tokenizer.token.expr.operator.*;
+import org.develnext.jphp.core.tokenizer.token.expr.value.*;
+import org.develnext.jphp.core.tokenizer.token.expr.value.macro.DirMacroToken;
+import org.develnext.jphp.core.tokenizer.token.expr.value.macro.FileMacroToken;
+import org.develnext.jphp.core.tokenizer.token.expr.value.macro.LineMacroToken;
+import org.develnext.jphp.core.tokenizer.token.stmt.*;
+import php.runtime.Memory;
+import php.runtime.annotation.Runtime;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.ext.support.compile.CompileConstant;
+import php.runtime.ext.support.compile.CompileFunction;
+import php.runtime.invoke.InvokeHelper;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.StringMemory;
+import php.runtime.memory.support.MemoryUtils;
+import php.runtime.output.EchoConstant;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+
+/**
+ * Executes the top-level code of a module by walking its syntax tree instead of generating bytecode.
+ *
+ * Only simple code is supported: echo, return, if/else, assignments of variables and array items, arrays, scalars,
+ * strings with variables, constants, arithmetic, comparison and logic operators, calls of functions and
+ * include/require. Such code is often executed once (configs, bootstraps), so it is cheaper to interpret it than to
+ * generate and load a class for it.
+ * Each token is executed by the same runtime methods as the code which ExpressionStmtCompiler generates for it.
+ *
+ * A prepared interpreter is immutable and may execute the module by many environments at the same time.
+ */
+public class ModuleInterpreter {
+    private final static Set<Class<? extends OperatorExprToken>> binaryOperators;
+    private final static Set<Class<? extends OperatorExprToken>> unaryOperators;
+
+    protected final Context context;
+    protected final List<ExprStmtToken> body;
+
+    protected final String[] variables;
+    protected final boolean[] superGlobals;
+    protected final Map<String, Integer> slots;
+
+    /**
+     * Prepared data of tokens: tokens of expressions, slots of variables, values of constant tokens, calls, traces.
+     */
+    protected final Map<Token, Object> data = new IdentityHashMap<Token, Object>();
+
+    protected boolean folding = false;
+
+    protected ModuleInterpreter(Context context, List<ExprStmtToken> body, Collection<VariableExprToken> variables,
+                                Set<String> superGlobals) {
+        this.context = context;
+        this.body = body;
+        this.variables = new String[variables.size()];
+        this.superGlobals = new boolean[variables.size()];
+        this.slots = new HashMap<String, Integer>();
+
+        int i = 0;
+        for (VariableExprToken variable : variables) {
+            this.variables[i] = variable.getName();
+            this.superGlobals[i] = superGlobals.contains(variable.getName());
+            slots.put(variable.getName(), i);
+            i++;
+        }
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the interpreter of the module or null if the module has declarations or code which is not supported.
+     */
+    public static ModuleInterpreter of(JvmCompiler compiler) {
+        SyntaxAnalyzer analyzer = compiler.getAnalyzer();
+
+        if (!analyzer.getClasses().isEmpty() || !analyzer.getFunctions().isEmpty()
+                || !analyzer.getConstants().isEmpty() || !analyzer.getClosures().isEmpty()
+                || analyzer.getScope().isStaticExists() || !analyzer.getScope().getLabels().isEmpty()) {
+            return null;
+        }
+
+        List<ExprStmtToken> body = new ArrayList<ExprStmtToken>();
+        for (Token token : analyzer.getTree()) {
+            if (token instanceof ExprStmtToken) {
+                body.add((ExprStmtToken) token);
+            } else if (token instanceof StmtToken && !(token instanceof NamespaceStmtToken)
+                    && !(token instanceof ClassStmtToken) && !(token instanceof FunctionStmtToken)) {
+                body.add(new ExprStmtToken(compiler.getEnvironment(), compiler.getContext(), token));
+            } else {
+                return null;
+            }
+        }
+
+        ModuleInterpreter interpreter = new ModuleInterpreter(
+                compiler.getContext(), body, analyzer.getScope().getVariables(), compiler.getScope().superGlobals
+        );
+
+        if (!interpreter.prepareBody(compiler, body)) {
+            return null;
+        }
+
+        // the module is supported, calculate constant operators
+        interpreter.data.clear();
+        interpreter.folding = true;
+        interpreter.prepareBody(compiler, body);
+
+        return interpreter;
+    }
+
+    public Memory execute(Environment env, ArrayMemory locals) throws Throwable {
+        Memory[] vars = new Memory[variables.length];
+
+        for (int i = 0; i < vars.length; i++) {
+            vars[i] = superGlobals[i] ? env.getOrCreateGlobal(variables[i]) : locals.refOfIndex(variables[i]);
+        }
+
+        Memory result = executeBody(new Frame(env, locals, vars), body);
+        return result == null ? Memory.NULL : result;
+    }
+
+    protected boolean prepareBody(JvmCompiler compiler, List<ExprStmtToken> instructions) {
+        for (ExprStmtToken instruction : instructions) {
+            List<Token> tokens = prepareTokens(instruction);
+
+            if (tokens == null) {
+                return false;
+            }
+
+            if (instruction.isStmtList()) {
+                for (Token token : tokens) {
+                    if (!prepareStatement(compiler, (StmtToken) token)) {
+                        return false;
+                    }
+                }
+            } else if (!tokens.isEmpty() && !prepareExpression(compiler, instruction)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected boolean prepareStatement(JvmCompiler compiler, StmtToken token) {
+        if (token instanceof EchoRawToken) {
+            String value = token.getMeta().getWord();
+
+            if (!value.isEmpty()) {
+                data.put(token, new EchoConstant(value));
+            }
+
+            return true;
+        } else if (token instanceof OpenEchoTagToken) {
+            return prepareExpression(compiler, ((OpenEchoTagToken) token).getValue());
+        } else if (token instanceof EchoStmtToken) {
+            for (ExprStmtToken argument : ((EchoStmtToken) token).getArguments()) {
+                if (!prepareExpression(compiler, argument)) {
+                    return false;
+                }
+            }
+
+            return true;
+        } else if (token instanceof ReturnStmtToken) {
+            ExprStmtToken value = ((ReturnStmtToken) token).getValue();
+            return value == null || prepareExpression(compiler, value);
+        } else if (token instanceof IfStmtToken) {
+            IfStmtToken ifToken = (IfStmtToken) token;
+
+            return prepareExpression(compiler, ifToken.getCondition())
+                    && (ifToken.getBody() == null || prepareBody(compiler, ifToken.getBody().getInstructions()))
+                    && (ifToken.getElseBody() == null || prepareBody(compiler, ifToken.getElseBody().getInstructions()));
+        } else if (token instanceof BodyStmtToken) {
+            return prepareBody(compiler, ((BodyStmtToken) token).getInstructions());
+        } else if (token instanceof ExprStmtToken) {
+            return prepareBody(compiler, Collections.singletonList((ExprStmtToken) token));
+        }
+
+        return false;
+    }
+
+    protected List<Token> prepareTokens(ExprStmtToken expression) {
+        if (expression == null) {
+            return null;
+        }
+
+        List<Token> tokens = (List<Token>) data.get(expression);
+
+        if (tokens == null) {
+            ExprStmtToken asm = expression.isStmtList() ? expression : expression.getAsmExpr();
+            if (asm == null) {
+                return null;
+            }
+
+            tokens = new ArrayList<Token>();
+            for (Token token : asm.getTokens()) {
+                if (token != null) {
+                    tokens.add(token);
+                }
+            }
+
+            data.put(expression, tokens);
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Prepares tokens of the expression, the stack of the expression is simulated to check that items are assigned
+     * only to variables and array items. Operators of constants are calculated once as ExpressionStmtCompiler does,
+     * so errors of such operators (e.g. modulo by zero) are thrown by the compilation and not by the execution.
+     */
+    protected boolean prepareExpression(JvmCompiler compiler, ExprStmtToken expression) {
+        List<Token> tokens = prepareTokens(expression);
+        if (tokens == null) {
+            return false;
+        }
+
+        // Boolean.TRUE - an assignable item, Boolean.FALSE - a value, Memory - a constant
+        Deque<Object> stack = new ArrayDeque<Object>();
+
+        for (Token token : tokens) {
+            if (token instanceof VariableExprToken) {
+                Integer slot = slots.get(((VariableExprToken) token).getName());
+                if (slot == null || "this".equals(((VariableExprToken) token).getName())) {
+                    return false;
+                }
+
+                data.put(token, slot);
+                stack.push(Boolean.TRUE);
+            } else if (token instanceof ValueExprToken) {
+                if (!prepareValue(compiler, (ValueExprToken) token)) {
+                    return false;
+                }
+
+                Object value = data.get(token);
+                stack.push(value instanceof Memory ? value : Boolean.FALSE);
+            } else if (token instanceof OperatorExprToken) {
+                OperatorExprToken operator = (OperatorExprToken) token;
+                Class<?> type = operator.getClass();
+                TraceInfo trace = operator.toTraceInfo(context);
+                Object result = Boolean.FALSE;
+
+                if (type == ArrayGetExprToken.class || type == ArrayGetRefExprToken.class) {
+                    for (ExprStmtToken index : ((ArrayGetExprToken) operator).getParameters()) {
+                        if (!prepareExpression(compiler, index)) {
+                            return false;
+                        }
+                    }
+
+                    if (stack.isEmpty()) {
+                        return false;
+                    }
+
+                    if (type == ArrayGetRefExprToken.class) {
+                        if (stack.pop() != Boolean.TRUE) {
+                            return false;
+                        }
+
+                        result = Boolean.TRUE;
+                    } else {
+                        stack.pop();
+                    }
+                } else if (type == ArrayPushExprToken.class) {
+                    if (stack.isEmpty() || stack.pop() != Boolean.TRUE) {
+                        return false;
+                    }
+
+                    result = Boolean.TRUE;
+                } else if (type == AssignExprToken.class) {
+                    if (((AssignExprToken) operator).isAsReference() || stack.size() < 2) {
+                        return false;
+                    }
+
+                    stack.pop();
+                    if (stack.pop() != Boolean.TRUE) {
+                        return false;
+                    }
+                } else if (operator instanceof LogicOperatorExprToken) {
+                    ExprStmtToken right = ((LogicOperatorExprToken) operator).getRightValue();
+
+                    if (stack.isEmpty() || !prepareExpression(compiler, right)
+                            || ((LogicOperatorExprToken) operator).getLast() instanceof ValueIfElseToken) {
+                        return false;
+                    }
+
+                    stack.pop();
+                } else if (unaryOperators.contains(type)) {
+                    if (stack.isEmpty()) {
+                        return false;
+                    }
+
+                    Object o = stack.pop();
+
+                    if (folding && o instanceof Memory) {
+                        result = CompilerUtils.calcUnary(compiler.getEnvironment(), trace, (Memory) o, operator);
+                    }
+                } else if (binaryOperators.contains(type)) {
+                    if (stack.size() < 2) {
+                        return false;
+                    }
+
+                    Object o2 = stack.pop();
+                    Object o1 = stack.pop();
+
+                    if (folding && o1 instanceof Memory && o2 instanceof Memory && type != KeyValueExprToken.class) {
+                        result = CompilerUtils.calcBinary(
+                                compiler.getEnvironment(), trace, (Memory) o1, (Memory) o2, operator, false
+                        );
+                    }
+                } else {
+                    return false;
+                }
+
+                data.put(token, result instanceof Memory ? result : trace);
+                stack.push(result);
+            } else {
+                return false;
+            }
+        }
+
+        return stack.size() == 1;
+    }
+
+    protected boolean prepareValue(JvmCompiler compiler, ValueExprToken token) {
+        Class<?> type = token.getClass();
+
+        if (type == IntegerExprToken.class || type == DoubleExprToken.class || type == BooleanExprToken.class
+                || type == NullExprToken.class || type == StringExprToken.class) {
+            Memory value = CompilerUtils.toMemory(token);
+
+            if (value != null) {
+                data.put(token, value);
+                return true;
+            }
+        } else if (type == LineMacroToken.class) {
+            data.put(token, LongMemory.valueOf(token.getMeta().getStartLine() + 1));
+            return true;
+        } else if (type == FileMacroToken.class || type == DirMacroToken.class) {
+            String sourceFile = compiler.getSourceFile();
+
+            if (sourceFile != null) {
+                if (type == FileMacroToken.class) {
+                    data.put(token, new StringMemory(sourceFile));
+                } else {
+                    String parent = new File(sourceFile).getParent();
+
+                    if (parent == null) {
+                        return false;
+                    }
+
+                    // Fix issue #198.
+                    if (sourceFile.startsWith(parent + "//") && parent.endsWith(":")) {
+                        parent += "//";
+                    }
+
+                    data.put(token, new StringMemory(parent));
+                }
+
+                return true;
+            }
+        } else if (type == NameToken.class || type == FulledNameToken.class) {
+            String name = ((NameToken) token).getName();
+            CompileConstant constant = compiler.getScope().findCompileConstant(name);
+
+            if (constant != null) {
+                data.put(token, constant.value);
+            } else {
+                data.put(token, new Constant(name, token.toTraceInfo(context)));
+            }
+
+            return true;
+        } else if (type == ArrayExprToken.class) {
+            for (ExprStmtToken parameter : ((ArrayExprToken) token).getParameters()) {
+                if (!prepareExpression(compiler, parameter)) {
+                    return false;
+                }
+            }
+
+            return true;
+        } else if (type == StringBuilderExprToken.class && !((StringBuilderExprToken) token).isBinary()) {
+            for (Token el : ((StringBuilderExprToken) token).getExpression()) {
+                if (el instanceof VariableExprToken) {
+                    Integer slot = slots.get(((VariableExprToken) el).getName());
+                    if (slot == null || "this".equals(((VariableExprToken) el).getName())) {
+                        return false;
+                    }
+
+                    data.put(el, slot);
+                } else if (el instanceof StringExprToken) {
+                    if (!prepareValue(compiler, (StringExprToken) el)) {
+                        return false;
+                    }
+                } else if (!(el instanceof ExprStmtToken) || !prepareExpression(compiler, (ExprStmtToken) el)) {
+                    return false;
+                }
+            }
+
+            return true;
+        } else if (type == CallExprToken.class) {
+            return prepareCall(compiler, (CallExprToken) token);
+        } else if (type == IncludeExprToken.class || type == IncludeOnceExprToken.class
+                || type == RequireExprToken.class || type == RequireOnceExprToken.class) {
+            data.put(token, token.toTraceInfo(context));
+            return prepareExpression(compiler, ((ImportExprToken) token).getValue());
+        }
+
+        return false;
+    }
+
+    /**
+     * Functions of extensions are called directly as by ExpressionStmtCompiler.writePushCompileFunction(), functions
+     * which take locals are not supported. Other functions are called by name via InvokeHelper.
+     */
+    protected boolean prepareCall(JvmCompiler compiler, CallExprToken token) {
+        if (!(token.getName() instanceof NameToken)) {
+            return false;
+        }
+
+        NameToken name = (NameToken) token.getName();
+        String realName = name.getName();
+        CompileScope scope = compiler.getScope();
+        CompileFunction compileFunction = scope.findCompileFunction(realName);
+
+        if (compileFunction == null
+                && name instanceof FulledNameToken
+                && compiler.getEnvironment().fetchFunction(realName) == null
+                && compiler.findFunction(realName) == null) {
+            compileFunction = scope.findCompileFunction(((FulledNameToken) name).getLastName().getName());
+        }
+
+        CompileFunction.Method method = null;
+        int count = token.getParameters().size();
+
+        if (compileFunction != null) {
+            method = compileFunction.find(count);
+
+            if (method == null || (!method.isVarArg() && method.argsCount != count)) {
+                return false;
+            }
+
+            for (int i = 0; i < method.parameterTypes.length; i++) {
+                Class<?> type = method.parameterTypes[i];
+
+                if (type == Environment.class || type == TraceInfo.class) {
+                    continue;
+                }
+
+                if (type == Memory[].class && i == method.parameterTypes.length - 1) {
+                    continue;
+                }
+
+                if (method.isPresentAnnotationOfParam(i, Runtime.GetLocals.class)
+                        || (type != Memory.class && method.converters[i] == null)) {
+                    return false;
+                }
+            }
+        }
+
+        for (ExprStmtToken parameter : token.getParameters()) {
+            if (!prepareExpression(compiler, parameter)) {
+                return false;
+            }
+        }
+
+        data.put(token, new Call(realName, method, token.toTraceInfo(context)));
+        return true;
+    }
+
+    protected Memory executeBody(Frame frame, List<ExprStmtToken> instructions) throws Throwable {
+        for (ExprStmtToken instruction : instructions) {
+            List<Token> tokens = (List<Token>) data.get(instruction);
+
+            if (instruction.isStmtList()) {
+                for (Token token : tokens) {
+                    Memory result = executeStatement(frame, (StmtToken) token);
+
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            } else if (!tokens.isEmpty()) {
+                evaluate(frame, instruction);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the result of the return statement or null.
+     */
+    protected Memory executeStatement(Frame frame, StmtToken token) throws Throwable {
+        if (token instanceof EchoRawToken) {
+            EchoConstant value = (EchoConstant) data.get(token);
+
+            if (value != null) {
+                frame.env.echo(value);
+            }
+        } else if (token instanceof OpenEchoTagToken) {
+            frame.env.echo(evaluate(frame, ((OpenEchoTagToken) token).getValue()));
+        } else if (token instanceof EchoStmtToken) {
+            for (ExprStmtToken argument : ((EchoStmtToken) token).getArguments()) {
+                frame.env.echo(evaluate(frame, argument));
+            }
+        } else if (token instanceof ReturnStmtToken) {
+            ExprStmtToken value = ((ReturnStmtToken) token).getValue();
+            return value == null ? Memory.NULL : evaluate(frame, value).toImmutable();
+        } else if (token instanceof IfStmtToken) {
+            IfStmtToken ifToken = (IfStmtToken) token;
+            BodyStmtToken body = evaluate(frame, ifToken.getCondition()).toBoolean()
+                    ? ifToken.getBody()
+                    : ifToken.getElseBody();
+
+            if (body != null) {
+                return executeBody(frame, body.getInstructions());
+            }
+        } else if (token instanceof BodyStmtToken) {
+            return executeBody(frame, ((BodyStmtToken) token).getInstructions());
+        } else if (token instanceof ExprStmtToken) {
+            return executeBody(frame, Collections.singletonList((ExprStmtToken) token));
+        }
+
+        return null;
+    }
+
+    protected Memory evaluate(Frame frame, ExprStmtToken expression) throws Throwable {
+        return evaluate(frame, expression, false);
+    }
+
+    /**
+     * @param argument the expression is an argument which may be passed by reference, `$arr[...]` of it returns
+     *                 the reference of an existing item, see Memory.valueOfIndexAsArgument()
+     */
+    protected Memory evaluate(Frame frame, ExprStmtToken expression, boolean argument) throws Throwable {
+        List<Token> tokens = (List<Token>) data.get(expression);
+        Memory[] stack = new Memory[tokens.size()];
+        int top = 0;
+        Token last = tokens.get(tokens.size() - 1);
+
+        for (Token token : tokens) {
+            Object value = data.get(token);
+
+            if (token instanceof VariableExprToken) {
+                stack[top++] = frame.vars[(Integer) value];
+            } else if (value instanceof Memory) {
+                if (token instanceof OperatorExprToken) {
+                    // the calculated operator of constants
+                    top -= ((OperatorExprToken) token).isBinary() ? 2 : 1;
+                }
+
+                stack[top++] = (Memory) value;
+            } else if (token instanceof ArrayExprToken) {
+                ArrayMemory array = new ArrayMemory();
+
+                for (ExprStmtToken parameter : ((ArrayExprToken) token).getParameters()) {
+                    array.add(evaluate(frame, parameter).toImmutable());
+                }
+
+                stack[top++] = array;
+            } else if (token instanceof StringBuilderExprToken) {
+                stack[top++] = build(frame, (StringBuilderExprToken) token);
+            } else if (token instanceof CallExprToken) {
+                stack[top++] = call(frame, (CallExprToken) token, (Call) value);
+            } else if (token instanceof ImportExprToken) {
+                stack[top++] = include(frame, (ImportExprToken) token, (TraceInfo) value);
+            } else if (token instanceof NameToken) {
+                Constant constant = (Constant) value;
+                stack[top++] = frame.env.__getConstant(constant.name, constant.lowerName, constant.trace);
+            } else if (token instanceof ArrayGetExprToken) {
+                TraceInfo trace = (TraceInfo) value;
+                boolean reference = token instanceof ArrayGetRefExprToken;
+                Memory target = stack[top - 1];
+
+                for (ExprStmtToken index : ((ArrayGetExprToken) token).getParameters()) {
+                    Memory key = evaluate(frame, index);
+
+                    if (reference) {
+                        target = target.refOfIndex(trace, key);
+                    } else if (argument && token == last) {
+                        target = target.valueOfIndexAsArgument(trace, key);
+                    } else {
+                        target = target.valueOfIndex(trace, key);
+                    }
+                }
+
+                stack[top - 1] = target;
+            } else if (token instanceof ArrayPushExprToken) {
+                stack[top - 1] = stack[top - 1].refOfPush((TraceInfo) value);
+            } else if (token instanceof AssignExprToken) {
+                Memory right = stack[--top];
+                stack[top - 1] = stack[top - 1].assign(right.toImmutable());
+            } else if (token instanceof LogicOperatorExprToken) {
+                boolean left = stack[top - 1].toBoolean();
+                ExprStmtToken right = ((LogicOperatorExprToken) token).getRightValue();
+
+                if (token instanceof BooleanOrExprToken || token instanceof BooleanOr2ExprToken) {
+                    left = left || evaluate(frame, right).toBoolean();
+                } else {
+                    left = left && evaluate(frame, right).toBoolean();
+                }
+
+                stack[top - 1] = left ? Memory.TRUE : Memory.FALSE;
+            } else if (token instanceof KeyValueExprToken) {
+                Memory right = stack[--top];
+                stack[top - 1] = stack[top - 1].newKeyValue(right.toImmutable());
+            } else {
+                OperatorExprToken operator = (OperatorExprToken) token;
+
+                if (operator.isBinary()) {
+                    Memory right = stack[--top];
+                    stack[top - 1] = operator.calc(frame.env, (TraceInfo) value, stack[top - 1], right.toImmutable());
+                } else {
+                    stack[top - 1] = operator.calc(frame.env, (TraceInfo) value, stack[top - 1], null);
+                }
+            }
+        }
+
+        return stack[0];
+    }
+
+    protected Memory build(Frame frame, StringBuilderExprToken token) throws Throwable {
+        StringBuilder builder = new StringBuilder();
+
+        for (Token el : token.getExpression()) {
+            if (el instanceof ExprStmtToken) {
+                builder.append(evaluate(frame, (ExprStmtToken) el));
+            } else if (el instanceof VariableExprToken) {
+                builder.append(frame.vars[(Integer) data.get(el)]);
+            } else {
+                builder.append(data.get(el));
+            }
+        }
+
+        return new StringMemory(builder.toString());
+    }
+
+    protected Memory call(Frame frame, CallExprToken token, Call call) throws Throwable {
+        List<ExprStmtToken> parameters = token.getParameters();
+        CompileFunction.Method method = call.method;
+
+        if (method == null) {
+            Memory[] args = null;
+
+            if (!parameters.isEmpty()) {
+                args = new Memory[parameters.size()];
+
+                int i = 0;
+                for (ExprStmtToken parameter : parameters) {
+                    args[i++] = evaluate(frame, parameter, true);
+                }
+            }
+
+            return InvokeHelper.call(frame.env, call.trace, call.lowerName, call.name, args, null, 0);
+        }
+
+        Class<?>[] types = method.parameterTypes;
+        Object[] passed = new Object[types.length];
+        Iterator<ExprStmtToken> iterator = parameters.iterator();
+
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == Environment.class) {
+                passed[i] = frame.env;
+            } else if (types[i] == TraceInfo.class) {
+                passed[i] = call.trace;
+            } else if (types[i] == Memory[].class) {
+                List<Memory> rest = new ArrayList<Memory>();
+
+                while (iterator.hasNext()) {
+                    Memory arg = evaluate(frame, iterator.next(), method.references[i]);
+                    rest.add(method.references[i] ? arg : arg.toImmutable());
+                }
+
+                passed[i] = rest.isEmpty() ? null : rest.toArray(new Memory[rest.size()]);
+            } else {
+                Memory arg = evaluate(frame, iterator.next(), method.references[i]);
+
+                if (method.references[i]) {
+                    passed[i] = arg;
+                } else if (types[i] == Memory.class) {
+                    passed[i] = method.mutableValues[i] ? arg.toImmutable() : arg.toValue();
+                } else {
+                    passed[i] = method.converters[i].run(arg);
+                }
+            }
+        }
+
+        try {
+            Object result = method.method.invoke(null, passed);
+            return method.resultType == void.class ? Memory.NULL : MemoryUtils.valueOf(result);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    protected Memory include(Frame frame, ImportExprToken token, TraceInfo trace) throws Throwable {
+        String path = evaluate(frame, token.getValue()).toString();
+
+        if (token instanceof IncludeExprToken) {
+            return frame.env.__include(path, frame.locals, trace);
+        } else if (token instanceof IncludeOnceExprToken) {
+            return frame.env.__includeOnce(path, frame.locals, trace);
+        } else if (token instanceof RequireExprToken) {
+            return frame.env.__require(path, frame.locals, trace);
+        } else {
+            return frame.env.__requireOnce(path, frame.locals, trace);
+        }
+    }
+
+    protected static class Frame {
+        final Environment env;
+        final ArrayMemory locals;
+        final Memory[] vars;
+
+        Frame(Environment env, ArrayMemory locals, Memory[] vars) {
+            this.env = env;
+            this.locals = locals;
+            this.vars = vars;
+        }
+    }
+
+    protected static class Call {
+        final String name;
+        final String lowerName;
+        final CompileFunction.Method method;
+        final TraceInfo trace;
+
+        Call(String name, CompileFunction.Method method, TraceInfo trace) {
+            this.name = name;
+            this.lowerName = name.toLowerCase();
+            this.method = method;
+            this.trace = trace;
+        }
+    }
+
+    protected static class Constant {
+        final String name;
+        final String lowerName;
+        final TraceInfo trace;
+
+        Constant(String name, TraceInfo trace) {
+            this.name = name;
+            this.lowerName = name.toLowerCase();
+            this.trace = trace;
+        }
+    }
+
+    static {
+        binaryOperators = new HashSet<Class<? extends OperatorExprToken>>(Arrays.<Class<? extends OperatorExprToken>>asList(
+                PlusExprToken.class, MinusExprToken.class, MulExprToken.class, DivExprToken.class,
+                ModExprToken.class, PowExprToken.class, ConcatExprToken.class, KeyValueExprToken.class,
+                EqualExprToken.class, BooleanNotEqualExprToken.class, IdenticalExprToken.class,
+                NotIdenticalExprToken.class, GreaterExprToken.class, GreaterOrEqualExprToken.class,
+                SmallerExprToken.class, SmallerOrEqualToken.class
+        ));
+
+        unaryOperators = new HashSet<Class<? extends OperatorExprToken>>(Arrays.<Class<? extends OperatorExprToken>>asList(
+                BooleanNotExprToken.class, UnarMinusExprToken.class
+        ));
+    }
+}
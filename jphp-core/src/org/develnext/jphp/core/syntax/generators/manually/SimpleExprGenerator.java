@@ -346,6 +346,12 @@ public class SimpleExprGenerator extends Generator<ExprStmtToken> {
                     nextToken(iterator), iterator, BraceExprToken.Kind.ANY
             );
             result.setValue(value);
+
+            // a variable yielded by reference is a reference, as for `$a = &$b`.
+            if (analyzer.getFunction().isReturnReference() && value != null
+                    && value.getTokens().size() == 1 && value.getSingle() instanceof VariableExprToken) {
+                analyzer.getFunction().variable((VariableExprToken) value.getSingle()).setReference(true);
+            }
         }
 
         return result;
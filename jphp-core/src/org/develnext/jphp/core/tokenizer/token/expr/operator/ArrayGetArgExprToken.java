@@ -0,0 +1,12 @@
+package org.develnext.jphp.core.tokenizer.token.expr.operator;
+
+/**
+ * `$arr[...]` as an argument of a call, the item is read by Memory.valueOfIndexAsArgument(), so a parameter
+ * by reference takes the reference of an existing item.
+ */
+public class ArrayGetArgExprToken extends ArrayGetExprToken {
+    public ArrayGetArgExprToken(ArrayGetExprToken token) {
+        super(token.getMeta());
+        setParameters(token.getParameters());
+    }
+}
@@ -12,6 +12,8 @@ import php.runtime.env.*;
 import php.runtime.exceptions.support.ErrorType;
 import php.runtime.ext.core.classes.WrapClassLoader;
 import php.runtime.ext.support.Extension;
+import php.runtime.loader.dump.BootImage;
+import php.runtime.loader.dump.ModuleCache;
 import php.runtime.loader.dump.ModuleDumper;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.memory.LongMemory;
@@ -33,6 +35,8 @@ public class Launcher {
 
     protected OutputStream out;
     protected boolean isDebug;
+    protected BootImage bootImage;
+    protected File profilerOutput;
 
     private static Launcher current;
 
@@ -78,6 +82,30 @@ public class Launcher {
         return getConfigValue(key, new StringMemory(def));
     }
 
+    /**
+     * Returns the integer value of the option or the default value if the option is not set.
+     */
+    protected long getConfigNumber(String name, long defaultValue, long minValue) {
+        String value = config.getProperty(name, "").trim();
+
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+
+        long result;
+        try {
+            result = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new LaunchException("Invalid value of the `" + name + "` option, '" + value + "' is not an integer");
+        }
+
+        if (result < minValue) {
+            throw new LaunchException("Invalid value of the `" + name + "` option, it must be at least " + minValue);
+        }
+
+        return result;
+    }
+
     public Collection<InputStream> getResources(String name) {
         List<InputStream> result = new ArrayList<InputStream>();
         try {
@@ -113,8 +141,12 @@ public class Launcher {
     }
 
     public void initModule(ModuleEntity moduleEntity){
-        compileScope.loadModule(moduleEntity);
-        compileScope.addUserModule(moduleEntity);
+        // modules of the boot image are already loaded.
+        if (compileScope.findUserModule(moduleEntity.getName()) != moduleEntity) {
+            compileScope.loadModule(moduleEntity);
+            compileScope.addUserModule(moduleEntity);
+        }
+
         environment.registerModule(moduleEntity);
     }
 
@@ -134,8 +166,25 @@ public class Launcher {
             return null;
         Context context = new Context(inputStream, file, environment.getDefaultCharset());
 
-        JvmCompiler compiler = new JvmCompiler(environment, context);
-        return compiler.compile(false);
+        ModuleEntity module = compileScope.findUserModule(context.getModuleName());
+        if (module != null) {
+            inputStream.close();
+            return module;
+        }
+
+        ModuleCache moduleCache = compileScope.getModuleCache();
+        module = moduleCache == null ? null : moduleCache.load(environment, context);
+
+        if (module == null) {
+            JvmCompiler compiler = new JvmCompiler(environment, context);
+            module = compiler.compile(false);
+
+            if (moduleCache != null) {
+                moduleCache.save(environment, context, module);
+            }
+        }
+
+        return module;
     }
 
     public ModuleEntity loadFrom(String file) throws IOException {
@@ -188,6 +237,84 @@ public class Launcher {
                 throw new LaunchException(e.getMessage());
             }
         }
+
+        String compileCache = config.getProperty("env.compileCache", "").trim();
+
+        if (!compileCache.isEmpty()) {
+            long maxSize = Long.parseLong(config.getProperty("env.compileCache.maxSize", "256").trim());
+            compileScope.setModuleCache(new ModuleCache(new File(compileCache), maxSize * 1024 * 1024));
+        }
+
+        // interpreted modules are not saved to the compile cache, so the interpreter is disabled by default with it.
+        compileScope.setInterpreterThreshold((int) getConfigNumber(
+                "env.interpreter.threshold",
+                compileCache.isEmpty() ? CompileScope.DEFAULT_INTERPRETER_THRESHOLD : 0,
+                0
+        ));
+
+        String bootImage = config.getProperty("env.bootImage", "").trim();
+
+        if (!bootImage.isEmpty()) {
+            this.bootImage = new BootImage(new File(bootImage));
+        }
+    }
+
+    /**
+     * Compiles modules of the `env.preload` option in parallel, its value is a list of files, directories
+     * and manifests separated by commas, the `env.preload.threads` option is the number of threads.
+     */
+    protected void preloadModules(String bootstrapFile) {
+        String preload = config.getProperty("env.preload", "").trim();
+
+        if (preload.isEmpty()) {
+            return;
+        }
+
+        String threads = config.getProperty("env.preload.threads", "").trim();
+        ModulePreloader preloader = threads.isEmpty()
+                ? new ModulePreloader(environment)
+                : new ModulePreloader(environment, Integer.parseInt(threads));
+
+        try {
+            for (String path : StringUtils.split(preload, ',')) {
+                if (!path.trim().isEmpty()) {
+                    preloader.add(path.trim());
+                }
+            }
+
+            if (bootstrapFile != null) {
+                preloader.scanFile(bootstrapFile);
+            }
+
+            preloader.preload();
+        } catch (IOException e) {
+            Startup.trace("Unable to preload modules, " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected void loadBootImage() {
+        if (bootImage != null) {
+            try {
+                bootImage.load(compileScope);
+            } catch (IOException e) {
+                Startup.trace("Unable to load the boot image, " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Saves compiled modules of the bootstrap to the boot image if they are changed.
+     */
+    public void saveBootImage() {
+        if (bootImage != null && bootImage.isModified(compileScope)) {
+            try {
+                bootImage.save(environment);
+            } catch (IOException e) {
+                Startup.trace("Unable to save the boot image, " + e.getMessage());
+            }
+        }
     }
 
     protected void loadExtensions() {
@@ -243,6 +370,8 @@ public class Launcher {
 
         }
 
+        loadBootImage();
+
         this.environment = getConfigValue("env.concurrent", "1").toBoolean()
                 ? new ConcurrentEnvironment(compileScope, out)
                 : new Environment(compileScope, out);
@@ -296,6 +425,8 @@ public class Launcher {
             environment.invokeMethod(loader, "register", Memory.TRUE);
         }
 
+        preloadModules(file);
+
         if (file != null && !file.isEmpty()){
             try {
                 ModuleEntity bootstrap = loadFrom(file);
@@ -317,15 +448,22 @@ public class Launcher {
                 environment.getGlobals().put("argv", argv);
                 environment.getGlobals().put("argc", LongMemory.valueOf(argv.size()));
 
+                startProfiler();
+
                 environment.pushCall(new CallStackItem(new TraceInfo(bootstrap.getName(), -1, -1)));
                 try {
                     bootstrap.includeNoThrow(environment);
+                    saveBootImage();
                 } finally {
                     environment.popCall();
                     compileScope.triggerProgramShutdown(environment);
 
-                    if (StringMemory.valueOf(config.getProperty("env.doFinal", "1")).toBoolean()) {
-                        environment.doFinal();
+                    try {
+                        if (StringMemory.valueOf(config.getProperty("env.doFinal", "1")).toBoolean()) {
+                            environment.doFinal();
+                        }
+                    } finally {
+                        stopProfiler();
                     }
                 }
             } catch (IOException e) {
@@ -335,6 +473,43 @@ public class Launcher {
             throw new LaunchException("Please set value of the `bootstrap.file` option in the launcher.conf file");
     }
 
+    /**
+     * Starts the sampling profiler if the `profiler.output` option is set, samples are written to this file
+     * by stopProfiler(), the `profiler.interval` option is the interval of samples in milliseconds.
+     */
+    public void startProfiler() {
+        String output = config.getProperty("profiler.output", "").trim();
+
+        if (!output.isEmpty() && getConfigValue("profiler.enabled", Memory.TRUE).toBoolean()) {
+            long interval = getConfigNumber("profiler.interval", Profiler.DEFAULT_INTERVAL, 1);
+            startProfiler(new File(output), interval);
+        }
+    }
+
+    public void startProfiler(File output, long interval) {
+        profilerOutput = output;
+        Profiler.start(interval);
+    }
+
+    /**
+     * Stops the profiler started by startProfiler() and writes its samples.
+     */
+    public void stopProfiler() {
+        if (profilerOutput != null) {
+            Profiler profiler = Profiler.stopCurrent();
+
+            try {
+                if (profiler != null) {
+                    profiler.write(profilerOutput);
+                }
+            } catch (IOException e) {
+                Startup.trace("Unable to write the profile, " + e.getMessage());
+            } finally {
+                profilerOutput = null;
+            }
+        }
+    }
+
     public boolean isDebug() {
         return isDebug;
     }
@@ -0,0 +1,564 @@
+package php.runtime.launcher;
+
+import org.develnext.jphp.core.compiler.jvm.JvmCompiler;
+import org.develnext.jphp.core.syntax.SyntaxAnalyzer;
+import org.develnext.jphp.core.tokenizer.Tokenizer;
+import org.develnext.jphp.core.tokenizer.token.CommentToken;
+import org.develnext.jphp.core.tokenizer.token.Token;
+import org.develnext.jphp.core.tokenizer.token.expr.BraceExprToken;
+import org.develnext.jphp.core.tokenizer.token.expr.operator.ConcatExprToken;
+import org.develnext.jphp.core.tokenizer.token.expr.value.FulledNameToken;
+import org.develnext.jphp.core.tokenizer.token.expr.value.ImportExprToken;
+import org.develnext.jphp.core.tokenizer.token.expr.value.NameToken;
+import org.develnext.jphp.core.tokenizer.token.expr.value.StringExprToken;
+import org.develnext.jphp.core.tokenizer.token.expr.value.macro.DirMacroToken;
+import org.develnext.jphp.core.tokenizer.token.stmt.ClassStmtToken;
+import php.runtime.Startup;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.env.message.SystemMessage;
+import php.runtime.env.handler.ErrorReportHandler;
+import php.runtime.exceptions.support.ErrorException;
+import php.runtime.loader.CompiledModuleCache;
+import php.runtime.loader.dump.ModuleCache;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles modules of an application on a pool of threads before the bootstrap, includes and autoloads of the
+ * application take the modules from the compiled modules of the class loader instead of compiling them one by one.
+ *
+ * Sources are files, directories (e.g. roots of autoloaders) and manifests with a path per line. Includes of the
+ * sources with constant paths (`'/path/file.php'` or `__DIR__ . '/file.php'`) are preloaded too. A module is compiled
+ * after modules of classes which it extends, implements or uses as traits, modules are defined by the class loader
+ * on the calling thread in this order. Modules which depend on classes from other places, modules with compile
+ * errors or warnings are skipped and compiled by their includes as usual. An include takes a preloaded module only
+ * while the classes which it extends, implements or uses as traits are declared by the including environment.
+ *
+ * Paths of modules must be the same as paths of their includes, e.g. absolute.
+ */
+public class ModulePreloader {
+    protected final Environment env;
+    protected final CompileScope scope;
+    protected final int threads;
+
+    protected final Map<String, Unit> units = new LinkedHashMap<String, Unit>();
+    protected final List<Unit> sources = new ArrayList<Unit>();
+
+    public ModulePreloader(Environment env, int threads) {
+        this.env = env;
+        this.scope = env.getScope();
+        this.threads = threads;
+    }
+
+    public ModulePreloader(Environment env) {
+        this(env, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Adds a file, a directory or a manifest file with a path per line, lines which start with # are ignored.
+     */
+    public void add(String path) throws IOException {
+        File file = new File(path);
+
+        if (file.isDirectory()) {
+            addDirectory(file);
+        } else if (path.endsWith(".php")) {
+            addFile(path);
+        } else if (file.isFile()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Adds *.php files of the directory and its subdirectories.
+     */
+    public void addDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addDirectory(file);
+            } else if (file.getName().endsWith(".php")) {
+                addFile(file.getPath());
+            }
+        }
+    }
+
+    public void addFile(String path) {
+        addSource(path, true);
+    }
+
+    /**
+     * Adds the file only to find its includes, the module of the file is not compiled (e.g. the bootstrap).
+     */
+    public void scanFile(String path) {
+        addSource(path, false);
+    }
+
+    protected void addSource(String path, boolean compile) {
+        if (new File(path).isFile()) {
+            sources.add(new Unit(path, compile));
+        }
+    }
+
+    /**
+     * Compiles and defines modules of the sources, returns the number of defined modules.
+     */
+    public int preload() throws InterruptedException {
+        long t = System.currentTimeMillis();
+        int count = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jphp-preloader-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // classes of the modules are resolved by environments of the threads, they do not run any code.
+        final ThreadLocal<Environment> environments = new ThreadLocal<Environment>() {
+            @Override
+            protected Environment initialValue() {
+                return newEnvironment();
+            }
+        };
+
+        try {
+            analyze(executor, environments);
+
+            for (List<Unit> wave : sort()) {
+                count += compile(executor, environments, wave);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (Startup.isTracing()) {
+            Startup.traceWithTime("Preload " + count + " modules on " + threads + " threads", t);
+        }
+
+        return count;
+    }
+
+    protected Environment newEnvironment() {
+        Environment result = new Environment(scope);
+        result.setErrorReportHandler(new ErrorReportHandler() {
+            @Override
+            public boolean onError(SystemMessage error) {
+                return false;
+            }
+
+            @Override
+            public boolean onFatal(ErrorException error) {
+                return false;
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Parses the sources and their includes.
+     */
+    protected void analyze(ExecutorService executor, final ThreadLocal<Environment> environments)
+            throws InterruptedException {
+        CompletionService<Unit> service = new ExecutorCompletionService<Unit>(executor);
+        CompiledModuleCache compiledModules = scope.getClassLoader().getCompiledModules();
+        Deque<Unit> queue = new ArrayDeque<Unit>(sources);
+        int pending = 0;
+
+        while (true) {
+            while (!queue.isEmpty()) {
+                final Unit unit = queue.poll();
+                Unit exists = units.get(unit.path);
+
+                if (exists != null) {
+                    if (unit.compile) {
+                        exists.compile = true;
+                    }
+
+                    continue;
+                }
+
+                units.put(unit.path, unit);
+
+                // e.g. modules of the boot image.
+                if (scope.findUserModule(unit.path) != null || isCompiled(compiledModules, unit.path)) {
+                    continue;
+                }
+
+                service.submit(new Callable<Unit>() {
+                    @Override
+                    public Unit call() throws Exception {
+                        analyze(environments.get(), unit);
+                        return unit;
+                    }
+                });
+                pending++;
+            }
+
+            if (pending == 0) {
+                break;
+            }
+
+            Unit unit;
+            try {
+                unit = service.take().get();
+            } catch (ExecutionException e) {
+                throw new LaunchException(e.getCause().getMessage());
+            }
+
+            pending--;
+
+            for (String include : unit.includes) {
+                queue.add(new Unit(include, true));
+            }
+        }
+    }
+
+    protected boolean isCompiled(CompiledModuleCache compiledModules, String path) {
+        try {
+            return compiledModules.get(env, new Context((InputStream) null, path, env.getDefaultCharset())) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    protected void analyze(Environment env, Unit unit) {
+        SystemMessage lastMessage = env.getLastMessage();
+
+        try {
+            InputStream input = new FileInputStream(unit.path);
+            try {
+                unit.context = new Context(input, unit.path, env.getDefaultCharset());
+
+                Tokenizer tokenizer = new Tokenizer(unit.context);
+                SyntaxAnalyzer analyzer = new SyntaxAnalyzer(env, tokenizer);
+
+                findIncludes(unit, tokenizer);
+
+                // warnings of the source are reported by its include.
+                if (env.getLastMessage() == lastMessage) {
+                    unit.analyzer = analyzer;
+                }
+            } finally {
+                input.close();
+            }
+        } catch (Throwable e) {
+            unit.analyzer = null;
+        }
+    }
+
+    protected void findIncludes(Unit unit, Tokenizer tokenizer) {
+        tokenizer.reset();
+
+        List<Token> tokens = new ArrayList<Token>();
+        Token token;
+        while ((token = tokenizer.nextToken()) != null) {
+            if (!(token instanceof CommentToken)) {
+                tokens.add(token);
+            }
+        }
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!(tokens.get(i) instanceof ImportExprToken)) {
+                continue;
+            }
+
+            int j = i + 1;
+            if (j < tokens.size() && tokens.get(j) instanceof BraceExprToken) {
+                j++;
+            }
+
+            String path = null;
+            if (j + 2 < tokens.size() && tokens.get(j) instanceof DirMacroToken
+                    && tokens.get(j + 1) instanceof ConcatExprToken) {
+                String value = getConstantString(tokens.get(j + 2));
+                String directory = new File(unit.path).getParent();
+
+                if (value != null && directory != null) {
+                    path = directory + value;
+                }
+            } else if (j < tokens.size()) {
+                path = getConstantString(tokens.get(j));
+            }
+
+            if (path != null && path.endsWith(".php") && new File(path).isFile()) {
+                unit.includes.add(path);
+            }
+        }
+    }
+
+    protected String getConstantString(Token token) {
+        if (token instanceof StringExprToken) {
+            StringExprToken string = (StringExprToken) token;
+
+            if (string.getQuote() == StringExprToken.Quote.SINGLE || string.getSegments().isEmpty()) {
+                return string.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns modules which are compiled, the modules of a wave depend only on modules of previous waves.
+     */
+    protected List<List<Unit>> sort() {
+        Map<String, List<Unit>> declared = new HashMap<String, List<Unit>>();
+
+        for (Unit unit : units.values()) {
+            if (unit.analyzer != null) {
+                for (ClassStmtToken clazz : unit.analyzer.getClasses()) {
+                    String name = clazz.getFulledName().toLowerCase();
+                    List<Unit> list = declared.get(name);
+
+                    if (list == null) {
+                        declared.put(name, list = new ArrayList<Unit>());
+                    }
+
+                    list.add(unit);
+                }
+            }
+        }
+
+        for (Unit unit : units.values()) {
+            if (unit.analyzer != null && unit.compile) {
+                unit.resolved = resolve(unit, declared);
+            }
+        }
+
+        List<List<Unit>> result = new ArrayList<List<Unit>>();
+        for (Unit unit : units.values()) {
+            int level = getLevel(unit);
+
+            if (level >= 0) {
+                while (result.size() <= level) {
+                    result.add(new ArrayList<Unit>());
+                }
+
+                result.get(level).add(unit);
+            }
+        }
+
+        return result;
+    }
+
+    protected boolean resolve(Unit unit, Map<String, List<Unit>> declared) {
+        for (ClassStmtToken clazz : unit.analyzer.getClasses()) {
+            List<String> names = new ArrayList<String>();
+
+            if (clazz.getExtend() != null) {
+                names.add(clazz.getExtend().getName().getName());
+            }
+
+            if (clazz.getImplement() != null) {
+                for (FulledNameToken name : clazz.getImplement()) {
+                    names.add(name.getName());
+                }
+            }
+
+            if (clazz.getUses() != null) {
+                for (NameToken name : clazz.getUses()) {
+                    names.add(name.getName());
+                }
+            }
+
+            for (String name : names) {
+                List<Unit> list = declared.get(name.toLowerCase());
+
+                if (list == null) {
+                    // classes of extensions.
+                    if (scope.fetchUserClass(name) == null) {
+                        return false;
+                    }
+                } else if (list.size() > 1 || !list.get(0).compile) {
+                    return false;
+                } else if (list.get(0) != unit && !unit.requires.contains(list.get(0))) {
+                    unit.requires.add(list.get(0));
+                }
+            }
+        }
+
+        return true;
+    }
+
+    protected int getLevel(Unit unit) {
+        if (unit.level != Unit.UNKNOWN) {
+            return unit.level;
+        }
+
+        if (!unit.resolved) {
+            return unit.level = Unit.SKIPPED;
+        }
+
+        // cyclic dependencies are skipped.
+        unit.level = Unit.SKIPPED;
+
+        int level = 0;
+        for (Unit depend : unit.requires) {
+            int dependLevel = getLevel(depend);
+
+            if (dependLevel < 0) {
+                return Unit.SKIPPED;
+            }
+
+            level = Math.max(level, dependLevel + 1);
+        }
+
+        return unit.level = level;
+    }
+
+    /**
+     * Compiles modules of the wave in parallel and defines them in the order of the wave.
+     */
+    protected int compile(ExecutorService executor, final ThreadLocal<Environment> environments, List<Unit> wave)
+            throws InterruptedException {
+        List<Future<ModuleEntity>> futures = new ArrayList<Future<ModuleEntity>>();
+
+        for (final Unit unit : wave) {
+            if (!isLoaded(unit.requires)) {
+                futures.add(null);
+                continue;
+            }
+
+            futures.add(executor.submit(new Callable<ModuleEntity>() {
+                @Override
+                public ModuleEntity call() throws Exception {
+                    return compile(environments.get(), unit);
+                }
+            }));
+        }
+
+        CompiledModuleCache compiledModules = scope.getClassLoader().getCompiledModules();
+        int count = 0;
+
+        for (int i = 0; i < wave.size(); i++) {
+            Unit unit = wave.get(i);
+
+            if (futures.get(i) == null) {
+                continue;
+            }
+
+            ModuleEntity module;
+            try {
+                module = futures.get(i).get();
+            } catch (ExecutionException e) {
+                module = null;
+            }
+
+            unit.analyzer = null;
+
+            if (module == null) {
+                continue;
+            }
+
+            try {
+                synchronized (scope) {
+                    scope.loadModule(module);
+                }
+
+                compiledModules.put(env, unit.context, module);
+            } catch (Throwable e) {
+                Startup.trace("Unable to preload '" + unit.path + "', " + e.getMessage());
+                continue;
+            }
+
+            unit.module = module;
+            count++;
+        }
+
+        return count;
+    }
+
+    protected boolean isLoaded(List<Unit> units) {
+        for (Unit unit : units) {
+            if (unit.module == null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected ModuleEntity compile(Environment env, Unit unit) {
+        try {
+            for (Unit depend : unit.requires) {
+                env.registerModule(depend.module, true);
+            }
+
+            ModuleCache moduleCache = scope.getModuleCache();
+            ModuleEntity module = moduleCache == null ? null : moduleCache.load(env, unit.context);
+
+            if (module == null) {
+                SystemMessage lastMessage = env.getLastMessage();
+
+                JvmCompiler compiler = new JvmCompiler(env, unit.context, unit.analyzer);
+                compiler.setInterpretable(false);
+                module = compiler.compile(false);
+
+                // warnings of the module are reported by its include.
+                if (env.getLastMessage() != lastMessage) {
+                    return null;
+                }
+
+                if (moduleCache != null) {
+                    moduleCache.save(env, unit.context, module);
+                }
+            }
+
+            return module;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    protected static class Unit {
+        final static int UNKNOWN = -2;
+        final static int SKIPPED = -1;
+
+        final String path;
+        final List<String> includes = new ArrayList<String>();
+        final List<Unit> requires = new ArrayList<Unit>();
+
+        boolean compile;
+        boolean resolved;
+        int level = UNKNOWN;
+
+        Context context;
+        SyntaxAnalyzer analyzer;
+        ModuleEntity module;
+
+        Unit(String path, boolean compile) {
+            this.path = path;
+            this.compile = compile;
+        }
+    }
+}
@@ -93,6 +93,17 @@ public class ArraysTest extends JvmCompilerCase {
         Assert.assertEquals(1, memory.toValue(ArrayMemory.class).size());
     }
 
+    @Test
+    public void testPacked() {
+        check("arrays/packed.php");
+        check("arrays/packed_ref_args.php");
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        check("arrays/copy_on_write.php");
+    }
+
     @Test
     public void testBugs() {
         check("arrays/bug148.php");
@@ -125,6 +125,16 @@ public class ClassesTest extends JvmCompilerCase {
         check("classes/autoload_duplicate_classes.php");
     }
 
+    @Test
+    public void testMethodCallSite() {
+        check("classes/method_call_site.php");
+    }
+
+    @Test
+    public void testPropertySlots() {
+        check("classes/property_slots.php");
+    }
+
     @Test
     public void testBugs() {
         check("classes/bug107.php");
@@ -0,0 +1,30 @@
+package org.develnext.jphp.core.compiler.jvm;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.env.CompileScope;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class EchoConstantTest extends JvmCompilerCase {
+    @Override
+    protected CompileScope newScope() {
+        // adjacent constant echoes are merged only without debug mode
+        CompileScope scope = super.newScope();
+        scope.setDebugMode(false);
+        return scope;
+    }
+
+    @Test
+    public void testMerged() {
+        check("output_memory/echo_constant.php");
+    }
+
+    @Test
+    public void testWarnings() {
+        check("output_memory/echo_constant_warning.php");
+    }
+}
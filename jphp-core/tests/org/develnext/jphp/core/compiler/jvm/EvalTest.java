@@ -25,6 +25,12 @@ public class EvalTest extends JvmCompilerCase {
         Assert.assertEquals("success", memory.toString());
     }
 
+    @Test
+    public void testCached(){
+        Memory memory = includeResource("eval/cached.php");
+        Assert.assertEquals("success", memory.toString());
+    }
+
     @Test
     public void testInvalid(){
         Memory memory = includeResource("eval/invalid.php");
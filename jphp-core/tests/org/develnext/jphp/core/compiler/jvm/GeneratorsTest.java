@@ -7,6 +7,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
 import php.runtime.env.CompileScope;
 import php.runtime.env.DieException;
 
@@ -197,6 +198,21 @@ public class GeneratorsTest extends JvmCompilerCase {
         check("generators/finally/yield_yield.php");
     }
 
+    @Test
+    public void testStateMachine() {
+        check("generators/state_machine.php");
+
+        int threads = Thread.activeCount();
+        Memory count = run(
+                "$gen = function () { yield 1; yield 2; }; $list = [];" +
+                "for ($i = 0; $i < 500; $i++) { $g = $gen(); $g->current(); $list[] = $g; }" +
+                "return count($list)", false
+        );
+
+        Assert.assertEquals(500, count.toInteger());
+        Assert.assertTrue(Thread.activeCount() - threads < 100);
+    }
+
     @Test
     public void testNestedCallsWithDie() {
         try {
@@ -0,0 +1,198 @@
+package org.develnext.jphp.core.compiler.jvm;
+
+import org.develnext.jphp.core.interpreter.InterpretedModuleEntity;
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.exceptions.support.ErrorType;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class InterpreterTest extends JvmCompilerCase {
+    @Override
+    protected CompileScope newScope() {
+        // the interpreter is not used in the debug mode
+        CompileScope scope = super.newScope();
+        scope.setDebugMode(false);
+        return scope;
+    }
+
+    @Override
+    public boolean isCompiled() {
+        // interpreted modules are not dumped, the compiled mode is compared in testResources()
+        return false;
+    }
+
+    private ModuleEntity compile(Environment env, Context context) throws IOException {
+        JvmCompiler compiler = new JvmCompiler(env, context);
+        ModuleEntity module = compiler.compile(false);
+        env.getScope().loadModule(module);
+
+        return module;
+    }
+
+    private ModuleEntity compile(Environment env, String code) throws IOException {
+        return compile(env, new Context(code));
+    }
+
+    private ModuleEntity compileResource(Environment env, String name) throws IOException {
+        File file = new File(Thread.currentThread().getContextClassLoader().getResource("resources/" + name).getFile());
+        return compile(env, new Context(new org.develnext.jphp.core.tester.Test(file).getFile(), file));
+    }
+
+    @Test
+    public void testExpressions() {
+        check("interpreter/expressions.php");
+    }
+
+    @Test
+    public void testReturn() {
+        check("interpreter/return.php");
+    }
+
+    @Test
+    public void testInterpretable() throws IOException {
+        Environment env = new Environment(newScope());
+
+        Assert.assertTrue(compile(env, "$x = [1, 2]; echo count($x);") instanceof InterpretedModuleEntity);
+        Assert.assertTrue(compileResource(env, "interpreter/expressions.php") instanceof InterpretedModuleEntity);
+        Assert.assertTrue(compileResource(env, "interpreter/return.php") instanceof InterpretedModuleEntity);
+        Assert.assertFalse(compile(env, "function foo() { }") instanceof InterpretedModuleEntity);
+        Assert.assertFalse(compile(env, "for ($i = 0; $i < 2; $i++) { }") instanceof InterpretedModuleEntity);
+        Assert.assertFalse(compile(env, "$x = function() { };") instanceof InterpretedModuleEntity);
+        Assert.assertFalse(compile(env, "$x = &$y;") instanceof InterpretedModuleEntity);
+
+        env.getScope().setInterpreterThreshold(0);
+        Assert.assertFalse(compile(env, "echo 1;") instanceof InterpretedModuleEntity);
+    }
+
+    @Test
+    public void testPromote() throws Throwable {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Environment env = new Environment(newScope(), output);
+        env.getScope().setInterpreterThreshold(2);
+
+        InterpretedModuleEntity module = (InterpretedModuleEntity) compile(env, "$y = $x * 2; echo $y; return $y;");
+
+        for (int i = 1; i <= 2; i++) {
+            ArrayMemory locals = new ArrayMemory();
+            locals.refOfIndex("x").assign(i);
+
+            Assert.assertEquals(i * 2, module.include(env, locals).toLong());
+            Assert.assertEquals(i * 2, locals.valueOfIndex("y").toLong());
+        }
+
+        Assert.assertEquals(2, module.getIncludeCount());
+
+        // modules are compiled one by one, so the module is already compiled after the threshold
+        ModuleEntity compiled = module.promote(env.getScope()).get();
+        Assert.assertNotNull(compiled);
+        Assert.assertTrue(compiled.isCompiled());
+        Assert.assertSame(compiled, module.getCompiled());
+
+        ArrayMemory locals = new ArrayMemory();
+        locals.refOfIndex("x").assign(5);
+
+        Assert.assertEquals(Memory.Type.INT, module.include(env, locals).type);
+        Assert.assertEquals(10, locals.valueOfIndex("y").toLong());
+        Assert.assertEquals(2, module.getIncludeCount());
+
+        env.flushAll();
+        Assert.assertEquals("2410", output.toString());
+    }
+
+    /**
+     * Runs all test resources which the interpreter can execute with the threshold and compares the output
+     * with the output of the compiled module.
+     */
+    @Test
+    public void testResources() throws Throwable {
+        File root = new File(Thread.currentThread().getContextClassLoader().getResource("resources").getFile());
+
+        List<File> files = new ArrayList<>();
+        collectResources(root, files);
+
+        int interpreted = 0;
+        for (File file : files) {
+            String actual = runResource(file, 1000);
+
+            if (actual != null) {
+                Assert.assertEquals(file.getPath(), runResource(file, 0), actual);
+                interpreted++;
+            }
+        }
+
+        Assert.assertTrue("Interpreted resources: " + interpreted, interpreted >= 10);
+    }
+
+    private static void collectResources(File dir, List<File> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectResources(file, result);
+            } else if (file.getName().endsWith(".php") && !file.getName().contains(".inc")) {
+                result.add(file);
+            }
+        }
+    }
+
+    /**
+     * Returns the output of the resource or null if the module is not interpreted with the threshold.
+     */
+    private String runResource(File file, int threshold) throws Throwable {
+        org.develnext.jphp.core.tester.Test test = new org.develnext.jphp.core.tester.Test(file);
+        if (test.getFile() == null) {
+            return null;
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        Environment env = new Environment(newScope(), output);
+        env.getScope().setInterpreterThreshold(threshold);
+        env.setErrorFlags(ErrorType.E_ALL.value);
+
+        ModuleEntity module;
+        try {
+            module = compile(env, new Context(test.getFile(), file));
+        } catch (Throwable e) {
+            // resources of compile errors
+            return null;
+        }
+
+        if (threshold > 0 && !(module instanceof InterpretedModuleEntity)) {
+            return null;
+        }
+
+        try {
+            env.registerModule(module);
+            module.include(env);
+            env.doFinal();
+        } catch (Throwable e) {
+            env.flushAll();
+            return output.toString() + "\n" + e.getClass().getName() + ": " + e.getMessage();
+        }
+
+        return output.toString();
+    }
+}
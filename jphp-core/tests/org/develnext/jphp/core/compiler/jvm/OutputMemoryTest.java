@@ -40,4 +40,9 @@ public class OutputMemoryTest extends JvmCompilerCase {
     public void testDebugInfo() {
         check("output_memory/debug_info.php");
     }
+
+    @Test
+    public void testEchoConstant() {
+        check("output_memory/echo_constant.php");
+    }
 }
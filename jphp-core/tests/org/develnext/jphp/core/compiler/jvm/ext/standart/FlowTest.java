@@ -37,4 +37,9 @@ public class FlowTest extends JvmCompilerCase {
     public void testToArray() {
         check("ext/standard/flow/toarray_001.php");
     }
+
+    @Test
+    public void testParallel() {
+        check("ext/standard/flow/parallel_001.php");
+    }
 }
@@ -1,11 +1,18 @@
 package org.develnext.jphp.core.compiler.jvm.ext.standart;
 
 import org.develnext.jphp.core.compiler.jvm.JvmCompilerCase;
+import org.junit.Assert;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
+import php.runtime.memory.ArrayMemory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 @RunWith(JUnit4.class)
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
@@ -22,5 +29,23 @@ public class IOTest extends JvmCompilerCase {
     public void testStream() {
         check("ext/standard/io/stream_001.php");
         check("ext/standard/io/stream_002.php");
+        check("ext/standard/io/stream_003.php");
+    }
+
+    @Test
+    public void testWriteWithoutClose() throws IOException {
+        ArrayMemory paths = includeResource("ext/standard/io/stream_004.php").toValue(ArrayMemory.class);
+
+        Assert.assertEquals("hello\n", readAndDelete(paths.valueOfIndex(0)));
+        Assert.assertEquals("world\n", readAndDelete(paths.valueOfIndex(1)));
+    }
+
+    private static String readAndDelete(Memory path) throws IOException {
+        File file = new File(path.toString());
+        try {
+            return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        } finally {
+            file.delete();
+        }
     }
 }
@@ -15,6 +15,7 @@ public class SharedTest extends JvmCompilerCase {
     public void testValue() {
         check("ext/standard/shared/value_001.php");
         check("ext/standard/shared/value_002.php");
+        check("ext/standard/shared/value_003.php");
     }
 
     @Test
@@ -26,6 +27,7 @@ public class SharedTest extends JvmCompilerCase {
     @Test
     public void testMap() {
         check("ext/standard/shared/map_001.php");
+        check("ext/standard/shared/map_002.php");
     }
 
     @Test
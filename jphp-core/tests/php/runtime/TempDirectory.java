@@ -0,0 +1,84 @@
+package php.runtime;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Temporary directory of a test, it is deleted with all its files when the tests are finished.
+ */
+public class TempDirectory {
+    private final static List<File> directories = new ArrayList<File>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (directories) {
+                    for (File directory : directories) {
+                        delete(directory);
+                    }
+                }
+            }
+        }));
+    }
+
+    private final File root;
+
+    public TempDirectory(String prefix) throws IOException {
+        root = Files.createTempDirectory(prefix).toFile();
+
+        synchronized (directories) {
+            directories.add(root);
+        }
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    public File file(String name) {
+        return new File(root, name);
+    }
+
+    /**
+     * Writes the content in UTF-8, parent directories of the file are created.
+     */
+    public File write(String name, String content) throws IOException {
+        File file = file(name);
+        file.getParentFile().mkdirs();
+
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+
+        return file;
+    }
+
+    /**
+     * Writes the content and sets the modification time, sources of the same size are told apart by the time.
+     */
+    public File write(String name, String content, long modified) throws IOException {
+        File file = write(name, content);
+        file.setLastModified(modified);
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+
+        if (files != null) {
+            for (File one : files) {
+                delete(one);
+            }
+        }
+
+        file.delete();
+    }
+}
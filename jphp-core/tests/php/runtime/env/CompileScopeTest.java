@@ -0,0 +1,56 @@
+package php.runtime.env;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.ext.CoreExtension;
+import php.runtime.reflection.ClassEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+@RunWith(JUnit4.class)
+public class CompileScopeTest {
+    @Test
+    public void testNativeClassOnce() throws Exception {
+        final CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+
+        ClassEntity entity = new Environment(scope).fetchClass("php\\lang\\System");
+        Assert.assertTrue(entity != null);
+        Assert.assertTrue(entity == new Environment(scope).fetchClass("PHP\\LANG\\SYSTEM"));
+        Assert.assertTrue(entity == scope.fetchUserClass("php\\lang\\system"));
+    }
+
+    @Test
+    public void testNativeClassConcurrent() throws Exception {
+        final CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<ClassEntity> task = new Callable<ClassEntity>() {
+                @Override
+                public ClassEntity call() throws Exception {
+                    return scope.fetchUserClass("php\\lang\\Thread");
+                }
+            };
+
+            List<Future<ClassEntity>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(task));
+            }
+
+            ClassEntity entity = results.get(0).get();
+            Assert.assertTrue(entity != null);
+
+            for (Future<ClassEntity> result : results) {
+                Assert.assertTrue(entity == result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
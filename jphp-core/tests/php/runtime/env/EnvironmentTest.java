@@ -0,0 +1,100 @@
+package php.runtime.env;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.TempDirectory;
+import php.runtime.ext.CoreExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+@RunWith(JUnit4.class)
+public class EnvironmentTest {
+    private final TempDirectory directory;
+    private final CompileScope scope;
+
+    public EnvironmentTest() throws IOException {
+        directory = new TempDirectory("jphp-environment");
+
+        scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+    }
+
+    private String include(Environment env, ByteArrayOutputStream output, File file) throws Throwable {
+        output.reset();
+
+        env.importModule(new Context(file)).include(env);
+        env.doFinal();
+
+        return output.toString();
+    }
+
+    @Test
+    public void testReset() throws Throwable {
+        File bootstrap = directory.write("bootstrap.php", "<?php class Counter { static $count = 0; static $items = [1]; } $config = ['debug' => false];");
+        File request = directory.write("request.php", "<?php "
+                + "class Request { } "
+                + "set_error_handler(function () { echo 'handler;'; }); "
+                + "Counter::$count++; Counter::$items[] = 2; $config['debug'] = true; $GLOBALS['extra'] = 1; "
+                + "ob_start(); "
+                + "echo Counter::$count, ';', count(Counter::$items), ';', var_export($config['debug'], true), ';';"
+                + "ob_end_flush();");
+        File check = directory.write("check.php", "<?php "
+                + "echo Counter::$count, ';', count(Counter::$items), ';', var_export($config['debug'], true), ';';"
+                + "echo isset($extra) ? 'extra' : 'none', ';', class_exists('Request', false) ? 'declared' : 'new';");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Environment env = new Environment(scope, output);
+
+        include(env, output, bootstrap);
+        env.snapshot();
+
+        Object token = env.getCallCacheToken();
+
+        Assert.assertEquals("1;2;true;", include(env, output, request));
+
+        env.reset();
+        Assert.assertNotSame(token, env.getCallCacheToken());
+        Assert.assertEquals("0;1;false;none;new", include(env, output, check));
+
+        env.reset();
+        Assert.assertEquals("1;2;true;", include(env, output, request));
+    }
+
+    @Test
+    public void testEchoFile() throws Throwable {
+        StringBuilder sb = new StringBuilder("<?php ");
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i % 10);
+        }
+
+        String content = sb.toString();
+        RandomAccessFile file = new RandomAccessFile(directory.write("content.txt", content), "r");
+
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Environment env = new Environment(scope, output);
+
+            env.echo("head;");
+            Assert.assertEquals(content.length() - 6, env.echo(file.getChannel(), 6, file.length()));
+            Assert.assertEquals("head;" + content.substring(6), output.toString());
+
+            output.reset();
+            env.pushOutputBuffer(null, 0, true);
+            Assert.assertEquals(5, env.echo(file.getChannel(), 0, 5));
+            Assert.assertEquals("", output.toString());
+            Assert.assertEquals("<?php", env.peekOutputBuffer().getContents().toString());
+
+            env.doFinal();
+            Assert.assertEquals("<?php", output.toString());
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package php.runtime.env;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.TempDirectory;
+import php.runtime.env.handler.LineProbes;
+import php.runtime.env.handler.TickHandler;
+import php.runtime.ext.CoreExtension;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.LongMemory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class LineProbesTest {
+    private final TempDirectory directory;
+
+    public LineProbesTest() throws IOException {
+        directory = new TempDirectory("jphp-line-probes");
+    }
+
+    @Test
+    public void testActiveLines() throws Throwable {
+        File file = directory.write("probes.php", "<?php\n"
+                + "function test($a) {\n"
+                + "    $b = $a * 2;\n"
+                + "    return $a + $b;\n"
+                + "}\n"
+                + "echo test(1), ';', test(2);");
+
+        final List<String> ticks = new ArrayList<String>();
+
+        CompileScope scope = new CompileScope();
+        scope.setDebugMode(true);
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+        scope.setTickHandler(new TickHandler() {
+            @Override
+            public void onTick(Environment env, TraceInfo trace, ArrayMemory locals) {
+                ticks.add(trace.getStartLine() + ":" + locals.valueOfIndex("a") + "," + locals.valueOfIndex("b"));
+                locals.refOfIndex("b").assign(LongMemory.valueOf(10));
+            }
+        });
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Environment env = new Environment(scope, output);
+        Context context = new Context(file);
+
+        LineProbes probes = LineProbes.of(context.getFileName());
+        probes.setActive(3, true);
+
+        try {
+            env.importModule(context).include(env);
+            env.doFinal();
+
+            Assert.assertEquals("11;12", output.toString());
+            Assert.assertEquals("[3:1,2, 3:2,4]", ticks.toString());
+
+            probes.setActive(3, false);
+            Assert.assertFalse(probes.isActive(3));
+        } finally {
+            probes.clear();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package php.runtime.env;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.TempDirectory;
+import php.runtime.env.handler.LineProbes;
+import php.runtime.env.handler.TickHandler;
+import php.runtime.ext.CoreExtension;
+import php.runtime.memory.ArrayMemory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class ProfilerTest {
+    private final TempDirectory directory;
+
+    public ProfilerTest() throws IOException {
+        directory = new TempDirectory("jphp-profiler");
+    }
+
+    @Test
+    public void testSample() throws Throwable {
+        File file = directory.write("profiler.php", "<?php\n"
+                + "class Foo {\n"
+                + "    function bar($a) {\n"
+                + "        return $a + 1;\n"
+                + "    }\n"
+                + "}\n"
+                + "function test($a) {\n"
+                + "    return (new Foo)->bar($a);\n"
+                + "}\n"
+                + "echo test(1), ';', test(2);");
+
+        final Profiler profiler = new Profiler();
+
+        CompileScope scope = new CompileScope();
+        scope.setDebugMode(true);
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+        scope.setTickHandler(new TickHandler() {
+            @Override
+            public void onTick(Environment env, TraceInfo trace, ArrayMemory locals) {
+                profiler.sample();
+            }
+        });
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Environment env = new Environment(scope, output);
+        Context context = new Context(file);
+
+        LineProbes probes = LineProbes.of(context.getFileName());
+        probes.setActive(3, true);
+
+        try {
+            env.importModule(context).include(env);
+            env.doFinal();
+        } finally {
+            probes.clear();
+        }
+
+        Assert.assertEquals("2;3", output.toString());
+
+        Map<String, Long> stacks = profiler.getStacks();
+        Assert.assertEquals(Long.valueOf(2), stacks.get("{main};test;Foo::bar"));
+
+        StringWriter collapsed = new StringWriter();
+        profiler.writeCollapsed(collapsed);
+        Assert.assertTrue(collapsed.toString().contains("{main};test;Foo::bar 2\n"));
+
+        StringWriter svg = new StringWriter();
+        profiler.writeFlameGraph(svg);
+        Assert.assertTrue(svg.toString().contains("<title>Foo::bar (2 samples)</title>"));
+
+        profiler.reset();
+        Assert.assertEquals(0, profiler.getSampleCount());
+        Assert.assertTrue(profiler.getStacks().isEmpty());
+    }
+
+    @Test
+    public void testBackgroundThread() throws Throwable {
+        Environment env = new Environment(new CompileScope(), new ByteArrayOutputStream());
+        env.pushCall(new CallStackItem(TraceInfo.UNKNOWN, null, null, "sleeping", null, null));
+
+        Profiler profiler = new Profiler(1);
+        profiler.start();
+
+        try {
+            Assert.assertTrue(profiler.isRunning());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!profiler.getStacks().containsKey("{main};sleeping") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            profiler.stop();
+            env.popCall();
+        }
+
+        Assert.assertFalse(profiler.isRunning());
+        Assert.assertTrue(profiler.getStacks().containsKey("{main};sleeping"));
+    }
+}
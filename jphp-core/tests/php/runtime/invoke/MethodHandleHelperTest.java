@@ -0,0 +1,102 @@
+package php.runtime.invoke;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.StringMemory;
+
+import java.lang.invoke.MethodHandle;
+
+@RunWith(JUnit4.class)
+public class MethodHandleHelperTest {
+    public static class Target {
+        protected final String name;
+
+        public Target(String name) {
+            this.name = name;
+        }
+
+        public Memory method(Environment env, Memory[] args) {
+            return new StringMemory(name + ":" + args[0]);
+        }
+
+        public static Memory staticMethod(Environment env, Memory[] args) {
+            return new StringMemory("static:" + args[0]);
+        }
+
+        public static Memory function(Environment env, Memory[] args) {
+            throw new IllegalStateException("function " + args[0]);
+        }
+
+        public static Memory module(Environment env, Memory[] args, ArrayMemory locals) {
+            return locals.valueOfIndex("x").toImmutable();
+        }
+    }
+
+    @Test
+    public void testMethod() throws Throwable {
+        MethodHandle handle = MethodHandleHelper.forMethod(Target.class.getMethod("method", Environment.class, Memory[].class));
+        Assert.assertEquals(MethodHandleHelper.METHOD_TYPE, handle.type());
+
+        Memory result = (Memory) handle.invokeExact((Object) new Target("a"), (Environment) null, new Memory[]{LongMemory.valueOf(1)});
+        Assert.assertEquals("a:1", result.toString());
+    }
+
+    @Test
+    public void testStaticMethod() throws Throwable {
+        MethodHandle handle = MethodHandleHelper.forMethod(
+                Target.class.getMethod("staticMethod", Environment.class, Memory[].class)
+        );
+        Assert.assertEquals(MethodHandleHelper.METHOD_TYPE, handle.type());
+
+        // the object of a static method is ignored
+        Memory result = (Memory) handle.invokeExact((Object) null, (Environment) null, new Memory[]{LongMemory.valueOf(2)});
+        Assert.assertEquals("static:2", result.toString());
+    }
+
+    @Test
+    public void testFunction() throws Throwable {
+        MethodHandle handle = MethodHandleHelper.forFunction(Target.class.getMethod("function", Environment.class, Memory[].class));
+        Assert.assertEquals(MethodHandleHelper.FUNCTION_TYPE, handle.type());
+
+        try {
+            Memory result = (Memory) handle.invokeExact((Environment) null, new Memory[]{LongMemory.valueOf(3)});
+            Assert.fail("The target exception is not thrown");
+        } catch (NativeInvoker.TargetException e) {
+            Assert.assertTrue(e.getTargetException() instanceof IllegalStateException);
+            Assert.assertEquals("function 3", e.getTargetException().getMessage());
+        }
+    }
+
+    @Test
+    public void testModule() throws Throwable {
+        MethodHandle handle = MethodHandleHelper.forModule(
+                Target.class.getMethod("module", Environment.class, Memory[].class, ArrayMemory.class)
+        );
+        Assert.assertEquals(MethodHandleHelper.MODULE_TYPE, handle.type());
+
+        ArrayMemory locals = new ArrayMemory();
+        locals.refOfIndex("x").assign(4);
+
+        Memory result = (Memory) handle.invokeExact((Environment) null, new Memory[0], locals);
+        Assert.assertEquals(4, result.toLong());
+    }
+
+    @Test
+    public void testWrongObject() throws Throwable {
+        MethodHandle handle = MethodHandleHelper.forMethod(Target.class.getMethod("method", Environment.class, Memory[].class));
+
+        // errors of the handle are not exceptions of the target
+        try {
+            Memory result = (Memory) handle.invokeExact((Object) "string", (Environment) null, new Memory[]{LongMemory.valueOf(5)});
+            Assert.fail("The object of another class is passed");
+        } catch (ClassCastException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package php.runtime.invoke;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.Memory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.ext.CoreExtension;
+import php.runtime.lang.IObject;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.StringMemory;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.ModuleEntity;
+
+@RunWith(JUnit4.class)
+public class NativeInvokerTest {
+    public static class Target {
+        public Memory method(Environment env, Memory[] args) {
+            return new StringMemory("method:" + args[0]);
+        }
+
+        public static Memory staticMethod(Environment env, Memory[] args) {
+            throw new IllegalStateException("static " + args[0]);
+        }
+
+        public static Memory module(Environment env, Memory[] args, ArrayMemory locals) {
+            return locals.valueOfIndex("x").toImmutable();
+        }
+
+        protected Memory protectedMethod(Environment env, Memory[] args) {
+            return new StringMemory("protected");
+        }
+    }
+
+    @Test
+    public void testGenerated() throws Throwable {
+        NativeInvoker invoker = NativeInvoker.of(Target.class.getMethod("method", Environment.class, Memory[].class));
+
+        Assert.assertTrue(invoker.getClass().getName().startsWith("php.runtime.invoke.NativeInvoker$"));
+        Assert.assertEquals("method:1", invoker.invoke(new Target(), null, new Memory[]{LongMemory.valueOf(1)}).toString());
+
+        // one invoker for the method
+        Assert.assertSame(invoker, NativeInvoker.of(Target.class.getMethod("method", Environment.class, Memory[].class)));
+    }
+
+    @Test
+    public void testTargetException() throws Throwable {
+        NativeInvoker invoker = NativeInvoker.of(Target.class.getMethod("staticMethod", Environment.class, Memory[].class));
+
+        try {
+            invoker.invoke(null, null, new Memory[]{LongMemory.valueOf(2)});
+            Assert.fail("The target exception is not thrown");
+        } catch (NativeInvoker.TargetException e) {
+            Assert.assertTrue(e.getTargetException() instanceof IllegalStateException);
+            Assert.assertEquals("static 2", e.getTargetException().getMessage());
+        }
+    }
+
+    @Test
+    public void testWrongObject() throws Throwable {
+        NativeInvoker invoker = NativeInvoker.of(Target.class.getMethod("method", Environment.class, Memory[].class));
+
+        // errors of the invoker are not exceptions of the target
+        try {
+            invoker.invoke("string", null, new Memory[]{LongMemory.valueOf(3)});
+            Assert.fail("The object of another class is passed");
+        } catch (ClassCastException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testModule() throws Throwable {
+        NativeInvoker invoker = NativeInvoker.of(
+                Target.class.getMethod("module", Environment.class, Memory[].class, ArrayMemory.class)
+        );
+
+        ArrayMemory locals = new ArrayMemory();
+        locals.refOfIndex("x").assign(4);
+
+        Assert.assertEquals(4, invoker.include(null, new Memory[0], locals).toLong());
+    }
+
+    @Test
+    public void testHandleFallback() throws Throwable {
+        NativeInvoker invoker = NativeInvoker.of(
+                Target.class.getDeclaredMethod("protectedMethod", Environment.class, Memory[].class)
+        );
+
+        Assert.assertTrue(invoker instanceof NativeInvoker.HandleInvoker);
+        Assert.assertEquals("protected", invoker.invoke(new Target(), null, new Memory[0]).toString());
+    }
+
+    @Test
+    public void testCompiledClass() throws Throwable {
+        CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+
+        Environment env = new Environment(scope);
+        ModuleEntity module = env.importModule(new Context(
+                "class A { function foo($x) { return $x * 2; } static function bar() { throw new Exception('bar'); } }" +
+                "function baz($x) { return $x + 1; } $y = 5;"
+        ));
+        module.include(env);
+
+        ClassEntity a = env.fetchClass("A");
+        IObject object = a.newObject(env, TraceInfo.UNKNOWN, true);
+
+        NativeInvoker invoker = a.findMethod("foo").getNativeInvoker();
+        Assert.assertTrue(invoker.getClass().getName().startsWith("php.runtime.invoke.NativeInvoker$"));
+        Assert.assertSame(scope.getClassLoader().getInvokerLoader(), invoker.getClass().getClassLoader());
+
+        Assert.assertEquals(42, a.findMethod("foo").invokeDynamic(object, env, LongMemory.valueOf(21)).toLong());
+        Assert.assertEquals(11, env.fetchFunction("baz").invoke(env, TraceInfo.UNKNOWN, new Memory[]{LongMemory.valueOf(10)}).toLong());
+        Assert.assertFalse(module.getNativeInvoker() instanceof NativeInvoker.ModuleHandleInvoker);
+        Assert.assertEquals(5, env.getGlobals().valueOfIndex("y").toLong());
+
+        // exceptions of php code are thrown as they are
+        try {
+            a.findMethod("bar").invokeStatic(env);
+            Assert.fail("The exception of bar() is not thrown");
+        } catch (php.runtime.lang.exception.BaseBaseException e) {
+            Assert.assertEquals("bar", e.getMessage(env).toString());
+        }
+    }
+}
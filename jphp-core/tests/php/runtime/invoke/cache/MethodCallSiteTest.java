@@ -0,0 +1,119 @@
+package php.runtime.invoke.cache;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.Memory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.exceptions.FatalException;
+import php.runtime.ext.CoreExtension;
+import php.runtime.memory.ObjectMemory;
+
+import java.lang.invoke.MethodHandle;
+
+@RunWith(JUnit4.class)
+public class MethodCallSiteTest {
+    private final static String CODE = "class A { function foo() { return 'A'; } }" +
+            "class B extends A { function foo() { return 'B'; } }" +
+            "class C extends A { } class D extends A { } class E extends A { }" +
+            "class M { function __call($name, $args) { return 'M::' . $name; } }" +
+            "class P { private function foo() { return 'private'; } }" +
+            "class R { protected function foo() { return 'protected'; } }";
+
+    @Test
+    public void testPolymorphicAndMegamorphic() throws Throwable {
+        Environment env = newEnvironment();
+        MethodCallSite site = new MethodCallSite(MethodCallSite.TYPE, "foo");
+
+        Assert.assertEquals("A", invoke(site, env, "A"));
+        Assert.assertEquals("A", invoke(site, env, "A"));
+        Assert.assertEquals(1, site.getDepth());
+
+        Assert.assertEquals("B", invoke(site, env, "B"));
+        Assert.assertEquals("A", invoke(site, env, "C"));
+        Assert.assertEquals("A", invoke(site, env, "D"));
+        Assert.assertEquals(4, site.getDepth());
+        Assert.assertFalse(site.isMegamorphic());
+
+        Assert.assertEquals("B", invoke(site, env, "B"));
+        Assert.assertEquals(4, site.getDepth());
+
+        Assert.assertEquals("A", invoke(site, env, "E"));
+        Assert.assertTrue(site.isMegamorphic());
+
+        Assert.assertEquals("A", invoke(site, env, "A"));
+        Assert.assertEquals("B", invoke(site, env, "B"));
+        Assert.assertEquals("M::foo", invoke(site, env, "M"));
+        Assert.assertEquals(MethodCallSite.MAX_DEPTH + 1, site.getDepth());
+    }
+
+    @Test
+    public void testOtherScopes() throws Throwable {
+        MethodCallSite site = new MethodCallSite(MethodCallSite.TYPE, "foo");
+
+        for (int i = 0; i < MethodCallSite.MAX_DEPTH * 2; i++) {
+            Environment env = newEnvironment();
+
+            Assert.assertEquals("A", invoke(site, env, "A"));
+            Assert.assertEquals("B", invoke(site, env, "B"));
+        }
+
+        Assert.assertEquals(2, site.getDepth());
+        Assert.assertFalse(site.isMegamorphic());
+    }
+
+    @Test
+    public void testMagicCall() throws Throwable {
+        Environment env = newEnvironment();
+        MethodCallSite site = new MethodCallSite(MethodCallSite.TYPE, "foo");
+
+        Assert.assertEquals("M::foo", invoke(site, env, "M"));
+        Assert.assertEquals("M::foo", invoke(site, env, "M"));
+        Assert.assertEquals("A", invoke(site, env, "A"));
+        Assert.assertEquals(2, site.getDepth());
+    }
+
+    @Test
+    public void testAccess() throws Throwable {
+        Environment env = newEnvironment();
+
+        for (String className : new String[]{"P", "R"}) {
+            MethodCallSite site = new MethodCallSite(MethodCallSite.TYPE, "foo");
+
+            // the first call goes through the fallback, the second through the linked guard
+            for (int i = 0; i < 2; i++) {
+                try {
+                    invoke(site, env, className);
+                    Assert.fail("Call to a non public method " + className + "::foo() from outside");
+                } catch (FatalException e) {
+                    Assert.assertTrue(e.getMessage(), e.getMessage().contains(className + "::foo"));
+                }
+            }
+
+            Assert.assertEquals(1, site.getDepth());
+        }
+    }
+
+    private static Object invoke(MethodCallSite site, Environment env, String className) throws Throwable {
+        MethodHandle invoker = site.dynamicInvoker();
+        Memory object = new ObjectMemory(env.fetchClass(className).newObject(env, TraceInfo.UNKNOWN, true));
+
+        Memory result = (Memory) invoker.invoke(object, env, TraceInfo.UNKNOWN, new Memory[0]);
+        return result.toString();
+    }
+
+    private static Environment newEnvironment() throws Throwable {
+        CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+
+        Environment env = new Environment(scope);
+        env.importModule(new Context(CODE)).include(env);
+        return env;
+    }
+}
@@ -0,0 +1,155 @@
+package php.runtime.launcher;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.TempDirectory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.lang.exception.BaseError;
+import php.runtime.loader.CompiledModuleCache;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class ModulePreloaderTest {
+    private final TempDirectory directory;
+    private final CompileScope scope;
+
+    public ModulePreloaderTest() throws IOException {
+        directory = new TempDirectory("jphp-preload");
+
+        scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+    }
+
+    private ModuleEntity include(Environment env, File file) throws Throwable {
+        Context context = new Context(new FileInputStream(file), file.getPath(), env.getDefaultCharset());
+        ModuleEntity module = env.importModule(context);
+        module.include(env);
+        return module;
+    }
+
+    private String output(Environment env) throws Throwable {
+        env.flushAll();
+        return env.getDefaultBuffer().getOutput().toString();
+    }
+
+    private ModuleEntity findModule(File file) throws IOException {
+        return findModule(new Environment(scope), file);
+    }
+
+    private ModuleEntity findModule(Environment env, File file) throws IOException {
+        CompiledModuleCache compiledModules = scope.getClassLoader().getCompiledModules();
+        return compiledModules.get(env, new Context(new FileInputStream(file), file.getPath(), env.getDefaultCharset()));
+    }
+
+    @Test
+    public void testDepends() throws Throwable {
+        File child = directory.write("lib/b/Child.php", "<?php class Child extends Base implements Named { use Greets; }");
+        File base = directory.write("lib/a/Base.php", "<?php abstract class Base { function name() { return 'base'; } }");
+        File named = directory.write("lib/c/Named.php", "<?php interface Named { function name(); }");
+        File greets = directory.write("lib/d/Greets.php", "<?php trait Greets { function hello() { return 'hello ' . $this->name(); } }");
+        File unknown = directory.write("lib/e/Unknown.php", "<?php class Other extends Unknown { }");
+        File broken = directory.write("lib/f/Broken.php", "<?php class Broken { ");
+
+        Environment env = new Environment(scope, new ByteArrayOutputStream());
+
+        ModulePreloader preloader = new ModulePreloader(env, 4);
+        preloader.addDirectory(directory.file("lib"));
+        Assert.assertEquals(4, preloader.preload());
+
+        Assert.assertNotNull(findModule(base));
+        Assert.assertNotNull(findModule(named));
+        Assert.assertNotNull(findModule(greets));
+        Assert.assertNull(findModule(unknown));
+        Assert.assertNull(findModule(broken));
+
+        // the child module is reused when its parent class and trait are included.
+        Assert.assertNull(findModule(child));
+
+        include(env, base);
+        include(env, named);
+        include(env, greets);
+
+        ModuleEntity module = findModule(env, child);
+        Assert.assertNotNull(module);
+        Assert.assertSame(module, include(env, child));
+
+        directory.write("main.php", "<?php $x = new Child(); echo $x->hello();");
+        include(env, directory.file("main.php"));
+        Assert.assertEquals("hello base", output(env));
+    }
+
+    private String includeError(Environment env, File file) throws Throwable {
+        try {
+            include(env, file);
+            return null;
+        } catch (BaseError e) {
+            return e.getMessage(env).toString();
+        }
+    }
+
+    @Test
+    public void testInterfaces() throws Throwable {
+        File named = directory.write("if/a/Named.php", "<?php interface Named { function name(); }");
+        File impl = directory.write("if/b/Impl.php", "<?php class Impl implements Named { function name() { return 'impl'; } }");
+
+        CompileScope other = new CompileScope();
+        other.registerExtension(new CoreExtension());
+        other.registerExtension(new CompilerExtension());
+
+        String expected = includeError(new Environment(other, new ByteArrayOutputStream()), impl);
+        Assert.assertEquals("Interface 'Named' not found", expected);
+
+        Environment env = new Environment(scope, new ByteArrayOutputStream());
+
+        ModulePreloader preloader = new ModulePreloader(env, 2);
+        preloader.addDirectory(directory.file("if"));
+        Assert.assertEquals(2, preloader.preload());
+
+        // the preloaded module is not taken while its interface is not declared.
+        Assert.assertNotNull(findModule(named));
+        Assert.assertNull(findModule(impl));
+        Assert.assertEquals(expected, includeError(env, impl));
+
+        env = new Environment(scope, new ByteArrayOutputStream());
+        include(env, named);
+        Assert.assertNotNull(findModule(env, impl));
+        Assert.assertNull(includeError(env, impl));
+    }
+
+    @Test
+    public void testIncludes() throws Throwable {
+        File main = directory.write("inc/main.php", "<?php include __DIR__ . '/a.php'; require_once(__DIR__ . \"/sub/b.php\");");
+        File a = directory.write("inc/a.php", "<?php echo 'a';");
+        File b = directory.write("inc/sub/b.php", "<?php echo 'b';");
+        directory.write("inc/unused.php", "<?php echo 'unused';");
+
+        Environment env = new Environment(scope, new ByteArrayOutputStream());
+
+        ModulePreloader preloader = new ModulePreloader(env, 2);
+        preloader.scanFile(main.getPath());
+        Assert.assertEquals(2, preloader.preload());
+
+        Assert.assertNull(findModule(main));
+        Assert.assertNull(findModule(directory.file("inc/unused.php")));
+        ModuleEntity moduleA = findModule(a);
+        Assert.assertNotNull(moduleA);
+        Assert.assertNotNull(findModule(b));
+
+        // included files take the preloaded modules.
+        include(env, main);
+        Assert.assertEquals("ab", output(env));
+        Assert.assertSame(moduleA, scope.findUserModule(new Context(a).getModuleName()));
+    }
+}
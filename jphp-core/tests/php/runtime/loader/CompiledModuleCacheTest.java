@@ -0,0 +1,109 @@
+package php.runtime.loader;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.TempDirectory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.lang.exception.BaseError;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class CompiledModuleCacheTest {
+    private final TempDirectory directory;
+    private final CompileScope scope;
+
+    public CompiledModuleCacheTest() throws IOException {
+        directory = new TempDirectory("jphp-compiled-modules");
+
+        scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+    }
+
+    private ModuleEntity include(Environment env, File file) throws Throwable {
+        ModuleEntity module = env.importModule(new Context(file));
+        module.include(env);
+        return module;
+    }
+
+    private String output(Environment env) throws Throwable {
+        env.flushAll();
+        return env.getDefaultBuffer().getOutput().toString();
+    }
+
+    private Environment newEnvironment() {
+        return new Environment(new CompileScope(scope), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testShared() throws Throwable {
+        File file = directory.write("shared.php", "<?php class Foo { function bar() { return 'bar'; } } echo (new Foo)->bar();", 10000);
+
+        Environment env = newEnvironment();
+        ModuleEntity module = include(env, file);
+        Assert.assertEquals("bar", output(env));
+
+        env = newEnvironment();
+        Assert.assertSame(module, include(env, file));
+        Assert.assertEquals("bar", output(env));
+
+        directory.write("shared.php", "<?php class Foo { function bar() { return 'changed'; } } echo (new Foo)->bar();", 20000);
+
+        env = newEnvironment();
+        Assert.assertNotSame(module, include(env, file));
+        Assert.assertEquals("changed", output(env));
+    }
+
+    @Test
+    public void testDepends() throws Throwable {
+        File parent = directory.write("parent.php", "<?php class Base { function name() { return 'base'; } }", 10000);
+        File child = directory.write("child.php", "<?php class Child extends Base { } echo (new Child)->name();", 10000);
+
+        Environment env = newEnvironment();
+        include(env, parent);
+        ModuleEntity module = include(env, child);
+        Assert.assertEquals("base", output(env));
+
+        directory.write("parent.php", "<?php class Base { function name() { return 'changed'; } }", 20000);
+
+        env = newEnvironment();
+        include(env, parent);
+        Assert.assertNotSame(module, include(env, child));
+        Assert.assertEquals("changed", output(env));
+    }
+
+    @Test
+    public void testInterfaces() throws Throwable {
+        File named = directory.write("named.php", "<?php interface Named { function name(); }", 10000);
+        File impl = directory.write("impl.php", "<?php class Impl implements Named { function name() { return 'impl'; } }", 10000);
+
+        Environment env = newEnvironment();
+        include(env, named);
+        include(env, impl);
+
+        env = newEnvironment();
+        Assert.assertNull(scope.getClassLoader().getCompiledModules().get(env, new Context(impl)));
+
+        try {
+            include(env, impl);
+            Assert.fail("Interface must be checked");
+        } catch (BaseError e) {
+            Assert.assertEquals("Interface 'Named' not found", e.getMessage(env).toString());
+        }
+
+        // the shared module is taken again when its interface is declared.
+        env = newEnvironment();
+        include(env, named);
+        Assert.assertNotNull(scope.getClassLoader().getCompiledModules().get(env, new Context(impl)));
+    }
+}
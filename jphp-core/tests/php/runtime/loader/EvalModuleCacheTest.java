@@ -0,0 +1,117 @@
+package php.runtime.loader;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.develnext.jphp.core.ext.EvalFunctions;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.Memory;
+import php.runtime.TempDirectory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.ext.CoreExtension;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.ref.WeakReference;
+
+@RunWith(JUnit4.class)
+public class EvalModuleCacheTest {
+    private final CompileScope scope;
+
+    public EvalModuleCacheTest() {
+        scope = new CompileScope();
+        scope.setInterpreterThreshold(0);
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+    }
+
+    private Environment newEnvironment() {
+        return new Environment(new CompileScope(scope), new ByteArrayOutputStream());
+    }
+
+    private Memory eval(Environment env, String code, Memory x) throws Throwable {
+        ArrayMemory locals = new ArrayMemory();
+        locals.refOfIndex("x").assign(x);
+
+        return EvalFunctions.eval(env, TraceInfo.UNKNOWN, locals, code);
+    }
+
+    @Test
+    public void testCached() throws Throwable {
+        EvalModuleCache cache = scope.getClassLoader().getEvalModules();
+        cache.clear();
+
+        String code = "return $x * 2;";
+
+        Environment env = newEnvironment();
+        Assert.assertEquals(2, eval(env, code, Memory.CONST_INT_1).toLong());
+
+        ModuleEntity module = cache.get(env, code);
+        Assert.assertNotNull(module);
+        Assert.assertNotSame(scope.getClassLoader(), module.getNativeClazz().getClassLoader());
+        Assert.assertSame(scope.getClassLoader(), module.getNativeClazz().getClassLoader().getParent());
+        Assert.assertSame(module, scope.getClassLoader().getModule(module.getInternalName()));
+
+        env = newEnvironment();
+        Assert.assertEquals(6, eval(env, code, Memory.CONST_INT_3).toLong());
+        Assert.assertSame(module, cache.get(env, code));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEviction() throws Throwable {
+        EvalModuleCache cache = scope.getClassLoader().getEvalModules();
+        cache.clear();
+
+        Environment env = newEnvironment();
+        String code = "$f = function($y) { return $y + 1; }; return $f($x);";
+        Assert.assertEquals(2, eval(env, code, Memory.CONST_INT_1).toLong());
+
+        WeakReference<ClassLoader> loader = new WeakReference<ClassLoader>(
+                cache.get(env, code).getNativeClazz().getClassLoader()
+        );
+
+        cache.setMaxSize(2);
+        eval(env, "return 1;", Memory.NULL);
+        eval(env, "return 2;", Memory.NULL);
+        eval(env, "return 3;", Memory.NULL);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNull(cache.get(env, code));
+        Assert.assertNotNull(cache.get(env, "return 3;"));
+
+        cache.setMaxSize(0);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(4, eval(env, "return 4;", Memory.NULL).toLong());
+        Assert.assertEquals(0, cache.size());
+        cache.setMaxSize(EvalModuleCache.DEFAULT_MAX_SIZE);
+
+        env = null;
+        for (int i = 0; i < 20 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        Assert.assertNull(loader.get());
+    }
+
+    @Test
+    public void testClasses() throws Throwable {
+        Environment env = newEnvironment();
+        eval(env, "class EvalA { function name() { return 'a'; } }", Memory.NULL);
+        eval(env, "class EvalB extends EvalA { }", Memory.NULL);
+        Assert.assertEquals("a", eval(env, "return (new EvalB)->name();", Memory.NULL).toString());
+
+        File file = new TempDirectory("jphp-eval").write("eval.php",
+                "<?php class EvalC extends EvalA { } return (new EvalC)->name();");
+
+        ModuleEntity module = env.importModule(new Context(file));
+        Assert.assertEquals("a", module.include(env).toString());
+    }
+}
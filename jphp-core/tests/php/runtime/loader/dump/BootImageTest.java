@@ -0,0 +1,96 @@
+package php.runtime.loader.dump;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.TempDirectory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class BootImageTest {
+    private final TempDirectory directory;
+    private final File base;
+    private final File child;
+
+    public BootImageTest() throws IOException {
+        directory = new TempDirectory("jphp-boot-image");
+
+        base = directory.write("base.php", "<?php class Base { function name() { return 'base'; } }", 10000);
+        child = directory.write("child.php", "<?php class Child extends Base { } echo (new Child)->name();", 10000);
+    }
+
+    private CompileScope newScope() {
+        CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+        return scope;
+    }
+
+    private String bootstrap(Environment env, ByteArrayOutputStream output) throws Throwable {
+        env.importModule(new Context(base)).include(env);
+        env.importModule(new Context(child)).include(env);
+        env.flushAll();
+
+        return output.toString();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Throwable {
+        BootImage image = new BootImage(directory.file("boot.img"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Environment env = new Environment(newScope(), output);
+        Assert.assertEquals("base", bootstrap(env, output));
+
+        Assert.assertTrue(image.isModified(env.getScope()));
+        image.save(env);
+        Assert.assertFalse(image.isModified(env.getScope()));
+
+        image = new BootImage(image.getFile());
+        CompileScope scope = newScope();
+        Assert.assertEquals(2, image.load(scope));
+
+        ModuleEntity module = scope.findUserModule(new Context(child).getModuleName());
+        Assert.assertNotNull(module);
+
+        output = new ByteArrayOutputStream();
+        env = new Environment(scope, output);
+        env.importModule(new Context(base)).include(env);
+        Assert.assertSame(module, env.importModule(new Context(child)));
+
+        module.include(env);
+        env.flushAll();
+        Assert.assertEquals("base", output.toString());
+        Assert.assertFalse(image.isModified(scope));
+    }
+
+    @Test
+    public void testInvalidate() throws Throwable {
+        BootImage image = new BootImage(directory.file("invalidate.img"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Environment env = new Environment(newScope(), output);
+        bootstrap(env, output);
+        image.save(env);
+
+        directory.write("base.php", "<?php class Base { function name() { return 'changed'; } }", 20000);
+
+        // the child module depends on the changed module.
+        image = new BootImage(image.getFile());
+        CompileScope scope = newScope();
+        Assert.assertEquals(0, image.load(scope));
+
+        output = new ByteArrayOutputStream();
+        env = new Environment(scope, output);
+        Assert.assertEquals("changed", bootstrap(env, output));
+        Assert.assertTrue(image.isModified(scope));
+    }
+}
@@ -0,0 +1,127 @@
+package php.runtime.loader.dump;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.TempDirectory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class ModuleCacheTest {
+    private final TempDirectory directory;
+    private File source;
+    private ModuleEntity module;
+
+    public ModuleCacheTest() throws IOException {
+        directory = new TempDirectory("jphp-module-cache");
+    }
+
+    private ModuleCache newCache(long maxSize) {
+        return new ModuleCache(directory.file("cache"), maxSize);
+    }
+
+    private Environment newEnvironment(ModuleCache cache, ByteArrayOutputStream output) {
+        CompileScope scope = new CompileScope();
+        scope.setInterpreterThreshold(0);
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+        scope.setModuleCache(cache);
+
+        return new Environment(scope, output);
+    }
+
+    private String include(ModuleCache cache) throws Throwable {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Environment env = newEnvironment(cache, output);
+
+        module = env.importModule(new Context(source));
+        module.include(env);
+        env.flushAll();
+
+        return output.toString();
+    }
+
+    private ModuleEntity load(ModuleCache cache) throws IOException {
+        return cache.load(newEnvironment(cache, new ByteArrayOutputStream()), new Context(source));
+    }
+
+    @Test
+    public void testLoad() throws Throwable {
+        ModuleCache cache = newCache(1024 * 1024);
+        source = directory.write("module.php", "<?php class Foo { function bar() { return 'bar'; } } echo (new Foo)->bar();");
+
+        Assert.assertNull(load(cache));
+        Assert.assertEquals("bar", include(cache));
+        String internalName = module.getInternalName();
+
+        ModuleEntity loaded = load(cache);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(internalName, loaded.getInternalName());
+        Assert.assertNotNull(loaded.findClass("Foo"));
+
+        Assert.assertEquals("bar", include(cache));
+        Assert.assertEquals(internalName, module.getInternalName());
+
+        cache.clear();
+        Assert.assertNull(load(cache));
+    }
+
+    @Test
+    public void testInvalidate() throws Throwable {
+        ModuleCache cache = newCache(1024 * 1024);
+        source = directory.write("module.php", "<?php echo 'first';");
+        long modified = source.lastModified();
+
+        Assert.assertEquals("first", include(cache));
+        String internalName = module.getInternalName();
+
+        // the same content is checked by hash.
+        source.setLastModified(modified + 10000);
+        Assert.assertNotNull(load(cache));
+        Assert.assertEquals("first", include(cache));
+        Assert.assertEquals(internalName, module.getInternalName());
+
+        directory.write("module.php", "<?php echo 'other';", modified + 20000);
+        Assert.assertNull(load(cache));
+        Assert.assertEquals("other", include(cache));
+        internalName = module.getInternalName();
+
+        Assert.assertEquals("other", include(cache));
+        Assert.assertEquals(internalName, module.getInternalName());
+
+        cache.clear();
+    }
+
+    @Test
+    public void testEvict() throws Throwable {
+        ModuleCache cache = newCache(1);
+        File cacheDir = cache.getDirectory();
+
+        source = directory.write("module.php", "<?php echo 'first';");
+        Assert.assertEquals("first", include(cache));
+
+        source = directory.write("other.php", "<?php echo 'other';");
+        Assert.assertEquals("other", include(cache));
+
+        Assert.assertEquals(0, cacheDir.listFiles().length);
+        Assert.assertNull(load(cache));
+
+        cache = newCache(1024 * 1024);
+        Assert.assertEquals("other", include(cache));
+        Assert.assertEquals(1, cacheDir.listFiles().length);
+        Assert.assertNotNull(load(cache));
+
+        cache.clear();
+        Assert.assertEquals(0, cacheDir.listFiles().length);
+    }
+}
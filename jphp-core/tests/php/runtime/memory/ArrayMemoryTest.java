@@ -67,6 +67,37 @@ public class ArrayMemoryTest {
         assertEquals(2, memory.valueOfIndex(2.0).toLong());
     }
 
+    @Test
+    public void testPackedValueOfIndex(){
+        ArrayMemory memory = new ArrayMemory();
+        for (int i = 0; i < 10; i++) {
+            memory.add(i * 10);
+        }
+
+        assertTrue(memory.isPacked());
+        assertEquals(0, memory.valueOfIndex(0).toLong());
+        assertEquals(10, memory.valueOfIndex("1").toLong());
+        assertEquals(20, memory.valueOfIndex(2.0).toLong());
+        assertEquals(90, memory.valueOfIndex(LongMemory.valueOf(9)).toLong());
+        assertEquals(Memory.UNDEFINED, memory.valueOfIndex(10));
+        assertEquals(Memory.UNDEFINED, memory.valueOfIndex("foo"));
+        assertEquals(Memory.NULL, memory.issetOfIndex(null, LongMemory.valueOf(10)));
+        assertEquals(30, memory.issetOfIndex(null, LongMemory.valueOf(3)).toLong());
+        assertTrue(memory.isPacked());
+
+        // an argument which may be passed by reference gets the reference of the item
+        assertEquals(Memory.UNDEFINED, memory.valueOfIndexAsArgument(null, LongMemory.valueOf(10)));
+        assertTrue(memory.isPacked());
+
+        Memory item = memory.valueOfIndexAsArgument(null, LongMemory.valueOf(5));
+        assertTrue(item instanceof ReferenceMemory);
+        assertFalse(memory.isPacked());
+
+        item.assign(100500);
+        assertEquals(100500, memory.valueOfIndex(5).toLong());
+        assertEquals(10, memory.size());
+    }
+
     @Test
     public void testRemoveInList(){
         ArrayMemory memory = new ArrayMemory();
@@ -122,7 +153,7 @@ public class ArrayMemoryTest {
 
         assertTrue(arr1.toImmutable() instanceof ArrayMemory);
         ArrayMemory arr2 = (ArrayMemory) arr1.toImmutable();
-        assertEquals(2, arr1.copies);
+        assertEquals(2, arr1.getCopies());
 
         assertNotEquals(arr1, arr2);
         assertEquals(2, arr2.size());
@@ -136,7 +167,7 @@ public class ArrayMemoryTest {
         assertEquals(1, arr1.valueOfIndex("x1").toLong());
         assertTrue(arr1.valueOfIndex("x2") != arr2.valueOfIndex("x2"));
 
-        assertEquals(1, arr1.copies);
+        assertEquals(1, arr1.getCopies());
 
         arr1 = (ArrayMemory) arr2.toImmutable();
         arr2.refOfIndex("x1").assign(100);
@@ -144,11 +175,11 @@ public class ArrayMemoryTest {
         assertEquals(100500, arr1.valueOfIndex("x1").toLong());
 
         arr1 = (ArrayMemory) arr2.toImmutable();
-        assertEquals(1, arr2.copies);
-        assertEquals(0, arr1.copies);
+        assertEquals(1, arr2.getCopies());
+        assertEquals(1, arr1.getCopies());
 
         arr1.unset();
-        assertEquals(0, arr2.copies);
+        assertEquals(0, arr2.getCopies());
         assertEquals(2, arr2.size());
         assertEquals(100, arr2.valueOfIndex("x1").toLong());
 
@@ -163,6 +194,35 @@ public class ArrayMemoryTest {
     }
 
     @Test
+    public void testImmutableValueOfIndex(){
+        ArrayMemory arr1 = new ArrayMemory();
+        for (int i = 0; i < 1000; i++) {
+            arr1.add(i);
+        }
+
+        // reads by index of a copy take values of the shared storage, nothing is copied or unpacked
+        ArrayMemory arr2 = (ArrayMemory) arr1.toImmutable();
+        long sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            sum += arr2.valueOfIndex(i).toLong();
+        }
+
+        assertEquals(499500, sum);
+        assertEquals(1, arr1.getCopies());
+        assertEquals(1, arr2.getCopies());
+        assertTrue(arr1.isPacked());
+        assertTrue(arr2.isPacked());
+
+        // an argument by reference separates the copy
+        arr2.valueOfIndexAsArgument(null, LongMemory.valueOf(0)).assign(100500);
+        assertEquals(0, arr1.getCopies());
+        assertEquals(0, arr2.getCopies());
+        assertEquals(0, arr1.valueOfIndex(0).toLong());
+        assertEquals(100500, arr2.valueOfIndex(0).toLong());
+        assertTrue(arr1.isPacked());
+    }
+
+        @Test
     public void testMisc(){
         ArrayMemory arr = new ArrayMemory();
         assertEquals(0, arr.toLong());
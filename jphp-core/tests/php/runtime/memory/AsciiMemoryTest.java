@@ -0,0 +1,94 @@
+package php.runtime.memory;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
+
+import java.nio.charset.Charset;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AsciiMemoryTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testValueOf() {
+        Memory memory = StringMemory.valueOf("foobar".getBytes(UTF_8), UTF_8);
+        Assert.assertTrue(memory instanceof AsciiMemory);
+        Assert.assertEquals("foobar", memory.toString());
+        Assert.assertEquals(6, ((AsciiMemory) memory).length());
+
+        memory = StringMemory.valueOf("café".getBytes(UTF_8), UTF_8);
+        Assert.assertFalse(memory instanceof AsciiMemory);
+        Assert.assertEquals("café", memory.toString());
+
+        memory = StringMemory.valueOf("foobar".getBytes(Charset.forName("UTF-16")), Charset.forName("UTF-16"));
+        Assert.assertFalse(memory instanceof AsciiMemory);
+        Assert.assertEquals("foobar", memory.toString());
+
+        Assert.assertSame(Memory.CONST_EMPTY_STRING, AsciiMemory.valueOf(new byte[0]));
+        Assert.assertEquals("a", AsciiMemory.valueOf(new byte[]{'a'}).toString());
+    }
+
+    @Test
+    public void testCharsets() {
+        Assert.assertTrue(AsciiMemory.isAsciiCompatible(UTF_8));
+        Assert.assertTrue(AsciiMemory.isAsciiCompatible(Charset.forName("ISO-8859-1")));
+        Assert.assertTrue(AsciiMemory.isAsciiCompatible(Charset.forName("windows-1251")));
+        Assert.assertFalse(AsciiMemory.isAsciiCompatible(Charset.forName("UTF-16")));
+
+        AsciiMemory memory = new AsciiMemory("foo".getBytes(UTF_8));
+        Assert.assertSame(memory.getBytes(), memory.getBinaryBytes(UTF_8));
+        Assert.assertArrayEquals("foo".getBytes(Charset.forName("UTF-16LE")), memory.getBinaryBytes(Charset.forName("UTF-16LE")));
+    }
+
+    @Test
+    public void testSearch() {
+        AsciiMemory memory = new AsciiMemory("hello world".getBytes(UTF_8));
+
+        Assert.assertEquals(4, memory.indexOf('o', 0));
+        Assert.assertEquals(7, memory.indexOf('o', 5));
+        Assert.assertEquals(-1, memory.indexOf('é', 0));
+        Assert.assertEquals(6, memory.indexOf("world", 0));
+        Assert.assertEquals(-1, memory.indexOf("world", 7));
+        Assert.assertEquals(-1, memory.indexOf("worlds", 0));
+        Assert.assertEquals("world", memory.substring(6, 11).toString());
+        Assert.assertTrue(memory.substring(6, 11) instanceof AsciiMemory);
+        Assert.assertSame(memory, memory.substring(0, 11));
+    }
+
+    @Test
+    public void testOperations() {
+        AsciiMemory memory = new AsciiMemory("123".getBytes(UTF_8));
+
+        Assert.assertEquals(123, memory.toLong());
+        Assert.assertTrue(memory.toBoolean());
+        Assert.assertFalse(new AsciiMemory("0".getBytes(UTF_8)).toBoolean());
+        Assert.assertEquals('1', memory.toChar());
+
+        Assert.assertTrue(memory.equal(new StringMemory("123")));
+        Assert.assertTrue(memory.identical(new AsciiMemory("123".getBytes(UTF_8))));
+        Assert.assertTrue(memory.equal(123));
+        Assert.assertFalse(memory.identical(new StringMemory("1234")));
+
+        Assert.assertEquals("2", memory.valueOfIndex(1).toString());
+        Assert.assertEquals("", memory.valueOfIndex(3).toString());
+        Assert.assertEquals("3", memory.valueOfIndex(new StringMemory("2")).toString());
+        Assert.assertEquals("123abc", memory.concat("abc"));
+    }
+
+    @Test
+    public void testOffsetWrite() {
+        ReferenceMemory memory = new ReferenceMemory(new AsciiMemory("hello".getBytes(UTF_8)));
+
+        Assert.assertEquals("h", memory.refOfIndex(null, 0).toString());
+        memory.refOfIndex(null, 0).assign("J");
+        memory.refOfIndex(null, 6).assign("!");
+
+        Assert.assertEquals("Jello\32!", memory.toString());
+    }
+}
@@ -0,0 +1,182 @@
+package php.runtime.reflection;
+
+import org.develnext.jphp.core.ext.CompilerExtension;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import php.runtime.Memory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.lang.BaseObject;
+import php.runtime.lang.ForeachIterator;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.ReferenceMemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class ClassEntityTest {
+    @Test
+    public void testInstanceOf() throws Throwable {
+        CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+
+        Environment env = new Environment(scope);
+        ModuleEntity module = env.importModule(new Context(
+                "interface I1 {} interface I2 extends I1 {} interface I3 {}" +
+                "class A implements I2 {} class B extends A {} class C extends B implements I3 {} class D extends A {}"
+        ));
+        module.include(env);
+
+        ClassEntity i1 = env.fetchClass("I1"), i2 = env.fetchClass("I2"), i3 = env.fetchClass("I3");
+        ClassEntity a = env.fetchClass("A"), b = env.fetchClass("B"), c = env.fetchClass("C"), d = env.fetchClass("D");
+
+        Assert.assertTrue(c.isInstanceOf(c));
+        Assert.assertTrue(c.isInstanceOf(b));
+        Assert.assertTrue(c.isInstanceOf(a));
+        Assert.assertTrue(c.isInstanceOf(i1));
+        Assert.assertTrue(c.isInstanceOf(i2));
+        Assert.assertTrue(c.isInstanceOf(i3));
+        Assert.assertTrue(i2.isInstanceOf(i1));
+
+        Assert.assertFalse(c.isInstanceOf(d));
+        Assert.assertFalse(d.isInstanceOf(b));
+        Assert.assertFalse(d.isInstanceOf(i3));
+        Assert.assertFalse(a.isInstanceOf(b));
+        Assert.assertFalse(i1.isInstanceOf(i2));
+        Assert.assertFalse(c.isInstanceOf((ClassEntity) null));
+
+        ClassEntity exception = env.fetchClass("Exception");
+        Assert.assertTrue(exception.isInstanceOf(env.fetchClass("Throwable")));
+        Assert.assertFalse(exception.isInstanceOf(env.fetchClass("Error")));
+    }
+
+    @Test
+    public void testInstanceOfAcrossScopes() throws Throwable {
+        String code = "interface I1 {} interface I2 extends I1 {} class A implements I2 {} class B extends A {}";
+
+        Environment first = newEnvironment(code);
+        Environment second = newEnvironment(code);
+
+        ClassEntity i1 = first.fetchClass("I1"), otherI1 = second.fetchClass("I1");
+        ClassEntity i2 = first.fetchClass("I2"), otherI2 = second.fetchClass("I2");
+        ClassEntity a = first.fetchClass("A"), otherB = second.fetchClass("B");
+
+        Assert.assertNotSame(i1, otherI1);
+        Assert.assertEquals(i1.interfaceIndex, otherI1.interfaceIndex);
+        Assert.assertEquals(i2.interfaceIndex, otherI2.interfaceIndex);
+
+        Assert.assertTrue(otherB.isInstanceOf(i1));
+        Assert.assertTrue(otherB.isInstanceOf(i2));
+        Assert.assertTrue(otherB.isInstanceOf(a));
+        Assert.assertTrue(a.isInstanceOf(otherI2));
+        Assert.assertFalse(a.isInstanceOf(otherB));
+        Assert.assertFalse(otherI1.isInstanceOf(i2));
+
+        // a reloaded interface does not take a new index
+        Environment third = newEnvironment(code);
+        Assert.assertEquals(i1.interfaceIndex, third.fetchClass("I1").interfaceIndex);
+    }
+
+    @Test
+    public void testSlots() throws Throwable {
+        CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+
+        Environment env = new Environment(scope);
+        Memory result = env.importModule(new Context(
+                "class A { public $a = 'a'; protected $b = 'b'; private $c = 'A::c'; function setC($v) { $this->c = $v; } }" +
+                "class B extends A { public $d = 'd'; private $c = 'B::c'; }" +
+                "class C extends A { public $d = 'd'; }" +
+                "$c = new C(); $c->setC('x'); $c->a = 'changed';" +
+                "$copy = clone $c; $copy->a = 'copy'; $copy->setC('y');" +
+                "$b = new B(); $b->setC('x');" +
+                "$shadowed = clone new B(); $shadowed->setC('y');" +
+                "$dynamic = new C(); $dynamic->e = 'e';" +
+                "$unset = new C(); unset($unset->a); $unset->a = 'again';" +
+                "return [$c, $copy, $b, $shadowed, $dynamic, $unset];"
+        )).include(env);
+
+        ClassEntity a = env.fetchClass("A"), b = env.fetchClass("B"), c = env.fetchClass("C");
+        String privateA = a.findProperty("c").specificName, privateB = b.findProperty("c").specificName;
+
+        Assert.assertEquals(3, a.getSlotNames().length);
+        Assert.assertEquals(4, c.getSlotNames().length);
+        Assert.assertEquals(5, b.getSlotNames().length);
+        Assert.assertNotEquals(b.getSlotIndex(privateA), b.getSlotIndex(privateB));
+        Assert.assertEquals(-1, c.getSlotIndex("e"));
+
+        // declared properties and clone stay in slots
+        BaseObject object = result.valueOfIndex(0).toObject(BaseObject.class);
+        BaseObject copy = result.valueOfIndex(1).toObject(BaseObject.class);
+
+        ReferenceMemory[] slots = object.getSlots(), copySlots = copy.getSlots();
+        Assert.assertNotNull(slots);
+        Assert.assertNotNull(copySlots);
+        Assert.assertEquals("changed", slots[c.getSlotIndex("a")].toString());
+        Assert.assertEquals("x", slots[c.getSlotIndex(privateA)].toString());
+        Assert.assertEquals("copy", copySlots[c.getSlotIndex("a")].toString());
+        Assert.assertEquals("y", copySlots[c.getSlotIndex(privateA)].toString());
+
+        for (int i = 0; i < slots.length; i++) {
+            Assert.assertNotSame(slots[i], copySlots[i]);
+        }
+
+        // the map shares references of slots and keeps their order
+        ReferenceMemory slot = slots[c.getSlotIndex("a")];
+        ArrayMemory props = object.getProperties();
+
+        Assert.assertNull(object.getSlots());
+        Assert.assertSame(slot, props.getByScalar("a"));
+        Assert.assertEquals(Arrays.asList((Object[]) c.getSlotNames()), keys(props));
+
+        // a shadowed private property is in its own slot, clone of such objects uses the map
+        BaseObject shadowed = result.valueOfIndex(2).toObject(BaseObject.class);
+        Assert.assertNotNull(shadowed.getSlots());
+        Assert.assertEquals("x", shadowed.getSlots()[b.getSlotIndex(privateA)].toString());
+        Assert.assertEquals("B::c", shadowed.getSlots()[b.getSlotIndex(privateB)].toString());
+
+        BaseObject shadowedCopy = result.valueOfIndex(3).toObject(BaseObject.class);
+        Assert.assertNull(shadowedCopy.getSlots());
+        Assert.assertEquals("y", shadowedCopy.getProperties().valueOfIndex(privateA).toString());
+        Assert.assertEquals("B::c", shadowedCopy.getProperties().valueOfIndex(privateB).toString());
+
+        // a dynamic property or unset moves the object to the map
+        BaseObject dynamic = result.valueOfIndex(4).toObject(BaseObject.class);
+        Assert.assertNull(dynamic.getSlots());
+        Assert.assertEquals(Arrays.<Object>asList("d", "a", "\0*\0b", privateA, "e"), keys(dynamic.getProperties()));
+
+        BaseObject unset = result.valueOfIndex(5).toObject(BaseObject.class);
+        Assert.assertNull(unset.getSlots());
+        Assert.assertEquals("again", unset.getProperties().valueOfIndex("a").toString());
+        Assert.assertEquals(Arrays.<Object>asList("d", "\0*\0b", privateA, "a"), keys(unset.getProperties()));
+    }
+
+    private static List<Object> keys(ArrayMemory array) {
+        List<Object> keys = new ArrayList<Object>();
+        ForeachIterator iterator = array.foreachIterator(false, false);
+
+        while (iterator.next()) {
+            keys.add(iterator.getKey());
+        }
+
+        return keys;
+    }
+
+    private static Environment newEnvironment(String code) throws Throwable {
+        CompileScope scope = new CompileScope();
+        scope.registerExtension(new CoreExtension());
+        scope.registerExtension(new CompilerExtension());
+
+        Environment env = new Environment(scope);
+        env.importModule(new Context(code)).include(env);
+        return env;
+    }
+}
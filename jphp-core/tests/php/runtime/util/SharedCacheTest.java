@@ -0,0 +1,125 @@
+package php.runtime.util;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.StringMemory;
+
+import java.io.ByteArrayOutputStream;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SharedCacheTest {
+    private final Environment env = new Environment(new CompileScope(), new ByteArrayOutputStream());
+    private final TraceInfo trace = TraceInfo.UNKNOWN;
+
+    @Test
+    public void testValues() {
+        SharedCache cache = new SharedCache();
+
+        Assert.assertTrue(cache.put(env, trace, "int", LongMemory.valueOf(10), 0));
+        Assert.assertEquals(10, cache.get(env, trace, "int").toLong());
+
+        ArrayMemory array = new ArrayMemory();
+        array.add(1);
+        array.add("foo");
+        Assert.assertTrue(cache.put(env, trace, "array", array, 0));
+        array.add(2);
+
+        Memory fetched = cache.get(env, trace, "array");
+        Assert.assertEquals(2, fetched.toValue(ArrayMemory.class).size());
+        Assert.assertNotSame(fetched, cache.get(env, trace, "array"));
+
+        Assert.assertNull(cache.get(env, trace, "missing"));
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+
+        Assert.assertFalse(cache.putIfAbsent(env, trace, "int", LongMemory.valueOf(20), 0));
+        Assert.assertEquals(15, cache.increment("int", 5, 0).toLong());
+        Assert.assertTrue(cache.compareAndSet("int", 15, 1));
+        Assert.assertFalse(cache.compareAndSet("int", 15, 2));
+        Assert.assertNull(cache.increment("array", 1, 0));
+
+        Assert.assertTrue(cache.remove("int"));
+        Assert.assertFalse(cache.contains("int"));
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testEviction() {
+        SharedCache cache = new SharedCache(0, 10);
+
+        for (int i = 0; i < 100; i++) {
+            cache.put(env, trace, "key" + i, LongMemory.valueOf(i), 0);
+            cache.get(env, trace, "key0");
+        }
+
+        Assert.assertEquals(10, cache.size());
+        Assert.assertEquals(90, cache.getEvictions());
+        Assert.assertTrue(cache.contains("key99"));
+        Assert.assertEquals(10, cache.getEntries().size());
+
+        cache = new SharedCache(0, 10);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(env, trace, "key" + i, LongMemory.valueOf(i), 0);
+        }
+
+        Assert.assertEquals(1, cache.increment("counter", 1, 0).toLong());
+        Assert.assertEquals(2, cache.increment("counter", 1, 0).toLong());
+        Assert.assertEquals(10, cache.size());
+        Assert.assertEquals(12, cache.getInserts());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertTrue(cache.contains("counter"));
+
+                cache = new SharedCache(1024);
+        Assert.assertFalse(cache.put(env, trace, "big", new StringMemory(new String(new char[1024])), 0));
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(cache.put(env, trace, "key" + i, new StringMemory("value" + i), 0));
+        }
+
+        Assert.assertTrue(cache.getWeight() <= 1024);
+        Assert.assertTrue(cache.contains("key99"));
+        Assert.assertFalse(cache.contains("key0"));
+    }
+
+    @Test
+    public void testExpiration() {
+        final long[] time = {1000};
+        SharedCache cache = new SharedCache() {
+            @Override
+            protected long currentTimeMillis() {
+                return time[0];
+            }
+        };
+
+        cache.put(env, trace, "foo", new StringMemory("foo"), 10);
+        cache.put(env, trace, "bar", new StringMemory("bar"), 0);
+
+        time[0] += 9999;
+        Assert.assertEquals("foo", cache.get(env, trace, "foo").toString());
+
+        time[0] += 1;
+        Assert.assertNull(cache.get(env, trace, "foo"));
+        Assert.assertEquals("bar", cache.get(env, trace, "bar").toString());
+        Assert.assertEquals(1, cache.getExpirations());
+        Assert.assertEquals(1, cache.size());
+
+        Assert.assertTrue(cache.putIfAbsent(env, trace, "foo", new StringMemory("new"), 0));
+        Assert.assertEquals("new", cache.get(env, trace, "foo").toString());
+    }
+}
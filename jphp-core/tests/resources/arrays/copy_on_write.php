@@ -0,0 +1,66 @@
+--FILE--
+<?php
+function values($array) {
+    $result = '';
+    foreach ($array as $value) {
+        $result .= (is_array($value) ? 'array' : $value) . ',';
+    }
+    return $result;
+}
+
+function modify($array) {
+    $array[0] = 'changed';
+    return $array;
+}
+
+$a = [1, 2, 3];
+$b = $a;
+$c = $a;
+$a[0] = 9;
+$a[1] = 9;
+$b[0] = 7;
+$d = $a;
+$d[2] = 100;
+$c[0] = 5;
+echo values($a), ' ', values($b), ' ', values($c), ' ', values($d), "\n";
+
+$e = $a;
+unset($e);
+$a[2] = 'x';
+$f = $a;
+$f = null;
+$a[] = 'y';
+echo values($a), "\n";
+
+$g = modify($a);
+echo values($a), ' ', values($g), "\n";
+
+$nested = ['list' => [1, 2], 'map' => ['k' => 'v']];
+$copy = $nested;
+$copy['list'][] = 3;
+$copy['map']['k'] = 'w';
+echo values($nested['list']), ' ', $nested['map']['k'], ' ', values($copy['list']), ' ', $copy['map']['k'], "\n";
+
+$inner = $nested['list'];
+$inner[0] = 'i';
+echo values($nested['list']), ' ', values($inner), "\n";
+
+function sum($array) {
+    $result = 0;
+    for ($i = 0; $i < count($array); $i++) {
+        $result += $array[$i];
+    }
+    return $result;
+}
+
+$list = [1, 2, 3];
+echo sum($list), ' ';
+$list[0] = 10;
+echo sum($list), ' ', values($list), "\n";
+--EXPECT--
+9,9,3, 7,2,3, 5,2,3, 9,9,100,
+9,9,x,y,
+9,9,x,y, changed,9,x,y,
+1,2, v 1,2,3, w
+1,2, i,2,
+6 15 10,2,3,
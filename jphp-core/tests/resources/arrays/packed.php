@@ -0,0 +1,88 @@
+--FILE--
+<?php
+function values($array) {
+    $result = '';
+    foreach ($array as $value) {
+        $result .= $value . ',';
+    }
+    return $result;
+}
+
+$a = [];
+for ($i = 0; $i < 5; $i++) {
+    $a[] = $i;
+}
+$b = $a;
+$b[] = 1.5;
+$b[] = 'x';
+echo count($a), ' ', count($b), "\n";
+echo values($a), ' ', values($b), "\n";
+
+$d = [2.5, 0.5];
+$d[] = 1;
+var_dump($d);
+
+$ref = &$a[0];
+$ref = 10;
+echo values($a), "\n";
+
+foreach ($b as $k => &$v) {
+    $v = $k;
+}
+unset($v);
+echo values($b), "\n";
+
+$c = [1, 2, 3];
+$c[] = count($c);
+unset($c[1]);
+$c[] = 5;
+$c['key'] = 6;
+var_dump($c);
+
+function &first(array &$array) {
+    return $array[0];
+}
+$e = [1, 2];
+$f = &first($e);
+$f = 100;
+var_dump($e, isset($e[1]), isset($e[2]), $e['1']);
+$g = [];
+$g[] = [1];
+$h = $g;
+$h[0][] = 2;
+echo count($g[0]), ' ', count($h[0]), "\n";
+--EXPECT--
+5 7
+0,1,2,3,4, 0,1,2,3,4,1.5,x,
+array(3) {
+  [0]=>
+  float(2.5)
+  [1]=>
+  float(0.5)
+  [2]=>
+  int(1)
+}
+10,1,2,3,4,
+0,1,2,3,4,5,6,
+array(5) {
+  [0]=>
+  int(1)
+  [2]=>
+  int(3)
+  [3]=>
+  int(3)
+  [4]=>
+  int(5)
+  ["key"]=>
+  int(6)
+}
+array(2) {
+  [0]=>
+  int(100)
+  [1]=>
+  int(2)
+}
+bool(true)
+bool(false)
+int(2)
+1 2
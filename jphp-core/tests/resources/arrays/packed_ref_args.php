@@ -0,0 +1,61 @@
+--FILE--
+<?php
+
+class Ref {
+    function inc(&$value) {
+        $value++;
+    }
+
+    function append(array &$list) {
+        $list[] = 'x';
+    }
+}
+
+$o = new Ref();
+
+$longs = [1, 2, 3];
+$o->inc($longs[1]);
+
+$doubles = [0.5, 1.5];
+$o->inc($doubles[0]);
+
+$lists = [['a'], ['b']];
+$o->append($lists[1]);
+
+var_dump($longs[1], $doubles[0], $lists[1]);
+
+function twice(&$value) {
+    $value *= 2;
+}
+
+$f = 'twice';
+$values = [5, 6];
+$f($values[0]);
+twice($values[1]);
+echo $values[0], ',', $values[1], "\n";
+
+function join_list($list) {
+    $result = '';
+    foreach ($list as $i => $value) {
+        $result .= ($i ? ',' : '') . $value;
+    }
+    return $result;
+}
+
+$nested = [[3, 1, 2], [5, 4]];
+$copy = $nested;
+twice($copy[0][0]);
+$o->inc($copy[1][1]);
+echo join_list($nested[0]), ' ', join_list($nested[1]), ' ', join_list($copy[0]), ' ', join_list($copy[1]);
+?>
+--EXPECT--
+int(3)
+float(1.5)
+array(2) {
+  [0]=>
+  string(1) "b"
+  [1]=>
+  string(1) "x"
+}
+10,12
+3,1,2 5,4 6,1,2 5,5
\ No newline at end of file
@@ -0,0 +1,49 @@
+--TEST--
+Method calls by a constant name through one call site
+--FILE--
+<?php
+
+class A {
+    function name() { return 'A'; }
+    private function secret() { return 'A::secret'; }
+    protected function inner() { return 'A::inner'; }
+
+    function callSecret(A $other) { return $other->secret(); }
+    function callInner(A $other) { return $other->inner(); }
+}
+
+class B extends A { function name() { return 'B'; } protected function inner() { return 'B::inner'; } }
+class C extends A { }
+class D extends A { }
+class E extends B { }
+class F extends A { function name() { return 'F'; } }
+
+class M { function __call($name, $args) { return "M::$name(" . $args[0] . ")"; } }
+
+function call_name($object) {
+    return $object->name(1);
+}
+
+$objects = [new A, new B, new C, new D, new E, new F, new M, new A, new F];
+
+$result = '';
+foreach ($objects as $object) {
+    $result .= ($result === '' ? '' : ' ') . call_name($object);
+}
+echo $result, "\n";
+
+$a = new A;
+$result = '';
+foreach ([new A, new B, new C, new F] as $object) {
+    $result .= ($result === '' ? '' : ' ') . $a->callSecret($object) . ' ' . $a->callInner($object);
+}
+echo $result, "\n";
+
+$b = new B;
+echo $b->callSecret(new C), ' ', $b->callInner(new A), "\n";
+
+?>
+--EXPECT--
+A B A A B F M::name(1) A F
+A::secret A::inner A::secret B::inner A::secret A::inner A::secret A::inner
+A::secret A::inner
@@ -0,0 +1,163 @@
+--TEST--
+Declared properties in slots: order, clone, unset, dynamic and shadowed private properties
+--FILE--
+<?php
+
+class A {
+    public $a = 'a';
+    protected $b = 'b';
+    private $c = 'A::c';
+
+    function getC() { return $this->c; }
+    function setC($value) { $this->c = $value; }
+    function unsetC() { unset($this->c); }
+}
+
+class B extends A {
+    public $d = 'd';
+    private $c = 'B::c';
+
+    function getOwnC() { return $this->c; }
+}
+
+function keys($object) {
+    $keys = '';
+    foreach ($object as $key => $value) {
+        $keys .= '[' . $key . '=' . $value . ']';
+    }
+    return $keys;
+}
+
+echo "--- order\n";
+$b = new B();
+var_dump($b);
+var_dump(get_object_vars($b));
+echo keys($b), "\n";
+
+echo "--- private shadowing\n";
+$b->setC('A::c2');
+echo $b->getC(), ' ', $b->getOwnC(), "\n";
+$b->unsetC();
+echo var_export($b->getOwnC(), true), "\n";
+$b->setC('A::c3');
+echo $b->getC(), ' ', $b->getOwnC(), "\n";
+
+echo "--- clone\n";
+$x = new B();
+$x->a = 'x';
+$x->setC('x::c');
+$y = clone $x;
+$y->a = 'y';
+$y->setC('y::c');
+echo $x->a, ' ', $x->getC(), ' ', $x->getOwnC(), "\n";
+echo $y->a, ' ', $y->getC(), ' ', $y->getOwnC(), "\n";
+
+$x->dynamic = 'x';
+$z = clone $x;
+$z->dynamic = 'z';
+$z->a = 'z';
+echo $x->dynamic, ' ', $x->a, ' ', $z->dynamic, ' ', $z->a, "\n";
+echo keys($z), "\n";
+
+echo "--- unset and set again\n";
+$o = new A();
+unset($o->a);
+var_dump(isset($o->a));
+echo keys($o), "\n";
+$o->a = 'again';
+var_dump(isset($o->a));
+echo keys($o), "\n";
+var_dump($o);
+
+$o = new A();
+$o->a = null;
+var_dump(isset($o->a));
+echo keys($o), "\n";
+
+echo "--- dynamic properties\n";
+$o = new B();
+$o->e = 'e';
+$o->a = 'a2';
+$o->f = 'f';
+echo keys($o), "\n";
+var_dump(get_object_vars($o));
+unset($o->e);
+$o->d = 'd2';
+$o->e = 'e2';
+echo keys($o), "\n";
+var_dump($o);
+?>
+--EXPECTF--
+--- order
+object(B)#%d (5) {
+  ["c":"B":private]=>
+  string(4) "B::c"
+  ["d"]=>
+  string(1) "d"
+  ["a"]=>
+  string(1) "a"
+  ["b":protected]=>
+  string(1) "b"
+  ["c":"A":private]=>
+  string(4) "A::c"
+}
+array(2) {
+  ["d"]=>
+  string(1) "d"
+  ["a"]=>
+  string(1) "a"
+}
+[d=d][a=a]
+--- private shadowing
+A::c2 B::c
+'B::c'
+A::c3 B::c
+--- clone
+x x::c B::c
+y y::c B::c
+x x z z
+[d=d][a=z][dynamic=z]
+--- unset and set again
+bool(false)
+
+bool(true)
+[a=again]
+object(A)#%d (3) {
+  ["b":protected]=>
+  string(1) "b"
+  ["c":"A":private]=>
+  string(4) "A::c"
+  ["a"]=>
+  string(5) "again"
+}
+bool(false)
+[a=]
+--- dynamic properties
+[d=d][a=a2][e=e][f=f]
+array(4) {
+  ["d"]=>
+  string(1) "d"
+  ["a"]=>
+  string(2) "a2"
+  ["e"]=>
+  string(1) "e"
+  ["f"]=>
+  string(1) "f"
+}
+[d=d2][a=a2][f=f][e=e2]
+object(B)#%d (7) {
+  ["c":"B":private]=>
+  string(4) "B::c"
+  ["d"]=>
+  string(2) "d2"
+  ["a"]=>
+  string(2) "a2"
+  ["b":protected]=>
+  string(1) "b"
+  ["c":"A":private]=>
+  string(4) "A::c"
+  ["f"]=>
+  string(1) "f"
+  ["e"]=>
+  string(2) "e2"
+}
@@ -0,0 +1,31 @@
+<?php
+
+$result = '';
+for ($i = 0; $i < 3; $i++) {
+    $f = eval('return function($a) use ($i) { return $a . $i; };');
+    $result .= $f('x');
+}
+
+if ($result !== 'x0x1x2')
+    return 'fail_1: closures of cached eval, ' . $result;
+
+eval('function eval_cached_gen($n) { yield $n; yield $n * 2; }');
+
+$sum = 0;
+for ($i = 0; $i < 2; $i++) {
+    $sum += eval('$s = 0; foreach (eval_cached_gen($i + 1) as $v) $s += $v; return $s;');
+}
+
+if ($sum !== 9)
+    return 'fail_2: generator of eval, ' . $sum;
+
+eval('function eval_cached_fn() { return "fn"; }');
+if (eval_cached_fn() !== 'fn')
+    return 'fail_3: function of eval';
+
+eval('class EvalCachedFoo { function bar() { return "bar"; } }');
+$foo = new EvalCachedFoo();
+if ($foo->bar() !== 'bar')
+    return 'fail_4: class of eval';
+
+return 'success';
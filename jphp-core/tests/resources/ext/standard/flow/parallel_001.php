@@ -0,0 +1,64 @@
+--TEST--
+Parallel flow
+--FILE--
+<?php
+
+use php\lib\arr;
+use php\util\Flow;
+
+$source = Flow::ofRange(1, 10000)->toArray();
+
+$sequential = Flow::of($source)
+    ->map(function ($el) { return $el * 3; })
+    ->find(function ($el) { return $el % 2 == 0; })
+    ->map(function ($el, $key) { return $el + $key; })
+    ->toArray();
+
+$ordered = Flow::of($source)->parallel(4, true, 100)
+    ->map(function ($el) { return $el * 3; })
+    ->find(function ($el) { return $el % 2 == 0; })
+    ->map(function ($el, $key) { return $el + $key; })
+    ->toArray();
+
+var_dump(sizeof($sequential));
+var_dump($ordered === $sequential);
+
+$unordered = Flow::of($source)->parallel(3, false, 7)->map(function ($el) { return $el * 3; })->withKeys()->toArray();
+var_dump(sizeof($unordered));
+
+$unordered = arr::sortByKeys($unordered, null, true);
+var_dump($unordered === Flow::of($source)->map(function ($el) { return $el * 3; })->withKeys()->toArray());
+
+var_dump(Flow::of(['a' => 1, 'b' => 2, 'c' => 3])->parallel(2, true, 1)->find(function ($el) { return $el > 1; })->withKeys()->toArray());
+var_dump(Flow::of($source)->parallel(2, true)->map(function ($el) { return $el * 2; })->limit(3)->toArray());
+
+try {
+    Flow::of($source)->parallel(2)->map(function ($el) {
+        if ($el == 5000) throw new Exception("Failed on $el");
+        return $el;
+    })->toArray();
+} catch (Exception $e) {
+    var_dump($e->getMessage());
+}
+
+?>
+--EXPECT--
+int(5000)
+bool(true)
+int(10000)
+bool(true)
+array(2) {
+  ["b"]=>
+  int(2)
+  ["c"]=>
+  int(3)
+}
+array(3) {
+  [0]=>
+  int(2)
+  [1]=>
+  int(4)
+  [2]=>
+  int(6)
+}
+string(14) "Failed on 5000"
@@ -0,0 +1,86 @@
+--TEST--
+Test php\io\FileStream - buffered read and write, seek and memory mapped mode
+--FILE--
+<?php
+
+use php\io\File;
+use php\io\FileStream;
+use php\io\Stream;
+use php\lib\str;
+
+$file = File::createTemp('stream_003', '.txt');
+
+$stream = new FileStream($file, 'w+');
+for ($i = 0; $i < 2000; $i++) {
+    $stream->write("line $i\n");
+}
+var_dump($stream->getPosition());
+var_dump($stream->length());
+
+$stream->seek(5);
+var_dump($stream->read(3));
+var_dump($stream->getPosition());
+
+$stream->seek(0);
+$stream->write('LINE');
+var_dump($stream->getPosition());
+
+$stream->seek(0);
+var_dump($stream->read(8));
+$stream->close();
+
+$stream = Stream::of($file, 'rb', ['bufferSize' => 0]);
+$stream->seek(15000);
+var_dump($stream->read(5));
+var_dump($stream->eof());
+$stream->close();
+
+$stream = Stream::of($file, 'rm');
+var_dump($stream->read(6));
+$stream->seek($stream->length() - 10);
+var_dump($stream->read(100));
+var_dump($stream->eof());
+var_dump($stream->read(1));
+
+try {
+    $stream->write('foo');
+} catch (\php\io\IOException $e) {
+    var_dump($e->getMessage());
+}
+$stream->close();
+
+$stream = Stream::of($file, 'r', ['mmap' => true]);
+var_dump(str::length($stream->readFully()));
+$stream->close();
+
+$stream = Stream::of($file, 'a');
+$stream->write("end\n");
+$stream->close();
+
+$content = Stream::getContents($file);
+var_dump(str::sub($content, str::length($content) - 14));
+
+$file->delete();
+
+?>
+--EXPECTF--
+int(18890)
+int(18890)
+string(3) "0
+l"
+int(8)
+int(4)
+string(8) "LINE 0
+l"
+string(5) "line "
+bool(false)
+string(6) "LINE 0"
+string(10) "line 1999
+"
+bool(true)
+NULL
+string(34) "Cannot write to memory mapped file"
+int(18890)
+string(14) "line 1999
+end
+"
@@ -0,0 +1,18 @@
+<?php
+
+use php\io\File;
+use php\io\FileStream;
+
+function write_and_forget($file) {
+    $stream = new FileStream($file, 'w');
+    $stream->write("hello\n");
+}
+
+$first = File::createTemp('stream_004', '.txt');
+write_and_forget($first);
+
+$second = File::createTemp('stream_004', '.txt');
+$stream = new FileStream($second, 'w');
+$stream->write("world\n");
+
+return [$first->getPath(), $second->getPath()];
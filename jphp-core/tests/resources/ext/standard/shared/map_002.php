@@ -0,0 +1,57 @@
+--TEST--
+SharedMap atomic operations
+--FILE--
+<?php
+
+use php\lang\Environment;
+use php\lang\Thread;
+use php\util\SharedMap;
+
+$map = new SharedMap(['a' => 1]);
+
+var_dump($map->putIfAbsent('a', 2));
+var_dump($map->putIfAbsent('b', 2));
+var_dump($map->get('b'));
+
+var_dump($map->compareAndSet('a', '1', 10));
+var_dump($map->compareAndSet('a', 1, 10));
+var_dump($map->compareAndSet('c', null, 10));
+var_dump($map->get('a'));
+
+var_dump($map->compute('a', function ($value, $key) { return $key . $value; }));
+var_dump($map->compute('c', function ($value) { return $value === null ? 'new' : 'old'; }));
+var_dump($map->compute('b', function () { return null; }));
+var_dump($map->has('b'));
+
+$threads = [];
+
+for ($i = 0; $i < 4; $i++) {
+    $threads[] = $thread = new Thread(function () use ($map) {
+        for ($j = 0; $j < 500; $j++) {
+            $map->compute('counter', function ($value) { return $value + 1; });
+        }
+    }, new Environment());
+
+    $thread->start();
+}
+
+foreach ($threads as $thread) {
+    $thread->join();
+}
+
+var_dump($map->get('counter'));
+
+?>
+--EXPECT--
+int(1)
+NULL
+int(2)
+bool(false)
+bool(true)
+bool(false)
+int(10)
+string(3) "a10"
+string(3) "new"
+NULL
+bool(false)
+int(2000)
@@ -0,0 +1,30 @@
+--TEST--
+SharedValue compare and set
+--FILE--
+<?php
+
+use php\util\SharedValue;
+
+$value = new SharedValue();
+
+var_dump($value->compareAndSet(1, 2));
+var_dump($value->compareAndSet(null, 1));
+var_dump($value->get());
+
+var_dump($value->compareAndSet('1', 2));
+var_dump($value->compareAndSet(1, 2));
+var_dump($value->get());
+
+var_dump($value->set(3, false));
+var_dump($value->get());
+
+?>
+--EXPECT--
+bool(false)
+bool(true)
+int(1)
+bool(false)
+bool(true)
+int(2)
+int(2)
+int(2)
@@ -0,0 +1,43 @@
+--TEST--
+Generators keep locals and partially evaluated expressions between yields
+--FILE--
+<?php
+function gen($prefix) {
+    $list = [];
+    for ($i = 0; $i < 3; $i++) {
+        $list[] = $prefix . str_repeat('x', $i) . (yield $i) . (yield $i * 1.5);
+    }
+
+    try {
+        $value = ((yield 'a') > 1) ? 'more' : 'less';
+    } finally {
+        $list[] = $value;
+    }
+
+    echo implode(',', $list), "\n";
+    yield 'key' => 'last';
+}
+
+$gen = gen('-');
+var_dump($gen->current());
+
+$n = 0;
+do {
+    $value = $gen->send(++$n);
+    var_dump($value);
+} while ($value !== 'last');
+
+$gen->next();
+var_dump($gen->valid());
+?>
+--EXPECT--
+int(0)
+float(0)
+int(1)
+float(1.5)
+int(2)
+float(3)
+string(1) "a"
+-12,-x34,-xx56,more
+string(4) "last"
+bool(false)
@@ -0,0 +1,57 @@
+--TEST--
+Test expressions of the interpreted module
+--FILE--
+<p><?php
+
+$a = 10;
+$b = $a * 2 + 1;
+$c = $a = 3;
+
+echo $a, ' ', $b, ' ', $c, "\n";
+echo $b % 4, ' ', 2 ** 3, ' ', 7 / 2, ' ', -$a, ' ', 'x' . $a . 'y', "\n";
+
+$list = [1, 'two', 'k' => [3]];
+$list[] = 4;
+$list['k'][] = 5;
+$list['m']['n'] = 6;
+
+echo count($list), ' ', $list[1], ' ', $list['k'][1], ' ', $list['m']['n'], ' ', min($list['k']) . ',' . max($list['k']), "\n";
+
+$x = $a > 2 && $b < 20;
+$y = $a > 2 || $undefined;
+$z = !$x or false;
+
+var_dump($x, $y, $z, $a == '3', $a === '3', $a != 4, $a !== 3, $a <= 3, $a >= 4);
+
+if ($a < 2) {
+    echo "a < 2\n";
+} elseif ($a < 5) {
+    echo "a < 5\n";
+} else {
+    echo "a >= 5\n";
+}
+
+if (PHP_INT_SIZE > 4 && E_ALL)
+    echo dechex(255), "\n";
+?>
+<?= $a + 1 ?>
+</p>
+<?php echo __LINE__, ' ';
+var_dump(__FILE__ === __DIR__ . DIRECTORY_SEPARATOR . 'expressions.php');
+--EXPECT--
+<p>3 21 3
+1 8 3.5 -3 x3y
+5 two 5 6 3,5
+bool(false)
+bool(true)
+bool(true)
+bool(true)
+bool(false)
+bool(true)
+bool(false)
+bool(true)
+bool(false)
+a < 5
+ff
+4</p>
+36 bool(true)
@@ -0,0 +1,10 @@
+<?php
+
+$value = 1;
+
+if ($value) {
+    $value = $value + 10;
+    return [1, 'key' => 'value'];
+}
+
+return false;
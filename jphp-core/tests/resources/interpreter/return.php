@@ -0,0 +1,21 @@
+--TEST--
+Test return of the interpreted module
+--FILE--
+<?php
+
+$result = include __DIR__ . '/inc.return.php';
+var_dump($result, $value);
+
+if ($result) {
+    return;
+}
+
+echo 'fail';
+--EXPECT--
+array(2) {
+  [0]=>
+  int(1)
+  ["key"]=>
+  string(5) "value"
+}
+int(11)
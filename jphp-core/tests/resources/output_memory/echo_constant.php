@@ -0,0 +1,36 @@
+--TEST--
+Test echo of constants and inline html
+--FILE--
+<html><?php
+
+use php\lib\str;
+
+function item($name) {
+    ?><li><?= $name ?></li><?php
+}
+
+echo "<ul>", 1, true, false, null;
+echo "\n";
+item('foo');
+item('bar');
+echo "</ul>\n";
+?>
+<p>café</p>
+<?php
+
+ob_start();
+?>é<?= 'é' ?><?php echo 'é', 'é';
+$s = ob_get_clean();
+
+echo str::length($s), "\n";
+echo "<", 2.5, ">", "\n";
+echo 'ok';
+?>
+</html>
+--EXPECT--
+<html><ul>11
+<li>foo</li><li>bar</li></ul>
+<p>café</p>
+4
+<2.5>
+ok</html>
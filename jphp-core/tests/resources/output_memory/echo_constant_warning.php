@@ -0,0 +1,11 @@
+--TEST--
+Test echo of compile functions called with a wrong argument count
+--FILE--
+<?php
+echo chr();
+echo dechex(1, 2);
+echo 'ok';
+--EXPECTF--
+Warning: chr() expects at least 1 parameter(s), 0 given in %s on line %d at pos %d
+Warning: dechex() expects exactly 1 parameter(s), 2 given in %s on line %d at pos %d
+ok
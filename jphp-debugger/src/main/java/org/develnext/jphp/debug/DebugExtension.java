@@ -5,6 +5,7 @@ import org.develnext.jphp.debug.impl.DebuggerException;
 import org.develnext.jphp.debug.impl.command.*;
 import php.runtime.env.CompileScope;
 import php.runtime.env.Environment;
+import php.runtime.env.handler.LineProbes;
 import php.runtime.env.handler.ProgramShutdownHandler;
 import php.runtime.ext.support.Extension;
 
@@ -48,6 +49,9 @@ public class DebugExtension extends Extension {
             final DebugTickHandler tickHandler = new DebugTickHandler();
             scope.setTickHandler(tickHandler);
 
+            // the first tick waits for the IDE, the debugger starts with the step into mode.
+            LineProbes.setAllLines(true);
+
             final String finalDebugHost = debugHost;
             Thread debuggerThread = new Thread(new Runnable() {
                 @Override
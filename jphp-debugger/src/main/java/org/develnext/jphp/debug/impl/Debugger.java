@@ -10,6 +10,7 @@ import org.w3c.dom.Document;
 import php.runtime.common.StringUtils;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
+import php.runtime.env.handler.LineProbes;
 import php.runtime.memory.ArrayMemory;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -194,6 +195,9 @@ public class Debugger {
     }
 
     public DebugTick waitTick(Step step) {
+        // lines without breakpoints trigger ticks only while stepping.
+        LineProbes.setAllLines(step != Step.RUN);
+
         working = false;
         waitStep = step;
 
@@ -3,6 +3,7 @@ package org.develnext.jphp.debug.impl.breakpoint;
 import org.develnext.jphp.debug.impl.Debugger;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
+import php.runtime.env.handler.LineProbes;
 
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -15,15 +16,48 @@ public class BreakpointManager {
     public BreakpointManager(Debugger debugger) {
         this.debugger = debugger;
         breakpoints = new LinkedHashMap<>();
-    }
 
-    public Breakpoint findFor(Environment env, TraceInfo trace) {
-        String fileName = trace.getFileName();
+        LineProbes.setInitializer(new LineProbes.Initializer() {
+            @Override
+            public void onCreate(LineProbes probes) {
+                update(probes);
+            }
+        });
+    }
 
-        if (!fileName.startsWith("/") && !fileName.matches("^[A-Za-z](\\\\:)(.+?)")) {
+    protected String resolveFileName(String fileName) {
+        if (fileName != null && !fileName.startsWith("/") && !fileName.matches("^[A-Za-z](\\\\:)(.+?)")) {
             fileName = debugger.getFileName(fileName);
         }
 
+        return fileName;
+    }
+
+    /**
+     * Activates lines of the module which have breakpoints.
+     */
+    synchronized public void update(LineProbes probes) {
+        String fileName = resolveFileName(probes.getModuleName());
+
+        probes.clear();
+
+        for (Breakpoint breakpoint : breakpoints.values()) {
+            if (breakpoint.line != null && breakpoint.line > 0 && fileName != null
+                    && fileName.equalsIgnoreCase(breakpoint.fileName)) {
+                probes.setActive(breakpoint.line - 1, true);
+            }
+        }
+    }
+
+    public void update() {
+        for (LineProbes probes : LineProbes.all()) {
+            update(probes);
+        }
+    }
+
+    public Breakpoint findFor(Environment env, TraceInfo trace) {
+        String fileName = resolveFileName(trace.getFileName());
+
         int line = trace.getStartLine();
 
         for (Breakpoint breakpoint : breakpoints.values()) {
@@ -44,10 +78,21 @@ public class BreakpointManager {
     }
 
     public Breakpoint remove(String id) {
-        return breakpoints.remove(id);
+        Breakpoint result;
+
+        synchronized (this) {
+            result = breakpoints.remove(id);
+        }
+
+        update();
+        return result;
     }
 
     public void set(Breakpoint breakpoint) {
-        breakpoints.put(String.valueOf(breakpoint.getId()), breakpoint);
+        synchronized (this) {
+            breakpoints.put(String.valueOf(breakpoint.getId()), breakpoint);
+        }
+
+        update();
     }
 }
@@ -2,6 +2,11 @@
 namespace php\io;
 
 
+/**
+ * Reads and writes are buffered, the buffer is written on flush(), close() and seek() out of the buffer.
+ * The mode 'rm' maps the file into memory, the context array may contain options:
+ * bufferSize (int, 0 - without buffer) and mmap (bool, only for read only streams).
+ */
 class FileStream extends Stream {
 
     /**
@@ -43,6 +48,12 @@ class FileStream extends Stream {
      */
     public function getPosition() { }
 
+    /**
+     * Writes the buffer to the file.
+     * @throws IOException
+     */
+    public function flush() { }
+
     /**
      * @return mixed
      */
@@ -120,10 +120,11 @@ abstract class Stream
     /**
      * @param string $path
      * @param string $mode
+     * @param mixed $context
      * @return Stream
      * @throws IOException
      */
-    public static function of($path, $mode = 'r')
+    public static function of($path, $mode = 'r', $context = null)
     {
     }
 
@@ -26,6 +26,23 @@ class Flow implements Iterator {
      */
     public function withKeys() { return $this; }
 
+    /**
+     * Runs the next map() and find() operations on several threads,
+     * the source is split into chunks and each thread calls callbacks in its own child environment,
+     * so callbacks must not depend on the state of each other.
+     * Adjacent map() and find() operations are run in one pass.
+     *
+     * Example::
+     *
+     *      $flow = Flow::of($rows)->parallel(4, true)->map(function ($row) { return parse($row); });
+     *
+     * @param int $threads count of threads, 0 - count of processors
+     * @param bool $ordered keep the order of the source, else results are returned when they are ready
+     * @param int $chunkSize count of elements of one task
+     * @return Flow
+     */
+    public function parallel($threads = 0, $ordered = false, $chunkSize = 1024) { return $this; }
+
     /**
      * @param array|Traversable $keys
      * @param bool $ignoreCase
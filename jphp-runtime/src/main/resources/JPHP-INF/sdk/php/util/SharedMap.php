@@ -7,6 +7,9 @@ use Traversable;
 
 /**
  * Class SharedMap
+ *
+ * Methods of the map are thread-safe without locks, the order of iteration is not defined.
+ *
  * @package php\util
  */
 class SharedMap extends SharedCollection
@@ -61,6 +64,38 @@ class SharedMap extends SharedCollection
     {
     }
 
+    /**
+     * Puts the value only if there is no value for the key.
+     * @param string $key
+     * @param mixed $value
+     * @return mixed the current value or null if the value is put
+     */
+    public function putIfAbsent($key, $value)
+    {
+    }
+
+    /**
+     * Sets the value only if the current value is identical (===) to $expect.
+     * @param string $key
+     * @param mixed $expect
+     * @param mixed $update
+     * @return bool
+     */
+    public function compareAndSet($key, $expect, $update)
+    {
+    }
+
+    /**
+     * Atomically replaces the value by the result of the callback, the value is removed if the callback returns null.
+     * The callback can be called again if another thread changes the value at the same time.
+     * @param string $key
+     * @param callable $remappingCallback ($value, $key) returns a new value
+     * @return mixed the new value
+     */
+    public function compute($key, callable $remappingCallback)
+    {
+    }
+
     /**
      * @param string $key
      * @return mixed
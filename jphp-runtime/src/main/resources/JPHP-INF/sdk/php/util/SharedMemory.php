@@ -4,7 +4,8 @@ namespace php\util;
 abstract class SharedMemory
 {
     /**
-     * You can use a shared value as a mutex
+     * You can use a shared value as a mutex, other methods do not lock it,
+     * so the callback excludes only callbacks of other synchronize() calls.
      * @param callable $callback (SharedValue $this)
      * @return mixed result of execution of $callback
      */
@@ -45,6 +45,17 @@ class SharedValue extends SharedMemory
     }
 
     /**
+     * Sets the value only if the current value is identical (===) to $expect.
+     * @param mixed $expect
+     * @param mixed $update
+     * @return bool
+     */
+    public function compareAndSet($expect, $update)
+    {
+    }
+
+    /**
+     * The callback can be called again if another thread changes the value at the same time.
      * @param callable $updateCallback ($oldValue) returns a new value
      * @return mixed
      */
@@ -53,6 +64,7 @@ class SharedValue extends SharedMemory
     }
 
     /**
+     * The callback can be called again if another thread changes the value at the same time.
      * @param callable $updateCallback ($oldValue) returns a new value
      * @return mixed
      */
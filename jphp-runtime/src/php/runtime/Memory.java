@@ -266,6 +266,12 @@ abstract public class Memory implements Comparable<Memory> {
     public Memory valueOfIndex(TraceInfo trace, boolean index) { return NULL; }
     final public Memory valueOfIndex(boolean index) { return valueOfIndex(null, index); }
 
+    /**
+     * <value>[index] as an argument of a call, the parameter of which may be a reference: returns the reference of
+     * an existing array item (as valueOfIndex() of non-packed arrays) without creating a missing one.
+     */
+    public Memory valueOfIndexAsArgument(TraceInfo trace, Memory index) { return valueOfIndex(trace, index); }
+
     final public Memory refOfIndex(Memory index){
         return refOfIndex(null, index);
     }
@@ -289,6 +295,11 @@ abstract public class Memory implements Comparable<Memory> {
 
     public Memory refOfPush(TraceInfo trace) { return new ReferenceMemory(); }
     final public Memory refOfPush() { return refOfPush(null); }
+
+    /**
+     * $var[] = value, value must be immutable.
+     */
+    public Memory assignOfPush(TraceInfo trace, Memory value) { return refOfPush(trace).assign(value); }
     public void unsetOfIndex(TraceInfo trace, Memory index) { }
     public Memory issetOfIndex(TraceInfo trace, Memory index) { return NULL; }
     public Memory emptyOfIndex(TraceInfo trace, Memory index) { return issetOfIndex(trace, index); }
@@ -1,8 +1,12 @@
 package php.runtime;
 
+import php.runtime.env.Environment;
+import php.runtime.invoke.cache.ClassCallCache;
 import php.runtime.memory.BinaryMemory;
 import php.runtime.memory.DoubleMemory;
 import php.runtime.memory.LongMemory;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ClassEntity;
 
 import java.util.Arrays;
 
@@ -199,4 +203,28 @@ public class OperatorUtils {
     public static boolean instanceOfRight(String name, String lowerName, Memory o) {
         return o.instanceOf(name, lowerName);
     }
+
+    /**
+     * instanceof with a constant class name, the class is resolved once per environment.
+     */
+    public static boolean instanceOf(Memory o, String name, String lowerName,
+                                     Environment env, ClassCallCache callCache, int cacheIndex) {
+        o = o.toValue();
+        if (!o.isObject()) {
+            return false;
+        }
+
+        ClassEntity entity = callCache.get(env, cacheIndex);
+        if (entity == null) {
+            entity = env.fetchClass(name, lowerName, false);
+
+            if (entity == null) {
+                return false;
+            }
+
+            callCache.put(env, cacheIndex, entity);
+        }
+
+        return ((ObjectMemory) o).getReflection().isInstanceOf(entity);
+    }
 }
@@ -11,6 +11,8 @@ abstract public class AbstractCompiler {
     protected final CompileScope scope;
     protected final Context context;
 
+    protected boolean interpretable = true;
+
     public AbstractCompiler(Environment environment, Context context){
         this.context = context;
         this.scope = environment.getScope();
@@ -25,6 +27,18 @@ abstract public class AbstractCompiler {
         return scope;
     }
 
+    public boolean isInterpretable() {
+        return interpretable;
+    }
+
+    /**
+     * Allows to return a module which is executed by an interpreter instead of bytecode, such a module cannot be
+     * dumped, see CompileScope.setInterpreterThreshold().
+     */
+    public void setInterpretable(boolean interpretable) {
+        this.interpretable = interpretable;
+    }
+
     abstract public ModuleEntity compile(boolean autoRegister);
 
     public ModuleEntity compile(){
@@ -14,7 +14,15 @@ public class CallStack {
     protected final Environment env;
 
     public CallStack(Environment env) {
+        this(env, true);
+    }
+
+    protected CallStack(Environment env, boolean live) {
         this.env = env;
+
+        if (live) {
+            Profiler.register(this);
+        }
     }
 
     public int getTop(){
@@ -72,7 +80,7 @@ public class CallStack {
     }
 
     public CallStack getSnapshotAsCallStack() {
-        CallStack stack = new CallStack(env);
+        CallStack stack = new CallStack(env, false);
 
         stack.callStack = new CallStackItem[callStack.length];
 
@@ -28,6 +28,7 @@ import php.runtime.lang.spl.Serializable;
 import php.runtime.lang.spl.Traversable;
 import php.runtime.lang.spl.iterator.IteratorAggregate;
 import php.runtime.loader.RuntimeClassLoader;
+import php.runtime.loader.dump.ModuleCache;
 import php.runtime.reflection.*;
 import php.runtime.reflection.support.ReflectionUtils;
 import php.runtime.util.JVMStackTracer;
@@ -41,6 +42,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class CompileScope {
+    public final static int DEFAULT_INTERPRETER_THRESHOLD = 8;
+
     public final int id;
 
     protected RuntimeClassLoader classLoader;
@@ -68,6 +71,8 @@ public class CompileScope {
     protected Map<String, CompileFunctionSpec> compileFunctionSpecMap;
 
     protected CompilerFactory compilerFactory;
+    protected ModuleCache moduleCache;
+    protected int interpreterThreshold = DEFAULT_INTERPRETER_THRESHOLD;
 
     protected List<EntityFetchHandler> classEntityFetchHandler;
     protected List<EntityFetchHandler> functionEntityFetchHandler;
@@ -90,18 +95,18 @@ public class CompileScope {
         moduleMap = new ConcurrentHashMap<>();
         moduleIndexMap = new ConcurrentHashMap<>();
 
-        classMap = new HashMap<>();
-        functionMap = new HashMap<>();
-        constantMap = new HashMap<>();
+        classMap = new ConcurrentHashMap<>();
+        functionMap = new ConcurrentHashMap<>();
+        constantMap = new ConcurrentHashMap<>();
         exceptionMap = new HashMap<>();
         exceptionMapForContext = new HashMap<>();
 
         extensions = new LinkedHashMap<>();
 
-        compileConstantMap = new HashMap<>();
-        compileFunctionMap = new HashMap<>();
-        compileFunctionSpecMap = new HashMap<>();
-        compileClassMap    = new HashMap<>();
+        compileConstantMap = new ConcurrentHashMap<>();
+        compileFunctionMap = new ConcurrentHashMap<>();
+        compileFunctionSpecMap = new ConcurrentHashMap<>();
+        compileClassMap    = new ConcurrentHashMap<>();
 
         superGlobals = new HashSet<>();
         superGlobals.addAll(parent.superGlobals);
@@ -126,6 +131,8 @@ public class CompileScope {
         methodCount.set(parent.methodCount.longValue());
 
         compilerFactory = parent.compilerFactory;
+        moduleCache = parent.moduleCache;
+        interpreterThreshold = parent.interpreterThreshold;
 
         classEntityFetchHandler = new ArrayList<>(parent.classEntityFetchHandler);
         functionEntityFetchHandler = new ArrayList<>(parent.functionEntityFetchHandler);
@@ -148,15 +155,15 @@ public class CompileScope {
         moduleMap = new ConcurrentHashMap<>();
         moduleIndexMap = new ConcurrentHashMap<>();
 
-        classMap = new HashMap<>();
-        functionMap = new HashMap<>();
-        constantMap = new HashMap<>();
+        classMap = new ConcurrentHashMap<>();
+        functionMap = new ConcurrentHashMap<>();
+        constantMap = new ConcurrentHashMap<>();
 
         extensions = new LinkedHashMap<>();
-        compileConstantMap = new HashMap<>();
-        compileFunctionMap = new HashMap<>();
-        compileFunctionSpecMap = new HashMap<>();
-        compileClassMap    = new HashMap<>();
+        compileConstantMap = new ConcurrentHashMap<>();
+        compileFunctionMap = new ConcurrentHashMap<>();
+        compileFunctionSpecMap = new ConcurrentHashMap<>();
+        compileClassMap    = new ConcurrentHashMap<>();
         exceptionMap = new HashMap<>();
         exceptionMapForContext = new HashMap<>();
 
@@ -224,6 +231,29 @@ public class CompileScope {
         }
     }
 
+    public ModuleCache getModuleCache() {
+        return moduleCache;
+    }
+
+    /**
+     * Sets the persistent cache of compiled modules, null disables it.
+     */
+    public void setModuleCache(ModuleCache moduleCache) {
+        this.moduleCache = moduleCache;
+    }
+
+    public int getInterpreterThreshold() {
+        return interpreterThreshold;
+    }
+
+    /**
+     * Sets the number of includes of a module which is executed by the interpreter before the module is compiled to
+     * bytecode, 0 disables the interpreter. The interpreter is not used in the debug mode.
+     */
+    public void setInterpreterThreshold(int interpreterThreshold) {
+        this.interpreterThreshold = interpreterThreshold;
+    }
+
     public RuntimeClassLoader getClassLoader() {
         return classLoader;
     }
@@ -468,13 +498,19 @@ public class CompileScope {
         if (compileClass == null)
             return null;
 
-        entity = new ClassEntity(new ClassWrapper(
-                compileClass.getExtension(), this, compileClass.getNativeClass()
-        ));
-        entity.setId(nextClassIndex());
+        // native classes are registered by names only, the reflection of a class is done once for the scope
+        // when the class is used at first.
+        synchronized (compileClassMap) {
+            entity = classMap.get(nameLower);
+
+            if (entity == null) {
+                entity = new ClassEntity(new ClassWrapper(
+                        compileClass.getExtension(), this, compileClass.getNativeClass()
+                ));
+                entity.setId(nextClassIndex());
 
-        synchronized (classMap) {
-            classMap.put(name, entity);
+                classMap.put(nameLower, entity);
+            }
         }
 
         return entity;
@@ -532,6 +568,12 @@ public class CompileScope {
         }
 
         synchronized (this) {
+            function = compileFunctionMap.get(name);
+
+            if (function != null) {
+                return function;
+            }
+
             CompileFunctionSpec functionSpec = compileFunctionSpecMap.get(name);
 
             if (functionSpec == null) {
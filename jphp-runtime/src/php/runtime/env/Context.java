@@ -62,6 +62,25 @@ public class Context {
         return file;
     }
 
+    /**
+     * Returns the local file of the source or null.
+     */
+    public File getSourceFile() {
+        if (file != null) {
+            return file;
+        }
+
+        if (moduleName != null) {
+            File result = new File(moduleName);
+
+            if (result.isFile()) {
+                return result;
+            }
+        }
+
+        return null;
+    }
+
     public boolean isLikeFile(){
         return file != null || inputStream != null;
     }
@@ -96,10 +115,12 @@ public class Context {
     }
 
     public String getContent() throws IOException {
-        if (inputStream != null){
-            readContent(new InputStreamReader(inputStream, charset));
-        } else if (content == null && file != null){
-            readContent(new InputStreamReader(new FileInputStream(file), charset));
+        if (content == null) {
+            if (inputStream != null){
+                readContent(new InputStreamReader(inputStream, charset));
+            } else if (file != null){
+                readContent(new InputStreamReader(new FileInputStream(file), charset));
+            }
         }
         return content;
     }
@@ -18,28 +18,35 @@ import php.runtime.ext.support.Extension;
 import php.runtime.ext.support.compile.CompileConstant;
 import php.runtime.invoke.Invoker;
 import php.runtime.invoke.ObjectInvokeHelper;
+import php.runtime.invoke.cache.ClassCallCache;
 import php.runtime.lang.*;
 import php.runtime.lang.exception.BaseBaseException;
 import php.runtime.lang.exception.BaseError;
 import php.runtime.lang.exception.BaseParseError;
+import php.runtime.loader.CompiledModuleCache;
+import php.runtime.loader.dump.ModuleCache;
 import php.runtime.loader.dump.ModuleDumper;
 import php.runtime.loader.sourcemap.SourceMap;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.memory.ObjectMemory;
 import php.runtime.memory.ReferenceMemory;
 import php.runtime.memory.StringMemory;
+import php.runtime.output.EchoConstant;
 import php.runtime.output.OutputBuffer;
 import php.runtime.reflection.*;
 import php.runtime.reflection.support.ReflectionUtils;
 import php.runtime.util.JVMStackTracer;
 
 import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -80,6 +87,9 @@ public class Environment {
 
     private List<ShutdownHandler> shutdownFunctions = new LinkedList<ShutdownHandler>();
 
+    // buffered streams with not written data, they are flushed in doFinal()
+    private final Set<Flushable> flushables = Collections.newSetFromMap(new IdentityHashMap<Flushable, Boolean>());
+
     protected Map<String, SourceMap> sourceMaps = new HashMap<>();
 
     // charset, locale
@@ -109,6 +119,10 @@ public class Environment {
         return environment.get();
     }
 
+    // entries of call caches are valid only for this token, see reset()
+    private Object callCacheToken = new Object();
+    private Snapshot snapshot;
+
     private final ReferenceQueue<IObject> gcObjectRefQueue = new ReferenceQueue<IObject>();
     private final Set<WeakReference<IObject>> gcObjects = new HashSet<WeakReference<IObject>>();
     private static final AtomicInteger ids = new AtomicInteger();
@@ -273,10 +287,130 @@ public class Environment {
         }
 
         finalizeObjects();
+        flushResources();
         flushAll();
         lastMessage = null;
     }
 
+    /**
+     * Remembers the current state of the environment (e.g. after bootstrap of a server worker),
+     * the environment can be returned to this state by reset() and reused for the next request.
+     */
+    public void snapshot() {
+        Snapshot snapshot = new Snapshot();
+
+        snapshot.configuration = new HashMap<String, Memory>(configuration);
+        snapshot.includePaths = new HashSet<String>(includePaths);
+
+        snapshot.autoload = __autoload;
+        snapshot.classLoaders = new ArrayList<SplClassLoader>(classLoaders);
+
+        snapshot.errorFlags = errorFlags;
+        snapshot.errorReportHandler = errorReportHandler;
+        snapshot.errorHandler = errorHandler;
+        snapshot.previousErrorHandler = previousErrorHandler;
+        snapshot.exceptionHandler = exceptionHandler;
+        snapshot.previousExceptionHandler = previousExceptionHandler;
+
+        snapshot.locale = locale;
+        snapshot.defaultCharset = defaultCharset;
+
+        ForeachIterator iterator = globals.foreachIterator(false, false);
+        while (iterator.next()) {
+            if (!"GLOBALS".equals(iterator.getKey())) {
+                snapshot.globals.put(iterator.getKey(), iterator.getValue().toValue().toImmutable());
+            }
+        }
+
+        for (Map.Entry<String, ReferenceMemory> e : statics.entrySet()) {
+            snapshot.statics.put(e.getKey(), e.getValue().toValue().toImmutable());
+        }
+
+        snapshot.userValues = new HashMap<String, Object>(userValues);
+
+        snapshot.classMap = new LinkedHashMap<String, ClassEntity>(classMap);
+        snapshot.functionMap = new LinkedHashMap<String, FunctionEntity>(functionMap);
+        snapshot.constantMap = new LinkedHashMap<String, ConstantEntity>(constantMap);
+        snapshot.modules = new LinkedHashMap<String, ModuleEntity>(moduleManager.modules);
+
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Returns the environment to the state of the last snapshot(): globals, statics, output buffers,
+     * user values, error handlers, loaded classes and functions. All entries of call caches for the environment
+     * become invalid. Objects created after the snapshot are not destructed, call doFinal() before.
+     */
+    public void reset() {
+        if (snapshot == null) {
+            throw new IllegalStateException("Environment has no snapshot");
+        }
+
+        callCacheToken = new Object();
+        callStack = new CallStack(this);
+
+        configuration.clear();
+        configuration.putAll(snapshot.configuration);
+        includePaths = new HashSet<String>(snapshot.includePaths);
+
+        __autoload = snapshot.autoload;
+        classLoaders.clear();
+        classLoaders.addAll(snapshot.classLoaders);
+
+        errorFlags = snapshot.errorFlags;
+        silentFlags.clear();
+        lastMessage = null;
+        errorReportHandler = snapshot.errorReportHandler;
+        errorHandler = snapshot.errorHandler;
+        previousErrorHandler = snapshot.previousErrorHandler;
+        exceptionHandler = snapshot.exceptionHandler;
+        previousExceptionHandler = snapshot.previousExceptionHandler;
+
+        while (outputBuffers.size() > 1) {
+            outputBuffers.pop();
+        }
+
+        shutdownFunctions.clear();
+        flushables.clear();
+        gcObjects.clear();
+
+        locale = snapshot.locale;
+        defaultCharset = snapshot.defaultCharset;
+
+        globals.clear();
+        globals.put("GLOBALS", globals);
+        for (Map.Entry<Object, Memory> e : snapshot.globals.entrySet()) {
+            globals.put(e.getKey(), e.getValue().toImmutable());
+        }
+
+        statics.clear();
+        for (Map.Entry<String, Memory> e : snapshot.statics.entrySet()) {
+            statics.put(e.getKey(), new ReferenceMemory(e.getValue().toImmutable()));
+        }
+
+        userValues.clear();
+        userValues.putAll(snapshot.userValues);
+
+        classMap.clear();
+        classMap.putAll(snapshot.classMap);
+        functionMap.clear();
+        functionMap.putAll(snapshot.functionMap);
+        constantMap.clear();
+        constantMap.putAll(snapshot.constantMap);
+
+        moduleManager.modules.clear();
+        moduleManager.modules.putAll(snapshot.modules);
+
+        environment.set(this);
+    }
+
+    /**
+     * Returns a token of call cache entries, it changes with every reset() of the environment.
+     */
+    public Object getCallCacheToken() {
+        return callCacheToken;
+    }
+
     @Override
     protected void finalize() throws Throwable {
         super.finalize();
@@ -1060,6 +1194,23 @@ public class Environment {
             }
     }
 
+    /**
+     * Echoes count bytes of the file from the position, returns the number of written bytes.
+     */
+    public long echo(FileChannel channel, long position, long count){
+        OutputBuffer buffer = peekOutputBuffer();
+        if (buffer != null)
+            try {
+                return buffer.write(channel, position, count);
+            } catch (RuntimeException e){
+                throw e;
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+
+        return 0;
+    }
+
     public void echo(Memory value){
         OutputBuffer buffer = peekOutputBuffer();
         if (buffer != null)
@@ -1072,6 +1223,18 @@ public class Environment {
             }
     }
 
+    public void echo(EchoConstant value){
+        OutputBuffer buffer = peekOutputBuffer();
+        if (buffer != null)
+            try {
+                buffer.write(value);
+            } catch (RuntimeException e){
+                throw e;
+            } catch (Throwable throwable) {
+                throw new RuntimeException(throwable);
+            }
+    }
+
     public void echo(String value){
         OutputBuffer buffer = peekOutputBuffer();
         if (buffer != null)
@@ -1109,10 +1272,35 @@ public class Environment {
         String moduleName = context.getModuleName();
         ModuleEntity module = moduleName == null ? null : scope.findUserModule(moduleName);
         if (module == null){
-            AbstractCompiler compiler = scope.createCompiler(this, context);
-            module = compiler.compile(true);
-            synchronized (scope) {
-                scope.loadModule(module);
+            CompiledModuleCache compiledModules = scope.getClassLoader().getCompiledModules();
+            module = compiledModules.get(this, context);
+
+            if (module != null) {
+                // classes of the module are already defined by the class loader of the scope.
+                scope.addUserModule(module);
+            } else {
+                ModuleCache moduleCache = scope.getModuleCache();
+                module = moduleCache == null ? null : moduleCache.load(this, context);
+
+                if (module == null) {
+                    AbstractCompiler compiler = scope.createCompiler(this, context);
+                    module = compiler.compile(true);
+
+                    if (moduleCache != null) {
+                        moduleCache.save(this, context, module);
+                    }
+
+                    synchronized (scope) {
+                        scope.loadModule(module);
+                    }
+                } else {
+                    synchronized (scope) {
+                        scope.loadModule(module);
+                    }
+                    scope.addUserModule(module);
+                }
+
+                compiledModules.put(this, context, module);
             }
         }
 
@@ -1348,8 +1536,22 @@ public class Environment {
         return iterator;
     }
 
+    /**
+     * Returns the module by its internal name, modules of eval() are not registered in the scope and are found by the
+     * class loader.
+     */
+    protected ModuleEntity fetchModule(String internalName) {
+        ModuleEntity module = scope.moduleIndexMap.get(internalName);
+
+        if (module == null) {
+            module = scope.getClassLoader().getModule(internalName);
+        }
+
+        return module;
+    }
+
     public ClassEntity __getGenerator(String moduleIndex, int index) {
-        ModuleEntity moduleEntity = scope.moduleIndexMap.get(moduleIndex);
+        ModuleEntity moduleEntity = fetchModule(moduleIndex);
         if (moduleEntity == null)
             throw new CriticalException("Cannot find the module ("+moduleIndex+") for getting a generator object");
 
@@ -1357,7 +1559,7 @@ public class Environment {
     }
 
     public ClassEntity __getClosure(String moduleIndex, int index) {
-        ModuleEntity moduleEntity = scope.moduleIndexMap.get(moduleIndex);
+        ModuleEntity moduleEntity = fetchModule(moduleIndex);
         if (moduleEntity == null)
             throw new CriticalException("Cannot find the module ("+moduleIndex+") for getting a closure object");
 
@@ -1365,13 +1567,20 @@ public class Environment {
     }
 
     public Memory __getSingletonClosure(String moduleIndex, int index){
-        Memory result = scope.moduleIndexMap.get(moduleIndex).findClosure(index).getSingleton();
+        Memory result = fetchModule(moduleIndex).findClosure(index).getSingleton();
         assert result != null;
         return result;
     }
 
     public Memory __throwException(InvocationTargetException e) {
-        Throwable throwable = e.getTargetException();
+        return __rethrowException(e.getTargetException());
+    }
+
+    /**
+     * Rethrows an exception of a native method (called via reflection or a method handle),
+     * non-jphp exceptions are converted to php exceptions.
+     */
+    public Memory __rethrowException(Throwable throwable) {
         if (throwable instanceof FinallyException) {
             return Memory.NULL;
         }
@@ -1427,11 +1636,26 @@ public class Environment {
     }
 
     public Memory __throwCatch(BaseBaseException e, String className, String lowerClassName) {
+        return __throwCatch(e, className, lowerClassName, null, 0);
+    }
+
+    public Memory __throwCatch(BaseBaseException e, String className, String lowerClassName,
+                               ClassCallCache callCache, int cacheIndex) {
         ClassEntity origin = e.getReflection();
-        ClassEntity cause = fetchClass(className, lowerClassName, false);
+        ClassEntity cause = callCache == null ? null : callCache.get(this, cacheIndex);
+
+        if (cause == null) {
+            cause = fetchClass(className, lowerClassName, false);
+
+            if (cause != null && callCache != null) {
+                callCache.put(this, cacheIndex, cause);
+            }
+        }
+
+        if (cause != null) {
+            return origin.isInstanceOf(cause) ? new ObjectMemory(e) : Memory.NULL;
+        }
 
-        if (cause != null && origin.isInstanceOf(cause))
-            return new ObjectMemory(e);
         if (origin.isInstanceOfLower(lowerClassName))
             return new ObjectMemory(e);
         else
@@ -1478,7 +1702,7 @@ public class Environment {
     }
 
     public void __defineFunction(TraceInfo trace, String moduleInternalName, int index){
-        ModuleEntity module = scope.moduleIndexMap.get(moduleInternalName);
+        ModuleEntity module = fetchModule(moduleInternalName);
         if (module == null)
             throw new CriticalException("Cannot find module: " + moduleInternalName);
 
@@ -1744,6 +1968,30 @@ public class Environment {
         shutdownFunctions.add(handler);
     }
 
+    /**
+     * Registers a buffered resource which must be flushed at the end of the script if it is not closed before,
+     * the environment holds it until unregisterFlushable() or doFinal().
+     */
+    public void registerFlushable(Flushable flushable) {
+        flushables.add(flushable);
+    }
+
+    public void unregisterFlushable(Flushable flushable) {
+        flushables.remove(flushable);
+    }
+
+    protected void flushResources() {
+        for (Flushable flushable : flushables) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                warning("Cannot flush a stream: %s", e.getMessage());
+            }
+        }
+
+        flushables.clear();
+    }
+
     static {
         configurationHandler = new HashMap<String, ConfigChangeHandler>();
         configurationHandler.put("include_path", new ConfigChangeHandler() {
@@ -1761,4 +2009,31 @@ public class Environment {
             }
         });
     }
+
+    protected static class Snapshot {
+        Map<String, Memory> configuration;
+        Set<String> includePaths;
+
+        SplClassLoader autoload;
+        List<SplClassLoader> classLoaders;
+
+        int errorFlags;
+        ErrorReportHandler errorReportHandler;
+        ErrorHandler errorHandler;
+        ErrorHandler previousErrorHandler;
+        ExceptionHandler exceptionHandler;
+        ExceptionHandler previousExceptionHandler;
+
+        Locale locale;
+        Charset defaultCharset;
+
+        final Map<Object, Memory> globals = new LinkedHashMap<Object, Memory>();
+        final Map<String, Memory> statics = new HashMap<String, Memory>();
+        Map<String, Object> userValues;
+
+        Map<String, ClassEntity> classMap;
+        Map<String, FunctionEntity> functionMap;
+        Map<String, ConstantEntity> constantMap;
+        Map<String, ModuleEntity> modules;
+    }
 }
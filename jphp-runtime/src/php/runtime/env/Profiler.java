@@ -0,0 +1,392 @@
+package php.runtime.env;
+
+import java.io.*;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sampling profiler of PHP code.
+ *
+ * A daemon thread wakes up each interval and reads the call stacks of all live environments without locking them,
+ * the PHP functions of a stack are joined into one line like "{main};foo;Bar::baz" and the number of samples of each
+ * line is counted. A stack is read while its thread changes it, so a sample may miss a frame which is pushed or popped
+ * at the moment, it is not a problem for the statistics. Samples are written in the collapsed format of flame graph
+ * tools or as a simple SVG flame graph.
+ *
+ * Call stacks of environments are registered in a lock-free set of weak references, so environments which are
+ * created without a running profiler do not contend for a global lock.
+ */
+public class Profiler {
+    public final static long DEFAULT_INTERVAL = 10;
+    public final static String ROOT = "{main}";
+
+    private final static Set<StackReference> stacks
+            = Collections.newSetFromMap(new ConcurrentHashMap<StackReference, Boolean>());
+    private final static ReferenceQueue<CallStack> releasedStacks = new ReferenceQueue<CallStack>();
+    private static volatile Profiler current;
+
+    protected final long interval;
+    protected final Map<String, long[]> samples = new HashMap<String, long[]>();
+
+    protected volatile Thread thread;
+    protected long sampleCount;
+
+    public Profiler() {
+        this(DEFAULT_INTERVAL);
+    }
+
+    public Profiler(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval of the profiler must be positive");
+        }
+
+        this.interval = interval;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    synchronized public void start() {
+        if (thread != null) {
+            return;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (Profiler.this.thread == Thread.currentThread()) {
+                    try {
+                        Thread.sleep(interval);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+
+                    sample();
+                }
+            }
+        }, "jphp-profiler");
+
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+
+        this.thread = thread;
+        thread.start();
+    }
+
+    synchronized public void stop() {
+        Thread thread = this.thread;
+
+        if (thread != null) {
+            this.thread = null;
+            thread.interrupt();
+
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Takes one sample of all call stacks which are inside a function.
+     */
+    public void sample() {
+        expungeStacks();
+
+        StringBuilder sb = new StringBuilder();
+
+        for (StackReference reference : stacks) {
+            CallStack stack = reference.get();
+
+            if (stack == null) {
+                continue;
+            }
+
+            int top = stack.callStackTop;
+            CallStackItem[] items = stack.callStack;
+
+            if (top <= 0) {
+                continue;
+            }
+
+            sb.setLength(0);
+            sb.append(ROOT);
+
+            for (int i = 0; i < top && i < items.length; i++) {
+                CallStackItem item = items[i];
+
+                if (item == null) {
+                    continue;
+                }
+
+                String function = item.function;
+                String clazz = item.clazz;
+
+                if (function == null) {
+                    continue;
+                }
+
+                sb.append(';');
+
+                if (clazz != null) {
+                    sb.append(clazz).append("::");
+                }
+
+                sb.append(function);
+            }
+
+            String key = sb.toString();
+
+            synchronized (samples) {
+                long[] count = samples.get(key);
+
+                if (count == null) {
+                    samples.put(key, new long[] { 1 });
+                } else {
+                    count[0]++;
+                }
+
+                sampleCount++;
+            }
+        }
+    }
+
+    public void reset() {
+        synchronized (samples) {
+            samples.clear();
+            sampleCount = 0;
+        }
+    }
+
+    public long getSampleCount() {
+        synchronized (samples) {
+            return sampleCount;
+        }
+    }
+
+    /**
+     * Returns numbers of samples by collapsed stacks, sorted by stacks.
+     */
+    public Map<String, Long> getStacks() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+
+        synchronized (samples) {
+            for (Map.Entry<String, long[]> entry : samples.entrySet()) {
+                result.put(entry.getKey(), entry.getValue()[0]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes samples in the collapsed format, one "frame;frame;frame count" line for each stack.
+     */
+    public void writeCollapsed(Writer writer) throws IOException {
+        for (Map.Entry<String, Long> entry : getStacks().entrySet()) {
+            writer.write(entry.getKey());
+            writer.write(' ');
+            writer.write(String.valueOf(entry.getValue()));
+            writer.write('\n');
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Writes samples as an SVG flame graph, the width of a frame is proportional to its samples.
+     */
+    public void writeFlameGraph(Writer writer) throws IOException {
+        Frame root = new Frame(ROOT);
+
+        for (Map.Entry<String, Long> entry : getStacks().entrySet()) {
+            String[] names = entry.getKey().split(";");
+            long count = entry.getValue();
+
+            Frame frame = root;
+            frame.count += count;
+
+            for (int i = 1; i < names.length; i++) {
+                frame = frame.child(names[i]);
+                frame.count += count;
+            }
+        }
+
+        int width = 1200;
+        int height = 16;
+        int depth = root.depth();
+
+        writer.write("<?xml version=\"1.0\" standalone=\"no\"?>\n");
+        writer.write(String.format(
+                "<svg version=\"1.1\" xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" font-family=\"monospace\" font-size=\"11\">\n",
+                width, (depth + 1) * height
+        ));
+        writer.write(String.format("<rect width=\"%d\" height=\"%d\" fill=\"#ffffff\"/>\n", width, (depth + 1) * height));
+
+        if (root.count > 0) {
+            root.write(writer, 0, width, depth * height, height, (double) width / root.count);
+        }
+
+        writer.write("</svg>\n");
+        writer.flush();
+    }
+
+    /**
+     * Writes samples to the file, as a flame graph if the name of the file ends with .svg and collapsed otherwise.
+     */
+    public void write(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            if (file.getName().toLowerCase().endsWith(".svg")) {
+                writeFlameGraph(writer);
+            } else {
+                writeCollapsed(writer);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    static void register(CallStack stack) {
+        expungeStacks();
+        stacks.add(new StackReference(stack, releasedStacks));
+    }
+
+    private static void expungeStacks() {
+        Reference<? extends CallStack> reference;
+
+        while ((reference = releasedStacks.poll()) != null) {
+            stacks.remove(reference);
+        }
+    }
+
+    /**
+     * Returns the profiler started by start(long) or null.
+     */
+    public static Profiler current() {
+        return current;
+    }
+
+    /**
+     * Starts the global profiler, the current samples are kept if the profiler is started with the same interval.
+     */
+    synchronized public static Profiler start(long interval) {
+        Profiler profiler = current;
+
+        if (profiler == null || profiler.interval != interval) {
+            if (profiler != null) {
+                profiler.stop();
+            }
+
+            current = profiler = new Profiler(interval);
+        }
+
+        profiler.start();
+        return profiler;
+    }
+
+    /**
+     * Stops the global profiler and returns it with its samples or null if there is no one.
+     */
+    synchronized public static Profiler stopCurrent() {
+        Profiler profiler = current;
+
+        if (profiler != null) {
+            profiler.stop();
+        }
+
+        return profiler;
+    }
+
+    protected static class StackReference extends WeakReference<CallStack> {
+        protected final int hash;
+
+        protected StackReference(CallStack stack, ReferenceQueue<CallStack> queue) {
+            super(stack, queue);
+            this.hash = System.identityHashCode(stack);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+    }
+
+    protected static class Frame {
+        protected final String name;
+        protected final Map<String, Frame> children = new TreeMap<String, Frame>();
+        protected long count;
+
+        protected Frame(String name) {
+            this.name = name;
+        }
+
+        protected Frame child(String name) {
+            Frame frame = children.get(name);
+
+            if (frame == null) {
+                children.put(name, frame = new Frame(name));
+            }
+
+            return frame;
+        }
+
+        protected int depth() {
+            int result = 0;
+
+            for (Frame frame : children.values()) {
+                result = Math.max(result, frame.depth());
+            }
+
+            return result + 1;
+        }
+
+        protected void write(Writer writer, double x, double width, int y, int height, double scale) throws IOException {
+            int hash = name.hashCode();
+            String color = String.format("rgb(%d,%d,%d)", 205 + (hash & 0x31), 80 + ((hash >>> 8) & 0x7F), 50 + ((hash >>> 16) & 0x3F));
+            String title = escape(name) + " (" + count + " samples)";
+
+            writer.write(String.format(Locale.ENGLISH,
+                    "<g><title>%s</title><rect x=\"%.1f\" y=\"%d\" width=\"%.1f\" height=\"%d\" fill=\"%s\"/>",
+                    title, x, y, width, height - 1, color
+            ));
+
+            int chars = (int) (width / 7);
+
+            if (chars >= 3) {
+                String text = name.length() > chars ? name.substring(0, chars - 2) + ".." : name;
+
+                writer.write(String.format(Locale.ENGLISH,
+                        "<text x=\"%.1f\" y=\"%d\">%s</text>", x + 3, y + height - 4, escape(text)
+                ));
+            }
+
+            writer.write("</g>\n");
+
+            for (Frame frame : children.values()) {
+                double childWidth = frame.count * scale;
+                frame.write(writer, x, childWidth, y - height, height, scale);
+                x += childWidth;
+            }
+        }
+
+        protected static String escape(String value) {
+            return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package php.runtime.env.handler;
+
+import php.runtime.Memory;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.ReferenceMemory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Active lines of a module for the debug mode.
+ *
+ * Code compiled in the debug mode checks the probes of its module before each line and calls Environment.__tick()
+ * only for active lines, so locals of the line are collected only when the debugger needs them. Lines are active
+ * for breakpoints of the module or all lines are active while the debugger steps through the code.
+ */
+public class LineProbes {
+    /**
+     * Sets active lines of new probes, it is called once for each module.
+     */
+    public interface Initializer {
+        void onCreate(LineProbes probes);
+    }
+
+    private final static ConcurrentMap<String, LineProbes> probes = new ConcurrentHashMap<String, LineProbes>();
+
+    private static volatile boolean allLines = false;
+    private static volatile Initializer initializer;
+
+    protected final String moduleName;
+    protected volatile long[] lines = new long[0];
+
+    protected LineProbes(String moduleName) {
+        this.moduleName = moduleName;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    /**
+     * Returns true if the tick of the line must be triggered, line is zero-based.
+     */
+    public boolean isActive(int line) {
+        if (allLines) {
+            return true;
+        }
+
+        long[] lines = this.lines;
+        int i = line >>> 6;
+
+        return i < lines.length && (lines[i] & (1L << line)) != 0;
+    }
+
+    synchronized public void setActive(int line, boolean active) {
+        int i = line >>> 6;
+        long[] lines = this.lines;
+
+        if (i >= lines.length) {
+            if (!active) {
+                return;
+            }
+
+            long[] copy = new long[i + 1];
+            System.arraycopy(lines, 0, copy, 0, lines.length);
+            lines = copy;
+        } else {
+            lines = lines.clone();
+        }
+
+        if (active) {
+            lines[i] |= 1L << line;
+        } else {
+            lines[i] &= ~(1L << line);
+        }
+
+        this.lines = lines;
+    }
+
+    synchronized public void clear() {
+        lines = new long[0];
+    }
+
+    /**
+     * Returns the probes of the module, compiled code gets them once in the static initializer of its class.
+     */
+    public static LineProbes of(String moduleName) {
+        if (moduleName == null) {
+            moduleName = "";
+        }
+
+        LineProbes result = probes.get(moduleName);
+
+        if (result == null) {
+            LineProbes created = new LineProbes(moduleName);
+            result = probes.putIfAbsent(moduleName, created);
+
+            if (result == null) {
+                result = created;
+
+                Initializer initializer = LineProbes.initializer;
+                if (initializer != null) {
+                    initializer.onCreate(result);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public static List<LineProbes> all() {
+        return new ArrayList<LineProbes>(probes.values());
+    }
+
+    public static boolean isAllLines() {
+        return allLines;
+    }
+
+    /**
+     * Activates all lines of all modules, for example when the debugger steps.
+     */
+    public static void setAllLines(boolean value) {
+        allLines = value;
+    }
+
+    public static void setInitializer(Initializer value) {
+        initializer = value;
+    }
+
+    /**
+     * Puts the value of a local variable into the locals of a tick, a reference variable is put as is.
+     */
+    public static void putLocal(ArrayMemory locals, String name, Memory value) {
+        if (value instanceof ReferenceMemory) {
+            locals.putRefAsKeyString(name, (ReferenceMemory) value);
+        } else {
+            locals.putAsKeyString(name, value);
+        }
+    }
+
+    /**
+     * Returns the new value of a local variable after the tick, for example the debugger can change it.
+     */
+    public static Memory getLocal(ArrayMemory locals, String name, Memory value) {
+        if (value instanceof ReferenceMemory) {
+            return value;
+        }
+
+        return locals.valueOfIndex(name).toValue();
+    }
+}
@@ -47,6 +47,7 @@ public class WrapModule extends BaseObject {
                 module = moduleDumper.load(context.getInputStream(env.getDefaultCharset()));
             } else {
                 AbstractCompiler compiler = env.scope.createCompiler(env, context);
+                compiler.setInterpretable(false);
                 module = compiler.compile(false);
             }
             register(env);
@@ -17,12 +17,17 @@ import php.runtime.memory.StringMemory;
 import php.runtime.reflection.ClassEntity;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static php.runtime.annotation.Reflection.Nullable;
 
 @Name("php\\util\\Shared")
 public class SharedUtils extends BaseObject {
-    protected static final Map<String, SharedValue> globalValue = new HashMap<String, SharedValue>();
+    protected static final ConcurrentMap<String, SharedValue> globalValue = new ConcurrentHashMap<String, SharedValue>();
 
     public SharedUtils(Environment env, ClassEntity clazz) {
         super(env, clazz);
@@ -34,16 +39,12 @@ public class SharedUtils extends BaseObject {
 
     @Signature
     public static void resetAll() {
-        synchronized (globalValue) {
-            globalValue.clear();
-        }
+        globalValue.clear();
     }
 
     @Signature
     public static SharedValue reset(String name) {
-        synchronized (globalValue) {
-            return globalValue.remove(name);
-        }
+        return globalValue.remove(name);
     }
 
     @Signature
@@ -59,25 +60,29 @@ public class SharedUtils extends BaseObject {
             return value;
         }
 
-        synchronized (globalValue) {
+        if (creator == null) {
             value = new SharedValue(env, (Memory) null);
 
+            SharedValue oldValue = globalValue.putIfAbsent(name, value);
+            return oldValue == null ? value : oldValue;
+        }
+
+        // the creator is called once, so values with creators are created under the lock
+        synchronized (globalValue) {
             SharedValue oldValue = globalValue.get(name);
             if (oldValue != null) {
                 return oldValue;
             }
 
-            if (creator != null) {
-                value.set(creator.call());
-            }
+            value = new SharedValue(env, creator.call());
 
-
-            globalValue.put(name, value);
-            return value;
+            oldValue = globalValue.putIfAbsent(name, value);
+            return oldValue == null ? value : oldValue;
         }
     }
 
 
+
     @Name("php\\util\\SharedMemory")
     abstract public static class SharedMemory extends BaseObject {
         public SharedMemory(Environment env) {
@@ -88,6 +93,9 @@ public class SharedUtils extends BaseObject {
             super(env, clazz);
         }
 
+        /**
+         * Methods of shared memory do not lock it, the lock of synchronize() excludes only other synchronize() calls.
+         */
         @Signature
         synchronized public Memory synchronize(Invoker sync) throws Throwable {
             if (sync.getArgumentCount() > 0) {
@@ -100,11 +108,11 @@ public class SharedUtils extends BaseObject {
 
     @Name("php\\util\\SharedValue")
     public static class SharedValue extends SharedMemory {
-        protected Memory value = null;
+        protected final AtomicReference<Memory> value = new AtomicReference<Memory>();
 
         public SharedValue(Environment env, Memory value) {
             super(env);
-            this.value = value;
+            this.value.set(value);
         }
 
         public SharedValue(Environment env, ClassEntity clazz) {
@@ -112,30 +120,31 @@ public class SharedUtils extends BaseObject {
         }
 
         @Signature
-        synchronized public void __construct() {
-            value = null;
+        public void __construct() {
+            value.set(null);
         }
 
         @Signature
-        synchronized public void __construct(Memory value) {
-            this.value = value;
+        public void __construct(Memory value) {
+            this.value.set(value);
         }
 
         @Signature
-        synchronized public Memory __debugInfo(Environment env, Memory... args) {
+        public Memory __debugInfo(Environment env, Memory... args) {
             ArrayMemory info = new ArrayMemory();
-            info.refOfIndex("*value").assign(value);
+            info.refOfIndex("*value").assign(value.get());
             return info.toConstant();
         }
 
         @Signature
-        synchronized public boolean isEmpty() {
-            return value == null;
+        public boolean isEmpty() {
+            return value.get() == null;
         }
 
         @Signature
-        synchronized public Memory get() {
-            return value == null ? Memory.UNDEFINED : value;
+        public Memory get() {
+            Memory result = value.get();
+            return result == null ? Memory.UNDEFINED : result;
         }
 
         @Signature
@@ -144,57 +153,84 @@ public class SharedUtils extends BaseObject {
         }
 
         @Signature
-        synchronized public Memory set(Memory value, boolean override) {
-            Memory result = this.value;
+        public Memory set(Memory value, boolean override) {
+            Memory result;
 
             if (value == null || override) {
-                this.value = value;
+                result = this.value.getAndSet(value);
+            } else if (this.value.compareAndSet(null, value)) {
+                result = null;
+            } else {
+                result = this.value.get();
             }
 
             return result == null ? Memory.UNDEFINED : result;
         }
 
         @Signature
-        synchronized public Memory remove() {
-            Memory result = value;
-            value = null;
+        public Memory remove() {
+            Memory result = value.getAndSet(null);
             return result == null ? Memory.UNDEFINED : result;
         }
 
+        /**
+         * Sets the value to the update if the current value is identical to the expected one.
+         */
         @Signature
-        synchronized public Memory getAndSet(Invoker update) throws Throwable {
-            Memory result = value == null ? Memory.UNDEFINED : value;
+        public boolean compareAndSet(Memory expect, Memory update) {
+            while (true) {
+                Memory current = value.get();
 
-            value = update.call(result);
+                if (!(current == null ? Memory.UNDEFINED : current).identical(expect)) {
+                    return false;
+                }
 
-            return result;
+                if (value.compareAndSet(current, update)) {
+                    return true;
+                }
+            }
         }
 
+        /**
+         * The update is called again if the value is changed by another thread while it is called.
+         */
         @Signature
-        synchronized public Memory setAndGet(Invoker update) throws Throwable {
-            value = value == null ? Memory.UNDEFINED : value;
-            value = update.call(value);
+        public Memory getAndSet(Invoker update) throws Throwable {
+            while (true) {
+                Memory current = value.get();
+                Memory result = current == null ? Memory.UNDEFINED : current;
 
-            return value;
+                if (value.compareAndSet(current, update.call(result))) {
+                    return result;
+                }
+            }
         }
 
+        /**
+         * The update is called again if the value is changed by another thread while it is called.
+         */
         @Signature
-        synchronized public Memory synchronize(Invoker sync) throws Throwable {
-            if (sync.getArgumentCount() > 0) {
-                return sync.call(ObjectMemory.valueOf(this));
-            } else {
-                return sync.call();
+        public Memory setAndGet(Invoker update) throws Throwable {
+            while (true) {
+                Memory current = value.get();
+                Memory result = update.call(current == null ? Memory.UNDEFINED : current);
+
+                if (value.compareAndSet(current, result)) {
+                    return result;
+                }
             }
         }
 
         @Signature
-        synchronized public void __clone(Environment env, TraceInfo trace) throws Throwable {
+        public void __clone(Environment env, TraceInfo trace) throws Throwable {
+            Memory value = this.value.get();
+
             if (value == null) {
-                this.value = null;
+                this.value.set(null);
             } else if (value.isObject()) {
-                this.value = value.clone(env, trace);
+                this.value.set(value.clone(env, trace));
             } else {
-                this.value = value.toImmutable();
+                this.value.set(value.toImmutable());
             }
         }
     }
@@ -216,6 +252,61 @@ public class SharedUtils extends BaseObject {
         abstract public void clear();
     }
 
+    /**
+     * Iterator of a concurrent collection, it does not lock the collection and sees the changes made while it iterates.
+     */
+    abstract protected static class SharedIterator<T> extends ForeachIterator {
+        protected Iterator<T> iterator;
+        protected int index;
+
+        public SharedIterator(boolean getReferences, boolean getKeyReferences) {
+            super(getReferences, getKeyReferences, false);
+        }
+
+        abstract protected Iterator<T> newIterator();
+
+        protected void setCurrent(T item) {
+            index += 1;
+            currentKeyMemory = LongMemory.valueOf(index);
+            currentKey = currentKeyMemory;
+            currentValue = (Memory) item;
+        }
+
+        @Override
+        protected boolean init() {
+            reset();
+            return iterator.hasNext();
+        }
+
+        @Override
+        protected boolean nextValue() {
+            if (iterator.hasNext()) {
+                setCurrent(iterator.next());
+
+                if (!getReferences) {
+                    currentValue = currentValue.toValue();
+                }
+
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        protected boolean prevValue() {
+            return false;
+        }
+
+        @Override
+        public void reset() {
+            currentKeyMemory = Memory.CONST_INT_M1;
+            currentKey = currentKeyMemory;
+            index = -1;
+            iterator = newIterator();
+        }
+    }
+
     @Name("php\\util\\SharedQueue")
     public static class SharedQueue extends SharedCollection {
         protected Queue<Memory> queue;
@@ -231,11 +322,11 @@ public class SharedUtils extends BaseObject {
 
         @Signature
         public void __construct() {
-            queue = new LinkedList<Memory>();
+            queue = new ConcurrentLinkedQueue<Memory>();
         }
 
         @Signature
-        synchronized public Memory __debugInfo(Environment env, Memory... args) {
+        public Memory __debugInfo(Environment env, Memory... args) {
             ArrayMemory info = new ArrayMemory();
             info.refOfIndex("*queue").assign(ArrayMemory.ofCollection(queue));
             return info.toConstant();
@@ -243,7 +334,7 @@ public class SharedUtils extends BaseObject {
 
         @Signature
         public void __construct(ForeachIterator iterator) {
-            queue = new LinkedList<Memory>();
+            queue = new ConcurrentLinkedQueue<Memory>();
 
             while (iterator.next()) {
                 queue.add(iterator.getValue().toImmutable());
@@ -251,92 +342,48 @@ public class SharedUtils extends BaseObject {
         }
 
         @Signature
-        synchronized public boolean isEmpty() {
+        public boolean isEmpty() {
             return queue.isEmpty();
         }
 
         @Override
         @Signature
-        synchronized public void clear() {
+        public void clear() {
             queue.clear();
         }
 
         @Signature
-        synchronized public boolean add(Memory value) {
+        public boolean add(Memory value) {
             return queue.offer(value);
         }
 
         @Signature
-        synchronized public Memory remove() {
+        public Memory remove() {
             return queue.remove();
         }
 
         @Signature
-        synchronized public Memory peek() {
+        public Memory peek() {
             return queue.peek();
         }
 
         @Signature
-        synchronized public Memory poll() {
+        public Memory poll() {
             return queue.poll();
         }
 
         @Override
         @Signature
-        synchronized public Memory count(Environment env, Memory... args) {
+        public Memory count(Environment env, Memory... args) {
             return LongMemory.valueOf(queue.size());
         }
 
         @Override
-        synchronized public ForeachIterator getNewIterator(Environment env, boolean getReferences, boolean getKeyReferences) {
-            final Object mutex = this;
-
-            return new ForeachIterator(getReferences, getKeyReferences, false) {
-                private Iterator<Memory> iterator;
-                protected int index;
-
+        public ForeachIterator getNewIterator(Environment env, boolean getReferences, boolean getKeyReferences) {
+            return new SharedIterator<Memory>(getReferences, getKeyReferences) {
                 @Override
-                protected boolean init() {
-                    reset();
-
-                    synchronized (mutex) {
-                        return !queue.isEmpty();
-                    }
-                }
-
-                @Override
-                protected boolean nextValue() {
-                    synchronized (mutex) {
-                        if (iterator.hasNext()) {
-                            index += 1;
-                            currentKeyMemory = LongMemory.valueOf(index);
-                            currentKey = currentKeyMemory;
-                            currentValue = iterator.next();
-
-                            if (!getReferences) {
-                                currentValue = currentValue.toValue();
-                            }
-
-                            return true;
-                        } else {
-                            return false;
-                        }
-                    }
-                }
-
-                @Override
-                protected boolean prevValue() {
-                    return false;
-                }
-
-                @Override
-                public void reset() {
-                    synchronized (mutex) {
-                        currentKeyMemory = Memory.CONST_INT_M1;
-                        currentKey = currentKeyMemory;
-                        index = -1;
-                        iterator = queue.iterator();
-                    }
+                protected Iterator<Memory> newIterator() {
+                    return queue.iterator();
                 }
             };
         }
@@ -349,9 +396,10 @@ public class SharedUtils extends BaseObject {
 
     @Name("php\\util\\SharedStack")
     public static class SharedStack extends SharedCollection {
-        protected Stack<Memory> stack;
+        // the top of the stack is the last item, so items are iterated from the bottom as in java.util.Stack
+        protected Deque<Memory> stack;
 
-        public SharedStack(Environment env, Stack<Memory> stack) {
+        public SharedStack(Environment env, Deque<Memory> stack) {
             super(env);
             this.stack = stack;
         }
@@ -362,20 +410,20 @@ public class SharedUtils extends BaseObject {
 
         @Signature
         public void __construct(ForeachIterator iterator) {
-            stack = new Stack<Memory>();
+            stack = new ConcurrentLinkedDeque<Memory>();
 
             while (iterator.next()) {
-                stack.push(iterator.getValue().toImmutable());
+                stack.addLast(iterator.getValue().toImmutable());
             }
         }
 
         @Signature
         public void __construct() {
-            stack = new Stack<Memory>();
+            stack = new ConcurrentLinkedDeque<Memory>();
         }
 
         @Signature
-        synchronized public Memory __debugInfo(Environment env, Memory... args) {
+        public Memory __debugInfo(Environment env, Memory... args) {
             ArrayMemory info = new ArrayMemory();
             info.refOfIndex("*stack").assign(ArrayMemory.ofCollection(stack));
             return info.toConstant();
@@ -383,100 +431,49 @@ public class SharedUtils extends BaseObject {
 
         @Override
         @Signature
-        synchronized public Memory count(Environment env, Memory... args) {
+        public Memory count(Environment env, Memory... args) {
             return LongMemory.valueOf(stack.size());
         }
 
         @Signature
-        synchronized public Memory push(Memory arg) {
-            return stack.push(arg);
+        public Memory push(Memory arg) {
+            stack.addLast(arg);
+            return arg;
         }
 
         @Signature
-        synchronized public boolean isEmpty() {
-            return stack.empty();
+        public boolean isEmpty() {
+            return stack.isEmpty();
         }
 
         @Signature
-        synchronized public Memory pop() {
-            if (stack.empty()) {
-                return Memory.NULL;
-            }
-
-            return stack.pop();
+        public Memory pop() {
+            Memory result = stack.pollLast();
+            return result == null ? Memory.NULL : result;
         }
 
         @Signature
-        synchronized public Memory peek() {
-            if (stack.empty()) {
-                return Memory.NULL;
-            }
-
-            return stack.peek();
+        public Memory peek() {
+            Memory result = stack.peekLast();
+            return result == null ? Memory.NULL : result;
         }
 
         @Signature
-        synchronized public void clear() {
+        public void clear() {
             stack.clear();
         }
 
         @Signature
-        synchronized public void __clone() {
-            Stack<Memory> old = this.stack;
-
-            this.stack = new Stack<Memory>();
-            stack.addAll(old);
+        public void __clone() {
+            this.stack = new ConcurrentLinkedDeque<Memory>(stack);
         }
 
         @Override
-        synchronized public ForeachIterator getNewIterator(Environment env, boolean getReferences, boolean getKeyReferences) {
-            final Object mutex = this;
-
-            return new ForeachIterator(getReferences, getKeyReferences, false) {
-                protected Iterator<Memory> iterator;
-                protected int index;
-
-                @Override
-                protected boolean init() {
-                    reset();
-                    synchronized (mutex) {
-                        return !stack.isEmpty();
-                    }
-                }
-
-                @Override
-                protected boolean nextValue() {
-                    synchronized (mutex) {
-                        if (iterator.hasNext()) {
-                            index += 1;
-                            currentKeyMemory = LongMemory.valueOf(index);
-                            currentKey = currentKeyMemory;
-                            currentValue = iterator.next();
-
-                            if (!getReferences) {
-                                currentValue = currentValue.toValue();
-                            }
-
-                            return true;
-                        } else {
-                            return false;
-                        }
-                    }
-                }
-
-                @Override
-                protected boolean prevValue() {
-                    return false;
-                }
-
+        public ForeachIterator getNewIterator(Environment env, boolean getReferences, boolean getKeyReferences) {
+            return new SharedIterator<Memory>(getReferences, getKeyReferences) {
                 @Override
-                public void reset() {
-                    synchronized (mutex) {
-                        index = -1;
-                        currentKeyMemory = Memory.CONST_INT_M1;
-                        currentKey = currentKeyMemory;
-                        iterator = stack.iterator();
-                    }
+                protected Iterator<Memory> newIterator() {
+                    return stack.iterator();
                 }
             };
         }
@@ -489,9 +486,9 @@ public class SharedUtils extends BaseObject {
 
     @Name("php\\util\\SharedMap")
     public static class SharedMap extends SharedCollection {
-        protected Map<String, Memory> map;
+        protected ConcurrentMap<String, Memory> map;
 
-        public SharedMap(Environment env, Map<String, Memory> map) {
+        public SharedMap(Environment env, ConcurrentMap<String, Memory> map) {
             super(env);
             this.map = map;
         }
@@ -502,7 +499,7 @@ public class SharedUtils extends BaseObject {
 
         @Signature
         public void __construct(ForeachIterator iterator) {
-            map = new LinkedHashMap<String, Memory>();
+            map = new ConcurrentHashMap<String, Memory>();
 
             while (iterator.next()) {
                 map.put(iterator.getKey().toString(), iterator.getValue().toImmutable());
@@ -511,11 +508,11 @@ public class SharedUtils extends BaseObject {
 
         @Signature
         public void __construct() {
-            map = new LinkedHashMap<String, Memory>();
+            map = new ConcurrentHashMap<String, Memory>();
         }
 
         @Signature
-        synchronized public Memory __debugInfo(Environment env, Memory... args) {
+        public Memory __debugInfo(Environment env, Memory... args) {
             ArrayMemory info = new ArrayMemory();
             info.refOfIndex("*map").assign(ArrayMemory.ofMap(map));
             return info.toConstant();
@@ -523,51 +520,58 @@ public class SharedUtils extends BaseObject {
 
         @Override
         @Signature
-        synchronized public boolean isEmpty() {
+        public boolean isEmpty() {
             return map.isEmpty();
         }
 
         @Signature
-        synchronized public boolean has(String key) {
+        public boolean has(String key) {
             return map.containsKey(key);
         }
 
         @Signature
-        synchronized public Memory count(Environment env, Memory... args) {
+        public Memory count(Environment env, Memory... args) {
             return LongMemory.valueOf(map.size());
         }
 
         @Signature
-        synchronized public Memory get(String key) {
+        public Memory get(String key) {
             return get(key, Memory.UNDEFINED);
         }
 
+        /**
+         * The create callback can be called by several threads at once, only the first created value is put.
+         */
         @Signature
-        synchronized public Memory getOrCreate(String key, Invoker create) throws Throwable {
+        public Memory getOrCreate(String key, Invoker create) throws Throwable {
             Memory result = map.get(key);
 
             if (result == null) {
                 result = create.call();
-                map.put(key, result);
+
+                Memory old = map.putIfAbsent(key, result);
+                if (old != null) {
+                    result = old;
+                }
             }
 
             return result;
         }
 
         @Signature
-        synchronized public Memory get(String key, Memory defaultValue) {
+        public Memory get(String key, Memory defaultValue) {
             Memory result = map.get(key);
             return result == null ? defaultValue : result;
         }
 
         @Signature
-        synchronized public Memory set(String key, Memory value, boolean override) {
-            if (override || map.get(key) == null) {
+        public Memory set(String key, Memory value, boolean override) {
+            if (override) {
                 Memory result = map.put(key, value);
                 return result == null ? Memory.UNDEFINED : result;
             }
 
-            return Memory.NULL;
+            return map.putIfAbsent(key, value) == null ? Memory.UNDEFINED : Memory.NULL;
         }
 
         @Signature
@@ -575,70 +579,88 @@ public class SharedUtils extends BaseObject {
             return set(key, value, true);
         }
 
+        /**
+         * Puts the value if there is no value for the key, returns the current value or null if the value is put.
+         */
         @Signature
-        synchronized public Memory remove(String key) {
-            Memory memory = map.remove(key);
-            return memory == null ? Memory.UNDEFINED : memory;
+        public Memory putIfAbsent(String key, Memory value) {
+            Memory result = map.putIfAbsent(key, value);
+            return result == null ? Memory.UNDEFINED : result;
         }
 
+        /**
+         * Sets the value to the update if the current value is identical to the expected one.
+         */
         @Signature
-        synchronized public void clear() {
-            map.clear();
-        }
+        public boolean compareAndSet(String key, Memory expect, Memory update) {
+            while (true) {
+                Memory current = map.get(key);
 
-        @Signature
-        synchronized public void __clone() {
-            this.map = new LinkedHashMap<String, Memory>(map);
-        }
+                if (current == null || !current.identical(expect)) {
+                    return false;
+                }
 
-        @Override
-        synchronized public ForeachIterator getNewIterator(Environment env, boolean getReferences, boolean getKeyReferences) {
-            final Object mutex = this;
+                if (map.replace(key, current, update)) {
+                    return true;
+                }
+            }
+        }
 
-            return new ForeachIterator(getReferences, getKeyReferences, false) {
+        /**
+         * Replaces the value by the result of the callback ($value, $key), the value is removed if the result is null.
+         * The callback is called again if the value is changed by another thread while it is called.
+         */
+        @Signature
+        public Memory compute(String key, Invoker remapping) throws Throwable {
+            Memory keyMemory = StringMemory.valueOf(key);
 
-                private Iterator<Map.Entry<String, Memory>> entries;
+            while (true) {
+                Memory current = map.get(key);
+                Memory result = remapping.call(current == null ? Memory.NULL : current, keyMemory);
 
-                @Override
-                protected boolean init() {
-                    reset();
-                    synchronized (mutex) {
-                        return !map.isEmpty();
+                if (result.isNull()) {
+                    if (current == null || map.remove(key, current)) {
+                        return Memory.NULL;
+                    }
+                } else if (current == null) {
+                    if (map.putIfAbsent(key, result) == null) {
+                        return result;
                     }
+                } else if (map.replace(key, current, result)) {
+                    return result;
                 }
+            }
+        }
 
-                @Override
-                protected boolean nextValue() {
-                    synchronized (mutex) {
-                        if (entries.hasNext()) {
-                            Map.Entry<String, Memory> entry = entries.next();
-
-                            currentKey = entry.getKey();
-                            currentKeyMemory = StringMemory.valueOf(currentKey.toString());
-
-                            currentValue = entry.getValue();
-
-                            if (!getReferences) {
-                                currentValue = currentValue.toValue();
-                            }
+        @Signature
+        public Memory remove(String key) {
+            Memory memory = map.remove(key);
+            return memory == null ? Memory.UNDEFINED : memory;
+        }
 
-                            return true;
-                        }
+        @Signature
+        public void clear() {
+            map.clear();
+        }
 
-                        return false;
-                    }
-                }
+        @Signature
+        public void __clone() {
+            this.map = new ConcurrentHashMap<String, Memory>(map);
+        }
 
+        @Override
+        public ForeachIterator getNewIterator(Environment env, boolean getReferences, boolean getKeyReferences) {
+            return new SharedIterator<Map.Entry<String, Memory>>(getReferences, getKeyReferences) {
                 @Override
-                protected boolean prevValue() {
-                    return false;
+                protected Iterator<Map.Entry<String, Memory>> newIterator() {
+                    return map.entrySet().iterator();
                 }
 
                 @Override
-                public void reset() {
-                    synchronized (mutex) {
-                        entries = map.entrySet().iterator();
-                    }
+                protected void setCurrent(Map.Entry<String, Memory> entry) {
+                    currentKey = entry.getKey();
+                    currentKeyMemory = StringMemory.valueOf(entry.getKey());
+                    currentValue = entry.getValue();
                 }
             };
         }
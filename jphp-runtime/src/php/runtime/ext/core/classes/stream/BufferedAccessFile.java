@@ -0,0 +1,241 @@
+package php.runtime.ext.core.classes.stream;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Random access file with one buffer for reads and writes.
+ *
+ * The buffer holds bytes of the file from bufferPosition, they are read ahead or they are written but not flushed yet.
+ * The position of the stream is kept separately from the pointer of the file, so seek() inside the buffer and
+ * small reads and writes do not call the system. Not flushed bytes are written when the position leaves the buffer,
+ * before reading, on flush() and close(). The owner of the file registers it in the environment after writing
+ * (see Environment.registerFlushable()), so the bytes are written at the end of the script without close().
+ */
+public class BufferedAccessFile implements Flushable {
+    public final static int DEFAULT_BUFFER_SIZE = 8192;
+
+    protected final RandomAccessFile file;
+    protected final byte[] buffer;
+
+    protected long position;
+    protected long filePointer;
+
+    protected long bufferPosition;
+    protected int bufferLength;
+    protected boolean dirty;
+
+    protected boolean closed;
+
+    public BufferedAccessFile(RandomAccessFile file, int bufferSize) throws IOException {
+        this.file = file;
+        this.buffer = bufferSize > 0 ? new byte[bufferSize] : null;
+        this.position = this.filePointer = file.getFilePointer();
+    }
+
+    public RandomAccessFile getFile() {
+        return file;
+    }
+
+    public int getBufferSize() {
+        return buffer == null ? 0 : buffer.length;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    protected void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Stream Closed");
+        }
+    }
+
+    protected void seekFile(long pos) throws IOException {
+        if (filePointer != pos) {
+            file.seek(pos);
+            filePointer = pos;
+        }
+    }
+
+    public void seek(long pos) throws IOException {
+        checkClosed();
+
+        if (pos < 0) {
+            throw new IOException("Negative seek offset");
+        }
+
+        if (dirty && pos != bufferPosition + bufferLength) {
+            flush();
+        }
+
+        position = pos;
+    }
+
+    public long length() throws IOException {
+        checkClosed();
+        long length = file.length();
+
+        return dirty ? Math.max(length, bufferPosition + bufferLength) : length;
+    }
+
+    public void setLength(long length) throws IOException {
+        flush();
+
+        file.setLength(length);
+        filePointer = file.getFilePointer();
+        bufferLength = 0;
+
+        if (position > length) {
+            position = length;
+        }
+    }
+
+    /**
+     * Returns true if the position is at the end of the file.
+     */
+    public boolean isEof() throws IOException {
+        if (!dirty && position >= bufferPosition && position < bufferPosition + bufferLength) {
+            return false;
+        }
+
+        return position >= length();
+    }
+
+    public int read() throws IOException {
+        checkClosed();
+
+        if (!dirty && position >= bufferPosition && position < bufferPosition + bufferLength) {
+            return buffer[(int) (position++ - bufferPosition)] & 0xFF;
+        }
+
+        if (buffer == null) {
+            seekFile(position);
+            int b = file.read();
+
+            if (b != -1) {
+                position++;
+                filePointer++;
+            }
+
+            return b;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        return buffer[(int) (position++ - bufferPosition)] & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+
+        if (len == 0) {
+            return 0;
+        }
+
+        int total = 0;
+
+        while (len > 0) {
+            if (!dirty && position >= bufferPosition && position < bufferPosition + bufferLength) {
+                int index = (int) (position - bufferPosition);
+                int count = Math.min(len, bufferLength - index);
+
+                System.arraycopy(buffer, index, b, off, count);
+
+                position += count;
+                off += count;
+                len -= count;
+                total += count;
+            } else if (buffer == null || len >= buffer.length) {
+                flush();
+                seekFile(position);
+
+                int read = file.read(b, off, len);
+                if (read == -1) {
+                    break;
+                }
+
+                position += read;
+                filePointer += read;
+                total += read;
+                break;
+            } else if (!fill()) {
+                break;
+            }
+        }
+
+        return total == 0 ? -1 : total;
+    }
+
+    /**
+     * Reads the buffer from the position, returns false at the end of the file.
+     */
+    protected boolean fill() throws IOException {
+        flush();
+        seekFile(position);
+
+        int read = file.read(buffer, 0, buffer.length);
+
+        bufferPosition = position;
+        bufferLength = read < 0 ? 0 : read;
+        filePointer += bufferLength;
+
+        return bufferLength > 0;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+
+        if (buffer == null || len >= buffer.length) {
+            flush();
+            bufferLength = 0;
+
+            seekFile(position);
+            file.write(b, off, len);
+
+            position += len;
+            filePointer += len;
+            return;
+        }
+
+        if (dirty && (position != bufferPosition + bufferLength || bufferLength + len > buffer.length)) {
+            flush();
+        }
+
+        if (!dirty) {
+            bufferPosition = position;
+            bufferLength = 0;
+            dirty = true;
+        }
+
+        System.arraycopy(b, off, buffer, bufferLength, len);
+        bufferLength += len;
+        position += len;
+    }
+
+    public void flush() throws IOException {
+        if (dirty) {
+            dirty = false;
+
+            seekFile(bufferPosition);
+            file.write(buffer, 0, bufferLength);
+
+            filePointer += bufferLength;
+            bufferLength = 0;
+        }
+    }
+
+    public void close() throws IOException {
+        if (!closed) {
+            try {
+                flush();
+            } finally {
+                closed = true;
+                file.close();
+            }
+        }
+    }
+}
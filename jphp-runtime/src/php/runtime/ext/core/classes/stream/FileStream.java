@@ -3,6 +3,7 @@ package php.runtime.ext.core.classes.stream;
 import php.runtime.Memory;
 import php.runtime.annotation.Reflection;
 import php.runtime.env.Environment;
+import php.runtime.memory.ArrayMemory;
 import php.runtime.memory.BinaryMemory;
 import php.runtime.memory.LongMemory;
 import php.runtime.reflection.ClassEntity;
@@ -20,8 +21,9 @@ public class FileStream extends Stream {
     private final static String MSG_FILE_NOT_FOUND = "File '%s' not found";
 
     protected RandomAccessFile accessFile;
+    protected BufferedAccessFile access;
     protected boolean canRead = true;
-    protected long position = 0;
+    protected boolean canWrite = true;
 
     public FileStream(Environment env, ClassEntity clazz) {
         super(env, clazz);
@@ -39,56 +41,72 @@ public class FileStream extends Stream {
         return accessFile;
     }
 
+    /**
+     * Returns the buffered access to the file, the position of the stream is the position of this object.
+     */
+    public BufferedAccessFile getAccess() {
+        return access;
+    }
+
     @Override
     @Signature({@Arg("path"), @Arg(value = "mode", optional = @Reflection.Optional("r"))})
     public Memory __construct(Environment env, Memory... args) throws IOException {
         super.__construct(env, args);
 
+        // b and t flags of the php modes mean nothing for the stream, m maps the file into memory.
+        String mode = getMode() == null ? "r" : getMode().replace("b", "").replace("t", "");
+        boolean mapped = mode.contains("m");
+        mode = mode.replace("m", "");
+
         try {
-            if (getMode().equals("r")) {
+            if (mode.equals("r")) {
                 accessFile = new RandomAccessFile(getPath(), "r");
-                position = 0;
-            } else if (getMode().equals("r+")){
+                canWrite = false;
+            } else if (mode.equals("r+")){
                 if (!new File(getPath()).getAbsoluteFile().exists())
                     throwFileNotFound(env);
                 accessFile = new RandomAccessFile(getPath(), "rw");
-            } else if (getMode().equals("w")){
+            } else if (mode.equals("w")){
                 accessFile = new RandomAccessFile(getPath(), "rw");
                 accessFile.setLength(0);
                 canRead = false;
-            } else if (getMode().equals("w+")){
+            } else if (mode.equals("w+")){
                 accessFile = new RandomAccessFile(getPath(), "rw");
                 accessFile.setLength(0);
-            } else if (getMode().equals("a")){
+            } else if (mode.equals("a")){
                 accessFile = new RandomAccessFile(getPath(), "rw");
                 File file = new File(getPath());
                 if (file.getAbsoluteFile().exists()) {
                     accessFile.seek(file.length());
-                    position = file.length();
                 }
 
                 canRead = false;
-            } else if (getMode().equals("a+")){
+            } else if (mode.equals("a+")){
                 accessFile = new RandomAccessFile(getPath(), "rw");
                 File file = new File(getPath());
                 if (file.getAbsoluteFile().exists()){
                     accessFile.seek(file.length());
-                    position = file.length();
                 }
-            } else if (getMode().equals("x") || getMode().equals("x+")){
+            } else if (mode.equals("x") || mode.equals("x+")){
                 File file = new File(getPath());
                 if (file.getAbsoluteFile().exists())
                     env.exception(WrapIOException.class, "File '%s' already exists (mode: %s)", getMode());
 
                 accessFile = new RandomAccessFile(getPath(), "rw");
-                if (getMode().equals("x"))
+                if (mode.equals("x"))
                     canRead = false;
-            } else if (getMode().equals("c") || getMode().equals("c+")){
+            } else if (mode.equals("c") || mode.equals("c+")){
                 accessFile = new RandomAccessFile(getPath(), "rw");
-                if (getMode().equals("c"))
+                if (mode.equals("c"))
                     canRead = false;
             } else
                 env.exception(WrapIOException.class, "Unsupported mode - '%s'", getMode());
+
+            if (mapped && canWrite) {
+                env.exception(WrapIOException.class, "Memory mapped file is read only (mode: %s)", getMode());
+            }
+
+            access = mapped ? new MappedAccessFile(accessFile) : new BufferedAccessFile(accessFile, BufferedAccessFile.DEFAULT_BUFFER_SIZE);
         } catch (FileNotFoundException e){
             throwFileNotFound(env);
         } catch (IOException e) {
@@ -98,13 +116,60 @@ public class FileStream extends Stream {
         return Memory.NULL;
     }
 
+    /**
+     * Options of the array context: bufferSize - size of the read and write buffer (0 - without buffer),
+     * mmap - map the file into memory (only for read only streams).
+     */
+    @Override
+    @Signature({@Arg("value")})
+    public Memory setContext(Environment env, Memory... args) {
+        super.setContext(env, args);
+
+        if (args[0].isArray() && access != null) {
+            ArrayMemory options = args[0].toValue(ArrayMemory.class);
+
+            Memory bufferSize = options.valueOfIndex("bufferSize").toValue();
+            Memory mmap = options.valueOfIndex("mmap").toValue();
+
+            try {
+                BufferedAccessFile result = access;
+
+                if (mmap.toBoolean() && !(access instanceof MappedAccessFile)) {
+                    if (canWrite) {
+                        env.exception(WrapIOException.class, "Memory mapped file is read only (mode: %s)", getMode());
+                    }
+
+                    result = new MappedAccessFile(accessFile);
+                } else if (mmap.isNotNull() && !mmap.toBoolean() && access instanceof MappedAccessFile) {
+                    result = new BufferedAccessFile(accessFile, bufferSize.isNull()
+                            ? BufferedAccessFile.DEFAULT_BUFFER_SIZE : Math.max(0, bufferSize.toInteger()));
+                } else if (bufferSize.isNotNull() && !(access instanceof MappedAccessFile)
+                        && access.getBufferSize() != Math.max(0, bufferSize.toInteger())) {
+                    result = new BufferedAccessFile(accessFile, Math.max(0, bufferSize.toInteger()));
+                }
+
+                if (result != access) {
+                    access.flush();
+                    env.unregisterFlushable(access);
+                    result.seek(access.getPosition());
+                    access = result;
+                }
+            } catch (IOException e) {
+                env.exception(WrapIOException.class, e.getMessage());
+            }
+        }
+
+        return Memory.NULL;
+    }
+
     @Signature({@Arg("value"), @Arg(value = "length", optional = @Optional("NULL"))})
     public Memory write(Environment env, Memory... args){
         int len = args[1].toInteger();
         byte[] bytes = args[0].getBinaryBytes(env.getDefaultCharset());
 
         try {
-            accessFile.write(bytes, 0, len == 0 ? bytes.length : len);
+            access.write(bytes, 0, len == 0 ? bytes.length : len);
+            env.registerFlushable(access);
             return LongMemory.valueOf(len == 0 ? bytes.length : len);
         } catch (IOException e) {
             env.exception(WrapIOException.class, e.getMessage());
@@ -122,13 +187,20 @@ public class FileStream extends Stream {
         if (len < 1)
             env.exception(WrapIOException.class, "Length must be greater than zero, %s given", len);
 
-        byte[] buff = new byte[len];
         try {
-            int read = accessFile.read(buff, 0, len);
+            if (len == 1) {
+                int b = access.read();
+                return b == -1 ? Memory.NULL : new BinaryMemory((byte) b);
+            }
+
+            // do not allocate a large array for the end of the file.
+            byte[] buff = new byte[len <= BufferedAccessFile.DEFAULT_BUFFER_SIZE
+                    ? len : (int) Math.max(1, Math.min(len, access.length() - access.getPosition()))];
+
+            int read = access.read(buff, 0, buff.length);
             if (read == -1)
                 return Memory.NULL;
 
-            position += read;
             if (read != buff.length){
                 buff = Arrays.copyOf(buff, read);
             }
@@ -145,14 +217,25 @@ public class FileStream extends Stream {
             throwCannotRead(env);
         long len = 0;
         try {
-            len = accessFile.length() - position;
+            len = access.length() - access.getPosition();
 
             if (len <= 0)
                 return Memory.FALSE;
 
             byte[] buff = new byte[(int)len];
-            accessFile.readFully(buff);
-            position += len;
+
+            int off = 0;
+            while (off < buff.length) {
+                int read = access.read(buff, off, buff.length - off);
+                if (read == -1)
+                    break;
+
+                off += read;
+            }
+
+            if (off != buff.length) {
+                buff = Arrays.copyOf(buff, off);
+            }
 
             return new BinaryMemory(buff);
         } catch (IOException e) {
@@ -163,42 +246,55 @@ public class FileStream extends Stream {
     @Signature
     public Memory eof(Environment env, Memory... args){
         try {
-            return position >= accessFile.length() ? Memory.TRUE : Memory.FALSE;
+            return access.isEof() ? Memory.TRUE : Memory.FALSE;
         } catch (IOException e) {
             return Memory.FALSE;
         }
     }
 
+    @Signature
+    public Memory flush(Environment env, Memory... args) throws IOException {
+        access.flush();
+        env.unregisterFlushable(access);
+        return Memory.NULL;
+    }
+
     @Signature
     public Memory close(Environment env, Memory... args) throws IOException {
-        accessFile.close();
+        if (access != null) {
+            env.unregisterFlushable(access);
+            access.close();
+        } else if (accessFile != null) {
+            accessFile.close();
+        }
+
         return Memory.NULL;
     }
 
     @Signature
     public Memory getPosition(Environment env, Memory... args){
-        return LongMemory.valueOf(position);
+        return LongMemory.valueOf(access.getPosition());
     }
 
     @Signature(@Arg("position"))
     public Memory seek(Environment env, Memory... args) throws IOException {
-        accessFile.seek(args[0].toLong());
+        access.seek(args[0].toLong());
         return Memory.NULL;
     }
 
     @Signature
     public Memory getFilePointer(Environment env, Memory... args) throws IOException {
-        return LongMemory.valueOf(accessFile.getFilePointer());
+        return LongMemory.valueOf(access.getPosition());
     }
 
     @Signature
     public Memory length(Environment env, Memory... args) throws IOException {
-        return LongMemory.valueOf(accessFile.length());
+        return LongMemory.valueOf(access.length());
     }
 
     @Signature(@Arg("size"))
     public Memory truncate(Environment env, Memory... args) throws IOException {
-        accessFile.setLength(args[0].toLong());
+        access.setLength(args[0].toLong());
         return Memory.NULL;
     }
 }
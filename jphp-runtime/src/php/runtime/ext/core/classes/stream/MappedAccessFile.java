@@ -0,0 +1,105 @@
+package php.runtime.ext.core.classes.stream;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only random access file which maps the file into memory.
+ *
+ * Reads copy bytes from the mapped region without system calls, a file larger than the region is mapped by windows
+ * of MAX_WINDOW bytes. The length of the file is fixed when the file is opened.
+ */
+public class MappedAccessFile extends BufferedAccessFile {
+    public final static int MAX_WINDOW = 1 << 30;
+
+    protected final long length;
+
+    protected MappedByteBuffer window;
+    protected long windowPosition;
+
+    public MappedAccessFile(RandomAccessFile file) throws IOException {
+        super(file, 0);
+        this.length = file.length();
+    }
+
+    /**
+     * Returns the mapped region at the position, null at the end of the file.
+     */
+    protected MappedByteBuffer window() throws IOException {
+        if (position >= length) {
+            return null;
+        }
+
+        if (window == null || position < windowPosition || position >= windowPosition + window.limit()) {
+            windowPosition = position;
+            window = file.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, windowPosition, Math.min(MAX_WINDOW, length - windowPosition)
+            );
+        }
+
+        window.position((int) (position - windowPosition));
+        return window;
+    }
+
+    @Override
+    public long length() throws IOException {
+        checkClosed();
+        return length;
+    }
+
+    @Override
+    public boolean isEof() throws IOException {
+        return position >= length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        MappedByteBuffer buffer = window();
+
+        if (buffer == null) {
+            return -1;
+        }
+
+        position++;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+
+        if (len == 0) {
+            return 0;
+        }
+
+        MappedByteBuffer buffer = window();
+        if (buffer == null) {
+            return -1;
+        }
+
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        throw new IOException("Cannot write to memory mapped file");
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+        throw new IOException("Cannot truncate memory mapped file");
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        super.close();
+    }
+}
@@ -149,7 +149,13 @@ abstract public class Stream extends BaseObject implements Resource {
             }
 
             try {
-                return env.invokeMethod(stream, "write", args[1]);
+                Memory result = env.invokeMethod(stream, "write", args[1]);
+
+                if (stream instanceof FileStream) {
+                    ((FileStream) stream).getAccess().flush();
+                }
+
+                return result;
             } finally {
                 if (lock != null) {
                     lock.release();
@@ -198,7 +204,11 @@ abstract public class Stream extends BaseObject implements Resource {
         }
     }
 
-    @Signature({@Arg("path"), @Arg(value = "mode", optional = @Optional("r"))})
+    @Signature({
+            @Arg("path"),
+            @Arg(value = "mode", optional = @Optional("r")),
+            @Arg(value = "context", optional = @Optional("NULL"))
+    })
     public static Memory of(Environment env, Memory... args) throws Throwable {
         String path = args[0].toString();
 
@@ -220,9 +230,13 @@ abstract public class Stream extends BaseObject implements Resource {
             path = protocol + "://" + path;
         }
 
-        return new ObjectMemory(
-                classEntity.newObject(env, env.trace(), true, new StringMemory(path), args[1])
-        );
+        Stream stream = classEntity.newObject(env, env.trace(), true, new StringMemory(path), args[1]);
+
+        if (args.length > 2 && args[2].isNotNull()) {
+            stream.setContext(env, args[2]);
+        }
+
+        return new ObjectMemory(stream);
     }
 
     @Signature({@Arg("protocol"), @Arg("className")})
@@ -348,6 +362,10 @@ abstract public class Stream extends BaseObject implements Resource {
             return ((ResourceStream) stream).getInputStream();
         }
 
+        if (stream instanceof FileStream && ((FileStream) stream).canRead) {
+            return new FileStreamInputStream(((FileStream) stream).getAccess());
+        }
+
         return new StreamInputStream(env, stream);
     }
 
@@ -364,11 +382,7 @@ abstract public class Stream extends BaseObject implements Resource {
             if (arg.instanceOf(FileObject.class)){
                 return new FileInputStream(arg.toObject(FileObject.class).file);
             } else if (arg.instanceOf(Stream.class)){
-                if (arg.instanceOf(ResourceStream.class)) {
-                    return arg.toObject(ResourceStream.class).getInputStream();
-                }
-
-                return new StreamInputStream(env, arg.toObject(Stream.class));
+                return getInputStream(env, arg.toObject(Stream.class));
             } else {
                 StreamInputStream inputStream = new StreamInputStream(env, Stream.create(env, arg.toString(), "r"));
                 inputStream.autoClose = true;
@@ -480,4 +494,30 @@ abstract public class Stream extends BaseObject implements Resource {
             stream.close(env);
         }
     }
+
+    /**
+     * Reads the file stream directly from its buffer, the position of the stream is moved.
+     */
+    public static class FileStreamInputStream extends InputStream {
+        protected final BufferedAccessFile access;
+
+        public FileStreamInputStream(BufferedAccessFile access) {
+            this.access = access;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return access.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return access.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, access.length() - access.getPosition());
+        }
+    }
 }
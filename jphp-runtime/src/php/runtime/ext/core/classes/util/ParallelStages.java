@@ -0,0 +1,224 @@
+package php.runtime.ext.core.classes.util;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.invoke.Invoker;
+import php.runtime.lang.ForeachIterator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+
+/**
+ * Runs fused map and filter stages of a flow on a fork-join pool.
+ *
+ * The source is read by chunks on the thread of the flow, each chunk is processed by one task with a child environment,
+ * so callbacks of different threads do not share the call stack, output buffers and static variables. At most two chunks
+ * for each thread are processed at once. Results are returned in the order of the source only if it is requested,
+ * otherwise chunks are returned in the order of completion.
+ */
+public class ParallelStages {
+    public final static int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final static ConcurrentMap<Integer, ForkJoinPool> pools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+    protected final ForeachIterator source;
+    protected final WrapFlow.Stage[] stages;
+    protected final boolean ordered;
+    protected final int parallelism;
+    protected final int chunkSize;
+
+    protected final ForkJoinPool pool;
+    protected final BlockingQueue<Context> contexts;
+    protected final Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+    protected final CompletionService<Chunk> completion;
+
+    protected int running;
+    protected boolean sourceDone;
+    protected Chunk chunk;
+    protected int index;
+
+    public ParallelStages(Environment env, ForeachIterator source, WrapFlow.Stage[] stages,
+                          int parallelism, boolean ordered, int chunkSize) {
+        this.source = source;
+        this.stages = stages;
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+        this.chunkSize = chunkSize;
+
+        ForkJoinPool pool = pools.get(parallelism);
+        if (pool == null) {
+            ForkJoinPool created = new ForkJoinPool(parallelism);
+            pool = pools.putIfAbsent(parallelism, created);
+
+            if (pool == null) {
+                pool = created;
+            } else {
+                created.shutdown();
+            }
+        }
+
+        this.pool = pool;
+        this.completion = ordered ? null : new ExecutorCompletionService<Chunk>(pool);
+        this.contexts = new ArrayBlockingQueue<Context>(parallelism);
+
+        // a new environment takes the uncaught exception handler of the thread
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                contexts.add(new Context(env, stages));
+            }
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+    }
+
+    public Memory getKey() {
+        return chunk.keys[index];
+    }
+
+    public Memory getValue() {
+        return chunk.values[index];
+    }
+
+    /**
+     * Moves to the next result, returns false when all chunks are processed.
+     */
+    public boolean next() {
+        index++;
+
+        while (chunk == null || index >= chunk.size) {
+            submit();
+
+            if (running == 0) {
+                return false;
+            }
+
+            chunk = take();
+            index = 0;
+        }
+
+        return true;
+    }
+
+    protected Chunk take() {
+        try {
+            Future<Chunk> future = ordered ? pending.poll() : completion.take();
+            running--;
+
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Reads chunks from the source while there are free threads.
+     */
+    protected void submit() {
+        while (!sourceDone && running < parallelism * 2) {
+            final Chunk chunk = new Chunk(chunkSize);
+
+            while (chunk.size < chunkSize) {
+                if (!source.next()) {
+                    sourceDone = true;
+                    break;
+                }
+
+                chunk.keys[chunk.size] = source.getMemoryKey();
+                chunk.values[chunk.size] = source.getValue().toImmutable();
+                chunk.size++;
+            }
+
+            if (chunk.size == 0) {
+                break;
+            }
+
+            Callable<Chunk> task = new Callable<Chunk>() {
+                @Override
+                public Chunk call() throws Exception {
+                    Context context = contexts.take();
+                    try {
+                        return context.apply(chunk, stages);
+                    } finally {
+                        contexts.add(context);
+                    }
+                }
+            };
+
+            if (ordered) {
+                pending.add(pool.submit(task));
+            } else {
+                completion.submit(task);
+            }
+
+            running++;
+        }
+    }
+
+    protected static class Chunk {
+        protected final Memory[] keys;
+        protected final Memory[] values;
+        protected int size;
+
+        protected Chunk(int capacity) {
+            keys = new Memory[capacity];
+            values = new Memory[capacity];
+        }
+    }
+
+    /**
+     * Child environment and callbacks of one thread.
+     */
+    protected static class Context {
+        protected final Environment env;
+        protected final Invoker[] invokers;
+
+        protected Context(Environment parent, WrapFlow.Stage[] stages) {
+            env = new Environment(parent);
+            env.getDefaultBuffer().setImplicitFlush(true);
+
+            invokers = new Invoker[stages.length];
+            for (int i = 0; i < stages.length; i++) {
+                invokers[i] = stages[i].callback.isNull() ? null : Invoker.valueOf(env, null, stages[i].callback);
+            }
+        }
+
+        /**
+         * Applies stages to the chunk in place, values skipped by filters are removed.
+         */
+        protected Chunk apply(Chunk chunk, WrapFlow.Stage[] stages) {
+            int size = 0;
+
+            for (int i = 0; i < chunk.size; i++) {
+                Memory value = WrapFlow.Stage.apply(stages, invokers, chunk.values[i], chunk.keys[i]);
+
+                if (value != null) {
+                    chunk.keys[size] = chunk.keys[i];
+                    chunk.values[size] = value;
+                    size++;
+                }
+            }
+
+            for (int i = size; i < chunk.size; i++) {
+                chunk.keys[i] = null;
+                chunk.values[i] = null;
+            }
+
+            chunk.size = size;
+            return chunk;
+        }
+    }
+}
@@ -14,6 +14,7 @@ import php.runtime.memory.*;
 import php.runtime.reflection.ClassEntity;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -31,6 +32,13 @@ public class WrapFlow extends BaseObject implements Iterator {
 
     protected boolean withKeys = false;
 
+    // fused map and filter stages, the flow of stages is fused with the next map or find until it is iterated
+    protected Stage[] stages;
+
+    protected int parallelism = 0;
+    protected boolean ordered = false;
+    protected int chunkSize = ParallelStages.DEFAULT_CHUNK_SIZE;
+
     public WrapFlow(Environment env, Iterable iterable) {
         this(env, ForeachIterator.of(env, iterable));
     }
@@ -54,6 +62,14 @@ public class WrapFlow extends BaseObject implements Iterator {
         this.worker.setIterator(iterator);
     }
 
+    protected WrapFlow(Environment env, ForeachIterator iterator, Stage[] stages) {
+        super(env);
+        this.iterator = iterator;
+        this.stages = stages;
+        this.worker = new StageWorker();
+        this.worker.setIterator(iterator);
+    }
+
     public WrapFlow(Environment env, ClassEntity clazz) {
         super(env, clazz);
     }
@@ -78,6 +94,34 @@ public class WrapFlow extends BaseObject implements Iterator {
             return invoker.callNoThrow(iterator.getValue(), iterator.getMemoryKey());
     }
 
+    /**
+     * Returns a flow with the stage added to the stages of this flow, the stages run in one pass
+     * of the source.
+     */
+    protected Memory addStage(Environment env, Memory callback, boolean filter) {
+        Stage stage = new Stage(callback, Invoker.valueOf(env, null, callback), filter);
+
+        ForeachIterator source;
+        Stage[] stages;
+
+        if (this.stages != null && !init && valid && selfIterator == null) {
+            source = iterator;
+            stages = Arrays.copyOf(this.stages, this.stages.length + 1);
+        } else {
+            source = getSelfIterator(env);
+            stages = new Stage[1];
+        }
+
+        stages[stages.length - 1] = stage;
+
+        WrapFlow flow = new WrapFlow(env, source, stages);
+        flow.parallelism = parallelism;
+        flow.ordered = ordered;
+        flow.chunkSize = chunkSize;
+
+        return new ObjectMemory(flow);
+    }
+
     @Signature({
             @Arg(value = "collection", type = HintType.TRAVERSABLE)
     })
@@ -103,6 +147,21 @@ public class WrapFlow extends BaseObject implements Iterator {
         return new ObjectMemory(this);
     }
 
+    @Signature({
+            @Arg(value = "threads", optional = @Optional("0")),
+            @Arg(value = "ordered", optional = @Optional("false")),
+            @Arg(value = "chunkSize", optional = @Optional("1024"))
+    })
+    public Memory parallel(Environment env, Memory... args) {
+        int threads = args[0].toInteger();
+
+        parallelism = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+        ordered = args[1].toBoolean();
+        chunkSize = args[2].toInteger() < 1 ? 1 : args[2].toInteger();
+
+        return new ObjectMemory(this);
+    }
+
     @FastMethod
     @Signature
     public static Memory ofEmpty(Environment env, Memory... args) {
@@ -608,19 +667,7 @@ public class WrapFlow extends BaseObject implements Iterator {
 
     @Signature(@Arg(value = "filter", type = HintType.CALLABLE, optional = @Optional("NULL")))
     public Memory find(Environment env, Memory... args) {
-        final Invoker invoker = Invoker.valueOf(env, null, args[0]);
-
-        return new ObjectMemory(new WrapFlow(env, getSelfIterator(env), new Worker() {
-            @Override
-            public boolean next(final Environment env) {
-                while (iterator.next()) {
-                    if (call(iterator, invoker).toBoolean())
-                        return true;
-                }
-
-                return false;
-            }
-        }));
+        return addStage(env, args[0], true);
     }
 
     @Signature(@Arg(value = "filter", type = HintType.CALLABLE, optional = @Optional("NULL")))
@@ -694,26 +741,7 @@ public class WrapFlow extends BaseObject implements Iterator {
 
     @Signature(@Arg(value = "callback", type = HintType.CALLABLE))
     public Memory map(Environment env, Memory... args) {
-        final Invoker invoker = Invoker.valueOf(env, null, args[0]);
-
-        return new ObjectMemory(new WrapFlow(env, getSelfIterator(env), new Worker() {
-            Memory current;
-
-            @Override
-            public boolean next(final Environment env) {
-                if (iterator.next()) {
-                    current = call(iterator, invoker);
-                    return true;
-                }
-
-                return false;
-            }
-
-            @Override
-            public Memory current(Environment env) {
-                return current == null ? Memory.NULL : current;
-            }
-        }));
+        return addStage(env, args[0], false);
     }
 
     @Signature(@Arg(value = "n"))
@@ -767,6 +795,122 @@ public class WrapFlow extends BaseObject implements Iterator {
         return ObjectMemory.valueOf(this).getNewIterator(env);
     }
 
+    /**
+     * Map or filter stage of a flow.
+     */
+    public static class Stage {
+        protected final Memory callback;
+        protected final Invoker invoker;
+        protected final boolean filter;
+
+        public Stage(Memory callback, Invoker invoker, boolean filter) {
+            this.callback = callback;
+            this.invoker = invoker;
+            this.filter = filter;
+        }
+
+        public static boolean needKeys(Stage[] stages) {
+            for (Stage stage : stages) {
+                if (stage.invoker != null && stage.invoker.getArgumentCount() != 1)
+                    return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Applies stages to the value, returns null if a filter skips the value.
+         */
+        public static Memory apply(Stage[] stages, Invoker[] invokers, Memory value, Memory key) {
+            for (int i = 0; i < stages.length; i++) {
+                Invoker invoker = invokers[i];
+                Memory result;
+
+                if (invoker == null)
+                    result = value;
+                else if (invoker.getArgumentCount() == 1)
+                    result = invoker.callNoThrow(value);
+                else
+                    result = invoker.callNoThrow(value, key);
+
+                if (stages[i].filter) {
+                    if (!result.toBoolean())
+                        return null;
+                } else
+                    value = result;
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Worker of fused stages, it runs them on the fork-join pool if the flow is parallel.
+     */
+    protected class StageWorker extends Worker {
+        protected Invoker[] invokers;
+        protected boolean needKeys;
+        protected ParallelStages parallel;
+
+        protected Memory current;
+        protected Memory key;
+
+        @Override
+        public boolean next(Environment env) {
+            if (invokers == null) {
+                invokers = new Invoker[stages.length];
+                for (int i = 0; i < stages.length; i++) {
+                    invokers[i] = stages[i].invoker;
+                }
+
+                needKeys = Stage.needKeys(stages);
+            }
+
+            if (parallelism > 0) {
+                if (parallel == null)
+                    parallel = new ParallelStages(env, iterator, stages, parallelism, ordered, chunkSize);
+
+                if (parallel.next()) {
+                    current = parallel.getValue();
+                    key = parallel.getKey();
+                    return true;
+                }
+
+                return false;
+            }
+
+            while (iterator.next()) {
+                Memory value = Stage.apply(stages, invokers, iterator.getValue(), needKeys ? iterator.getMemoryKey() : null);
+
+                if (value != null) {
+                    current = value;
+                    key = null;
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public Memory current(Environment env) {
+            return current == null ? Memory.NULL : current;
+        }
+
+        @Override
+        public Memory key(Environment env) {
+            return key == null ? iterator.getMemoryKey() : key;
+        }
+
+        @Override
+        public void reset() {
+            parallel = null;
+            current = null;
+            key = null;
+            iterator.reset();
+        }
+    }
+
     abstract static protected class Worker {
         protected ForeachIterator iterator;
 
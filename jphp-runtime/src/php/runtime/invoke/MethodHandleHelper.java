@@ -0,0 +1,94 @@
+package php.runtime.invoke;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.exceptions.CriticalException;
+import php.runtime.memory.ArrayMemory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Binds native methods of compiled classes, functions and modules to direct method handles,
+ * so calls do not go through java.lang.reflect.Method.invoke().
+ *
+ * Exceptions of the target method are wrapped to NativeInvoker.TargetException as InvocationTargetException of
+ * Method.invoke(), so callers convert only them and errors of the handle itself are thrown as is.
+ */
+final public class MethodHandleHelper {
+    private final static MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private final static MethodHandle THROW_TARGET;
+
+    static {
+        try {
+            THROW_TARGET = lookup.findStatic(MethodHandleHelper.class, "throwTarget",
+                    MethodType.methodType(Memory.class, Throwable.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    /**
+     * (Object _this, Environment env, Memory[] args) -> Memory
+     */
+    public final static MethodType METHOD_TYPE = MethodType.methodType(
+            Memory.class, Object.class, Environment.class, Memory[].class
+    );
+
+    /**
+     * (Environment env, Memory[] args) -> Memory
+     */
+    public final static MethodType FUNCTION_TYPE = MethodType.methodType(
+            Memory.class, Environment.class, Memory[].class
+    );
+
+    /**
+     * (Environment env, Memory[] args, ArrayMemory locals) -> Memory
+     */
+    public final static MethodType MODULE_TYPE = MethodType.methodType(
+            Memory.class, Environment.class, Memory[].class, ArrayMemory.class
+    );
+
+    private MethodHandleHelper() { }
+
+    private static MethodHandle unreflect(Method method) {
+        if (!method.isAccessible()) {
+            method.setAccessible(true);
+        }
+
+        try {
+            return MethodHandles.catchException(lookup.unreflect(method), Throwable.class, THROW_TARGET);
+        } catch (IllegalAccessException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    private static Memory throwTarget(Throwable e) throws NativeInvoker.TargetException {
+        throw new NativeInvoker.TargetException(e);
+    }
+
+    /**
+     * Handle for a method of a class, static methods ignore the first argument.
+     */
+    public static MethodHandle forMethod(Method method) {
+        MethodHandle handle = unreflect(method);
+
+        if (Modifier.isStatic(method.getModifiers())) {
+            return MethodHandles.dropArguments(handle.asType(FUNCTION_TYPE), 0, Object.class);
+        }
+
+        return handle.asType(METHOD_TYPE);
+    }
+
+    public static MethodHandle forFunction(Method method) {
+        return unreflect(method).asType(FUNCTION_TYPE);
+    }
+
+    public static MethodHandle forModule(Method method) {
+        return unreflect(method).asType(MODULE_TYPE);
+    }
+}
@@ -0,0 +1,88 @@
+package php.runtime.invoke;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.memory.ArrayMemory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * Direct invoker of a native method of a compiled class, function or module.
+ *
+ * For a public method of a public class the invoker is a generated class which calls the method by a bytecode
+ * instruction (see NativeInvokerGenerator), so the JIT inlines the method into the invoker. Other methods are called
+ * by a method handle (see MethodHandleHelper). Invokers wrap exceptions of the target method to TargetException as
+ * Method.invoke() wraps them to InvocationTargetException, errors of the invoker itself are thrown as is.
+ */
+abstract public class NativeInvoker {
+    /**
+     * Invokes a method, static methods and functions ignore the object.
+     */
+    public Memory invoke(Object self, Environment env, Memory[] args) throws Throwable {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Invokes the __include method of a module.
+     */
+    public Memory include(Environment env, Memory[] args, ArrayMemory locals) throws Throwable {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the invoker of the native method, invokers of generated classes are cached by the method.
+     */
+    public static NativeInvoker of(Method method) {
+        NativeInvoker invoker = NativeInvokerGenerator.generate(method);
+
+        if (invoker == null) {
+            if (method.getParameterTypes().length == 3) {
+                invoker = new ModuleHandleInvoker(MethodHandleHelper.forModule(method));
+            } else {
+                invoker = new HandleInvoker(MethodHandleHelper.forMethod(method));
+            }
+        }
+
+        return invoker;
+    }
+
+    /**
+     * Exception of the target method of an invoker, it has no stack trace because it is only rethrown.
+     */
+    public static class TargetException extends Exception {
+        public TargetException(Throwable target) {
+            super(null, target, false, false);
+        }
+
+        public Throwable getTargetException() {
+            return getCause();
+        }
+    }
+
+    protected static class HandleInvoker extends NativeInvoker {
+        protected final MethodHandle handle;
+
+        public HandleInvoker(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Memory invoke(Object self, Environment env, Memory[] args) throws Throwable {
+            return (Memory) handle.invokeExact(self, env, args);
+        }
+    }
+
+    protected static class ModuleHandleInvoker extends NativeInvoker {
+        protected final MethodHandle handle;
+
+        public ModuleHandleInvoker(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Memory include(Environment env, Memory[] args, ArrayMemory locals) throws Throwable {
+            return (Memory) handle.invokeExact(env, args, locals);
+        }
+    }
+}
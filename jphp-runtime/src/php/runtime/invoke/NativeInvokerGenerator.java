@@ -0,0 +1,273 @@
+package php.runtime.invoke;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.exceptions.CriticalException;
+import php.runtime.loader.RuntimeClassLoader;
+import php.runtime.memory.ArrayMemory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates invoker classes for native methods, an invoker calls its method by invokevirtual or invokestatic
+ * inside of a try block which wraps exceptions of the method to NativeInvoker.TargetException.
+ *
+ * The runtime has no bytecode library, so the class file (version 49, without stack map frames) is written by hand.
+ * Invokers of classes of a RuntimeClassLoader are defined by a child loader of it (see
+ * RuntimeClassLoader.getInvokerLoader()), invokers of classes which the runtime sees are defined by a shared loader.
+ */
+final public class NativeInvokerGenerator {
+    private final static String INVOKER = "php/runtime/invoke/NativeInvoker";
+    private final static String TARGET_EXCEPTION = "php/runtime/invoke/NativeInvoker$TargetException";
+
+    private final static String METHOD_DESC = "(Lphp/runtime/env/Environment;[Lphp/runtime/Memory;)Lphp/runtime/Memory;";
+    private final static String MODULE_DESC
+            = "(Lphp/runtime/env/Environment;[Lphp/runtime/Memory;Lphp/runtime/memory/ArrayMemory;)Lphp/runtime/Memory;";
+
+    private final static String INVOKE_DESC
+            = "(Ljava/lang/Object;Lphp/runtime/env/Environment;[Lphp/runtime/Memory;)Lphp/runtime/Memory;";
+
+    private final static AtomicInteger counter = new AtomicInteger();
+    private final static Loader sharedLoader = new Loader(NativeInvoker.class.getClassLoader());
+
+    private NativeInvokerGenerator() { }
+
+    /**
+     * Returns the generated invoker of the method or null if the method cannot be called from a generated class.
+     */
+    public static NativeInvoker generate(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(declaringClass.getModifiers())
+                || declaringClass.isInterface() || method.getReturnType() != Memory.class) {
+            return null;
+        }
+
+        Class<?>[] types = method.getParameterTypes();
+        boolean module = types.length == 3 && types[2] == ArrayMemory.class;
+
+        if (types.length < 2 || types.length > 3 || (types.length == 3 && !module)
+                || types[0] != Environment.class || types[1] != Memory[].class) {
+            return null;
+        }
+
+        if (module && !Modifier.isStatic(method.getModifiers())) {
+            return null;
+        }
+
+        ClassLoader classLoader = declaringClass.getClassLoader();
+        Loader loader;
+
+        if (classLoader instanceof RuntimeClassLoader) {
+            loader = ((RuntimeClassLoader) classLoader).getInvokerLoader();
+        } else if (isVisible(classLoader)) {
+            loader = sharedLoader;
+        } else {
+            return null;
+        }
+
+        return loader.invoker(method, module);
+    }
+
+    private static boolean isVisible(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return true;
+        }
+
+        for (ClassLoader parent = sharedLoader.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent == classLoader) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Class file of the invoker.
+     */
+    static byte[] generateClass(String name, Method method, boolean module) {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(result);
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+
+            // constant pool
+            out.writeShort(25);
+            writeUtf8(out, name);                                               // 1
+            writeClass(out, 1);                                                 // 2
+            writeUtf8(out, INVOKER);                                            // 3
+            writeClass(out, 3);                                                 // 4
+            writeUtf8(out, "<init>");                                           // 5
+            writeUtf8(out, "()V");                                              // 6
+            writeNameAndType(out, 5, 6);                                        // 7
+            writeMethodRef(out, 4, 7);                                          // 8
+            writeUtf8(out, "Code");                                             // 9
+            writeUtf8(out, method.getDeclaringClass().getName().replace('.', '/')); // 10
+            writeClass(out, 10);                                                // 11
+            writeUtf8(out, method.getName());                                   // 12
+            writeUtf8(out, module ? MODULE_DESC : METHOD_DESC);                 // 13
+            writeNameAndType(out, 12, 13);                                      // 14
+            writeMethodRef(out, 11, 14);                                        // 15
+            writeUtf8(out, module ? "include" : "invoke");                      // 16
+            writeUtf8(out, module ? MODULE_DESC : INVOKE_DESC);                 // 17
+            writeUtf8(out, TARGET_EXCEPTION);                                   // 18
+            writeClass(out, 18);                                                // 19
+            writeUtf8(out, "(Ljava/lang/Throwable;)V");                         // 20
+            writeNameAndType(out, 5, 20);                                       // 21
+            writeMethodRef(out, 19, 21);                                        // 22
+            writeUtf8(out, "java/lang/Throwable");                              // 23
+            writeClass(out, 23);                                                // 24
+
+            out.writeShort(Modifier.PUBLIC | Modifier.FINAL | 0x0020 /* ACC_SUPER */);
+            out.writeShort(2);
+            out.writeShort(4);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+
+            // public <init>() { super(); }
+            out.writeShort(Modifier.PUBLIC);
+            out.writeShort(5);
+            out.writeShort(6);
+            writeCode(out, 1, 1, new byte[]{0x2A, (byte) 0xB7, 0, 8, (byte) 0xB1}, -1, -1);
+
+            // public Memory invoke(Object self, Environment env, Memory[] args) or include(env, args, locals)
+            ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+            if (module) {
+                code.write(new byte[]{0x2B, 0x2C, 0x2D}); // aload_1, aload_2, aload_3
+            } else if (isStatic) {
+                code.write(new byte[]{0x2C, 0x2D});       // aload_2, aload_3
+            } else {
+                code.write(new byte[]{0x2B, (byte) 0xC0, 0, 11}); // aload_1, checkcast #11
+            }
+
+            int start = code.size();
+            if (!module && !isStatic) {
+                code.write(new byte[]{0x2C, 0x2D});       // aload_2, aload_3
+            }
+
+            code.write(isStatic ? 0xB8 : 0xB6);           // invokestatic or invokevirtual #15
+            code.write(new byte[]{0, 15});
+
+            int end = code.size();
+            code.write(0xB0);                             // areturn
+
+            // handler: throw new TargetException(e)
+            code.write(new byte[]{(byte) 0xBB, 0, 19, 0x5A, 0x5F, (byte) 0xB7, 0, 22, (byte) 0xBF});
+
+            out.writeShort(Modifier.PUBLIC);
+            out.writeShort(16);
+            out.writeShort(17);
+            writeCode(out, 3, 4, code.toByteArray(), start, end);
+
+            out.writeShort(0); // attributes of the class
+            out.flush();
+
+            return result.toByteArray();
+        } catch (IOException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void writeClass(DataOutputStream out, int name) throws IOException {
+        out.writeByte(7);
+        out.writeShort(name);
+    }
+
+    private static void writeNameAndType(DataOutputStream out, int name, int desc) throws IOException {
+        out.writeByte(12);
+        out.writeShort(name);
+        out.writeShort(desc);
+    }
+
+    private static void writeMethodRef(DataOutputStream out, int owner, int nameAndType) throws IOException {
+        out.writeByte(10);
+        out.writeShort(owner);
+        out.writeShort(nameAndType);
+    }
+
+    /**
+     * Writes the Code attribute, the handler of Throwable starts after the areturn instruction at the end.
+     */
+    private static void writeCode(DataOutputStream out, int maxStack, int maxLocals, byte[] code, int start, int end)
+            throws IOException {
+        boolean handler = start != -1;
+
+        out.writeShort(1); // attributes of the method
+        out.writeShort(9);
+        out.writeInt(2 + 2 + 4 + code.length + 2 + (handler ? 8 : 0) + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+
+        if (handler) {
+            out.writeShort(1);
+            out.writeShort(start);
+            out.writeShort(end);
+            out.writeShort(end + 1);
+            out.writeShort(24);
+        } else {
+            out.writeShort(0);
+        }
+
+        out.writeShort(0); // attributes of the code
+    }
+
+    /**
+     * Loader of invoker classes, it caches invokers by methods.
+     */
+    public static class Loader extends ClassLoader {
+        protected final ConcurrentMap<Method, NativeInvoker> invokers = new ConcurrentHashMap<Method, NativeInvoker>();
+
+        public Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        protected NativeInvoker invoker(Method method, boolean module) {
+            NativeInvoker invoker = invokers.get(method);
+
+            if (invoker == null) {
+                String name = "php.runtime.invoke.NativeInvoker$" + counter.incrementAndGet();
+                byte[] data = generateClass(name.replace('.', '/'), method, module);
+
+                try {
+                    Class<?> clazz;
+                    synchronized (this) {
+                        clazz = defineClass(name, data, 0, data.length);
+                    }
+
+                    invoker = (NativeInvoker) clazz.newInstance();
+                } catch (InstantiationException | IllegalAccessException | LinkageError e) {
+                    throw new CriticalException("Unable to generate the invoker of " + method + ", " + e);
+                }
+
+                NativeInvoker cached = invokers.putIfAbsent(method, invoker);
+                if (cached != null) {
+                    invoker = cached;
+                }
+            }
+
+            return invoker;
+        }
+    }
+}
@@ -213,6 +213,53 @@ final public class ObjectInvokeHelper {
         }
     }
 
+    /**
+     * Invokes a method which is already found by its name for the class of the object (see MethodCallSite),
+     * the same as invokeMethod(Memory, String, String, ...) without the lookup.
+     */
+    public static Memory invokeResolvedMethod(IObject iObject, MethodEntity method, String methodName,
+                                              Environment env, TraceInfo trace, Memory[] args)
+            throws Throwable {
+        ClassEntity clazz = iObject.getReflection();
+        String className = clazz.getName();
+
+        if (!method.isPublic()) {
+            InvokeHelper.checkAccess(env, trace, method);
+        }
+
+        Memory[] passed = InvokeHelper.makeArguments(
+                env, args, method.getParameters(args == null ? 0 : args.length), className, methodName, trace
+        );
+
+        Memory result = method.getImmutableResult();
+
+        if (result != null) {
+            return result;
+        }
+
+        try {
+            if (trace != null) {
+                String staticClass = className;
+
+                if (iObject instanceof Closure) {
+                    staticClass = ((Closure) iObject).getScope();
+                }
+
+                String stackClass = clazz.isHiddenInCallStack() ? staticClass : method.getClazz().getName();
+
+                env.pushCall(trace, iObject, args, methodName, stackClass, staticClass);
+            }
+
+            return method.invokeDynamic(iObject, env, passed);
+        } catch (NoClassDefFoundError e) {
+            throw new CriticalException("Unable to call method " + className + "::" + methodName + "(), " + e.getMessage());
+        } finally {
+            if (trace != null) {
+                env.popCall();
+            }
+        }
+    }
+
     public static Memory invokeMethod(IObject iObject, MethodEntity method,
                                       Environment env, TraceInfo trace, Memory[] args)
             throws Throwable {
@@ -3,12 +3,15 @@ package php.runtime.invoke.cache;
 import php.runtime.env.Environment;
 import php.runtime.reflection.support.Entity;
 
-import java.lang.ref.WeakReference;
-
 abstract public class CallCache<T extends Entity> {
     protected Item[][] cache;
 
     public T get(Environment env, int index) {
+        Item item = getItem(env, index);
+        return item == null ? null : (T) item.data;
+    }
+
+    protected Item getItem(Environment env, int index) {
         if (cache == null) {
             return null;
         }
@@ -25,12 +28,16 @@ abstract public class CallCache<T extends Entity> {
             return null;
         }
 
-        if (item.env.get() != env) {
+        if (item.token != env.getCallCacheToken()) {
             data[index] = null;
             return null;
         }
 
-        return (T) item.data;
+        return item;
+    }
+
+    protected Item newItem(T entity, Environment env) {
+        return new Item(entity, env);
     }
 
     abstract public Item[] newArrayData(int length);
@@ -62,16 +69,16 @@ abstract public class CallCache<T extends Entity> {
             }
         }
 
-        data[index] = new Item(entity, env);
+        data[index] = newItem(entity, env);
     }
 
     protected static class Item {
         Entity data;
-        WeakReference<Environment> env;
+        Object token;
 
         public Item(Entity data, Environment env) {
             this.data = data;
-            this.env = new WeakReference<Environment>(env);
+            this.token = env.getCallCacheToken();
         }
     }
 }
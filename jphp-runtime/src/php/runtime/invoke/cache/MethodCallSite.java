@@ -0,0 +1,178 @@
+package php.runtime.invoke.cache;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.exceptions.CriticalException;
+import php.runtime.invoke.ObjectInvokeHelper;
+import php.runtime.lang.IObject;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.MethodEntity;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+/**
+ * Inline cache for `$object->method(...)` call sites (invokedynamic), keyed by the lower name of the object class.
+ *
+ * A site starts unlinked, each new class of the object adds a guarded direct call to the resolved method,
+ * when the site has seen more than MAX_DEPTH classes it becomes megamorphic and
+ * falls back to ObjectInvokeHelper.invokeMethod() forever.
+ *
+ * Compiled code is shared by compile scopes (see CompiledModuleCache), so the same class has other entities
+ * in other scopes and after reloading. They pass the guard by the name and replace the cached entity and method
+ * of the entry, the site does not grow and does not hold entities of old scopes.
+ */
+public class MethodCallSite extends MutableCallSite {
+    public final static int MAX_DEPTH = 4;
+
+    /**
+     * (Memory object, Environment env, TraceInfo trace, Memory[] args) -> Memory
+     */
+    public final static MethodType TYPE = MethodType.methodType(
+            Memory.class, Memory.class, Environment.class, TraceInfo.class, Memory[].class
+    );
+
+    private final static MethodHandle FALLBACK;
+    private final static MethodHandle CHECK_CLASS;
+    private final static MethodHandle INVOKE_METHOD;
+    private final static MethodHandle INVOKE_GENERIC;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            FALLBACK = lookup.findVirtual(MethodCallSite.class, "fallback", TYPE);
+            CHECK_CLASS = lookup.findStatic(MethodCallSite.class, "checkClass", MethodType.methodType(
+                    boolean.class, Entry.class, Memory.class
+            ));
+            INVOKE_METHOD = lookup.findStatic(MethodCallSite.class, "invokeMethod", MethodType.methodType(
+                    Memory.class, Entry.class, String.class, String.class,
+                    Memory.class, Environment.class, TraceInfo.class, Memory[].class
+            ));
+            INVOKE_GENERIC = lookup.findStatic(ObjectInvokeHelper.class, "invokeMethod", MethodType.methodType(
+                    Memory.class, Memory.class, String.class, String.class,
+                    Environment.class, TraceInfo.class, Memory[].class
+            ));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    protected final String methodName;
+    protected final String methodLowerName;
+    protected int depth = 0;
+
+    public MethodCallSite(MethodType type, String methodName) {
+        super(type);
+        this.methodName = methodName;
+        this.methodLowerName = methodName.toLowerCase();
+
+        setTarget(FALLBACK.bindTo(this).asType(type));
+    }
+
+    /**
+     * Bootstrap method of invokedynamic instructions, is used via bytecode.
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, String methodName) {
+        return new MethodCallSite(type, methodName);
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isMegamorphic() {
+        return depth > MAX_DEPTH;
+    }
+
+    public Memory fallback(Memory object, Environment env, TraceInfo trace, Memory[] args) throws Throwable {
+        Memory value = object.toValue();
+
+        if (value.type == Memory.Type.OBJECT) {
+            ClassEntity clazz = ((ObjectMemory) value).value.getReflection();
+            link(clazz, clazz.findMethod(methodLowerName));
+        }
+
+        return ObjectInvokeHelper.invokeMethod(object, methodName, methodLowerName, env, trace, args);
+    }
+
+    synchronized protected void link(ClassEntity clazz, MethodEntity method) {
+        if (isMegamorphic()) {
+            return;
+        }
+
+        depth++;
+
+        if (isMegamorphic()) {
+            setTarget(MethodHandles.insertArguments(INVOKE_GENERIC, 1, methodName, methodLowerName).asType(type()));
+        } else {
+            Entry entry = new Entry(clazz, method);
+
+            MethodHandle test = MethodHandles.dropArguments(
+                    CHECK_CLASS.bindTo(entry), 1, Environment.class, TraceInfo.class, Memory[].class
+            );
+            MethodHandle target = MethodHandles.insertArguments(INVOKE_METHOD, 0, entry, methodName, methodLowerName);
+
+            setTarget(MethodHandles.guardWithTest(test, target, getTarget()).asType(type()));
+        }
+    }
+
+    public static boolean checkClass(Entry entry, Memory object) {
+        object = object.toValue();
+
+        if (object.type != Memory.Type.OBJECT) {
+            return false;
+        }
+
+        ClassEntity clazz = ((ObjectMemory) object).value.getReflection();
+        return clazz == entry.link.clazz || entry.classLowerName.equals(clazz.getLowerName());
+    }
+
+    public static Memory invokeMethod(Entry entry, String methodName, String methodLowerName,
+                                      Memory object, Environment env, TraceInfo trace, Memory[] args)
+            throws Throwable {
+        IObject iObject = ((ObjectMemory) object.toValue()).value;
+        ClassEntity clazz = iObject.getReflection();
+
+        Link link = entry.link;
+        if (link.clazz != clazz) {
+            entry.link = link = new Link(clazz, clazz.findMethod(methodLowerName));
+        }
+
+        // context depended methods are resolved by the class of the caller, __call is resolved by the name.
+        if (link.method == null || link.method.isContextDepends()) {
+            return ObjectInvokeHelper.invokeMethod(object, methodName, methodLowerName, env, trace, args);
+        }
+
+        return ObjectInvokeHelper.invokeResolvedMethod(iObject, link.method, methodName, env, trace, args);
+    }
+
+    protected static class Entry {
+        protected final String classLowerName;
+        protected volatile Link link;
+
+        public Entry(ClassEntity clazz, MethodEntity method) {
+            this.classLowerName = clazz.getLowerName();
+            this.link = new Link(clazz, method);
+        }
+    }
+
+    protected static class Link {
+        protected final ClassEntity clazz;
+        protected final MethodEntity method;
+
+        public Link(ClassEntity clazz, MethodEntity method) {
+            this.clazz = clazz;
+            this.method = method;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package php.runtime.invoke.cache;
 
+import php.runtime.env.Environment;
+import php.runtime.reflection.ClassEntity;
 import php.runtime.reflection.PropertyEntity;
 
 public class PropertyCallCache extends CallCache<PropertyEntity> {
@@ -12,4 +14,52 @@ public class PropertyCallCache extends CallCache<PropertyEntity> {
     public Item[][] newArrayArrayData(int length) {
         return new Item[length][];
     }
+
+    @Override
+    protected Item newItem(PropertyEntity entity, Environment env) {
+        return new PropertyItem(entity, env);
+    }
+
+    /**
+     * Returns the cached slot index of the property for objects of the class or -1.
+     */
+    public int getSlot(Environment env, int index, ClassEntity clazz) {
+        Item item = getItem(env, index);
+
+        if (item != null) {
+            Slot slot = ((PropertyItem) item).slot;
+
+            if (slot != null && slot.clazz == clazz) {
+                return slot.index;
+            }
+        }
+
+        return -1;
+    }
+
+    public void putSlot(Environment env, int index, ClassEntity clazz, int slot) {
+        Item item = getItem(env, index);
+
+        if (item != null) {
+            ((PropertyItem) item).slot = new Slot(clazz, slot);
+        }
+    }
+
+    protected static class PropertyItem extends Item {
+        volatile Slot slot;
+
+        public PropertyItem(PropertyEntity data, Environment env) {
+            super(data, env);
+        }
+    }
+
+    protected static class Slot {
+        final ClassEntity clazz;
+        final int index;
+
+        public Slot(ClassEntity clazz, int index) {
+            this.clazz = clazz;
+            this.index = index;
+        }
+    }
 }
@@ -6,6 +6,7 @@ import php.runtime.annotation.Reflection.BaseType;
 import php.runtime.annotation.Reflection.Ignore;
 import php.runtime.env.Environment;
 import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.ReferenceMemory;
 import php.runtime.reflection.ClassEntity;
 
 import java.lang.ref.WeakReference;
@@ -14,6 +15,7 @@ import java.lang.ref.WeakReference;
 @BaseType
 abstract public class BaseObject implements IObject {
     protected ArrayMemory __dynamicProperties__;
+    protected ReferenceMemory[] __slots__;
     protected ClassEntity __class__;
     protected final WeakReference<Environment> __env__;
 
@@ -32,7 +34,7 @@ abstract public class BaseObject implements IObject {
 
     public BaseObject(Environment env, ClassEntity clazz) {
         this.__class__ = clazz;
-        this.__dynamicProperties__ = new ArrayMemory(true);
+        this.__dynamicProperties__ = null;
         this.__env__ = new WeakReference<Environment>(env);
     }
 
@@ -46,15 +48,47 @@ abstract public class BaseObject implements IObject {
         return __class__;
     }
 
+    /**
+     * Values of declared properties by the slot layout of the class (see ClassEntity.getSlotIndex()),
+     * returns null when properties of the object are stored in the map.
+     */
+    public ReferenceMemory[] getSlots() {
+        return __slots__;
+    }
+
+    /**
+     * Is used by ClassEntity.newObject(), returns false if the object already has the property map.
+     */
+    public boolean initSlots(ReferenceMemory[] slots) {
+        if (__dynamicProperties__ != null) {
+            return false;
+        }
+
+        __slots__ = slots;
+        return true;
+    }
+
+    /**
+     * The first call moves slots to the property map, after that the object always uses the map.
+     */
     @Override
     public ArrayMemory getProperties() {
         if (__dynamicProperties__ == null) {
             synchronized (this) {
                 if (__dynamicProperties__ != null) return __dynamicProperties__;
 
-                if (__dynamicProperties__ == null) {
-                    __dynamicProperties__ = new ArrayMemory(true);
+                ArrayMemory props = new ArrayMemory(true);
+
+                if (__slots__ != null) {
+                    String[] names = __class__.getSlotNames();
+
+                    for (int i = 0; i < names.length; i++) {
+                        props.putRefAsKeyString(names[i], __slots__[i]);
+                    }
                 }
+
+                __dynamicProperties__ = props;
+                __slots__ = null;
             }
         }
 
@@ -35,6 +35,14 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
     protected final YieldAdapterIterator<Bucket> iterator;
     protected final php.runtime.util.generator.Generator<Bucket> gen;
 
+    /**
+     * State of the resumable _run: 0 - not started, -1 - finished, otherwise the number of the last yield.
+     */
+    protected int resumeState = 0;
+    protected Object[] resumeFrame;
+    protected boolean suspended;
+    protected Bucket bucket;
+
     protected final static ThreadLocal<Generator> currentGenerator = new ThreadLocal<Generator>();
 
     protected CallStackItem callStackItem;
@@ -61,6 +69,12 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
         this.callStack     = env.getCallStack();
         this.callStackItem = stackItem == null ? null : new CallStackItem(stackItem);
 
+        if (_isResumable()) {
+            gen = null;
+            iterator = null;
+            return;
+        }
+
         gen = new php.runtime.util.generator.Generator<Bucket>() {
             @Override
             protected void run(YieldAdapterIterator<Bucket> yieldAdapter) {
@@ -80,6 +94,56 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
 
     abstract protected Memory _run(Environment env, Memory... args);
 
+    /**
+     * Returns true if _run is compiled into a state machine, it returns at each yield and continues
+     * from the yield of resumeState, so the generator runs on the thread of the caller without an adapter thread.
+     */
+    protected boolean _isResumable() {
+        return false;
+    }
+
+    /**
+     * Runs _run until the next yield, returns false if the generator is finished.
+     */
+    protected boolean _resumeRun(Environment env) {
+        if (resumeState == -1) {
+            return false;
+        }
+
+        Generator previous = currentGenerator.get();
+        currentGenerator.set(this);
+        suspended = false;
+
+        try {
+            _run(env);
+        } catch (Throwable e) {
+            lastThrowable = e;
+            setCurrent(Memory.NULL);
+        } finally {
+            currentGenerator.set(previous);
+        }
+
+        if (suspended) {
+            return true;
+        }
+
+        resumeState = -1;
+        resumeFrame = null;
+        return false;
+    }
+
+    protected Bucket getCurrentBucket() {
+        return iterator == null ? bucket : iterator.getCurrentValue();
+    }
+
+    protected void setCurrentBucket(Bucket current) {
+        if (iterator == null) {
+            bucket = current;
+        } else {
+            iterator.setCurrentValue(current);
+        }
+    }
+
     protected Memory _next(Environment env) {
         if (busy) {
             env.error(env.trace(), "Cannot resume an already running generator");
@@ -94,7 +158,17 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
         try {
             counter += 1;
             busy = true;
-            return iterator.next().getValue();
+
+            if (iterator != null) {
+                return iterator.next().getValue();
+            }
+
+            if (_resumeRun(env)) {
+                return bucket.getValue();
+            }
+
+            valid = false;
+            callStackItem = null;
         } catch (NoSuchElementException e) {
             valid = false;
             callStackItem = null;
@@ -164,9 +238,9 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
            rewind(env);
         }
 
-        Bucket current = iterator.getCurrentValue();
+        Bucket current = getCurrentBucket();
         if (current == null) {
-            iterator.setCurrentValue(new Bucket(args[0]));
+            setCurrentBucket(new Bucket(args[0]));
         } else {
             current.pushValue(args[0]);
         }
@@ -220,15 +294,12 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
             rewind(env);
         }
 
-        if (iterator.getCurrentValue() == null) {
-            return Memory.NULL;
-        }
-
-        return iterator.getCurrentValue().getValue();
+        Bucket current = getCurrentBucket();
+        return current == null ? Memory.NULL : current.getValue();
     }
 
     protected Memory __current() {
-        Bucket current = iterator.getCurrentValue();
+        Bucket current = getCurrentBucket();
         return current == null ? Memory.NULL : current.getValue();
     }
 
@@ -239,11 +310,8 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
             rewind(env);
         }
 
-        if (iterator.getCurrentValue() == null) {
-            return Memory.NULL;
-        }
-
-        return iterator.getCurrentValue().getKey();
+        Bucket current = getCurrentBucket();
+        return current == null ? Memory.NULL : current.getKey();
     }
 
     @Signature
@@ -284,7 +352,7 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
     protected Bucket setCurrent(Memory value) {
         boolean returnRef = (((GeneratorEntity)getReflection()).isReturnReference());
 
-        Bucket current = iterator.getCurrentValue();
+        Bucket current = getCurrentBucket();
         if (value instanceof KeyValueMemory) {
             if (current != null) {
                 current.setKey(((KeyValueMemory) value).key);
@@ -321,6 +389,28 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
         return current.getValue();
     }
 
+    /**
+     * The first part of a yield of the resumable _run, the frame is saved after it.
+     */
+    protected void _suspend(Environment env, TraceInfo trace, Memory value) {
+        if (closed == ClosedType.MANUAL) {
+            env.error(trace, "Cannot yield from finally in a force-closed generator");
+        }
+
+        checkNewThrow();
+
+        bucket = setCurrent(value);
+        suspended = true;
+    }
+
+    /**
+     * The second part of a yield of the resumable _run, returns the value of the yield expression.
+     */
+    protected Memory _resume() {
+        checkNewThrow();
+        return bucket.getValue();
+    }
+
     protected Memory yield(Memory key, Memory value) {
         return gen.yield(new Bucket(key, value)).getValue();
     }
@@ -0,0 +1,113 @@
+package php.runtime.loader;
+
+import php.runtime.common.LangMode;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled and loaded modules of a class loader, they are shared by all compile scopes of the class loader
+ * (e.g. per request scopes of hot reload), so a new scope does not compile and define classes of a module again.
+ *
+ * A module is reused while its source file has the same modified time and size,
+ * and while classes which the module extends, implements or uses as traits are the same.
+ */
+public class CompiledModuleCache {
+    protected final Map<String, Item> items = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the compiled module for the source or null if it is not cached or the source was changed.
+     */
+    public ModuleEntity get(Environment env, Context context) throws IOException {
+        String moduleName = context.getModuleName();
+        File source = context.getSourceFile();
+
+        if (moduleName == null || source == null) {
+            return null;
+        }
+
+        Item item = items.get(moduleName);
+        if (item == null || !item.isActual(env.getScope(), source)) {
+            return null;
+        }
+
+        ModuleEntity module = item.module;
+
+        for (ClassEntity entity : module.getClasses()) {
+            for (ClassEntity depend : getDepends(entity)) {
+                if (depend.getModule() != null && depend.getModule() != module) {
+                    if (env.fetchClass(depend.getName(), true) != depend) {
+                        return null;
+                    }
+                }
+            }
+        }
+
+        return module;
+    }
+
+    /**
+     * Adds the module which is loaded by the class loader.
+     */
+    public void put(Environment env, Context context, ModuleEntity module) throws IOException {
+        String moduleName = context.getModuleName();
+        File source = context.getSourceFile();
+
+        if (moduleName != null && source != null) {
+            items.put(moduleName, new Item(env.getScope(), source, module));
+        }
+    }
+
+    public void remove(String moduleName) {
+        items.remove(moduleName);
+    }
+
+    public void clear() {
+        items.clear();
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    protected List<ClassEntity> getDepends(ClassEntity entity) {
+        List<ClassEntity> result = new ArrayList<>(entity.getTraits().values());
+        result.addAll(entity.getInterfaces().values());
+
+        if (entity.getParent() != null) {
+            result.add(entity.getParent());
+        }
+
+        return result;
+    }
+
+    protected static class Item {
+        final ModuleEntity module;
+        final long modified;
+        final long length;
+        final LangMode langMode;
+        final boolean debugMode;
+
+        Item(CompileScope scope, File source, ModuleEntity module) {
+            this.module = module;
+            this.modified = source.lastModified();
+            this.length = source.length();
+            this.langMode = scope.getLangMode();
+            this.debugMode = scope.isDebugMode();
+        }
+
+        boolean isActual(CompileScope scope, File source) {
+            return source.lastModified() == modified && source.length() == length
+                    && scope.getLangMode() == langMode && scope.isDebugMode() == debugMode;
+        }
+    }
+}
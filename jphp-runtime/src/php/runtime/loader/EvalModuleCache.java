@@ -0,0 +1,128 @@
+package php.runtime.loader;
+
+import php.runtime.common.LangMode;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Environment;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.ModuleEntity;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of modules compiled from eval() code of a class loader, so the same code is compiled and loaded once.
+ *
+ * Modules are kept by their code, least recently used modules are removed when the cache is full. Modules of eval are
+ * loaded by their own class loaders (see RuntimeClassLoader.loadDisposableModule()), so a removed module is unloaded
+ * by the JVM when its classes, functions and closures are not used anymore.
+ *
+ * As CompiledModuleCache, a module is reused while classes which the module extends or uses as traits are the same.
+ */
+public class EvalModuleCache {
+    public final static int DEFAULT_MAX_SIZE = 256;
+
+    protected final Map<Key, ModuleEntity> items = new LinkedHashMap<Key, ModuleEntity>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ModuleEntity> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    protected int maxSize = DEFAULT_MAX_SIZE;
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param maxSize max number of modules, 0 - disables the cache
+     */
+    synchronized public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+
+        while (items.size() > maxSize) {
+            items.remove(items.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Returns the compiled module of the code or null if it is not cached.
+     */
+    public ModuleEntity get(Environment env, String code) {
+        ModuleEntity module;
+
+        synchronized (this) {
+            module = items.get(new Key(env.getScope(), code));
+        }
+
+        if (module != null) {
+            for (ClassEntity entity : module.getClasses()) {
+                if (!isActual(env, module, entity.getParent())) {
+                    return null;
+                }
+
+                for (ClassEntity trait : entity.getTraits().values()) {
+                    if (!isActual(env, module, trait)) {
+                        return null;
+                    }
+                }
+            }
+        }
+
+        return module;
+    }
+
+    /**
+     * Adds the module which is compiled from the code and loaded.
+     */
+    synchronized public void put(Environment env, String code, ModuleEntity module) {
+        if (maxSize > 0) {
+            items.put(new Key(env.getScope(), code), module);
+        }
+    }
+
+    synchronized public void clear() {
+        items.clear();
+    }
+
+    synchronized public int size() {
+        return items.size();
+    }
+
+    protected boolean isActual(Environment env, ModuleEntity module, ClassEntity depend) {
+        if (depend == null || depend.getModule() == null || depend.getModule() == module) {
+            return true;
+        }
+
+        return env.fetchClass(depend.getName(), true) == depend;
+    }
+
+    protected static class Key {
+        final String code;
+        final LangMode langMode;
+        final boolean debugMode;
+
+        Key(CompileScope scope, String code) {
+            this.code = code;
+            this.langMode = scope.getLangMode();
+            this.debugMode = scope.isDebugMode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return debugMode == key.debugMode && langMode == key.langMode && code.equals(key.code);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = code.hashCode();
+            result = 31 * result + (langMode != null ? langMode.hashCode() : 0);
+            result = 31 * result + (debugMode ? 1 : 0);
+            return result;
+        }
+    }
+}
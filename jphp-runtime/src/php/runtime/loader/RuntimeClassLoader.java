@@ -3,18 +3,22 @@ package php.runtime.loader;
 import php.runtime.Memory;
 import php.runtime.common.Callback;
 import php.runtime.env.Environment;
+import php.runtime.invoke.NativeInvokerGenerator;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.reflection.*;
 import php.runtime.reflection.helper.ClosureEntity;
 import php.runtime.reflection.helper.GeneratorEntity;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RuntimeClassLoader extends URLClassLoader {
     protected Map<String, ClassEntity> internalClasses = new HashMap<String, ClassEntity>();
@@ -23,6 +27,13 @@ public class RuntimeClassLoader extends URLClassLoader {
 
     protected List<Callback<Void, URL>> addLibraryListeners = new ArrayList<>();
 
+    protected final CompiledModuleCache compiledModules = new CompiledModuleCache();
+    protected final EvalModuleCache evalModules = new EvalModuleCache();
+
+    protected final Map<String, WeakReference<RuntimeClassLoader>> moduleLoaders = new ConcurrentHashMap<>();
+
+    protected NativeInvokerGenerator.Loader invokerLoader;
+
     public RuntimeClassLoader() {
         this(Thread.currentThread().getContextClassLoader());
     }
@@ -31,16 +42,76 @@ public class RuntimeClassLoader extends URLClassLoader {
         super(new URL[0], parent);
     }
 
+    /**
+     * Returns the loader of invokers for native methods of classes of this class loader.
+     */
+    public synchronized NativeInvokerGenerator.Loader getInvokerLoader() {
+        if (invokerLoader == null) {
+            invokerLoader = new NativeInvokerGenerator.Loader(this);
+        }
+
+        return invokerLoader;
+    }
+
+    /**
+     * Returns modules which are compiled and loaded by this class loader, they are shared by compile scopes.
+     */
+    public CompiledModuleCache getCompiledModules() {
+        return compiledModules;
+    }
+
+    /**
+     * Returns modules which are compiled from eval() code and loaded by disposable class loaders.
+     */
+    public EvalModuleCache getEvalModules() {
+        return evalModules;
+    }
+
     public ClassEntity getClass(String internalName) {
-        return internalClasses.get(internalName);
+        ClassEntity result = internalClasses.get(internalName);
+
+        if (result == null && !moduleLoaders.isEmpty()) {
+            for (WeakReference<RuntimeClassLoader> reference : moduleLoaders.values()) {
+                RuntimeClassLoader loader = reference.get();
+
+                if (loader != null && (result = loader.getClass(internalName)) != null) {
+                    break;
+                }
+            }
+        }
+
+        return result;
     }
 
     public FunctionEntity getFunction(String internalName) {
-        return internalFunctions.get(internalName);
+        FunctionEntity result = internalFunctions.get(internalName);
+
+        if (result == null && !moduleLoaders.isEmpty()) {
+            for (WeakReference<RuntimeClassLoader> reference : moduleLoaders.values()) {
+                RuntimeClassLoader loader = reference.get();
+
+                if (loader != null && (result = loader.getFunction(internalName)) != null) {
+                    break;
+                }
+            }
+        }
+
+        return result;
     }
 
     public ModuleEntity getModule(String internalName) {
-        return internalModules.get(internalName);
+        ModuleEntity result = internalModules.get(internalName);
+
+        if (result == null && !moduleLoaders.isEmpty()) {
+            WeakReference<RuntimeClassLoader> reference = moduleLoaders.get(internalName);
+            RuntimeClassLoader loader = reference == null ? null : reference.get();
+
+            if (loader != null) {
+                result = loader.getModule(internalName);
+            }
+        }
+
+        return result;
     }
 
     public Class<?> loadClass(ClassEntity clazz, boolean withBytecode) throws NoSuchMethodException, NoSuchFieldException {
@@ -60,7 +131,6 @@ public class RuntimeClassLoader extends URLClassLoader {
                 method.setNativeMethod(
                         clazz.getNativeClass().getDeclaredMethod(method.getInternalName(), Environment.class, Memory[].class)
                 );
-                method.getNativeMethod().setAccessible(true);
             }
         }
 
@@ -127,6 +197,10 @@ public class RuntimeClassLoader extends URLClassLoader {
             ret = true;
         }
 
+        if (!module.isCompiled()) {
+            return ret;
+        }
+
         if (withBytecode) {
             byte[] data = translateData(module.getData());
             Class<?> result = defineClass(
@@ -147,6 +221,45 @@ public class RuntimeClassLoader extends URLClassLoader {
         return ret;
     }
 
+    /**
+     * Loads the module by a new child class loader which is weakly referenced by this loader, so classes of the module
+     * are unloaded when the module, its functions and closures are not used anymore. The module must not be
+     * used by other modules at compile time, e.g. a module compiled by eval().
+     *
+     * A module which declares classes, interfaces or traits is loaded by this loader, because classes of other modules
+     * can extend them and must see them.
+     */
+    public RuntimeClassLoader loadDisposableModule(ModuleEntity module) {
+        if (!module.isCompiled()) {
+            // there are no classes to unload
+            module.setLoaded(true);
+            return this;
+        }
+
+        if (!module.getClasses().isEmpty()) {
+            loadModule(module, true);
+            return this;
+        }
+
+        Iterator<WeakReference<RuntimeClassLoader>> iterator = moduleLoaders.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().get() == null) {
+                iterator.remove();
+            }
+        }
+
+        RuntimeClassLoader loader = new RuntimeClassLoader(this) {
+            @Override
+            protected byte[] translateData(byte[] data) {
+                return RuntimeClassLoader.this.translateData(data);
+            }
+        };
+        loader.loadModule(module, true);
+
+        moduleLoaders.put(module.getInternalName(), new WeakReference<RuntimeClassLoader>(loader));
+        return loader;
+    }
+
     protected byte[] translateData(byte[] data) {
         return data;
     }
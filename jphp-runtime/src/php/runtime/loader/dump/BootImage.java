@@ -0,0 +1,298 @@
+package php.runtime.loader.dump;
+
+import php.runtime.Startup;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Boot image of an application: compiled modules of a compile scope in one file.
+ *
+ * The image is saved after the bootstrap of the application, the next process loads it into the compile scope
+ * before the bootstrap, so modules are defined by the class loader at once and includes do not compile them again.
+ * A module is skipped and compiled as usual when its source file is changed or when a class which the module
+ * extends, implements or uses as a trait is not loaded from the same image. Only modules of source files are stored.
+ */
+public class BootImage {
+    public final static int IMAGE_STAMP = 479873684;
+
+    protected final File file;
+    protected final Set<String> loaded = new HashSet<String>();
+    protected boolean skipped = false;
+
+    public BootImage(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Defines modules of the image in the compile scope, returns the number of loaded modules.
+     */
+    public int load(CompileScope scope) throws IOException {
+        if (!file.isFile()) {
+            skipped = true;
+            return 0;
+        }
+
+        long t = System.currentTimeMillis();
+
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (input.readInt() != IMAGE_STAMP || !getVersion(scope).equals(input.readUTF())) {
+                skipped = true;
+                return 0;
+            }
+
+            // classes of the modules are resolved by this environment, it does not run any code.
+            Environment env = new Environment(scope);
+            Map<String, String> defined = new HashMap<String, String>();
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String moduleName = input.readUTF();
+                long modified = input.readLong();
+                long length = input.readLong();
+
+                Map<String, String> depends = new LinkedHashMap<String, String>();
+                int dependCount = input.readInt();
+                for (int j = 0; j < dependCount; j++) {
+                    depends.put(input.readUTF().toLowerCase(), input.readUTF());
+                }
+
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+
+                File source = new File(moduleName);
+
+                if (!source.isFile() || source.lastModified() != modified || source.length() != length
+                        || !isDefined(depends, defined) || scope.findUserModule(moduleName) != null) {
+                    skipped = true;
+                    continue;
+                }
+
+                // the same context as for includes, the source is not read.
+                Context context = new Context((InputStream) null, moduleName, env.getDefaultCharset());
+                ModuleEntity module;
+                try {
+                    module = new ModuleDumper(context, env, true).load(new ByteArrayInputStream(data));
+                } catch (IOException | RuntimeException e) {
+                    Startup.trace("Unable to load '" + moduleName + "' from the boot image, " + e.getMessage());
+                    skipped = true;
+                    continue;
+                }
+
+                if (scope.getClassLoader().getModule(module.getInternalName()) != null) {
+                    skipped = true;
+                    continue;
+                }
+
+                synchronized (scope) {
+                    scope.loadModule(module);
+                }
+
+                scope.addUserModule(module);
+                scope.getClassLoader().getCompiledModules().put(env, context, module);
+                env.registerModule(module, true);
+
+                for (ClassEntity entity : module.getClasses()) {
+                    defined.put(entity.getLowerName(), module.getInternalName());
+                }
+
+                loaded.add(moduleName);
+            }
+        } finally {
+            input.close();
+        }
+
+        if (Startup.isTracing()) {
+            Startup.traceWithTime("Load boot image '" + file + "', " + loaded.size() + " modules", t);
+        }
+
+        return loaded.size();
+    }
+
+    /**
+     * Returns true if the scope has modules which are not loaded from the image or the image has invalid modules.
+     */
+    public boolean isModified(CompileScope scope) {
+        if (skipped) {
+            return true;
+        }
+
+        for (ModuleEntity module : getModules(scope)) {
+            if (!loaded.contains(module.getName())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Saves compiled modules of the scope of the environment, a module is stored after modules of its parent classes,
+     * interfaces and traits.
+     */
+    public void save(Environment env) throws IOException {
+        CompileScope scope = env.getScope();
+        List<ModuleEntity> modules = sort(getModules(scope));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(IMAGE_STAMP);
+        output.writeUTF(getVersion(scope));
+        output.writeInt(modules.size());
+
+        for (ModuleEntity module : modules) {
+            File source = new File(module.getName());
+
+            output.writeUTF(module.getName());
+            output.writeLong(source.lastModified());
+            output.writeLong(source.length());
+
+            Map<String, String> depends = getDepends(module);
+            output.writeInt(depends.size());
+            for (Map.Entry<String, String> e : depends.entrySet()) {
+                output.writeUTF(e.getKey());
+                output.writeUTF(e.getValue());
+            }
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            new ModuleDumper(module.getContext(), env, true).save(module, data);
+
+            output.writeInt(data.size());
+            data.writeTo(output);
+        }
+
+        output.flush();
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+
+        File tmp = File.createTempFile("boot", ".tmp", directory);
+        try {
+            FileOutputStream stream = new FileOutputStream(tmp);
+            try {
+                bytes.writeTo(stream);
+            } finally {
+                stream.close();
+            }
+
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+
+        loaded.clear();
+        for (ModuleEntity module : modules) {
+            loaded.add(module.getName());
+        }
+
+        skipped = false;
+    }
+
+    /**
+     * Returns names of classes from other modules which the module extends, implements or uses as traits,
+     * with internal names of their modules.
+     */
+    protected Map<String, String> getDepends(ModuleEntity module) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+
+        for (ClassEntity entity : module.getClasses()) {
+            List<ClassEntity> depends = new ArrayList<ClassEntity>(entity.getTraits().values());
+            depends.addAll(entity.getInterfaces().values());
+
+            if (entity.getParent() != null) {
+                depends.add(entity.getParent());
+            }
+
+            for (ClassEntity depend : depends) {
+                if (depend.getModule() != null && depend.getModule() != module) {
+                    result.put(depend.getName(), depend.getModule().getInternalName());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    protected boolean isDefined(Map<String, String> depends, Map<String, String> defined) {
+        for (Map.Entry<String, String> e : depends.entrySet()) {
+            if (!e.getValue().equals(defined.get(e.getKey()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected List<ModuleEntity> getModules(CompileScope scope) {
+        List<ModuleEntity> result = new ArrayList<ModuleEntity>();
+
+        for (ModuleEntity module : scope.moduleMap.values()) {
+            String name = module.getName();
+
+            if (name != null && module.getData() != null && module.isLoaded()
+                    && new File(name).getPath().equals(name) && new File(name).isFile()) {
+                result.add(module);
+            }
+        }
+
+        Collections.sort(result, new Comparator<ModuleEntity>() {
+            @Override
+            public int compare(ModuleEntity o1, ModuleEntity o2) {
+                return o1.getName().compareTo(o2.getName());
+            }
+        });
+
+        return result;
+    }
+
+    protected List<ModuleEntity> sort(List<ModuleEntity> modules) {
+        Map<String, ModuleEntity> byInternalName = new HashMap<String, ModuleEntity>();
+        for (ModuleEntity module : modules) {
+            byInternalName.put(module.getInternalName(), module);
+        }
+
+        Set<ModuleEntity> visited = new HashSet<ModuleEntity>();
+        List<ModuleEntity> result = new ArrayList<ModuleEntity>();
+
+        for (ModuleEntity module : modules) {
+            sort(module, byInternalName, visited, result);
+        }
+
+        return result;
+    }
+
+    protected void sort(ModuleEntity module, Map<String, ModuleEntity> modules,
+                        Set<ModuleEntity> visited, List<ModuleEntity> result) {
+        if (!visited.add(module)) {
+            return;
+        }
+
+        for (String internalName : getDepends(module).values()) {
+            ModuleEntity depend = modules.get(internalName);
+
+            if (depend != null) {
+                sort(depend, modules, visited, result);
+            }
+        }
+
+        result.add(module);
+    }
+
+    protected static String getVersion(CompileScope scope) {
+        return ModuleCache.runtimeVersion() + "/" + scope.getLangMode() + "/" + scope.isDebugMode();
+    }
+}
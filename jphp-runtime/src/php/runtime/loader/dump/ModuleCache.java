@@ -0,0 +1,321 @@
+package php.runtime.loader.dump;
+
+import php.runtime.Information;
+import php.runtime.Startup;
+import php.runtime.common.DigestUtils;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Persistent cache of compiled modules on disk.
+ *
+ * An entry is the ModuleDumper output of a module keyed by the name of the module, version of the runtime and
+ * compile options. The entry is valid while the source has the same modified time and size or the same hash of content,
+ * and while classes which the module extends or uses as traits are loaded from the same compiled modules.
+ * Total size of entries is bounded, least recently used entries are removed first.
+ */
+public class ModuleCache {
+    public final static int CACHE_STAMP = 479873683;
+    public final static String EXTENSION = ".phb";
+
+    protected final File directory;
+    protected final long maxSize;
+    protected final String version;
+
+    protected long size = -1;
+
+    public ModuleCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.version = runtimeVersion();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the compiled module from the cache or null if there is no valid entry for it.
+     */
+    public ModuleEntity load(Environment env, Context context) throws IOException {
+        String moduleName = context.getModuleName();
+        if (moduleName == null) {
+            return null;
+        }
+
+        File file = getEntryFile(env.getScope(), moduleName);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        DataInputStream input;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            if (input.readInt() != CACHE_STAMP || !moduleName.equals(input.readUTF())) {
+                return null;
+            }
+
+            long modified = input.readLong();
+            long length = input.readLong();
+            String hash = input.readUTF();
+
+            File source = context.getSourceFile();
+            if (source == null || source.lastModified() != modified || source.length() != length) {
+                if (!hash.equals(getContentHash(context))) {
+                    return null;
+                }
+            }
+
+            Map<String, String> depends = new LinkedHashMap<String, String>();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                depends.put(input.readUTF(), input.readUTF());
+            }
+
+            ModuleEntity module = new ModuleDumper(context, env, true).load(input);
+
+            // the same compiled classes cannot be defined twice by one class loader.
+            if (env.getScope().getClassLoader().getModule(module.getInternalName()) != null) {
+                return null;
+            }
+
+            // compiled classes extend or copy code of classes from other modules.
+            for (Map.Entry<String, String> e : depends.entrySet()) {
+                ClassEntity entity = env.fetchClass(e.getKey(), false);
+
+                if (entity == null || entity.getModule() == null
+                        || !e.getValue().equals(entity.getModule().getInternalName())) {
+                    return null;
+                }
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+            return module;
+        } catch (IOException e) {
+            Startup.trace("Unable to load '" + moduleName + "' from the compile cache, " + e.getMessage());
+            return null;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Stores the compiled module, must be called before the module is loaded by a compile scope.
+     */
+    public void save(Environment env, Context context, ModuleEntity module) {
+        try {
+            String moduleName = context.getModuleName();
+            if (moduleName == null || module.getData() == null) {
+                return;
+            }
+
+            Map<String, String> depends = getDepends(module);
+            File source = context.getSourceFile();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(CACHE_STAMP);
+            output.writeUTF(moduleName);
+            output.writeLong(source == null ? 0 : source.lastModified());
+            output.writeLong(source == null ? 0 : source.length());
+            output.writeUTF(getContentHash(context));
+
+            output.writeInt(depends.size());
+            for (Map.Entry<String, String> e : depends.entrySet()) {
+                output.writeUTF(e.getKey());
+                output.writeUTF(e.getValue());
+            }
+
+            new ModuleDumper(context, env, true).save(module, output);
+            output.flush();
+
+            write(getEntryFile(env.getScope(), moduleName), bytes.toByteArray());
+        } catch (IOException e) {
+            Startup.trace("Unable to save '" + module.getName() + "' to the compile cache, " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    synchronized public void clear() {
+        for (File file : getEntries()) {
+            file.delete();
+        }
+
+        size = 0;
+    }
+
+    protected Map<String, String> getDepends(ModuleEntity module) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+
+        for (ClassEntity entity : module.getClasses()) {
+            List<ClassEntity> depends = new ArrayList<ClassEntity>(entity.getTraits().values());
+            if (entity.getParent() != null) {
+                depends.add(entity.getParent());
+            }
+
+            for (ClassEntity depend : depends) {
+                if (depend.getModule() != null && depend.getModule() != module) {
+                    result.put(depend.getName(), depend.getModule().getInternalName());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    synchronized protected void write(File file, byte[] data) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+
+        if (size == -1) {
+            size = 0;
+            for (File entry : getEntries()) {
+                size += entry.length();
+            }
+        }
+
+        long oldLength = file.length();
+
+        File tmp = File.createTempFile("module", ".tmp", directory);
+        try {
+            FileOutputStream output = new FileOutputStream(tmp);
+            try {
+                output.write(data);
+            } finally {
+                output.close();
+            }
+
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+
+        size += data.length - oldLength;
+
+        if (size > maxSize) {
+            evict();
+        }
+    }
+
+    protected void evict() {
+        File[] entries = getEntries();
+        final Map<File, Long> modified = new HashMap<File, Long>();
+
+        for (File entry : entries) {
+            modified.put(entry, entry.lastModified());
+        }
+
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return modified.get(o1).compareTo(modified.get(o2));
+            }
+        });
+
+        for (File entry : entries) {
+            if (size <= maxSize) {
+                break;
+            }
+
+            long length = entry.length();
+            if (entry.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    protected File[] getEntries() {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(EXTENSION);
+            }
+        });
+
+        return files == null ? new File[0] : files;
+    }
+
+    protected File getEntryFile(CompileScope scope, String moduleName) {
+        String key = version + "\0" + scope.getLangMode() + "\0" + scope.isDebugMode() + "\0" + moduleName;
+        return new File(directory, hash(key) + EXTENSION);
+    }
+
+    protected String getContentHash(Context context) throws IOException {
+        String content = context.getContent();
+        return hash(content == null ? "" : content);
+    }
+
+    protected static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return DigestUtils.bytesToHex(digest.digest(value.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a version of the runtime and the compiler, compiled code is not valid for other versions.
+     */
+    protected static String runtimeVersion() {
+        return Information.CORE_VERSION + "/" + ModuleDumper.DUMP_VERSION + "/"
+                + codeStamp(ModuleCache.class) + "/" + codeStamp(compilerClass());
+    }
+
+    protected static Class<?> compilerClass() {
+        try {
+            return Class.forName("org.develnext.jphp.core.compiler.jvm.JvmCompiler");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a stamp of the jar or the class file, it changes with any new build of the runtime or the compiler.
+     */
+    protected static String codeStamp(Class<?> clazz) {
+        if (clazz == null) {
+            return "";
+        }
+
+        URL url = clazz.getResource(clazz.getSimpleName() + ".class");
+        if (url == null) {
+            return "";
+        }
+
+        String path = url.toString();
+        if (path.startsWith("jar:")) {
+            path = path.substring(4, path.indexOf("!/"));
+        }
+
+        try {
+            File file = new File(new URL(path).toURI());
+            return file.lastModified() + ":" + file.length();
+        } catch (Exception e) {
+            return path;
+        }
+    }
+}
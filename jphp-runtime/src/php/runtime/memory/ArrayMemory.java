@@ -21,14 +21,25 @@ import java.nio.charset.Charset;
 import java.util.*;
 
 public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
+    private final static Memory[] EMPTY_PACKED = new Memory[0];
+
     protected long lastLongIndex;
     protected int size;
-    protected int copies;
-    protected ArrayMemory original;
+
+    // storage (list, map, packed*) shared with other arrays until the first write, null when it is owned exclusively
+    protected Share share;
+
+    // a constant array is handed over by the first toImmutable() as is, see toConstant()
+    protected boolean constant;
 
     protected List<ReferenceMemory> list;
     protected LinkedMap<Object, ReferenceMemory> map;
 
+    // packed lists (keys 0..size-1) without ReferenceMemory per element, only one of them is used, see unpackList()
+    protected long[] packedLongs;
+    protected double[] packedDoubles;
+    protected Memory[] packedValues;
+
     protected ForeachIterator foreachIterator;
 
     public ArrayMemory(boolean asMap) {
@@ -36,7 +47,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         if (asMap)
             convertToMap();
         else {
-            list = new ArrayList<ReferenceMemory>();
+            packedValues = EMPTY_PACKED;
         }
         lastLongIndex = -1;
     }
@@ -65,6 +76,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     @Deprecated
     public ArrayMemory(Object... array){
         this();
+        unpackList();
         for(Object el : array) {
             if (el == null) {
                 list.add(new ReferenceMemory());
@@ -84,6 +96,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     @Deprecated
     public ArrayMemory(boolean toImmutable, Memory... array){
         this();
+        unpackList();
         if (array != null){
             for(Memory el : array){
                 list.add(new ReferenceMemory(toImmutable ? el.toImmutable() : el));
@@ -97,6 +110,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     @Deprecated
     public ArrayMemory(String[] array){
         this();
+        unpackList();
         for(String el : array) {
             list.add(new ReferenceMemory(StringMemory.valueOf(el)));
         }
@@ -125,7 +139,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     public Set<Object> keySet() {
-        if (list != null) {
+        if (list != null || isPacked()) {
             Set<Object> set = new HashSet<Object>(size());
             for (int i = 0; i < size(); i++) {
                 set.add(i);
@@ -139,7 +153,19 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         ArrayMemory result = new ArrayMemory();
         result.lastLongIndex = lastLongIndex;
         result.size = size;
-        if (list != null){
+        result.packedValues = null;
+        if (isPacked()) {
+            if (packedValues != null) {
+                result.packedValues = new Memory[size];
+                for (int i = 0; i < size; i++) {
+                    result.packedValues[i] = packedValues[i].toImmutable();
+                }
+            }
+
+            result.packedLongs = packedLongs == null ? null : Arrays.copyOf(packedLongs, size);
+            result.packedDoubles = packedDoubles == null ? null : Arrays.copyOf(packedDoubles, size);
+        } else if (list != null){
+            result.list = new ArrayList<ReferenceMemory>(size);
             for(ReferenceMemory item : list){
                 result.list.add(item.duplicate());
             }
@@ -154,25 +180,47 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         return result;
     }
 
+    /**
+     * Separates the storage of the array before a write, the storage is copied only when other arrays still share it,
+     * the last of them takes the storage over. Nested arrays are not copied here, they separate on their own writes.
+     *
+     * @return a duplicate which has the same storage as this array after copying, or null if nothing was copied
+     */
     public ArrayMemory checkCopied(){
-        if (original != null || copies > 0) {
-            ArrayMemory dup = duplicate();
-            this.map  = dup.map;
-            this.list = dup.list;
-            this.lastLongIndex = dup.lastLongIndex;
-
-            if (this.original == null){
-                this.copies--;
-            } else {
-                this.original.copies--;
-                this.original = null;
-                this.copies = 0;
+        if (share != null) {
+            if (share.refs > 1) {
+                share.refs--;
+                share = null;
+
+                ArrayMemory dup = duplicate();
+                this.map  = dup.map;
+                this.list = dup.list;
+                this.packedLongs = dup.packedLongs;
+                this.packedDoubles = dup.packedDoubles;
+                this.packedValues = dup.packedValues;
+                this.lastLongIndex = dup.lastLongIndex;
+                return dup;
             }
-            return dup;
+
+            share = null;
         }
         return null;
     }
 
+    /**
+     * Returns count of other arrays which share the storage with this array.
+     */
+    public int getCopies() {
+        return share == null ? 0 : share.refs - 1;
+    }
+
+    protected void release() {
+        if (share != null) {
+            share.refs--;
+            share = null;
+        }
+    }
+
     public static Object toKey(Memory key){
         switch (key.type){
             case STRING: {
@@ -199,16 +247,197 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         if (size() == 0) {
             return false;
         }
-        if (list != null) {
+        if (list != null || isPacked()) {
             long t = MemoryUtils.valueOf(key).toLong();
-            return t >= 0 && t < list.size();
+            return t >= 0 && t < size;
         }
         return map.containsKey(key);
     }
 
+    public boolean isPacked() {
+        return packedValues != null || packedLongs != null || packedDoubles != null;
+    }
+
+    /**
+     * Converts a packed list to the list of references, is called before any operation which needs
+     * references of elements (refOfIndex(), arguments by reference, foreach by reference, etc.) or string keys.
+     * Reads by index (valueOfIndex(), issetOfIndex()) take values of the packed list and keep it packed.
+     */
+    protected void unpackList() {
+        if (!isPacked()) {
+            return;
+        }
+
+        List<ReferenceMemory> list = new ArrayList<ReferenceMemory>(size);
+
+        for (int i = 0; i < size; i++) {
+            list.add(new ReferenceMemory(getPacked(i)));
+        }
+
+        // the list is set before the packed store is dropped, so the array does not look empty meanwhile
+        this.list = list;
+        this.packedLongs = null;
+        this.packedDoubles = null;
+        this.packedValues = null;
+    }
+
+    protected Memory getPacked(int index) {
+        if (packedLongs != null) {
+            return LongMemory.valueOf(packedLongs[index]);
+        } else if (packedDoubles != null) {
+            return new DoubleMemory(packedDoubles[index]);
+        } else {
+            return packedValues[index];
+        }
+    }
+
+    /**
+     * Returns the value of a packed list or null if the array is not packed or there is no such index.
+     */
+    protected Memory getPacked(Object key) {
+        if (key instanceof LongMemory) {
+            long index = ((LongMemory) key).value;
+
+            if (index >= 0 && index < size) {
+                return getPacked((int) index);
+            }
+        }
+
+        return null;
+    }
+
+    protected static int packedCapacity(int length, int size) {
+        if (size < length) {
+            return length;
+        }
+
+        return size < 4 ? 4 : size + (size >> 1);
+    }
+
+    /**
+     * Appends the value to a packed list, a list of longs or doubles becomes a list of values when
+     * a value of other type is added, returns false if the value cannot be packed.
+     */
+    protected boolean addPacked(Memory value) {
+        switch (value.type) {
+            case INT:
+                if (packedLongs == null && size == 0) {
+                    packedValues = null;
+                    packedDoubles = null;
+                    packedLongs = new long[4];
+                }
+
+                if (packedLongs != null) {
+                    if (size == packedLongs.length) {
+                        packedLongs = Arrays.copyOf(packedLongs, packedCapacity(packedLongs.length, size));
+                    }
+
+                    packedLongs[size] = ((LongMemory) value).value;
+                    lastLongIndex = size++;
+                    return true;
+                }
+                break;
+            case DOUBLE:
+                if (packedDoubles == null && size == 0) {
+                    packedValues = null;
+                    packedLongs = null;
+                    packedDoubles = new double[4];
+                }
+
+                if (packedDoubles != null) {
+                    if (size == packedDoubles.length) {
+                        packedDoubles = Arrays.copyOf(packedDoubles, packedCapacity(packedDoubles.length, size));
+                    }
+
+                    packedDoubles[size] = value.toDouble();
+                    lastLongIndex = size++;
+                    return true;
+                }
+                break;
+            case REFERENCE:
+                return false;
+        }
+
+        if (packedValues == null) {
+            Memory[] values = new Memory[packedCapacity(0, size + 1)];
+
+            for (int i = 0; i < size; i++) {
+                values[i] = getPacked(i);
+            }
+
+            packedLongs = null;
+            packedDoubles = null;
+            packedValues = values;
+        } else if (size == packedValues.length) {
+            packedValues = Arrays.copyOf(packedValues, packedCapacity(packedValues.length, size));
+        }
+
+        packedValues[size] = value;
+        lastLongIndex = size++;
+        return true;
+    }
+
+    /**
+     * Sorts a packed list of longs or doubles by numbers without boxing the elements.
+     *
+     * @return false if the array is not such list, so it must be sorted by a comparator
+     */
+    public boolean sortPacked(boolean revert) {
+        if (packedLongs != null) {
+            long[] sorted = Arrays.copyOf(packedLongs, size);
+            Arrays.sort(sorted);
+
+            if (revert) {
+                for (int i = 0, j = size - 1; i < j; i++, j--) {
+                    long tmp = sorted[i];
+                    sorted[i] = sorted[j];
+                    sorted[j] = tmp;
+                }
+            }
+
+            packedLongs = sorted;
+            return true;
+        }
+
+        if (packedDoubles != null) {
+            for (int i = 0; i < size; i++) {
+                double value = packedDoubles[i];
+
+                // NaN is not comparable and -0.0 == 0.0 in php, the comparator keeps the order of them.
+                if (Double.isNaN(value) || (value == 0.0 && Double.doubleToRawLongBits(value) != 0L)) {
+                    return false;
+                }
+            }
+
+            double[] sorted = Arrays.copyOf(packedDoubles, size);
+            Arrays.sort(sorted);
+
+            if (revert) {
+                for (int i = 0, j = size - 1; i < j; i++, j--) {
+                    double tmp = sorted[i];
+                    sorted[i] = sorted[j];
+                    sorted[j] = tmp;
+                }
+            }
+
+            packedDoubles = sorted;
+            return true;
+        }
+
+        return false;
+    }
+
     private void convertToMap(){
         map = new LinkedMap<Object, ReferenceMemory>();
-        if (list != null){
+        if (isPacked()) {
+            for (int i = 0; i < size; i++) {
+                map.put(LongMemory.valueOf(i), new ReferenceMemory(getPacked(i)));
+            }
+
+            packedLongs = null;
+            packedDoubles = null;
+            packedValues = null;
+        } else if (list != null){
             int i = 0;
             for(ReferenceMemory memory : list){
                 if (memory != null){
@@ -222,7 +451,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public void renameKey(Memory oldKey, Memory newKey){
         checkCopied();
-        if (list != null)
+        if (list != null || isPacked())
             convertToMap();
 
         Object key1 = toKey(oldKey);
@@ -253,6 +482,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public ReferenceMemory getByScalarOrCreateAsShortcut(Object sKey){
         //checkCopied();
+        unpackList();
         ReferenceMemory value = getByScalar(sKey);
         if (value == null) {
             value = new ReferenceMemory(UNDEFINED);
@@ -271,6 +501,17 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         return getByScalarOrCreate(sKey, UNDEFINED);
     }
 
+    /**
+     * Returns the value of the key, values of a packed list are read without references, so it stays packed.
+     */
+    protected Memory getValueByScalar(Object key) {
+        if (isPacked()) {
+            return getPacked(key);
+        }
+
+        return getByScalar(key);
+    }
+
     public ReferenceMemory getByScalar(Object key){
         if (list != null){
             if (key instanceof Memory){
@@ -281,8 +522,11 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
                     return null;
             } else
                 return null;
-        } else {
+        } else if (map != null) {
             return map.get(key);
+        } else {
+            unpackList();
+            return getByScalar(key);
         }
     }
 
@@ -291,7 +535,16 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     public void add(long value) {
-        add(LongMemory.valueOf(value));
+        if (packedLongs != null) {
+            if (size == packedLongs.length) {
+                packedLongs = Arrays.copyOf(packedLongs, packedCapacity(packedLongs.length, size));
+            }
+
+            packedLongs[size] = value;
+            lastLongIndex = size++;
+        } else {
+            add(LongMemory.valueOf(value));
+        }
     }
 
     public void add(String value) {
@@ -310,12 +563,23 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         add(NULL);
     }
 
+    /**
+     * @return the reference of the new element, null if the array is packed
+     */
     public ReferenceMemory add(Memory value){
         if (value instanceof KeyValueMemory){
             KeyValueMemory keyValue = (KeyValueMemory)value;
             return put(toKey(keyValue.key), keyValue.value.toImmutable());
         }
 
+        if (isPacked()) {
+            if (addPacked(value)) {
+                return null;
+            }
+
+            unpackList();
+        }
+
         ReferenceMemory ref;
         if (list != null){
             lastLongIndex++;
@@ -337,6 +601,15 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         if (recursive && done == null)
             done = new HashSet<Integer>();
 
+        if (array.isPacked()) {
+            for (int i = 0; i < array.size; i++) {
+                add(array.getPacked(i).toImmutable());
+            }
+            return;
+        }
+
+        unpackList();
+
         if (list != null && array.list != null){
             for(ReferenceMemory reference : array.list)
                 list.add(new ReferenceMemory(reference.toImmutable()));
@@ -386,7 +659,11 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     public void putAll(ArrayMemory array){
-        if (array.list != null){
+        if (array.isPacked()) {
+            for (int i = 0; i < array.size; i++) {
+                put(LongMemory.valueOf(i), array.getPacked(i).toImmutable());
+            }
+        } else if (array.list != null){
             int i = 0;
             for(ReferenceMemory memory : array.list){
                 if (memory != null)
@@ -394,7 +671,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
                 i++;
             }
         } else {
-            if (list != null)
+            if (list != null || isPacked())
                 convertToMap();
 
             if (array.lastLongIndex > lastLongIndex)
@@ -407,6 +684,8 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     public void putAllRef(ArrayMemory array){
+        array.unpackList();
+
         if (array.list != null){
             int i = 0;
             for(ReferenceMemory memory : array.list){
@@ -415,7 +694,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
                 i++;
             }
         } else {
-            if (list != null)
+            if (list != null || isPacked())
                 convertToMap();
 
             if (array.lastLongIndex > lastLongIndex)
@@ -427,7 +706,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public ReferenceMemory putAsKeyString(String key, Memory value){
         ReferenceMemory mem = new ReferenceMemory(value);
-        if (list != null)
+        if (list != null || isPacked())
             convertToMap();
 
         Memory last = map.put(key, mem);
@@ -437,11 +716,26 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         return mem;
     }
 
+    /**
+     * Puts the reference as is, without copying into a new ReferenceMemory.
+     */
+    public ReferenceMemory putRefAsKeyString(String key, ReferenceMemory value){
+        if (list != null || isPacked())
+            convertToMap();
+
+        Memory last = map.put(key, value);
+        if (last == null){
+            size++;
+        }
+        return value;
+    }
+
     public ReferenceMemory put(Object key, Memory value) {
         ReferenceMemory mem = new ReferenceMemory(value);
 
         if (key instanceof LongMemory){
             int index = (int)((LongMemory)key).value;
+            unpackList();
 
             if (index > lastLongIndex)
                 lastLongIndex = index;
@@ -467,7 +761,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
             if (!(key instanceof String))
                 key = key.toString();
 
-            if (list != null)
+            if (list != null || isPacked())
                 convertToMap();
         }
 
@@ -479,6 +773,8 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     public Memory removeByScalar(Object key){
+        unpackList();
+
         if (list != null){
             int index = -1;
             if (key instanceof Long)
@@ -525,6 +821,8 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public Memory remove(Memory key){
         Object _key = toKey(key);
+        unpackList();
+
         if (list != null){
             int index = _key instanceof LongMemory ? (int) key.toLong() : -1;
             if (index < 0 || index >= list.size())
@@ -559,6 +857,8 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
             for(int i = 0; i < count; i++)
                 add(value);
         }  else {
+            unpackList();
+
             if (list != null) {
                 List<ReferenceMemory> tmp = new ArrayList<ReferenceMemory>();
                 for(int i = 0; i < count; i++)
@@ -601,6 +901,8 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
             for (Memory value : values)
                 add(value);
         }  else {
+            unpackList();
+
             if (list != null) {
                 if (values.length > 1) {
                     List<ReferenceMemory> tmp = new ArrayList<ReferenceMemory>();
@@ -642,6 +944,8 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
         if (size < 1)
             return null;
 
+        unpackList();
+
         size -= 1;
         Memory value;
         if (list != null){
@@ -660,7 +964,15 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
             return null;
 
         Memory value;
-        if (list != null){
+        if (isPacked()) {
+            value = getPacked(size - 1);
+
+            if (packedValues != null) {
+                packedValues[size - 1] = null;
+            }
+
+            lastLongIndex = size - 2;
+        } else if (list != null){
             value = list.get(size - 1);
             list.remove(size - 1);
         } else {
@@ -676,7 +988,9 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
             return null;
 
         Memory value;
-        if (list != null)
+        if (isPacked())
+            value = getPacked(size - 1);
+        else if (list != null)
             value = list.get(size - 1);
         else {
             value = map.get(map.lastKey());
@@ -687,7 +1001,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public Memory getRandomElementKey(Random rnd){
         int index = rnd.nextInt(size);
-        if (list != null){
+        if (list != null || isPacked()){
             return LongMemory.valueOf(index);
         } else {
             Iterator<Object> keys = map.keySet().iterator();
@@ -705,6 +1019,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public void shuffle(Random rnd){
         checkCopied();
+        unpackList();
         if (list != null){
             Collections.shuffle(list, rnd);
         } else {
@@ -722,6 +1037,12 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     public void clear(){
+        if (isPacked()) {
+            packedLongs = null;
+            packedDoubles = null;
+            packedValues = EMPTY_PACKED;
+        }
+
         if (list != null){
             list = new ArrayList<ReferenceMemory>();
         }
@@ -804,26 +1125,32 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     @Override
     public Memory toImmutable() {
-        if (copies >= 0){
-            ArrayMemory mem = new ArrayMemory();
-            mem.list = list;
-            mem.original = this;
-            mem.size = size;
-            mem.list = list;
-            mem.map  = map;
-            mem.lastLongIndex = lastLongIndex;
-            copies++;
-            reset();
-            return mem;
-        } else {
-            copies++;
+        if (constant) {
+            constant = false;
             return this;
         }
+
+        if (share == null) {
+            share = new Share();
+        }
+
+        ArrayMemory mem = new ArrayMemory();
+        mem.share = share;
+        mem.size = size;
+        mem.list = list;
+        mem.map  = map;
+        mem.packedLongs = packedLongs;
+        mem.packedDoubles = packedDoubles;
+        mem.packedValues = packedValues;
+        mem.lastLongIndex = lastLongIndex;
+        share.refs++;
+        reset();
+        return mem;
     }
 
     public ArrayMemory toConstant(){
-        if (copies == 0)
-            copies--;
+        if (share == null)
+            constant = true;
         else
             throw new RuntimeException("Cannot convert array to a constant value with copies != 0");
         return this;
@@ -831,6 +1158,15 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public Memory[] values(boolean asImmutable){
         Memory[] result = new Memory[size];
+
+        if (isPacked()) {
+            for (int i = 0; i < size; i++) {
+                result[i] = asImmutable ? getPacked(i).toImmutable() : getPacked(i);
+            }
+
+            return result;
+        }
+
         int i = 0;
         for(ReferenceMemory el : this){
             result[i++] = asImmutable ? el.toImmutable() : el.toValue();
@@ -993,24 +1329,8 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     @Override
     public void unset() {
-        if (original != null){
-            original.copies--;
-            original = null;
-        } else
-            copies--;
-
-        if (list != null){
-            for(ReferenceMemory memory : list)
-                if (memory.type == type)
-                    memory.unset();
-        }
-
-        if (map != null){
-            for(ReferenceMemory memory : map.values())
-                if (memory.type == type)
-                    memory.unset();
-        }
-
+        // the storage may be still shared by other arrays, so only this array drops it
+        release();
         clear();
     }
 
@@ -1020,35 +1340,52 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
             case OBJECT:
             case ARRAY: return UNDEFINED; // TODO ADD WARNING
         }
-        Memory e = get(index);
+        Memory e = getValueByScalar(toKey(index));
         return e == null ? UNDEFINED : e;
     }
 
     @Override
     public Memory valueOfIndex(TraceInfo trace, long index) {
-        Memory e = getByScalar(LongMemory.valueOf(index));
+        Memory e = getValueByScalar(LongMemory.valueOf(index));
         return e == null ? UNDEFINED : e;
     }
 
     @Override
     public Memory valueOfIndex(TraceInfo trace, double index) {
-        Memory e = getByScalar(LongMemory.valueOf((long) index));
-        return e == null ? UNDEFINED : e;
+        return valueOfIndex(trace, (long) index);
     }
 
     @Override
     public Memory valueOfIndex(TraceInfo trace, boolean index) {
-        Memory e = getByScalar(index ? CONST_INT_0 : CONST_INT_1);
+        Memory key = index ? CONST_INT_0 : CONST_INT_1;
+        Memory e = getValueByScalar(key);
         return e == null ? UNDEFINED : e;
     }
 
     @Override
     public Memory valueOfIndex(TraceInfo trace, String index) {
         Memory number = StringMemory.toLong(index);
-        Memory e = number == null ? getByScalar(index) : getByScalar(number);
+        Memory e = number == null ? getValueByScalar(index) : getValueByScalar(number);
         return e == null ? UNDEFINED : e;
     }
 
+    @Override
+    public Memory valueOfIndexAsArgument(TraceInfo trace, Memory index) {
+        switch (index.getRealType()){
+            case OBJECT:
+            case ARRAY: return UNDEFINED; // TODO ADD WARNING
+        }
+
+        Object key = toKey(index);
+        if (getValueByScalar(key) == null) {
+            return UNDEFINED;
+        }
+
+        // the reference may be changed by the callee, so the shared storage is separated and the list is unpacked
+        checkCopied();
+        return getByScalar(key);
+    }
+
     @Override
     public void unsetOfIndex(TraceInfo trace, Memory index) {
         checkCopied();
@@ -1057,16 +1394,28 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     @Override
     public Memory issetOfIndex(TraceInfo trace, Memory index) {
-        Memory value = get(index);
+        Memory value = getValueByScalar(toKey(index));
         return value == null ? NULL : value;
     }
 
     @Override
     public Memory refOfPush(TraceInfo trace){
         checkCopied();
+        unpackList();
         return add(UNDEFINED);
     }
 
+    @Override
+    public Memory assignOfPush(TraceInfo trace, Memory value) {
+        checkCopied();
+
+        if (isPacked() && addPacked(value)) {
+            return value;
+        }
+
+        return refOfPush(trace).assign(value);
+    }
+
     @Override
     public Memory refOfIndexAsShortcut(TraceInfo trace, Memory index) {
         switch (index.getRealType()){
@@ -1144,6 +1493,8 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     @Override
     public Iterator<ReferenceMemory> iterator() {
+        unpackList();
+
         if (list != null) {
             return list.iterator();
         } else
@@ -1167,10 +1518,13 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
             @Override
             public void reset() {
+                if (getReferences || getKeyReferences)
+                    ArrayMemory.this.unpackList();
+
                 if (getKeyReferences && list != null)
                     ArrayMemory.this.convertToMap();
 
-                if (list == null) {
+                if (!isListMode()) {
                     if (withPrevious || getKeyReferences)
                         keys = new ArrayList<Object>(map.keySet()).listIterator();
                     else {
@@ -1181,27 +1535,47 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
                         }
                     }
                 } else {
-                    listMax = list.size();
+                    listMax = size;
                 }
             }
 
             @Override
             protected boolean init() {
+                if (getReferences || getKeyReferences)
+                    ArrayMemory.this.unpackList();
+
                 if (getKeyReferences && list != null)
                     ArrayMemory.this.convertToMap();
 
-                if (list == null) {
+                if (!isListMode()) {
                     if (withPrevious || getKeyReferences) {
                         keys = new ArrayList<Object>(map.keySet()).listIterator();
                     } else {
                         keys = new ArrayList<Object>(map.keySet()).iterator();
                     }
                 } else {
-                    listMax = list.size();
+                    listMax = size;
                 }
                 return true;
             }
 
+            private boolean isListMode() {
+                return list != null || isPacked();
+            }
+
+            private void setCurrentListValue(int index) {
+                if (isPacked()) {
+                    if (!getReferences && !getKeyReferences) {
+                        currentValue = getPacked(index);
+                        return;
+                    }
+
+                    ArrayMemory.this.unpackList();
+                }
+
+                setCurrentValue(list.get(index));
+            }
+
             private void setCurrentValue(ReferenceMemory value){
                 if (getReferences) {
                     if (plainReferences)
@@ -1221,10 +1595,10 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
                 if (ArrayMemory.this.size == 0)
                     return false;
 
-                if (ArrayMemory.this.list != null){
+                if (isListMode()){
                     cursor = ArrayMemory.this.size - 1;
                     currentKey = (long)cursor;
-                    setCurrentValue(list.get(cursor));
+                    setCurrentListValue(cursor);
                     return true;
                 } else {
                     init = true;
@@ -1242,7 +1616,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
             @Override
             protected boolean prevValue() {
-                if (ArrayMemory.this.list != null) {
+                if (isListMode()) {
                     if (cursor <= 0){
                         currentKey = null;
                         currentValue = null;
@@ -1252,7 +1626,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
                     } else {
                         cursor--;
                         currentKey = LongMemory.valueOf((long)cursor);
-                        setCurrentValue(list.get(cursor));
+                        setCurrentListValue(cursor);
                         return true;
                     }
                 } else {
@@ -1276,7 +1650,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
                 if (withPrevious && (keys == null && cursor < 0))
                     return false;
 
-                if (ArrayMemory.this.list != null) {
+                if (isListMode()) {
                     if (((cursor >= listMax && freeze) || (cursor >= size && !freeze)) || size < listMax) {
                         currentKey = null;
                         currentValue = null;
@@ -1284,7 +1658,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
                     }
 
                     currentKey = LongMemory.valueOf((long)cursor);
-                    setCurrentValue(list.get(cursor));
+                    setCurrentListValue(cursor);
                     cursor++;
                     return true;
                 } else {
@@ -1344,7 +1718,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     public boolean isList(){
-        return list != null;
+        return list != null || isPacked();
     }
 
     @Override
@@ -1707,6 +2081,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public ArrayMemory slice(int offset, boolean saveKeys) {
         ArrayMemory result = new ArrayMemory();
+        unpackList();
 
         if (offset < 0) {
             offset = size() + offset;
@@ -1750,6 +2125,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
     public ArrayMemory slice(int offset, int length, boolean saveKeys) {
         ArrayMemory result = new ArrayMemory();
+        unpackList();
 
         if (offset < 0) {
             offset = size() + offset;
@@ -1800,4 +2176,11 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
 
         return result;
     }
+
+    /**
+     * Reference counter of an array storage, see toImmutable() and checkCopied().
+     */
+    protected static class Share {
+        int refs = 1;
+    }
 }
@@ -0,0 +1,244 @@
+package php.runtime.memory;
+
+import php.runtime.Memory;
+import php.runtime.env.TraceInfo;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * String which is kept as bytes of 7-bit ASCII chars, one byte for each char.
+ *
+ * Each byte is a char of the string, so the length, indexes and substrings are the same as in the unicode string and
+ * the bytes are the encoded string in UTF-8 and other ASCII compatible charsets. The string is decoded only when it is
+ * needed as java String, output buffers and streams write the bytes as is.
+ */
+public class AsciiMemory extends StringMemory {
+    private final static Map<Charset, Boolean> compatibleCharsets = new ConcurrentHashMap<Charset, Boolean>();
+    private final static byte[] ASCII_BYTES;
+
+    protected final byte[] bytes;
+
+    /**
+     * @param bytes must contain only ASCII chars, see isAscii(), the array must not be changed after.
+     */
+    public AsciiMemory(byte[] bytes) {
+        super((String) null);
+        this.value = null;
+        this.bytes = bytes;
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * Returns the bytes of the string, the array must not be changed.
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int indexOf(char ch, int fromIndex) {
+        if (ch > 0x7F) {
+            return -1;
+        }
+
+        for (int i = Math.max(fromIndex, 0); i < bytes.length; i++) {
+            if (bytes[i] == ch) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public int indexOf(String search, int fromIndex) {
+        int length = search.length();
+
+        if (length == 0) {
+            return fromIndex <= bytes.length ? Math.max(fromIndex, 0) : -1;
+        }
+
+        char first = search.charAt(0);
+        int max = bytes.length - length;
+
+        for (int i = Math.max(fromIndex, 0); i <= max; i++) {
+            if (bytes[i] != first) {
+                continue;
+            }
+
+            int j = 1;
+            while (j < length && bytes[i + j] == search.charAt(j)) {
+                j++;
+            }
+
+            if (j == length) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the substring from the begin index inclusive to the end index exclusive.
+     */
+    public Memory substring(int begin, int end) {
+        if (begin == 0 && end == bytes.length) {
+            return this;
+        }
+
+        return valueOf(Arrays.copyOfRange(bytes, begin, end));
+    }
+
+    @Override
+    public String toString() {
+        String value = this.value;
+
+        if (value == null) {
+            char[] chars = new char[bytes.length];
+
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) bytes[i];
+            }
+
+            this.value = value = new String(chars);
+        }
+
+        return value;
+    }
+
+    @Override
+    public char toChar() {
+        return bytes.length == 0 ? '\0' : (char) bytes[0];
+    }
+
+    @Override
+    public boolean toBoolean() {
+        return bytes.length > 1 || (bytes.length == 1 && bytes[0] != '0');
+    }
+
+    @Override
+    public Memory toNumeric() {
+        return toNumeric(toString());
+    }
+
+    @Override
+    public Memory toLongNumeric() {
+        return toNumeric(toString(), true, CONST_INT_0);
+    }
+
+    @Override
+    public byte[] getBinaryBytes(Charset charset) {
+        return isAsciiCompatible(charset) ? bytes : super.getBinaryBytes(charset);
+    }
+
+    @Override
+    public boolean identical(Memory memory) {
+        if (memory instanceof AsciiMemory) {
+            return Arrays.equals(bytes, ((AsciiMemory) memory).bytes);
+        }
+
+        return super.identical(memory);
+    }
+
+    @Override
+    public boolean equal(Memory memory) {
+        switch (memory.type) {
+            case STRING:
+                if (memory instanceof AsciiMemory) {
+                    return Arrays.equals(bytes, ((AsciiMemory) memory).bytes);
+                }
+
+                return toString().equals(memory.toString());
+            case BOOL:
+                return memory.equal(toString());
+            default:
+                return super.equal(memory);
+        }
+    }
+
+    @Override
+    public Memory valueOfIndex(TraceInfo trace, Memory index) {
+        switch (index.type) {
+            case STRING:
+                Memory tmp = StringMemory.toLong(index.toString());
+                return tmp == null ? CONST_EMPTY_STRING : valueOfIndex(trace, tmp.toLong());
+            case REFERENCE:
+                return valueOfIndex(trace, index.toValue());
+            default:
+                return valueOfIndex(trace, index.toLong());
+        }
+    }
+
+    @Override
+    public Memory valueOfIndex(TraceInfo trace, long index) {
+        if (index >= 0 && index < bytes.length) {
+            return getChar((char) bytes[(int) index]);
+        }
+
+        return CONST_EMPTY_STRING;
+    }
+
+    @Override
+    public Memory valueOfIndex(TraceInfo trace, double index) {
+        return valueOfIndex(trace, (long) index);
+    }
+
+    @Override
+    public Memory valueOfIndex(TraceInfo trace, boolean index) {
+        return valueOfIndex(trace, index ? 1 : 0);
+    }
+
+    @Override
+    public Memory valueOfIndex(TraceInfo trace, String index) {
+        Memory tmp = StringMemory.toLong(index);
+        return tmp == null ? CONST_EMPTY_STRING : valueOfIndex(trace, tmp.toLong());
+    }
+
+    public static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns true if ASCII chars are encoded to the same bytes in the charset.
+     */
+    public static boolean isAsciiCompatible(Charset charset) {
+        Boolean result = compatibleCharsets.get(charset);
+
+        if (result == null) {
+            byte[] encoded = new AsciiMemory(ASCII_BYTES).toString().getBytes(charset);
+            compatibleCharsets.put(charset, result = Arrays.equals(encoded, ASCII_BYTES));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the string of ASCII bytes, the array must not be changed after.
+     */
+    public static Memory valueOf(byte[] bytes) {
+        switch (bytes.length) {
+            case 0: return CONST_EMPTY_STRING;
+            case 1: return getChar((char) bytes[0]);
+            default:
+                return new AsciiMemory(bytes);
+        }
+    }
+
+    static {
+        ASCII_BYTES = new byte[0x80];
+        for (int i = 0; i < ASCII_BYTES.length; i++) {
+            ASCII_BYTES[i] = (byte) i;
+        }
+    }
+}
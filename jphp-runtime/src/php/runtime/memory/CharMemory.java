@@ -16,10 +16,12 @@ public class CharMemory extends StringMemory {
     }
 
     public static Memory valueOf(ReferenceMemory origin, StringMemory memory, int index){
-        if (index < 0 || index >= memory.value.length()){
+        String value = memory.toString();
+
+        if (index < 0 || index >= value.length()){
             return new CharMemory("", origin, index);
         } else {
-            return new CharMemory(String.valueOf(memory.value.charAt(index)), origin, index);
+            return new CharMemory(String.valueOf(value.charAt(index)), origin, index);
         }
     }
 
@@ -718,6 +718,10 @@ public class ReferenceMemory extends Memory {
 
     @Override
     public void unset() {
+        if (value.type == Type.ARRAY) {
+            value.unset(); // release the shared storage of the array
+        }
+
         this.value = UNDEFINED;
     }
 
@@ -772,12 +776,23 @@ public class ReferenceMemory extends Memory {
         return value.valueOfIndex(trace, index);
     }
 
+    @Override
+    public Memory valueOfIndexAsArgument(TraceInfo trace, Memory index) {
+        return value.valueOfIndexAsArgument(trace, index);
+    }
+
     @Override
     public Memory refOfPush(TraceInfo trace) {
         needArray();
         return value.refOfPush(trace);
     }
 
+    @Override
+    public Memory assignOfPush(TraceInfo trace, Memory memory) {
+        needArray();
+        return value.assignOfPush(trace, memory);
+    }
+
     @Override
     public Memory refOfIndexAsShortcut(TraceInfo trace, Memory index){
         needArray();
@@ -37,6 +37,17 @@ public class StringMemory extends Memory {
         return new StringMemory(value);
     }
 
+    /**
+     * Decodes the bytes in the charset, ASCII bytes are kept as is without decoding, see AsciiMemory.
+     */
+    public static Memory valueOf(byte[] bytes, Charset charset) {
+        if (AsciiMemory.isAscii(bytes, 0, bytes.length) && AsciiMemory.isAsciiCompatible(charset)) {
+            return AsciiMemory.valueOf(bytes);
+        }
+
+        return valueOf(new String(bytes, charset));
+    }
+
     public static Memory valueOf(char ch) {
         return getChar(ch);
     }
@@ -64,6 +64,13 @@ public class ArrayValueMemory extends ReferenceMemory {
         return super.refOfPush(trace);
     }
 
+    @Override
+    public Memory assignOfPush(TraceInfo trace, Memory value) {
+        ArrayMemory dup = array.checkCopied();
+        if (dup != null) return dup.get(key).assignOfPush(trace, value);
+        return super.assignOfPush(trace, value);
+    }
+
     @Override
     public Memory refOfIndex(TraceInfo trace, Memory index) {
         ArrayMemory dup = array.checkCopied();
@@ -0,0 +1,47 @@
+package php.runtime.output;
+
+import java.nio.charset.Charset;
+
+/**
+ * String of a compiled echo statement which is known at compile time, for example inline HTML.
+ *
+ * Bytes of the string are encoded on the first echo and kept with their charset, next echoes with the same charset
+ * write the kept bytes without encoding. A new charset replaces the kept bytes, so a module is usually encoded once.
+ */
+public class EchoConstant {
+    protected final String value;
+    protected volatile Encoded encoded;
+
+    public EchoConstant(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public byte[] getBytes(Charset charset) {
+        Encoded encoded = this.encoded;
+
+        if (encoded == null || !encoded.charset.equals(charset)) {
+            this.encoded = encoded = new Encoded(charset, value.getBytes(charset));
+        }
+
+        return encoded.bytes;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+
+    protected static class Encoded {
+        protected final Charset charset;
+        protected final byte[] bytes;
+
+        protected Encoded(Charset charset, byte[] bytes) {
+            this.charset = charset;
+            this.bytes = bytes;
+        }
+    }
+}
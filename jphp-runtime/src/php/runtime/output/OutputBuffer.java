@@ -4,13 +4,19 @@ import php.runtime.Memory;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
 import php.runtime.invoke.Invoker;
+import php.runtime.memory.AsciiMemory;
 import php.runtime.memory.BinaryMemory;
 import php.runtime.memory.LongMemory;
 import php.runtime.memory.StringMemory;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class OutputBuffer {
     public final static int HANDLER_START = 1;
@@ -148,7 +154,7 @@ public class OutputBuffer {
 
     public Memory getContents() throws UnsupportedEncodingException {
         if (!binaryInBuffer){
-            return new StringMemory(buffer.toString(environment.getDefaultCharset().name()));
+            return StringMemory.valueOf(buffer.toByteArray(), environment.getDefaultCharset());
         } else
             return new BinaryMemory(buffer.toByteArray());
     }
@@ -230,11 +236,18 @@ public class OutputBuffer {
             _write(content.getBytes(environment.getDefaultCharset()));
     }
 
+    public void write(EchoConstant content) throws Throwable {
+        if (!isLock())
+            _write(content.getBytes(environment.getDefaultCharset()));
+    }
+
     public void write(Memory content) throws Throwable {
         if (!isLock()){
             content = content.toValue();
             if (content instanceof BinaryMemory)
                 write(content.getBinaryBytes(environment.getDefaultCharset()));
+            else if (content instanceof AsciiMemory)
+                _write(content.getBinaryBytes(environment.getDefaultCharset()));
             else
                 write(content.toString());
         }
@@ -283,6 +296,59 @@ public class OutputBuffer {
         write(bytes, bytes.length);
     }
 
+    /**
+     * Writes count bytes of the file from the position, returns the number of written bytes.
+     *
+     * The buffer with an output and without a callback transfers the file to the output by the channel, so the file
+     * is not copied into the heap, other buffers get the file by chunks.
+     */
+    public long write(FileChannel channel, long position, long count) throws Throwable {
+        if (isLock() || count <= 0) {
+            return 0;
+        }
+
+        long done = 0;
+
+        if (output != null && invoker == null) {
+            if (!isBufferEmpty()) {
+                doFlush(true);
+            }
+
+            WritableByteChannel target = output instanceof FileOutputStream
+                    ? ((FileOutputStream) output).getChannel()
+                    : Channels.newChannel(output);
+
+            while (done < count) {
+                long transferred = channel.transferTo(position + done, count - done, target);
+                if (transferred <= 0) {
+                    break;
+                }
+
+                done += transferred;
+            }
+
+            isFlushed = true;
+        } else {
+            byte[] chunk = new byte[(int) Math.min(count, Math.max(chunkSize, 8192))];
+            ByteBuffer buff = ByteBuffer.wrap(chunk);
+
+            while (done < count) {
+                buff.clear();
+                buff.limit((int) Math.min(chunk.length, count - done));
+
+                int read = channel.read(buff, position + done);
+                if (read <= 0) {
+                    break;
+                }
+
+                write(chunk, read);
+                done += read;
+            }
+        }
+
+        return done;
+    }
+
     public void flush() throws Throwable {
         if (!isLock()){
             status = HANDLER_FLUSH;
@@ -16,6 +16,7 @@ import php.runtime.ext.support.Extension;
 import php.runtime.invoke.InvokeArgumentHelper;
 import php.runtime.invoke.ObjectInvokeHelper;
 import php.runtime.invoke.cache.PropertyCallCache;
+import php.runtime.lang.BaseObject;
 import php.runtime.lang.ForeachIterator;
 import php.runtime.lang.IObject;
 import php.runtime.lang.support.MagicSignatureClass;
@@ -30,6 +31,9 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClassEntity extends Entity implements Cloneable {
     private final static int FLAG_GET = 4000;
@@ -83,6 +87,17 @@ public class ClassEntity extends Entity implements Cloneable {
     public final Map<String, PropertyEntity> staticProperties;
     public final Set<String> instanceOfList = new HashSet<String>();
 
+    // subtype display: ancestors by depth from the root class to this class
+    protected ClassEntity[] superClasses = new ClassEntity[]{this};
+
+    // indexes of all implemented interfaces, an interface has its own index too
+    protected int interfaceIndex = -1;
+    protected BitSet interfaceSet;
+
+    // one index per lower name, so interfaces of all scopes and reloaded modules share indexes
+    private final static ConcurrentMap<String, Integer> interfaceIndexes = new ConcurrentHashMap<String, Integer>();
+    private final static AtomicInteger interfaceCount = new AtomicInteger(0);
+
     protected ClassEntity parent;
     protected DocumentComment docComment;
 
@@ -92,6 +107,8 @@ public class ClassEntity extends Entity implements Cloneable {
 
     protected boolean isStatic;
 
+    protected volatile SlotLayout slotLayout;
+
     protected static final ClassEntity magicSignatureClass =
             new ClassEntity(new ClassWrapper(null, MagicSignatureClass.class));
 
@@ -250,6 +267,52 @@ ClassReader classReader;
 
     public void setType(Type type) {
         this.type = type;
+        updateInterfaceIndex();
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        updateInterfaceIndex();
+    }
+
+    protected void updateInterfaceIndex() {
+        if (type != Type.INTERFACE || lowerName == null) {
+            return;
+        }
+
+        Integer index = interfaceIndexes.get(lowerName);
+        if (index == null) {
+            Integer newIndex = interfaceCount.getAndIncrement();
+            index = interfaceIndexes.putIfAbsent(lowerName, newIndex);
+
+            if (index == null) {
+                index = newIndex;
+            }
+        }
+
+        if (interfaceIndex != index) {
+            if (interfaceIndex != -1 && interfaceSet != null) {
+                interfaceSet.clear(interfaceIndex);
+            }
+
+            interfaceIndex = index;
+            addInterfaceSet(null);
+        }
+    }
+
+    protected void addInterfaceSet(BitSet set) {
+        if (interfaceSet == null) {
+            interfaceSet = new BitSet();
+        }
+
+        if (set != null) {
+            interfaceSet.or(set);
+        }
+
+        if (type == Type.INTERFACE && interfaceIndex != -1) {
+            interfaceSet.set(interfaceIndex);
+        }
     }
 
     public Map<String, MethodEntity> getMethods() {
@@ -355,8 +418,30 @@ ClassReader classReader;
         return isInstanceOf(ReflectionUtils.getClassName(clazz));
     }
 
+    /**
+     * Constant time check by the display of parent classes and the set of interfaces, classes and interfaces
+     * are compared by name as in instanceOfList, so entities of other scopes match too.
+     */
     public boolean isInstanceOf(ClassEntity what) {
-        return what != null && (id == what.id || instanceOfList.contains(what.lowerName));
+        if (what == this) {
+            return true;
+        }
+
+        if (what == null) {
+            return false;
+        }
+
+        if (what.type == Type.INTERFACE) {
+            return interfaceSet != null && what.interfaceIndex != -1 && interfaceSet.get(what.interfaceIndex);
+        }
+
+        int depth = what.superClasses.length - 1;
+        if (depth < superClasses.length) {
+            ClassEntity parent = superClasses[depth];
+            return parent == what || (parent.lowerName != null && parent.lowerName.equals(what.lowerName));
+        }
+
+        return false;
     }
 
     public boolean isInstanceOf(String name) {
@@ -456,6 +541,13 @@ ClassReader classReader;
 
             this.instanceOfList.add(parent.getLowerName());
             this.instanceOfList.addAll(parent.instanceOfList);
+
+            this.superClasses = Arrays.copyOf(parent.superClasses, parent.superClasses.length + 1);
+            this.superClasses[parent.superClasses.length] = this;
+
+            if (parent.interfaceSet != null) {
+                addInterfaceSet(parent.interfaceSet);
+            }
             this.interfaces.putAll(parent.interfaces);
 
             this.properties.putAll(parent.properties);
@@ -491,6 +583,10 @@ ClassReader classReader;
         this.instanceOfList.add(_interface.getLowerName());
         this.instanceOfList.addAll(_interface.instanceOfList);
 
+        if (_interface.interfaceSet != null) {
+            addInterfaceSet(_interface.interfaceSet);
+        }
+
         for (MethodEntity method : _interface.getMethods().values()) {
             MethodEntity implMethod = findMethod(method.getLowerName());
             if (implMethod == method) continue;
@@ -589,6 +685,7 @@ ClassReader classReader;
                 prototype = staticProperties.get(property.getName());
 
             properties.put(property.getName(), property);
+            slotLayout = null;
         }
 
         if (prototype != null) {
@@ -757,6 +854,67 @@ ClassReader classReader;
         }
     }
 
+    /**
+     * Declared properties of objects in the order of newObject(), each property has the fixed slot index,
+     * objects of classes with native properties, getters or setters do not use slots.
+     */
+    protected SlotLayout getSlotLayout() {
+        SlotLayout layout = slotLayout;
+
+        if (layout == null) {
+            slotLayout = layout = new SlotLayout(this);
+        }
+
+        return layout;
+    }
+
+    public String[] getSlotNames() {
+        return getSlotLayout().names;
+    }
+
+    /**
+     * @param specificName see PropertyEntity.getSpecificName()
+     * @return -1 if there is no slot for the property
+     */
+    public int getSlotIndex(String specificName) {
+        Integer index = getSlotLayout().indexes.get(specificName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the slot of the property in the object or null if the object does not use slots
+     * or the property has no slot, in this case the property map is used.
+     */
+    protected static ReferenceMemory getSlot(Environment env, IObject object, PropertyEntity entity,
+                                             PropertyCallCache callCache, int cacheIndex) {
+        if (!(object instanceof BaseObject) || !entity.isPlain()) {
+            return null;
+        }
+
+        ReferenceMemory[] slots = ((BaseObject) object).getSlots();
+
+        if (slots == null) {
+            return null;
+        }
+
+        ClassEntity clazz = object.getReflection();
+        int index = callCache == null ? -1 : callCache.getSlot(env, cacheIndex, clazz);
+
+        if (index == -1) {
+            index = clazz.getSlotIndex(entity.specificName);
+
+            if (index == -1) {
+                return null;
+            }
+
+            if (callCache != null) {
+                callCache.putSlot(env, cacheIndex, clazz, index);
+            }
+        }
+
+        return slots[index];
+    }
+
     public <T extends IObject> T newObjectWithoutConstruct(Environment env) {
         IObject object = null;
         try {
@@ -809,6 +967,26 @@ ClassReader classReader;
             env.__throwException(e);
             return null;
         }
+
+        SlotLayout layout = getSlotLayout();
+
+        if (layout.supported && object instanceof BaseObject) {
+            PropertyEntity[] slotProperties = layout.properties;
+            ReferenceMemory[] slots = new ReferenceMemory[slotProperties.length];
+
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new ReferenceMemory(slotProperties[i].getDefaultValue(env).toImmutable());
+            }
+
+            if (((BaseObject) object).initSlots(slots)) {
+                if (doConstruct && methodConstruct != null) {
+                    ObjectInvokeHelper.invokeMethod(object, methodConstruct, env, trace, args, true);
+                }
+
+                return (T) object;
+            }
+        }
+
         ArrayMemory props = object.getProperties();
 
         for (PropertyEntity property : getProperties()) {
@@ -844,6 +1022,27 @@ ClassReader classReader;
 
     public <T extends IObject> T cloneObject(T value, Environment env, TraceInfo trace) throws Throwable {
         IObject copy = this.newObjectWithoutConstruct(env);
+
+        if (value instanceof BaseObject && copy instanceof BaseObject && getSlotLayout().cloneable) {
+            ReferenceMemory[] slots = ((BaseObject) value).getSlots();
+
+            if (slots != null && value.getReflection() == this) {
+                ReferenceMemory[] copySlots = new ReferenceMemory[slots.length];
+
+                for (int i = 0; i < slots.length; i++) {
+                    copySlots[i] = new ReferenceMemory(slots[i].value.toImmutable());
+                }
+
+                if (((BaseObject) copy).initSlots(copySlots)) {
+                    if (methodMagicClone != null) {
+                        ObjectInvokeHelper.invokeMethod(copy, methodMagicClone, env, trace, null, true);
+                    }
+
+                    return (T) copy;
+                }
+            }
+        }
+
         ForeachIterator iterator = value.getProperties().foreachIterator(false, false);
         ArrayMemory props = copy.getProperties();
         while (iterator.next()) {
@@ -1037,6 +1236,17 @@ ClassReader classReader;
 
         int accessFlag = entity == null ? 0 : entity.canAccess(env);
 
+        if (entity != null && accessFlag == 0) {
+            value = getSlot(env, object, entity, callCache, cacheIndex);
+
+            if (value != null) {
+                if (callback != null)
+                    memory = callback.invoke(value, memory);
+
+                return value.assign(memory);
+            }
+        }
+
         ArrayMemory props = object.getProperties();
 
         if (entity != null) {
@@ -1219,6 +1429,14 @@ ClassReader classReader;
 
         int accessFlag = entity == null ? 0 : entity.canAccess(env);
 
+        if (entity != null && accessFlag == 0) {
+            Memory tmp = getSlot(env, object, entity, null, 0);
+
+            if (tmp != null) {
+                return tmp.toBoolean() ? Memory.TRUE : Memory.NULL;
+            }
+        }
+
         ArrayMemory props = object.getProperties();
         if (props != null && accessFlag == 0) {
             Memory tmp = props.getByScalar(entity == null ? property : entity.specificName);
@@ -1269,10 +1487,14 @@ ClassReader classReader;
 
         int accessFlag = entity == null ? 0 : entity.canAccess(env);
 
-        ArrayMemory props = object.getProperties();
-        Memory tmp = props == null || accessFlag != 0
-                ? null
-                : props.getByScalar(entity == null ? property : entity.specificName);
+        Memory tmp = entity == null || accessFlag != 0 ? null : getSlot(env, object, entity, callCache, cacheIndex);
+
+        if (tmp == null) {
+            ArrayMemory props = object.getProperties();
+            tmp = props == null || accessFlag != 0
+                    ? null
+                    : props.getByScalar(entity == null ? property : entity.specificName);
+        }
 
         if (tmp != null)
             return tmp.isNull() ? tmp : Memory.TRUE;
@@ -1367,6 +1589,14 @@ ClassReader classReader;
 
         int accessFlag = entity == null ? 0 : entity.canAccess(env);
 
+        if (entity != null && accessFlag == 0) {
+            value = getSlot(env, object, entity, callCache, cacheIndex);
+
+            if (value != null) {
+                return value;
+            }
+        }
+
         ArrayMemory props = object.getProperties();
         value = props == null || accessFlag != 0 ? null : props.getByScalar(entity == null ? property : entity.specificName);
 
@@ -1420,7 +1650,11 @@ ClassReader classReader;
             value = null;
         } else {
             if (entity != null) {
-                value = entity.getValue(env, trace, object);
+                value = getSlot(env, object, entity, callCache, cacheIndex);
+
+                if (value == null) {
+                    value = entity.getValue(env, trace, object);
+                }
             } else {
                 ArrayMemory props = object.getProperties();
                 value = props == null ? null : props.getByScalar(property);
@@ -1467,9 +1701,74 @@ ClassReader classReader;
         if (prop == null)
             throw new RuntimeException("Property '" + name + "' not found");
 
+        if (object instanceof BaseObject && prop.isPlain()) {
+            ReferenceMemory[] slots = ((BaseObject) object).getSlots();
+            int index = slots == null ? -1 : object.getReflection().getSlotIndex(prop.specificName);
+
+            if (index != -1) {
+                slots[index] = new ReferenceMemory(value == null ? Memory.NULL : value);
+                return;
+            }
+        }
+
         object.getProperties().put(prop.specificName, value == null ? Memory.NULL : value);
     }
 
+    protected static class SlotLayout {
+        final boolean supported;
+        final boolean cloneable;
+        final PropertyEntity[] properties;
+        final String[] names;
+        final Map<String, Integer> indexes;
+
+        SlotLayout(ClassEntity clazz) {
+            Map<String, PropertyEntity> layout = new LinkedHashMap<String, PropertyEntity>();
+            boolean supported = true;
+
+            for (PropertyEntity property : clazz.getProperties()) {
+                supported = supported && property.isPlain();
+
+                if (clazz.getId() == property.clazz.getId() && property.getGetter() == null) {
+                    layout.put(property.getSpecificName(), property);
+                }
+            }
+
+            ClassEntity tmp = clazz.parent;
+            while (tmp != null) {
+                long otherId = tmp.getId();
+                for (PropertyEntity property : tmp.getProperties()) {
+                    if (property.getClazz().getId() == otherId && property.getGetter() == null) {
+                        if (property.modifier != Modifier.PROTECTED || !layout.containsKey(property.getName())) {
+                            if (!layout.containsKey(property.getSpecificName())) {
+                                layout.put(property.getSpecificName(), property);
+                            }
+                        }
+                    }
+                }
+                tmp = tmp.parent;
+            }
+
+            this.properties = layout.values().toArray(new PropertyEntity[layout.size()]);
+            this.names = layout.keySet().toArray(new String[layout.size()]);
+            this.indexes = new HashMap<String, Integer>();
+
+            // cloneObject() maps each property by its name, slots can be copied as is only without name conflicts.
+            boolean cloneable = true;
+
+            for (int i = 0; i < names.length; i++) {
+                indexes.put(names[i], i);
+
+                PropertyEntity entity = clazz.properties.get(properties[i].getName());
+                if (entity != null && !names[i].equals(entity.getSpecificName())) {
+                    cloneable = false;
+                }
+            }
+
+            this.supported = supported;
+            this.cloneable = supported && cloneable;
+        }
+    }
+
     private static interface SetterCallback {
         Memory invoke(Memory o1, Memory o2);
     }
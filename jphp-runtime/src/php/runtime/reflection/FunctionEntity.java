@@ -4,12 +4,12 @@ import php.runtime.Memory;
 import php.runtime.env.Context;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
+import php.runtime.invoke.NativeInvoker;
 import php.runtime.lang.Closure;
 import php.runtime.memory.ObjectMemory;
 import php.runtime.reflection.helper.ClosureEntity;
 import php.runtime.reflection.support.AbstractFunctionEntity;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 public class FunctionEntity extends AbstractFunctionEntity {
@@ -18,6 +18,7 @@ public class FunctionEntity extends AbstractFunctionEntity {
 
     private Class<?> nativeClazz;
     private Method nativeMethod;
+    private NativeInvoker nativeInvoker;
 
     private boolean isStatic = false;
 
@@ -51,8 +52,22 @@ public class FunctionEntity extends AbstractFunctionEntity {
         return nativeMethod;
     }
 
+    /**
+     * Returns the invoker of the native method, it is created on the first call.
+     */
+    public NativeInvoker getNativeInvoker() {
+        NativeInvoker invoker = nativeInvoker;
+
+        if (invoker == null) {
+            nativeInvoker = invoker = NativeInvoker.of(nativeMethod);
+        }
+
+        return invoker;
+    }
+
     public void setNativeMethod(Method nativeMethod) {
         this.nativeMethod = nativeMethod;
+        this.nativeInvoker = null;
         nativeMethod.setAccessible(true);
     }
 
@@ -69,10 +84,15 @@ public class FunctionEntity extends AbstractFunctionEntity {
     }
 
     public Memory invoke(Environment env, TraceInfo trace, Memory[] arguments) throws Throwable {
+        NativeInvoker invoker = nativeInvoker;
+        if (invoker == null) {
+            invoker = getNativeInvoker();
+        }
+
         try {
-            return (Memory)nativeMethod.invoke(null, env, arguments);
-        } catch (InvocationTargetException e){
-            return env.__throwException(e);
+            return invoker.invoke(null, env, arguments);
+        } catch (NativeInvoker.TargetException e){
+            return env.__rethrowException(e.getTargetException());
         } finally {
             unsetArguments(arguments);
         }
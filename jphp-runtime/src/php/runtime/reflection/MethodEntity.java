@@ -11,13 +11,13 @@ import php.runtime.env.TraceInfo;
 import php.runtime.exceptions.CriticalException;
 import php.runtime.exceptions.support.ErrorType;
 import php.runtime.ext.support.Extension;
+import php.runtime.invoke.NativeInvoker;
 import php.runtime.lang.Closure;
 import php.runtime.lang.IObject;
 import php.runtime.memory.ObjectMemory;
 import php.runtime.reflection.helper.ClosureEntity;
 import php.runtime.reflection.support.AbstractFunctionEntity;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 @Reflection.Signature
@@ -28,6 +28,7 @@ public class MethodEntity extends AbstractFunctionEntity {
     protected MethodEntity prototype;
 
     protected Method nativeMethod;
+    protected NativeInvoker nativeInvoker;
 
     protected boolean isAbstract;
     protected boolean isFinal;
@@ -110,7 +111,7 @@ public class MethodEntity extends AbstractFunctionEntity {
         else if (java.lang.reflect.Modifier.isPrivate(modifiers))
             modifier = Modifier.PRIVATE;
 
-        nativeMethod = method;
+        setNativeMethod(method);
     }
 
     /*
@@ -191,8 +192,22 @@ public class MethodEntity extends AbstractFunctionEntity {
         return nativeMethod;
     }
 
+    /**
+     * Returns the invoker of the native method, it is created on the first call.
+     */
+    public NativeInvoker getNativeInvoker() {
+        NativeInvoker invoker = nativeInvoker;
+
+        if (invoker == null && nativeMethod != null) {
+            nativeInvoker = invoker = NativeInvoker.of(nativeMethod);
+        }
+
+        return invoker;
+    }
+
     public void setNativeMethod(Method nativeMethod) {
         this.nativeMethod = nativeMethod;
+        this.nativeInvoker = null;
 
         if (nativeMethod != null) {
             nativeMethod.setAccessible(true);
@@ -218,11 +233,16 @@ public class MethodEntity extends AbstractFunctionEntity {
                 return Memory.NULL;
             }
 
-            return (Memory) nativeMethod.invoke(_this, environment, arguments);
-        } catch (InvocationTargetException e){
-            return environment.__throwException(e);
-        } catch (Throwable e) {
-            throw e;
+            NativeInvoker invoker = nativeInvoker;
+            if (invoker == null) {
+                invoker = getNativeInvoker();
+            }
+
+            try {
+                return invoker.invoke(_this, environment, arguments);
+            } catch (NativeInvoker.TargetException e) {
+                return environment.__rethrowException(e.getTargetException());
+            }
         } finally {
             unsetArguments(arguments);
         }
@@ -6,13 +6,13 @@ import php.runtime.env.Context;
 import php.runtime.env.DieException;
 import php.runtime.env.Environment;
 import php.runtime.exceptions.support.ErrorException;
+import php.runtime.invoke.NativeInvoker;
 import php.runtime.lang.BaseException;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.reflection.helper.ClosureEntity;
 import php.runtime.reflection.helper.GeneratorEntity;
 import php.runtime.reflection.support.Entity;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 
@@ -20,6 +20,7 @@ public class ModuleEntity extends Entity {
     private int id;
     private Class<?> nativeClazz;
     protected Method nativeMethod;
+    protected NativeInvoker nativeInvoker;
 
     private final Map<String, ClassEntity> classes;
     private final List<FunctionEntity> functions;
@@ -53,23 +54,45 @@ public class ModuleEntity extends Entity {
         return nativeMethod;
     }
 
+    /**
+     * Returns the invoker of the native method, it is created on the first include.
+     */
+    public NativeInvoker getNativeInvoker() {
+        NativeInvoker invoker = nativeInvoker;
+
+        if (invoker == null) {
+            nativeInvoker = invoker = NativeInvoker.of(nativeMethod);
+        }
+
+        return invoker;
+    }
+
     public void setNativeMethod(Method nativeMethod) {
         this.nativeMethod = nativeMethod;
+        this.nativeInvoker = null;
+    }
+
+    /**
+     * Returns false if the module has no bytecode and include() executes it another way, such a module is not defined
+     * by a class loader and cannot be dumped.
+     */
+    public boolean isCompiled() {
+        return true;
     }
 
     public Memory include(Environment env, ArrayMemory locals) throws Throwable {
         try {
-            return (Memory) nativeMethod.invoke(null, env, argsMock, locals);
-        } catch (InvocationTargetException e){
-            return env.__throwException(e);
+            return getNativeInvoker().include(env, argsMock, locals);
+        } catch (NativeInvoker.TargetException e){
+            return env.__rethrowException(e.getTargetException());
         }
     }
 
     public Memory include(Environment env) throws Throwable {
         try {
-            return (Memory) nativeMethod.invoke(null, env, argsMock, env.getGlobals());
-        } catch (InvocationTargetException e){
-            return env.__throwException(e);
+            return getNativeInvoker().include(env, argsMock, env.getGlobals());
+        } catch (NativeInvoker.TargetException e){
+            return env.__rethrowException(e.getTargetException());
         }
     }
 
@@ -232,6 +232,14 @@ public class PropertyEntity extends Entity {
         return true;
     }
 
+    /**
+     * Plain properties are stored in objects as is (without getters, setters and java fields),
+     * only such properties can use slots, see ClassEntity.getSlotIndex().
+     */
+    public boolean isPlain() {
+        return getter == null && setter == null && getClass() == PropertyEntity.class;
+    }
+
     public boolean isReadOnly() {
         return getter == null && setter != null;
     }
@@ -83,6 +83,9 @@ abstract public class TypeChecker {
         protected String typeClass;
         protected String typeClassLower;
 
+        // the last resolved class, an object of its subclass passes without lookups by name
+        protected volatile ClassEntity typeEntity;
+
         public ClassName(String typeClass) {
             this.typeClass = typeClass;
             this.typeClassLower = typeClass.toLowerCase();
@@ -112,7 +115,22 @@ abstract public class TypeChecker {
             ObjectMemory object = value.toValue(ObjectMemory.class);
             ClassEntity oEntity = object.getReflection();
 
-            return oEntity.isInstanceOfLower(typeClassLower);
+            ClassEntity entity = typeEntity;
+            if (entity != null && oEntity.isInstanceOf(entity)) {
+                return true;
+            }
+
+            if (oEntity.isInstanceOfLower(typeClassLower)) {
+                entity = env.fetchClass(typeClass, typeClassLower, false);
+
+                if (entity != null && oEntity.isInstanceOf(entity)) {
+                    typeEntity = entity;
+                }
+
+                return true;
+            }
+
+            return false;
         }
     }
 
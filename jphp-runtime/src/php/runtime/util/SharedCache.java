@@ -0,0 +1,533 @@
+package php.runtime.util;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.output.serialization.Deserializer;
+import php.runtime.memory.output.serialization.Serializer;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-process cache shared by all environments, like APCu.
+ *
+ * Values are kept in a form which does not depend on an environment: scalars are immutable, arrays and objects are
+ * serialized on store and unserialized on each fetch, so environments never share copy-on-write arrays or objects.
+ *
+ * Keys are spread by hash over segments, each segment is a LRU map with its own lock. The cache is limited by the total
+ * weight (about the number of bytes of values) and the number of entries, when a limit is exceeded least recently used
+ * entries of the segment are evicted first, then of the next segments. Entries with a ttl expire after the number of
+ * seconds and are removed on the next access.
+ */
+public class SharedCache {
+    public final static long DEFAULT_MAX_WEIGHT = 32 * 1024 * 1024;
+
+    protected final static int SEGMENT_COUNT = 16;
+    protected final static int ENTRY_WEIGHT = 64;
+
+    private static volatile SharedCache defaultCache;
+
+    protected final long maxWeight;
+    protected final int maxSize;
+    protected final Segment[] segments;
+    protected final long startTime;
+
+    protected final AtomicLong weight = new AtomicLong();
+    protected final AtomicLong size = new AtomicLong();
+
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong inserts = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+    protected final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param maxWeight max total weight of entries, 0 - unlimited
+     * @param maxSize max number of entries, 0 - unlimited
+     */
+    public SharedCache(long maxWeight, int maxSize) {
+        this.maxWeight = maxWeight;
+        this.maxSize = maxSize;
+        this.startTime = System.currentTimeMillis();
+
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public SharedCache(long maxWeight) {
+        this(maxWeight, 0);
+    }
+
+    public SharedCache() {
+        this(DEFAULT_MAX_WEIGHT, 0);
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInserts() {
+        return inserts.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * Returns the value of the key or null if there is no entry or it is expired.
+     */
+    public Memory get(Environment env, TraceInfo trace, String key) {
+        Entry entry = getEntry(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.getValue(env, trace);
+    }
+
+    public boolean contains(String key) {
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            return getLive(segment, key, currentTimeMillis()) != null;
+        }
+    }
+
+    /**
+     * Stores the value, returns false if the value is heavier than the cache.
+     *
+     * @param ttl time to live in seconds, 0 - no expiration
+     */
+    public boolean put(Environment env, TraceInfo trace, String key, Memory value, long ttl) {
+        return store(key, newEntry(env, trace, key, value, ttl), false);
+    }
+
+    /**
+     * Stores the value only if there is no entry of the key.
+     */
+    public boolean putIfAbsent(Environment env, TraceInfo trace, String key, Memory value, long ttl) {
+        return store(key, newEntry(env, trace, key, value, ttl), true);
+    }
+
+    public boolean remove(String key) {
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            Entry entry = segment.map.remove(key);
+
+            if (entry != null) {
+                released(entry);
+                return true;
+            }
+
+            return false;
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Entry entry : segment.map.values()) {
+                    released(entry);
+                }
+
+                segment.map.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds the step to the integer value of the key, a missing key is created with the step.
+     *
+     * @return the new value or null if the value is not an integer or a float
+     */
+    public Memory increment(String key, long step, long ttl) {
+        Segment segment = segmentFor(key);
+        long now = currentTimeMillis();
+        Memory value;
+
+        synchronized (segment) {
+            Entry entry = getLive(segment, key, now);
+
+            if (entry == null) {
+                value = LongMemory.valueOf(step);
+                entry = new Entry(key, value, false, ttl, now);
+            } else if (isNumber(entry.value)) {
+                value = ((Memory) entry.value).plus(step);
+                entry = new Entry(key, value, false, entry.expires, entry.created, now);
+            } else {
+                return null;
+            }
+
+            if (isHeavy(entry)) {
+                return null;
+            }
+
+            insert(segment, key, entry);
+        }
+
+        evictOthers(segment);
+        return value;
+    }
+
+    /**
+     * Replaces the integer value of the key if it is the expected one.
+     */
+    public boolean compareAndSet(String key, long expect, long update) {
+        Segment segment = segmentFor(key);
+        long now = currentTimeMillis();
+
+        synchronized (segment) {
+            Entry entry = getLive(segment, key, now);
+
+            if (entry == null || !(entry.value instanceof Memory)) {
+                return false;
+            }
+
+            Memory value = (Memory) entry.value;
+            if (value.type != Memory.Type.INT || value.toLong() != expect) {
+                return false;
+            }
+
+            replace(segment, key, new Entry(key, LongMemory.valueOf(update), false, entry.expires, entry.created, now));
+            return true;
+        }
+    }
+
+    /**
+     * Returns information about live entries.
+     */
+    public List<EntryInfo> getEntries() {
+        List<EntryInfo> result = new ArrayList<EntryInfo>();
+        long now = currentTimeMillis();
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Entry entry : segment.map.values()) {
+                    if (!entry.isExpired(now)) {
+                        result.add(new EntryInfo(entry));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    protected Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+
+        return segments[hash & (SEGMENT_COUNT - 1)];
+    }
+
+    protected Entry newEntry(Environment env, TraceInfo trace, String key, Memory value, long ttl) {
+        value = value.toValue();
+
+        switch (value.type) {
+            case ARRAY:
+            case OBJECT:
+                StringBuilder builder = new StringBuilder();
+                new Serializer(env, trace, builder).write(value);
+
+                return new Entry(key, builder.toString(), true, ttl, currentTimeMillis());
+            default:
+                return new Entry(key, value.toImmutable(), false, ttl, currentTimeMillis());
+        }
+    }
+
+    protected Entry getEntry(String key) {
+        Segment segment = segmentFor(key);
+        long now = currentTimeMillis();
+
+        synchronized (segment) {
+            Entry entry = getLive(segment, key, now);
+
+            if (entry != null) {
+                entry.accessed = now;
+                entry.hits++;
+            }
+
+            return entry;
+        }
+    }
+
+    /**
+     * Returns the entry if it is not expired, an expired entry is removed. Must be called under the segment lock.
+     */
+    protected Entry getLive(Segment segment, String key, long now) {
+        Entry entry = segment.map.get(key);
+
+        if (entry != null && entry.isExpired(now)) {
+            segment.map.remove(key);
+            released(entry);
+            expirations.incrementAndGet();
+
+            return null;
+        }
+
+        return entry;
+    }
+
+    protected boolean store(String key, Entry entry, boolean onlyIfAbsent) {
+        if (isHeavy(entry)) {
+            return false;
+        }
+
+        Segment segment = segmentFor(key);
+
+        synchronized (segment) {
+            if (onlyIfAbsent && getLive(segment, key, entry.created) != null) {
+                return false;
+            }
+
+            insert(segment, key, entry);
+        }
+
+        evictOthers(segment);
+        return true;
+    }
+
+    /**
+     * Puts the entry and evicts least recently used entries of the segment. Must be called under the segment lock.
+     */
+    protected void insert(Segment segment, String key, Entry entry) {
+        replace(segment, key, entry);
+        inserts.incrementAndGet();
+
+        evict(segment, entry);
+    }
+
+    /**
+     * Evicts entries of other segments while the cache is overflowed, must be called without the segment lock.
+     */
+    protected void evictOthers(Segment segment) {
+        if (isOverflowed()) {
+            for (Segment other : segments) {
+                if (other != segment) {
+                    synchronized (other) {
+                        evict(other, null);
+                    }
+
+                    if (!isOverflowed()) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called under the segment lock.
+     */
+    protected void replace(Segment segment, String key, Entry entry) {
+        Entry old = segment.map.put(key, entry);
+
+        if (old != null) {
+            released(old);
+        }
+
+        weight.addAndGet(entry.weight);
+        size.incrementAndGet();
+    }
+
+    /**
+     * Evicts least recently used entries of the segment while the cache is overflowed, the kept entry and more recent
+     * ones stay. Must be called under the segment lock.
+     */
+    protected void evict(Segment segment, Entry keep) {
+        Iterator<Entry> iterator = segment.map.values().iterator();
+
+        while (isOverflowed() && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry == keep) {
+                break;
+            }
+
+            iterator.remove();
+            released(entry);
+
+            evictions.incrementAndGet();
+        }
+    }
+
+    protected static boolean isNumber(Object value) {
+        if (value instanceof Memory) {
+            Memory.Type type = ((Memory) value).type;
+            return type == Memory.Type.INT || type == Memory.Type.DOUBLE;
+        }
+
+        return false;
+    }
+
+    protected boolean isHeavy(Entry entry) {
+        return maxWeight > 0 && entry.weight > maxWeight;
+    }
+
+    protected boolean isOverflowed() {
+        return (maxWeight > 0 && weight.get() > maxWeight) || (maxSize > 0 && size.get() > maxSize);
+    }
+
+    protected void released(Entry entry) {
+        weight.addAndGet(-entry.weight);
+        size.decrementAndGet();
+    }
+
+    /**
+     * Returns the cache shared by the whole process.
+     */
+    public static SharedCache getDefault() {
+        SharedCache cache = defaultCache;
+
+        if (cache == null) {
+            synchronized (SharedCache.class) {
+                cache = defaultCache;
+
+                if (cache == null) {
+                    defaultCache = cache = new SharedCache();
+                }
+            }
+        }
+
+        return cache;
+    }
+
+    public static void setDefault(SharedCache cache) {
+        defaultCache = cache;
+    }
+
+    protected static class Segment {
+        protected final LinkedHashMap<String, Entry> map = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    protected static class Entry {
+        protected final String key;
+        protected final Object value;
+        protected final boolean serialized;
+        protected final long weight;
+        protected final long expires;
+        protected final long created;
+
+        protected volatile long accessed;
+        protected volatile long hits;
+
+        protected Entry(String key, Object value, boolean serialized, long expires, long created, long modified) {
+            this.key = key;
+            this.value = value;
+            this.serialized = serialized;
+            this.expires = expires;
+            this.created = created;
+            this.accessed = modified;
+
+            long weight = ENTRY_WEIGHT + key.length() * 2;
+            if (value instanceof String) {
+                weight += ((String) value).length() * 2;
+            } else if (((Memory) value).type == Memory.Type.STRING) {
+                weight += ((Memory) value).toString().length() * 2;
+            }
+
+            this.weight = weight;
+        }
+
+        protected Entry(String key, Object value, boolean serialized, long ttl, long now) {
+            this(key, value, serialized, ttl > 0 ? now + ttl * 1000 : 0, now, now);
+        }
+
+        protected boolean isExpired(long now) {
+            return expires != 0 && expires <= now;
+        }
+
+        protected Memory getValue(Environment env, TraceInfo trace) {
+            if (serialized) {
+                return new Deserializer(env, trace).read((String) value);
+            }
+
+            return (Memory) value;
+        }
+    }
+
+    public static class EntryInfo {
+        protected final String key;
+        protected final long weight;
+        protected final long expires;
+        protected final long created;
+        protected final long accessed;
+        protected final long hits;
+
+        protected EntryInfo(Entry entry) {
+            key = entry.key;
+            weight = entry.weight;
+            expires = entry.expires;
+            created = entry.created;
+            accessed = entry.accessed;
+            hits = entry.hits;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * Returns the time of expiration in millis, 0 - no expiration.
+         */
+        public long getExpires() {
+            return expires;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getAccessed() {
+            return accessed;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+    }
+}
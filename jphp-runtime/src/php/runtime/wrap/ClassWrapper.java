@@ -290,7 +290,6 @@ public class ClassWrapper {
     protected void onWrapMethod(ClassEntity classEntity, Method method) {
         MethodEntity entity = new MethodEntity(extension, method);
         entity.setClazz(classEntity);
-        entity.setNativeMethod(method);
         entity.setAbstract(Modifier.isAbstract(method.getModifiers()));
 
         entity.setFinal(false);
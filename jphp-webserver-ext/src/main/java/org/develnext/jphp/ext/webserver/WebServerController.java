@@ -23,6 +23,9 @@ import java.util.Map;
 public class WebServerController {
     protected final static Map<String, PWebServer> webServerMap = new HashMap<>();
 
+    // request environments of worker threads for the pooled mode of a server
+    protected final ThreadLocal<Environment> pooledEnvironments = new ThreadLocal<>();
+
     @Value("${_server.id}")
     protected String serverId;
 
@@ -30,30 +33,24 @@ public class WebServerController {
     public void get(OutputStream stream, HttpServletRequest request, HttpServletResponse response) throws Throwable {
         PWebServer webServer = webServerMap.get(serverId);
 
-        Environment environment = webServer.getEnvironment();
+        Environment requestEnvironment = null;
+        boolean pooled = webServer.isPooled() && !webServer.isHotReload();
 
-        CompileScope scope = environment.getScope();
+        if (pooled) {
+            requestEnvironment = pooledEnvironments.get();
+        }
 
-        Environment requestEnvironment;
+        if (requestEnvironment == null) {
+            requestEnvironment = createEnvironment(webServer);
 
-        if (!webServer.isIsolated()) {
-            requestEnvironment = new Environment(environment);
-        } else {
-            if (webServer.isHotReload()) {
-                scope = new CompileScope(scope);
+            if (pooled) {
+                requestEnvironment.snapshot();
+                pooledEnvironments.set(requestEnvironment);
             }
-
-            requestEnvironment = new Environment(scope);
         }
 
         requestEnvironment.getDefaultBuffer().setOutput(stream);
 
-        if (webServer.isImportAutoloaders()) {
-            for (SplClassLoader loader : environment.getClassLoaders()) {
-                requestEnvironment.registerAutoloader(loader.forEnvironment(requestEnvironment), false);
-            }
-        }
-
         Invoker onRequest = webServer.getOnRequest().forEnvironment(requestEnvironment);
 
         PWebRequest webRequest = new PWebRequest(requestEnvironment, request);
@@ -68,10 +65,42 @@ public class WebServerController {
         } catch (Throwable throwable) {
             Environment.catchThrowable(throwable, requestEnvironment);
         } finally {
-            requestEnvironment.doFinal();
+            try {
+                requestEnvironment.doFinal();
+            } finally {
+                if (pooled) {
+                    requestEnvironment.reset();
+                }
+            }
         }
     }
 
+    protected Environment createEnvironment(PWebServer webServer) {
+        Environment environment = webServer.getEnvironment();
+
+        CompileScope scope = environment.getScope();
+
+        Environment requestEnvironment;
+
+        if (!webServer.isIsolated()) {
+            requestEnvironment = new Environment(environment);
+        } else {
+            if (webServer.isHotReload()) {
+                scope = new CompileScope(scope);
+            }
+
+            requestEnvironment = new Environment(scope);
+        }
+
+        if (webServer.isImportAutoloaders()) {
+            for (SplClassLoader loader : environment.getClassLoaders()) {
+                requestEnvironment.registerAutoloader(loader.forEnvironment(requestEnvironment), false);
+            }
+        }
+
+        return requestEnvironment;
+    }
+
     public static void registerServer(PWebServer webServer) {
         webServerMap.put(webServer.getId(), webServer);
     }
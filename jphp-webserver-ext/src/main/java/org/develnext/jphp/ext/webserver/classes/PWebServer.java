@@ -35,6 +35,7 @@ public class PWebServer extends BaseObject {
     protected boolean hotReload;
     protected boolean isolated;
     protected boolean importAutoloaders;
+    protected boolean pooled;
 
     protected final String id = UUID.randomUUID().toString();
 
@@ -87,6 +88,11 @@ public class PWebServer extends BaseObject {
         return isolated;
     }
 
+    @Getter
+    public boolean isPooled() {
+        return pooled;
+    }
+
     @Getter
     public boolean isImportAutoloaders() {
         return importAutoloaders;
@@ -98,6 +104,12 @@ public class PWebServer extends BaseObject {
         return this;
     }
 
+    @Setter
+    protected PWebServer setPooled(boolean value) {
+        this.pooled = value;
+        return this;
+    }
+
     @Setter
     protected PWebServer setHotReload(boolean value) {
         this.hotReload = value;
@@ -27,6 +27,13 @@ class WebServer
     /** @var bool */
     public $hotReload = true;
 
+    /**
+     * Reuse one request environment per worker thread and reset it after each request,
+     * works only without hot reload.
+     * @var bool
+     */
+    public $pooled = false;
+
     /**
      * @param callable $onRequest
      */
@@ -121,6 +128,22 @@ class WebServer
         $this->hotReload = $hotReload;
     }
 
+    /**
+     * @return boolean
+     */
+    protected function isPooled()
+    {
+        return $this->pooled;
+    }
+
+    /**
+     * @param boolean $pooled
+     */
+    protected function setPooled($pooled)
+    {
+        $this->pooled = $pooled;
+    }
+
     /**
      * Unable to clone.
      */
@@ -1,6 +1,7 @@
 package org.develnext.jphp.zend.ext;
 
 import org.develnext.jphp.zend.ext.json.JsonExtension;
+import org.develnext.jphp.zend.ext.standard.ApcuExtension;
 import org.develnext.jphp.zend.ext.standard.BCMathExtension;
 import org.develnext.jphp.zend.ext.standard.CTypeExtension;
 import org.develnext.jphp.zend.ext.standard.DateExtension;
@@ -16,6 +17,7 @@ public class ZendExtension extends Extension {
                 BCMathExtension.class.getName(),
                 CTypeExtension.class.getName(),
                 DateExtension.class.getName(),
+                ApcuExtension.class.getName(),
                 JsonExtension.class.getName()
         };
     }
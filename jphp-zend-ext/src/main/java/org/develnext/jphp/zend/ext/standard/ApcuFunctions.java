@@ -0,0 +1,327 @@
+package org.develnext.jphp.zend.ext.standard;
+
+import php.runtime.Memory;
+import php.runtime.annotation.Runtime.Reference;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.ext.support.compile.FunctionsContainer;
+import php.runtime.invoke.Invoker;
+import php.runtime.lang.ForeachIterator;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.StringMemory;
+import php.runtime.util.SharedCache;
+
+/**
+ * apcu extension, user data cache shared by all environments of the process
+ * documentation: http://php.net/manual/en/book.apcu.php
+ *
+ *  Notice: arrays and objects are serialized on store and unserialized on fetch
+ */
+public class ApcuFunctions extends FunctionsContainer {
+
+    protected static SharedCache cache() {
+        return SharedCache.getDefault();
+    }
+
+    public static boolean apcu_enabled() {
+        return true;
+    }
+
+    public static Memory apcu_fetch(Environment env, TraceInfo trace, Memory key) {
+        return apcu_fetch(env, trace, key, null);
+    }
+
+    public static Memory apcu_fetch(Environment env, TraceInfo trace, Memory key, @Reference Memory success) {
+        SharedCache cache = cache();
+
+        if (key.isArray()) {
+            ArrayMemory result = new ArrayMemory();
+            ForeachIterator iterator = key.getNewIterator(env);
+
+            while (iterator.next()) {
+                String name = iterator.getValue().toString();
+                Memory value = cache.get(env, trace, name);
+
+                if (value != null) {
+                    result.refOfIndex(name).assign(value);
+                }
+            }
+
+            if (success != null) {
+                success.assign(true);
+            }
+
+            return result.toConstant();
+        }
+
+        Memory value = cache.get(env, trace, key.toString());
+        if (success != null) {
+            success.assign(value != null);
+        }
+
+        return value == null ? Memory.FALSE : value;
+    }
+
+    public static Memory apcu_store(Environment env, TraceInfo trace, Memory key) {
+        return apcu_store(env, trace, key, Memory.NULL, 0);
+    }
+
+    public static Memory apcu_store(Environment env, TraceInfo trace, Memory key, Memory var) {
+        return apcu_store(env, trace, key, var, 0);
+    }
+
+    public static Memory apcu_store(Environment env, TraceInfo trace, Memory key, Memory var, long ttl) {
+        return store(env, trace, key, var, ttl, false);
+    }
+
+    public static Memory apcu_add(Environment env, TraceInfo trace, Memory key) {
+        return apcu_add(env, trace, key, Memory.NULL, 0);
+    }
+
+    public static Memory apcu_add(Environment env, TraceInfo trace, Memory key, Memory var) {
+        return apcu_add(env, trace, key, var, 0);
+    }
+
+    public static Memory apcu_add(Environment env, TraceInfo trace, Memory key, Memory var, long ttl) {
+        return store(env, trace, key, var, ttl, true);
+    }
+
+    protected static Memory store(Environment env, TraceInfo trace, Memory key, Memory var, long ttl,
+                                  boolean onlyIfAbsent) {
+        SharedCache cache = cache();
+
+        if (key.isArray()) {
+            ArrayMemory failed = new ArrayMemory();
+            ForeachIterator iterator = key.getNewIterator(env);
+
+            while (iterator.next()) {
+                String name = iterator.getKey().toString();
+
+                if (!store(env, trace, cache, name, iterator.getValue(), ttl, onlyIfAbsent)) {
+                    failed.refOfIndex(name).assign(-1);
+                }
+            }
+
+            return failed.toConstant();
+        }
+
+        return store(env, trace, cache, key.toString(), var, ttl, onlyIfAbsent) ? Memory.TRUE : Memory.FALSE;
+    }
+
+    protected static boolean store(Environment env, TraceInfo trace, SharedCache cache, String key, Memory var,
+                                   long ttl, boolean onlyIfAbsent) {
+        if (onlyIfAbsent) {
+            return cache.putIfAbsent(env, trace, key, var, ttl);
+        } else {
+            return cache.put(env, trace, key, var, ttl);
+        }
+    }
+
+    public static Memory apcu_delete(Environment env, TraceInfo trace, Memory key) {
+        SharedCache cache = cache();
+
+        if (key.isArray()) {
+            ArrayMemory failed = new ArrayMemory();
+            ForeachIterator iterator = key.getNewIterator(env);
+
+            while (iterator.next()) {
+                Memory name = iterator.getValue().toImmutable();
+
+                if (!cache.remove(name.toString())) {
+                    failed.add(name);
+                }
+            }
+
+            return failed.toConstant();
+        }
+
+        return cache.remove(key.toString()) ? Memory.TRUE : Memory.FALSE;
+    }
+
+    public static Memory apcu_exists(Environment env, TraceInfo trace, Memory key) {
+        SharedCache cache = cache();
+
+        if (key.isArray()) {
+            ArrayMemory result = new ArrayMemory();
+            ForeachIterator iterator = key.getNewIterator(env);
+
+            while (iterator.next()) {
+                String name = iterator.getValue().toString();
+
+                if (cache.contains(name)) {
+                    result.refOfIndex(name).assign(true);
+                }
+            }
+
+            return result.toConstant();
+        }
+
+        return cache.contains(key.toString()) ? Memory.TRUE : Memory.FALSE;
+    }
+
+    public static boolean apcu_clear_cache() {
+        cache().clear();
+        return true;
+    }
+
+    public static Memory apcu_inc(String key) {
+        return apcu_inc(key, 1, null, 0);
+    }
+
+    public static Memory apcu_inc(String key, long step) {
+        return apcu_inc(key, step, null, 0);
+    }
+
+    public static Memory apcu_inc(String key, long step, @Reference Memory success) {
+        return apcu_inc(key, step, success, 0);
+    }
+
+    public static Memory apcu_inc(String key, long step, @Reference Memory success, long ttl) {
+        Memory value = cache().increment(key, step, ttl);
+        if (success != null) {
+            success.assign(value != null);
+        }
+
+        return value == null ? Memory.FALSE : value;
+    }
+
+    public static Memory apcu_dec(String key) {
+        return apcu_inc(key, -1, null, 0);
+    }
+
+    public static Memory apcu_dec(String key, long step) {
+        return apcu_inc(key, -step, null, 0);
+    }
+
+    public static Memory apcu_dec(String key, long step, @Reference Memory success) {
+        return apcu_inc(key, -step, success, 0);
+    }
+
+    public static Memory apcu_dec(String key, long step, @Reference Memory success, long ttl) {
+        return apcu_inc(key, -step, success, ttl);
+    }
+
+    public static boolean apcu_cas(String key, long old, long _new) {
+        return cache().compareAndSet(key, old, _new);
+    }
+
+    public static Memory apcu_entry(Environment env, TraceInfo trace, String key, Memory generator) throws Throwable {
+        return apcu_entry(env, trace, key, generator, 0);
+    }
+
+    /**
+     * Unlike APCu the cache is not locked while the generator is called, so concurrent calls of the same missing key
+     * may call their generators, the first stored value is returned by all of them.
+     */
+    public static Memory apcu_entry(Environment env, TraceInfo trace, String key, Memory generator, long ttl)
+            throws Throwable {
+        SharedCache cache = cache();
+        Memory value = cache.get(env, trace, key);
+
+        if (value != null) {
+            return value;
+        }
+
+        Invoker invoker = expectingCallback(env, trace, 2, generator);
+        if (invoker == null) {
+            return Memory.NULL;
+        }
+
+        value = invoker.call(new StringMemory(key)).toValue();
+
+        while (!cache.putIfAbsent(env, trace, key, value, ttl)) {
+            Memory stored = cache.get(env, trace, key);
+
+            if (stored != null) {
+                return stored;
+            }
+
+            if (!cache.contains(key)) {
+                // the value is heavier than the cache
+                break;
+            }
+        }
+
+        return value;
+    }
+
+    public static Memory apcu_key_info(String key) {
+        for (SharedCache.EntryInfo info : cache().getEntries()) {
+            if (info.getKey().equals(key)) {
+                return entryInfo(info).toConstant();
+            }
+        }
+
+        return Memory.NULL;
+    }
+
+    public static Memory apcu_cache_info() {
+        return apcu_cache_info(false);
+    }
+
+    public static Memory apcu_cache_info(boolean limited) {
+        SharedCache cache = cache();
+        ArrayMemory result = new ArrayMemory();
+
+        result.refOfIndex("num_slots").assign(cache.getMaxSize());
+        result.refOfIndex("ttl").assign(0);
+        result.refOfIndex("num_hits").assign(cache.getHits());
+        result.refOfIndex("num_misses").assign(cache.getMisses());
+        result.refOfIndex("num_inserts").assign(cache.getInserts());
+        result.refOfIndex("num_entries").assign(cache.size());
+        result.refOfIndex("expunges").assign(cache.getEvictions());
+        result.refOfIndex("num_expirations").assign(cache.getExpirations());
+        result.refOfIndex("start_time").assign(cache.getStartTime() / 1000);
+        result.refOfIndex("mem_size").assign(cache.getWeight());
+        result.refOfIndex("memory_type").assign("jvm");
+
+        if (!limited) {
+            ArrayMemory list = new ArrayMemory();
+
+            for (SharedCache.EntryInfo info : cache.getEntries()) {
+                ArrayMemory item = entryInfo(info);
+                item.refOfIndex("info").assign(info.getKey());
+                list.add(item);
+            }
+
+            result.refOfIndex("cache_list").assign(list);
+        }
+
+        return result.toConstant();
+    }
+
+    public static Memory apcu_sma_info() {
+        return apcu_sma_info(false);
+    }
+
+    public static Memory apcu_sma_info(boolean limited) {
+        SharedCache cache = cache();
+        ArrayMemory result = new ArrayMemory();
+
+        result.refOfIndex("num_seg").assign(1);
+        result.refOfIndex("seg_size").assign(cache.getMaxWeight());
+        result.refOfIndex("avail_mem").assign(Math.max(cache.getMaxWeight() - cache.getWeight(), 0));
+
+        if (!limited) {
+            result.refOfIndex("block_lists").assign(new ArrayMemory());
+        }
+
+        return result.toConstant();
+    }
+
+    protected static ArrayMemory entryInfo(SharedCache.EntryInfo info) {
+        ArrayMemory result = new ArrayMemory();
+        long expires = info.getExpires();
+
+        result.refOfIndex("hits").assign(info.getHits());
+        result.refOfIndex("access_time").assign(info.getAccessed() / 1000);
+        result.refOfIndex("mtime").assign(info.getCreated() / 1000);
+        result.refOfIndex("creation_time").assign(info.getCreated() / 1000);
+        result.refOfIndex("deletion_time").assign(0);
+        result.refOfIndex("ttl").assign(expires == 0 ? 0 : (expires - info.getCreated()) / 1000);
+        result.refOfIndex("ref_count").assign(0);
+        result.refOfIndex("mem_size").assign(info.getWeight());
+
+        return result;
+    }
+}
@@ -1182,6 +1182,14 @@ public class ArrayFunctions extends FunctionsContainer {
     }
 
     protected static boolean _sort_impl(Environment env, TraceInfo trace, @Reference Memory array, int flags, boolean revert) {
+        if (flags == ArrayConstants.SORT_REGULAR || flags == ArrayConstants.SORT_NUMERIC) {
+            Memory value = array.toValue();
+
+            if (value.isArray() && ((ArrayMemory) value).sortPacked(revert)) {
+                return true;
+            }
+        }
+
         return _sort_impl(env, trace, array, makeComparatorForSort(flags, revert));
     }
 
@@ -4,6 +4,8 @@ import php.runtime.Memory;
 import php.runtime.common.StringUtils;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
+import php.runtime.ext.core.classes.stream.BufferedAccessFile;
+import php.runtime.ext.core.classes.stream.FileStream;
 import php.runtime.ext.core.classes.stream.Stream;
 import php.runtime.ext.core.classes.stream.WrapIOException;
 import php.runtime.ext.support.compile.FunctionsContainer;
@@ -544,14 +546,7 @@ public class FileFunctions extends FunctionsContainer {
                     }
                     return LongMemory.valueOf(read);
                 } else {
-                    byte[] buff = new byte[4096];
-                    int len = 0;
-                    int read = 0;
-                    while ((len = accessFile.read(buff)) != -1) {
-                        read += len;
-                        env.echo(buff, len);
-                    }
-                    return LongMemory.valueOf(read);
+                    return LongMemory.valueOf(env.echo(accessFile.getChannel(), 0, accessFile.length()));
                 }
             } finally {
                 accessFile.close();
@@ -575,15 +570,85 @@ public class FileFunctions extends FunctionsContainer {
         return readfile(env, trace, path, false, Memory.NULL);
     }
 
+    public static Memory fpassthru(Environment env, TraceInfo trace, Memory stream) {
+        if (stream.instanceOf(Stream.CLASS_NAME)) {
+            try {
+                if (stream.instanceOf(FileStream.class)) {
+                    BufferedAccessFile access = stream.toObject(FileStream.class).getAccess();
+                    access.flush();
+
+                    long position = access.getPosition();
+                    long count = env.echo(access.getFile().getChannel(), position, access.length() - position);
+
+                    access.seek(position + count);
+                    return LongMemory.valueOf(count);
+                }
+
+                long count = 0;
+                Memory read;
+                while ((read = env.invokeMethod(trace, stream, "read", LongMemory.valueOf(8192))).isString()) {
+                    byte[] bytes = read.getBinaryBytes(env.getDefaultCharset());
+                    if (bytes.length == 0) {
+                        break;
+                    }
+
+                    env.echo(bytes, bytes.length);
+                    count += bytes.length;
+                }
+
+                return LongMemory.valueOf(count);
+            } catch (Throwable throwable) {
+                env.warning(trace, "fpassthru(): " + throwable.getMessage());
+                return Memory.FALSE;
+            }
+        }
+
+        env.warning(trace, "fpassthru(): unable to read from a non-stream");
+        return Memory.FALSE;
+    }
+
     public static Memory fopen(Environment env, TraceInfo trace, String path, String mode) {
+        return fopen(env, trace, path, mode, false, Memory.NULL);
+    }
+
+    public static Memory fopen(Environment env, TraceInfo trace, String path, String mode, boolean useIncludePath) {
+        return fopen(env, trace, path, mode, useIncludePath, Memory.NULL);
+    }
+
+    public static Memory fopen(Environment env, TraceInfo trace, String path, String mode, boolean useIncludePath,
+                               Memory context) {
         try {
-            return ObjectMemory.valueOf(Stream.create(env, path, mode));
+            Stream stream = Stream.create(env, path, mode);
+            if (context.isNotNull()) {
+                stream.setContext(env, context);
+            }
+
+            return ObjectMemory.valueOf(stream);
         } catch (Throwable throwable) {
             env.warning(trace, "fopen(): failed to open stream, " + throwable.getMessage());
             return Memory.FALSE;
         }
     }
 
+    public static Memory fflush(Environment env, TraceInfo trace, Memory stream) {
+        if (stream.instanceOf(Stream.CLASS_NAME)) {
+            if (!stream.instanceOf(FileStream.class)) {
+                return Memory.TRUE;
+            }
+
+            try {
+                env.invokeMethod(trace, stream, "flush");
+                return Memory.TRUE;
+            } catch (Throwable throwable) {
+                env.warning(trace, "fflush(): " + throwable.getMessage());
+                return Memory.FALSE;
+            }
+        }
+
+        env.warning(trace, "fflush(): unable to flush a non-stream");
+        return Memory.FALSE;
+    }
+
     public static Memory ftell(Environment env, TraceInfo trace, Memory stream) {
         if (stream.instanceOf(Stream.CLASS_NAME)) {
             try {
@@ -932,9 +932,20 @@ public class StringFunctions extends FunctionsContainer {
         }
     }
 
+    private static Memory substring(Memory value, String string, int begin, int end) {
+        if (value instanceof AsciiMemory) {
+            return ((AsciiMemory) value).substring(begin, end);
+        }
+
+        return new StringMemory(end == string.length() ? string.substring(begin) : string.substring(begin, end));
+    }
+
     @Immutable
-    public static Memory substr(String value, int start, int length) {
-        int strLen = value.length();
+    public static Memory substr(Memory _value, int start, int length) {
+        _value = _value.toValue();
+        String value = _value instanceof AsciiMemory ? null : _value.toString();
+
+        int strLen = value == null ? ((AsciiMemory) _value).length() : value.length();
         if (start < 0)
             start = strLen + start;
 
@@ -953,22 +964,23 @@ public class StringFunctions extends FunctionsContainer {
 
         if (end <= start)
             return Memory.FALSE;
-        else if (strLen <= end)
-            return new StringMemory(value.substring(start));
         else
-            return new StringMemory(value.substring(start, end));
+            return substring(_value, value, start, Math.min(strLen, end));
     }
 
     @Immutable
-    public static Memory substr(String value, int start) {
-        int length = value.length();
+    public static Memory substr(Memory _value, int start) {
+        _value = _value.toValue();
+        String value = _value instanceof AsciiMemory ? null : _value.toString();
+
+        int length = value == null ? ((AsciiMemory) _value).length() : value.length();
         if (start < 0)
             start = length + start;
 
         if (start < 0 || start > length)
             return Memory.FALSE;
 
-        return new StringMemory(value.substring(start));
+        return substring(_value, value, start, length);
     }
 
     @Immutable
@@ -1062,11 +1074,11 @@ public class StringFunctions extends FunctionsContainer {
         }
 
         if (lenV == null)
-            mainStr = substr(mainStr, offset).toString();
+            mainStr = substr(new StringMemory(mainStr), offset).toString();
         else
-            mainStr = substr(mainStr, offset, len).toString();
+            mainStr = substr(new StringMemory(mainStr), offset, len).toString();
 
-        str = lenV == null ? str : substr(str, 0, len).toString();
+        str = lenV == null ? str : substr(new StringMemory(str), 0, len).toString();
 
         if (isCaseInsensitive)
             return LongMemory.valueOf(strcasecmp(mainStr, str));
@@ -1134,8 +1146,14 @@ public class StringFunctions extends FunctionsContainer {
     }
 
     @Immutable
-    public static Memory strpos(Environment env, TraceInfo trace, String haystack, Memory needle, int offset) {
-        int haystackLen = haystack.length();
+    public static Memory strpos(Environment env, TraceInfo trace, Memory _haystack, Memory needle, int offset) {
+        _haystack = _haystack.toValue();
+
+        // ascii strings are searched by bytes without decoding
+        AsciiMemory ascii = _haystack instanceof AsciiMemory ? (AsciiMemory) _haystack : null;
+        String haystack = ascii == null ? _haystack.toString() : null;
+
+        int haystackLen = ascii == null ? haystack.length() : ascii.length();
         if (offset < 0 || offset > haystackLen) {
             env.warning(trace, "strpos(): Offset not contained in string");
             return Memory.FALSE;
@@ -1158,13 +1176,13 @@ public class StringFunctions extends FunctionsContainer {
 
         int p;
         if (search == null) {
-            p = haystack.indexOf(ch, offset);
+            p = ascii == null ? haystack.indexOf(ch, offset) : ascii.indexOf(ch, offset);
         } else {
             if (search.isEmpty()) {
                 env.warning(trace, "Empty needle");
                 return Memory.FALSE;
             }
-            p = haystack.indexOf(search, offset);
+            p = ascii == null ? haystack.indexOf(search, offset) : ascii.indexOf(search, offset);
         }
 
         if (p < 0)
@@ -1174,7 +1192,7 @@ public class StringFunctions extends FunctionsContainer {
     }
 
     @Immutable
-    public static Memory strpos(Environment env, TraceInfo trace, String haystack, Memory needle) {
+    public static Memory strpos(Environment env, TraceInfo trace, Memory haystack, Memory needle) {
         return strpos(env, trace, haystack, needle, 0);
     }
 
@@ -1324,6 +1342,9 @@ public class StringFunctions extends FunctionsContainer {
         if (string instanceof BinaryMemory)
             return LongMemory.valueOf(string.getBinaryBytes(env.getDefaultCharset()).length);
 
+        if (string instanceof AsciiMemory)
+            return LongMemory.valueOf(((AsciiMemory) string).length());
+
         return LongMemory.valueOf(string.toString().length());
     }
 
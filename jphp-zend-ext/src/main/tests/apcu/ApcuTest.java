@@ -0,0 +1,28 @@
+package apcu;
+
+import org.develnext.jphp.zend.ZendJvmTestCase;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ApcuTest extends ZendJvmTestCase {
+
+    @Test
+    public void testStore() {
+        check("ext/apcu/apcu_001.php");
+    }
+
+    @Test
+    public void testCounters() {
+        check("ext/apcu/apcu_002.php");
+    }
+
+    @Test
+    public void testEntry() {
+        check("ext/apcu/apcu_003.php");
+    }
+}
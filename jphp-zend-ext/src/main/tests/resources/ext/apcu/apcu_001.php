@@ -0,0 +1,107 @@
+--TEST--
+Test apcu_store, apcu_fetch, apcu_add and apcu_delete
+--FILE--
+<?php
+apcu_clear_cache();
+
+class Foo {
+    public $bar = 'bar';
+}
+
+var_dump(apcu_store('int', 42));
+var_dump(apcu_store('str', 'foobar'));
+var_dump(apcu_store('arr', [1, 'a' => [2, 3]]));
+var_dump(apcu_store('obj', new Foo()));
+
+var_dump(apcu_fetch('int'), apcu_fetch('str'), apcu_fetch('arr'));
+
+$obj = apcu_fetch('obj');
+var_dump(get_class($obj), $obj->bar);
+
+$arr = apcu_fetch('arr');
+$arr['a'][] = 4;
+var_dump(count(apcu_fetch('arr')['a']));
+
+var_dump(apcu_fetch('missing', $success), $success);
+apcu_fetch('int', $success);
+var_dump($success);
+
+var_dump(apcu_add('int', 1), apcu_fetch('int'));
+var_dump(apcu_add('new', 1), apcu_fetch('new'));
+
+var_dump(apcu_store(['x' => 1, 'y' => 2]));
+var_dump(apcu_add(['x' => 3, 'z' => 4]));
+var_dump(apcu_fetch(['x', 'y', 'z', 'missing']));
+
+var_dump(apcu_exists('x'), apcu_exists(['x', 'missing']));
+var_dump(apcu_delete('x'), apcu_delete('x'), apcu_exists('x'));
+var_dump(apcu_delete(['y', 'missing']));
+
+var_dump(apcu_store('null', null), apcu_fetch('null', $success), $success);
+
+var_dump(apcu_clear_cache(), apcu_exists('int'));
+$info = apcu_cache_info();
+var_dump($info['num_entries'], $info['cache_list']);
+?>
+--EXPECT--
+bool(true)
+bool(true)
+bool(true)
+bool(true)
+int(42)
+string(6) "foobar"
+array(2) {
+  [0]=>
+  int(1)
+  ["a"]=>
+  array(2) {
+    [0]=>
+    int(2)
+    [1]=>
+    int(3)
+  }
+}
+string(3) "Foo"
+string(3) "bar"
+int(2)
+bool(false)
+bool(false)
+bool(true)
+bool(false)
+int(42)
+bool(true)
+int(1)
+array(0) {
+}
+array(1) {
+  ["x"]=>
+  int(-1)
+}
+array(3) {
+  ["x"]=>
+  int(1)
+  ["y"]=>
+  int(2)
+  ["z"]=>
+  int(4)
+}
+bool(true)
+array(1) {
+  ["x"]=>
+  bool(true)
+}
+bool(true)
+bool(false)
+bool(false)
+array(1) {
+  [0]=>
+  string(7) "missing"
+}
+bool(true)
+NULL
+bool(true)
+bool(true)
+bool(false)
+int(0)
+array(0) {
+}
@@ -0,0 +1,41 @@
+--TEST--
+Test apcu_inc, apcu_dec and apcu_cas
+--FILE--
+<?php
+apcu_clear_cache();
+
+var_dump(apcu_inc('counter'), apcu_inc('counter', 10), apcu_dec('counter', 2));
+var_dump(apcu_fetch('counter'));
+
+apcu_store('str', 'foo');
+var_dump(apcu_inc('str', 1, $success), $success);
+
+var_dump(apcu_cas('counter', 1, 5), apcu_cas('counter', 9, 5), apcu_fetch('counter'));
+var_dump(apcu_cas('str', 0, 1), apcu_cas('missing', 0, 1));
+
+apcu_store('float', 1.5);
+var_dump(apcu_inc('float'));
+
+$info = apcu_cache_info(true);
+var_dump($info['num_entries'], isset($info['cache_list']));
+
+$info = apcu_key_info('counter');
+var_dump($info['ttl'], apcu_key_info('missing'));
+?>
+--EXPECT--
+int(1)
+int(11)
+int(9)
+int(9)
+bool(false)
+bool(false)
+bool(false)
+bool(true)
+int(5)
+bool(false)
+bool(false)
+float(2.5)
+int(3)
+bool(false)
+int(0)
+NULL
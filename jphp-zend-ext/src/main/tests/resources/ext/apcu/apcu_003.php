@@ -0,0 +1,34 @@
+--TEST--
+Test apcu_entry
+--FILE--
+<?php
+apcu_clear_cache();
+
+function generate($key) {
+    echo "generate $key\n";
+    return [$key => strtoupper($key)];
+}
+
+var_dump(apcu_entry('foo', 'generate'));
+var_dump(apcu_entry('foo', 'generate'));
+var_dump(apcu_entry('bar', 'generate', 100));
+
+$info = apcu_key_info('bar');
+var_dump($info['ttl']);
+?>
+--EXPECT--
+generate foo
+array(1) {
+  ["foo"]=>
+  string(3) "FOO"
+}
+array(1) {
+  ["foo"]=>
+  string(3) "FOO"
+}
+generate bar
+array(1) {
+  ["bar"]=>
+  string(3) "BAR"
+}
+int(100)
@@ -0,0 +1,56 @@
+--TEST--
+Test string functions on ascii output of buffers
+--FILE--
+<?php
+
+ob_start();
+echo "Hello, ", "world", 1, "!";
+$s = ob_get_clean();
+
+var_dump($s);
+var_dump(strlen($s));
+var_dump(substr($s, 7));
+var_dump(substr($s, 7, 5));
+var_dump(substr($s, -2, 1));
+var_dump(substr($s, 20));
+var_dump(strpos($s, 'world'));
+var_dump(strpos($s, 'o', 5));
+var_dump(strpos($s, 'é'));
+var_dump(strpos($s, 'x'));
+var_dump($s[4], $s{12});
+var_dump($s == "Hello, world1!", $s === "Hello, world1!");
+var_dump((bool) $s, $s . '?');
+
+ob_start();
+echo "café";
+$s = ob_get_clean();
+
+var_dump(strlen($s));
+var_dump(substr($s, 3));
+
+ob_start();
+echo "hello";
+$s = ob_get_clean();
+$s[0] = 'J';
+echo $s, "\n";
+?>
+--EXPECT--
+string(14) "Hello, world1!"
+int(14)
+string(7) "world1!"
+string(5) "world"
+string(1) "1"
+bool(false)
+int(7)
+int(8)
+bool(false)
+bool(false)
+string(1) "o"
+string(1) "1"
+bool(true)
+bool(true)
+bool(true)
+string(15) "Hello, world1!?"
+int(4)
+string(1) "é"
+Jello
@@ -18,6 +18,11 @@ public class StringsTest extends ZendJvmTestCase {
         check("ext/strings/levenshtein_003.php");
     }
 
+    @Test
+    public void testAscii(){
+        check("ext/strings/ascii_001.php");
+    }
+
     @Test
     public void testLTrim(){
         check("ext/strings/ltrim_001.php");